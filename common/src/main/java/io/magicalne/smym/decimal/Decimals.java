@@ -0,0 +1,295 @@
+package io.magicalne.smym.decimal;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between decimal strings, doubles and scaled longs (value * 10^scale).
+ * None of the parse methods allocate, so they are safe to call on market data hot paths.
+ */
+public final class Decimals {
+
+  public static final int MAX_SCALE = 18;
+
+  private static final long[] POW10 = new long[MAX_SCALE + 1];
+  private static final double[] POW10_D = new double[MAX_SCALE + 1];
+  private static final ThreadLocal<char[]> FORMAT_BUFFER = ThreadLocal.withInitial(() -> new char[48]);
+
+  static {
+    long p = 1;
+    for (int i = 0; i <= MAX_SCALE; i++) {
+      POW10[i] = p;
+      POW10_D[i] = p;
+      p *= 10;
+    }
+  }
+
+  private Decimals() {
+  }
+
+  public static long pow10(int scale) {
+    return POW10[scale];
+  }
+
+  /**
+   * Parse a plain decimal string like "0.01230000" into value * 10^scale.
+   * Digits beyond the scale are rounded half up.
+   */
+  public static long parseScaled(CharSequence s, int scale) {
+    return parseScaled(s, scale, RoundingMode.HALF_UP);
+  }
+
+  /**
+   * Parse a plain decimal string into value * 10^scale, rounding the digits beyond the scale with the mode.
+   */
+  public static long parseScaled(CharSequence s, int scale, RoundingMode mode) {
+    int len = s.length();
+    if (len == 0) {
+      throw new NumberFormatException("Empty decimal string.");
+    }
+    int i = 0;
+    boolean negative = false;
+    char first = s.charAt(0);
+    if (first == '-' || first == '+') {
+      negative = first == '-';
+      i++;
+    }
+    long value = 0;
+    int fraction = -1;
+    // first digit beyond the scale and whether any later one is not zero
+    int dropped = -1;
+    boolean rest = false;
+    for (; i < len; i++) {
+      char c = s.charAt(i);
+      if (c == '.') {
+        if (fraction >= 0) {
+          throw new NumberFormatException("Invalid decimal: " + s);
+        }
+        fraction = 0;
+        continue;
+      }
+      if (c < '0' || c > '9') {
+        throw new NumberFormatException("Invalid decimal: " + s);
+      }
+      if (fraction >= 0) {
+        if (fraction == scale) {
+          if (dropped < 0) {
+            dropped = c - '0';
+          } else if (c != '0') {
+            rest = true;
+          }
+          continue;
+        }
+        fraction++;
+      }
+      value = value * 10 + (c - '0');
+    }
+    int digits = fraction < 0 ? 0 : fraction;
+    value *= POW10[scale - digits];
+    if (dropped > 0 || rest) {
+      int half = dropped > 5 || dropped == 5 && rest ? 1 : dropped == 5 ? 0 : -1;
+      if (roundAway(mode, negative, half, (value & 1) != 0)) {
+        value++;
+      }
+    }
+    return negative ? -value : value;
+  }
+
+  public static long fromDouble(double value, int scale) {
+    return Math.round(value * POW10_D[scale]);
+  }
+
+  /**
+   * Scale a double with the rounding mode. A value within a few ulps of a decimal of the scale is taken as
+   * that decimal, so 0.29 rounded down to 2 digits stays 29 although 0.29 * 100 is 28.999999999999996.
+   */
+  public static long fromDouble(double value, int scale, RoundingMode mode) {
+    double x = value * POW10_D[scale];
+    double nearest = Math.rint(x);
+    if (Math.abs(x - nearest) <= 4 * Math.ulp(x)) {
+      return (long) nearest;
+    }
+    double abs = Math.abs(x);
+    double floor = Math.floor(abs);
+    double dropped = abs - floor;
+    int half = dropped > 0.5 ? 1 : dropped == 0.5 ? 0 : -1;
+    long units = (long) floor;
+    if (roundAway(mode, x < 0, half, (units & 1) != 0)) {
+      units++;
+    }
+    return x < 0 ? -units : units;
+  }
+
+  /**
+   * @return value scaled by 10^from rescaled to 10^to.
+   * @throws ArithmeticException if the result does not fit in a long.
+   */
+  public static long rescale(long value, int from, int to, RoundingMode mode) {
+    if (to >= from) {
+      return Math.multiplyExact(value, POW10[to - from]);
+    }
+    return divide(value, POW10[from - to], mode);
+  }
+
+  /**
+   * @return a / b rounded with the mode.
+   */
+  public static long divide(long a, long b, RoundingMode mode) {
+    long q = a / b;
+    long r = a % b;
+    if (r == 0) {
+      return q;
+    }
+    boolean negative = (a < 0) != (b < 0);
+    long absR = Math.abs(r);
+    long rest = Math.abs(b) - absR;
+    int half = Long.compare(absR, rest);
+    return roundAway(mode, negative, half, (q & 1) != 0) ? (negative ? q - 1 : q + 1) : q;
+  }
+
+  /**
+   * @return a * b of the given scales as a value of the result scale.
+   */
+  public static long multiply(long a, int aScale, long b, int bScale, int scale, RoundingMode mode) {
+    int shift = aScale + bScale - scale;
+    if (shift >= -MAX_SCALE && shift <= MAX_SCALE) {
+      try {
+        return rescale(Math.multiplyExact(a, b), aScale + bScale, scale, mode);
+      } catch (ArithmeticException e) {
+        // the product overflows a long
+      }
+    }
+    return BigDecimal.valueOf(a, aScale).multiply(BigDecimal.valueOf(b, bScale))
+      .setScale(scale, mode).unscaledValue().longValueExact();
+  }
+
+  /**
+   * @return a / b of the given scales as a value of the result scale.
+   */
+  public static long divide(long a, int aScale, long b, int bScale, int scale, RoundingMode mode) {
+    int shift = scale + bScale - aScale;
+    if (shift >= -MAX_SCALE && shift <= MAX_SCALE && b != 0) {
+      try {
+        if (shift >= 0) {
+          return divide(Math.multiplyExact(a, POW10[shift]), b, mode);
+        }
+        return divide(a, Math.multiplyExact(b, POW10[-shift]), mode);
+      } catch (ArithmeticException e) {
+        // the scaled operand overflows a long
+      }
+    }
+    return BigDecimal.valueOf(a, aScale).divide(BigDecimal.valueOf(b, bScale), scale, mode)
+      .unscaledValue().longValueExact();
+  }
+
+  /**
+   * @return units times a rate like a grid step or a commission, in the same scale.
+   */
+  public static long multiplyRate(long units, double rate, RoundingMode mode) {
+    return fromDouble(units * rate, 0, mode);
+  }
+
+  /**
+   * @return units divided by a rate like a grid step, in the same scale.
+   */
+  public static long divideRate(long units, double rate, RoundingMode mode) {
+    return fromDouble(units / rate, 0, mode);
+  }
+
+  /**
+   * @return number of fraction digits up to the last non-zero one, e.g. 3 for an increment like "0.00500000"
+   * and 0 for "1.00000000" or "10".
+   */
+  public static int precision(CharSequence increment) {
+    int point = -1;
+    int last = -1;
+    for (int i = 0; i < increment.length(); i++) {
+      char c = increment.charAt(i);
+      if (c == '.') {
+        point = i;
+      } else if (point >= 0 && c != '0') {
+        last = i;
+      }
+    }
+    return last < 0 ? 0 : last - point;
+  }
+
+  public static double toDouble(long value, int scale) {
+    return value / POW10_D[scale];
+  }
+
+  /**
+   * Format value / 10^scale in plain notation with exactly {@code scale} fraction digits. Only the returned
+   * string is allocated.
+   */
+  public static String format(long value, int scale) {
+    char[] buf = FORMAT_BUFFER.get();
+    int pos = buf.length;
+    boolean negative = value < 0;
+    // work on the negative value so Long.MIN_VALUE needs no special case
+    long v = negative ? value : -value;
+    for (int i = 0; i < scale; i++) {
+      buf[--pos] = (char) ('0' - v % 10);
+      v /= 10;
+    }
+    if (scale > 0) {
+      buf[--pos] = '.';
+    }
+    do {
+      buf[--pos] = (char) ('0' - v % 10);
+      v /= 10;
+    } while (v != 0);
+    if (negative) {
+      buf[--pos] = '-';
+    }
+    return new String(buf, pos, buf.length - pos);
+  }
+
+  /**
+   * Append value / 10^scale in plain notation, always with exactly {@code scale} fraction digits.
+   */
+  public static StringBuilder appendTo(StringBuilder sb, long value, int scale) {
+    if (value < 0) {
+      sb.append('-');
+      value = -value;
+    }
+    long unit = POW10[scale];
+    sb.append(value / unit);
+    if (scale > 0) {
+      sb.append('.');
+      long fraction = value % unit;
+      for (int i = scale - 1; i >= 0; i--) {
+        long digit = fraction / POW10[i];
+        sb.append((char) ('0' + digit));
+        fraction -= digit * POW10[i];
+      }
+    }
+    return sb;
+  }
+
+  /**
+   * Whether a magnitude with a non-zero dropped part is rounded away from zero.
+   * @param half compare of the dropped part to one half.
+   * @param odd  whether the kept magnitude is odd.
+   */
+  private static boolean roundAway(RoundingMode mode, boolean negative, int half, boolean odd) {
+    switch (mode) {
+      case UP:
+        return true;
+      case DOWN:
+        return false;
+      case CEILING:
+        return !negative;
+      case FLOOR:
+        return negative;
+      case HALF_UP:
+        return half >= 0;
+      case HALF_DOWN:
+        return half > 0;
+      case HALF_EVEN:
+        return half > 0 || half == 0 && odd;
+      default:
+        throw new ArithmeticException("Rounding necessary.");
+    }
+  }
+}
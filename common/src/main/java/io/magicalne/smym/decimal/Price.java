@@ -0,0 +1,111 @@
+package io.magicalne.smym.decimal;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed point price, {@code units / 10^scale}, where the scale is the price precision of the symbol.
+ * Immutable, every operation allocates at most the result and none when it is unchanged. Code stepping a value
+ * many times, like the levels of a grid, works on the units with {@link Decimals} and only formats the strings
+ * of the API.
+ */
+public final class Price implements Comparable<Price> {
+
+  private final long units;
+  private final int scale;
+
+  private Price(long units, int scale) {
+    if (scale < 0 || scale > Decimals.MAX_SCALE) {
+      throw new IllegalArgumentException("Scale out of range: " + scale);
+    }
+    this.units = units;
+    this.scale = scale;
+  }
+
+  public static Price of(long units, int scale) {
+    return new Price(units, scale);
+  }
+
+  public static Price parse(CharSequence s, int scale, RoundingMode mode) {
+    return new Price(Decimals.parseScaled(s, scale, mode), scale);
+  }
+
+  public static Price fromDouble(double value, int scale, RoundingMode mode) {
+    return new Price(Decimals.fromDouble(value, scale, mode), scale);
+  }
+
+  public long getUnits() {
+    return units;
+  }
+
+  public int getScale() {
+    return scale;
+  }
+
+  public int signum() {
+    return Long.signum(units);
+  }
+
+  public Price setScale(int scale, RoundingMode mode) {
+    return scale == this.scale ? this : new Price(Decimals.rescale(units, this.scale, scale, mode), scale);
+  }
+
+  /**
+   * @return the price times a rate like a grid step, in the same scale.
+   */
+  public Price multiply(double rate, RoundingMode mode) {
+    return withUnits(Decimals.multiplyRate(units, rate, mode));
+  }
+
+  /**
+   * @return the price divided by a rate like a grid step, in the same scale.
+   */
+  public Price divide(double rate, RoundingMode mode) {
+    return withUnits(Decimals.divideRate(units, rate, mode));
+  }
+
+  private Price withUnits(long units) {
+    return units == this.units ? this : new Price(units, scale);
+  }
+
+  public double toDouble() {
+    return Decimals.toDouble(units, scale);
+  }
+
+  public BigDecimal toBigDecimal() {
+    return BigDecimal.valueOf(units, scale);
+  }
+
+  @Override
+  public int compareTo(Price other) {
+    if (scale == other.scale) {
+      return Long.compare(units, other.units);
+    }
+    return toBigDecimal().compareTo(other.toBigDecimal());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Price)) {
+      return false;
+    }
+    Price other = (Price) o;
+    return units == other.units && scale == other.scale;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(units) + scale;
+  }
+
+  /**
+   * @return plain notation with exactly {@code scale} fraction digits, as the exchange APIs expect.
+   */
+  @Override
+  public String toString() {
+    return Decimals.format(units, scale);
+  }
+}
@@ -0,0 +1,144 @@
+package io.magicalne.smym.decimal;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed point amount of an asset, {@code units / 10^scale}, where the scale is the precision of the symbol
+ * it is traded on. Immutable, every operation allocates at most the result and none when it is unchanged.
+ */
+public final class Qty implements Comparable<Qty> {
+
+  private final long units;
+  private final int scale;
+
+  private Qty(long units, int scale) {
+    if (scale < 0 || scale > Decimals.MAX_SCALE) {
+      throw new IllegalArgumentException("Scale out of range: " + scale);
+    }
+    this.units = units;
+    this.scale = scale;
+  }
+
+  public static Qty of(long units, int scale) {
+    return new Qty(units, scale);
+  }
+
+  public static Qty parse(CharSequence s, int scale, RoundingMode mode) {
+    return new Qty(Decimals.parseScaled(s, scale, mode), scale);
+  }
+
+  public static Qty fromDouble(double value, int scale, RoundingMode mode) {
+    return new Qty(Decimals.fromDouble(value, scale, mode), scale);
+  }
+
+  public long getUnits() {
+    return units;
+  }
+
+  public int getScale() {
+    return scale;
+  }
+
+  public int signum() {
+    return Long.signum(units);
+  }
+
+  public Qty setScale(int scale, RoundingMode mode) {
+    return scale == this.scale ? this : new Qty(Decimals.rescale(units, this.scale, scale, mode), scale);
+  }
+
+  /**
+   * @return the sum in the larger of both scales.
+   */
+  public Qty add(Qty other) {
+    if (other.units == 0 && other.scale <= scale) {
+      return this;
+    }
+    int s = Math.max(scale, other.scale);
+    return new Qty(Math.addExact(Decimals.rescale(units, scale, s, RoundingMode.UNNECESSARY),
+      Decimals.rescale(other.units, other.scale, s, RoundingMode.UNNECESSARY)), s);
+  }
+
+  /**
+   * @return the difference in the larger of both scales.
+   */
+  public Qty subtract(Qty other) {
+    if (other.units == 0 && other.scale <= scale) {
+      return this;
+    }
+    int s = Math.max(scale, other.scale);
+    return new Qty(Math.subtractExact(Decimals.rescale(units, scale, s, RoundingMode.UNNECESSARY),
+      Decimals.rescale(other.units, other.scale, s, RoundingMode.UNNECESSARY)), s);
+  }
+
+  /**
+   * @return the amount of quote this amount of base is worth at the price.
+   */
+  public Qty multiply(Price price, int scale, RoundingMode mode) {
+    return new Qty(Decimals.multiply(units, this.scale, price.getUnits(), price.getScale(), scale, mode), scale);
+  }
+
+  /**
+   * @return this amount times a factor like a commission, in the same scale.
+   */
+  public Qty multiply(double factor, RoundingMode mode) {
+    long product = Decimals.multiplyRate(units, factor, mode);
+    return product == units ? this : new Qty(product, scale);
+  }
+
+  /**
+   * @return the amount of base this amount of quote buys at the price.
+   */
+  public Qty divide(Price price, int scale, RoundingMode mode) {
+    return new Qty(Decimals.divide(units, this.scale, price.getUnits(), price.getScale(), scale, mode), scale);
+  }
+
+  /**
+   * @return the average price when this amount of quote is paid for the amount of base.
+   */
+  public Price divide(Qty base, int scale, RoundingMode mode) {
+    return Price.of(Decimals.divide(units, this.scale, base.units, base.scale, scale, mode), scale);
+  }
+
+  public double toDouble() {
+    return Decimals.toDouble(units, scale);
+  }
+
+  public BigDecimal toBigDecimal() {
+    return BigDecimal.valueOf(units, scale);
+  }
+
+  @Override
+  public int compareTo(Qty other) {
+    if (scale == other.scale) {
+      return Long.compare(units, other.units);
+    }
+    return toBigDecimal().compareTo(other.toBigDecimal());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Qty)) {
+      return false;
+    }
+    Qty other = (Qty) o;
+    return units == other.units && scale == other.scale;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(units) + scale;
+  }
+
+  /**
+   * @return plain notation with exactly {@code scale} fraction digits, as the exchange APIs expect.
+   */
+  @Override
+  public String toString() {
+    return Decimals.format(units, scale);
+  }
+}
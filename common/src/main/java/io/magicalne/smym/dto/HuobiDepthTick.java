@@ -0,0 +1,127 @@
+package io.magicalne.smym.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.Arrays;
+
+/**
+ * Depth tick of huobi market websocket, used by both depth.step* and mbp.* topics.
+ *
+ * Levels are kept in primitive arrays filled by {@link HuobiDepthTickDeserializer}, so reading a price
+ * does not unbox. For mbp topics an amount of 0 means the level is removed and seqNum/prevSeqNum chain
+ * the increments.
+ */
+@JsonDeserialize(using = HuobiDepthTickDeserializer.class)
+public class HuobiDepthTick {
+
+    private static final int INITIAL_LEVELS = 20;
+
+    double[] bidPrices = new double[INITIAL_LEVELS];
+    double[] bidAmounts = new double[INITIAL_LEVELS];
+    double[] askPrices = new double[INITIAL_LEVELS];
+    double[] askAmounts = new double[INITIAL_LEVELS];
+    int bidCount;
+    int askCount;
+    long ts;
+    long version;
+    long seqNum;
+    long prevSeqNum;
+
+    void addBid(double price, double amount) {
+        if (bidCount == bidPrices.length) {
+            bidPrices = Arrays.copyOf(bidPrices, bidCount * 2);
+            bidAmounts = Arrays.copyOf(bidAmounts, bidCount * 2);
+        }
+        bidPrices[bidCount] = price;
+        bidAmounts[bidCount] = amount;
+        bidCount++;
+    }
+
+    void addAsk(double price, double amount) {
+        if (askCount == askPrices.length) {
+            askPrices = Arrays.copyOf(askPrices, askCount * 2);
+            askAmounts = Arrays.copyOf(askAmounts, askCount * 2);
+        }
+        askPrices[askCount] = price;
+        askAmounts[askCount] = amount;
+        askCount++;
+    }
+
+    public HuobiDepthTick copy() {
+        HuobiDepthTick copy = new HuobiDepthTick();
+        copy.bidPrices = Arrays.copyOf(bidPrices, Math.max(bidCount, 1));
+        copy.bidAmounts = Arrays.copyOf(bidAmounts, Math.max(bidCount, 1));
+        copy.askPrices = Arrays.copyOf(askPrices, Math.max(askCount, 1));
+        copy.askAmounts = Arrays.copyOf(askAmounts, Math.max(askCount, 1));
+        copy.bidCount = bidCount;
+        copy.askCount = askCount;
+        copy.ts = ts;
+        copy.version = version;
+        copy.seqNum = seqNum;
+        copy.prevSeqNum = prevSeqNum;
+        return copy;
+    }
+
+    void reset() {
+        bidCount = 0;
+        askCount = 0;
+        ts = 0;
+        version = 0;
+        seqNum = 0;
+        prevSeqNum = 0;
+    }
+
+    public int bidCount() {
+        return bidCount;
+    }
+
+    public int askCount() {
+        return askCount;
+    }
+
+    public double bidPrice(int level) {
+        return bidPrices[level];
+    }
+
+    public double bidAmount(int level) {
+        return bidAmounts[level];
+    }
+
+    public double askPrice(int level) {
+        return askPrices[level];
+    }
+
+    public double askAmount(int level) {
+        return askAmounts[level];
+    }
+
+    /**
+     * @return best bid price or -1 if there is no bid.
+     */
+    public double bestBidPrice() {
+        return bidCount > 0 ? bidPrices[0] : -1d;
+    }
+
+    /**
+     * @return best ask price or -1 if there is no ask.
+     */
+    public double bestAskPrice() {
+        return askCount > 0 ? askPrices[0] : -1d;
+    }
+
+    public long getTs() {
+        return ts;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getSeqNum() {
+        return seqNum;
+    }
+
+    public long getPrevSeqNum() {
+        return prevSeqNum;
+    }
+}
@@ -0,0 +1,79 @@
+package io.magicalne.smym.dto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads [[price, amount], ...] level arrays straight into the primitive arrays of {@link HuobiDepthTick}.
+ */
+public class HuobiDepthTickDeserializer extends JsonDeserializer<HuobiDepthTick> {
+
+    @Override
+    public HuobiDepthTick deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        HuobiDepthTick tick = new HuobiDepthTick();
+        read(p, tick);
+        return tick;
+    }
+
+    /**
+     * Fill tick from the parser positioned at the START_OBJECT of a tick.
+     */
+    public static void read(JsonParser p, HuobiDepthTick tick) throws IOException {
+        tick.reset();
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        }
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "bids":
+                    readLevels(p, tick, true);
+                    break;
+                case "asks":
+                    readLevels(p, tick, false);
+                    break;
+                case "ts":
+                    tick.ts = p.getValueAsLong();
+                    break;
+                case "version":
+                    tick.version = p.getValueAsLong();
+                    break;
+                case "seqNum":
+                    tick.seqNum = p.getValueAsLong();
+                    break;
+                case "prevSeqNum":
+                    tick.prevSeqNum = p.getValueAsLong();
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+    }
+
+    private static void readLevels(JsonParser p, HuobiDepthTick tick, boolean bid) throws IOException {
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return;
+        }
+        while (p.nextToken() == JsonToken.START_ARRAY) {
+            p.nextToken();
+            double price = p.getDoubleValue();
+            p.nextToken();
+            double amount = p.getDoubleValue();
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                p.skipChildren();
+            }
+            if (bid) {
+                tick.addBid(price, amount);
+            } else {
+                tick.addAsk(price, amount);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.magicalne.smym.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class HuobiOrderUpdate {
+
+    /**
+     * data of topic orders.$symbol:
+     * {"seq-id":94984,"order-id":2039498445,"symbol":"btcusdt","account-id":100077,"order-amount":"5000.000000000000000000",
+     * "order-price":"1.662100000000000000","created-at":1522858623622,"order-type":"buy-limit","order-source":"api",
+     * "order-state":"filled","role":"taker","price":"1.662100000000000000","filled-amount":"5000.000000000000000000",
+     * "unfilled-amount":"0.000000000000000000","filled-cash-amount":"8301.357280000000000000",
+     * "filled-fees":"8.000000000000000000"}
+     */
+
+    @JsonProperty("seq-id")
+    private long seqId;
+    @JsonProperty("order-id")
+    private long orderId;
+    private String symbol;
+    @JsonProperty("account-id")
+    private long accountId;
+    @JsonProperty("order-amount")
+    private String orderAmount;
+    @JsonProperty("order-price")
+    private String orderPrice;
+    @JsonProperty("created-at")
+    private long createdAt;
+    @JsonProperty("order-type")
+    private String orderType;
+    @JsonProperty("order-source")
+    private String orderSource;
+    @JsonProperty("order-state")
+    private String orderState;
+    private String role;
+    private String price;
+    @JsonProperty("filled-amount")
+    private String filledAmount;
+    @JsonProperty("unfilled-amount")
+    private String unfilledAmount;
+    @JsonProperty("filled-cash-amount")
+    private String filledCashAmount;
+    @JsonProperty("filled-fees")
+    private String filledFees;
+
+    public OrderDetail toOrderDetail() {
+        OrderDetail detail = new OrderDetail();
+        detail.setId(orderId);
+        detail.setSymbol(symbol);
+        detail.setAccountId(accountId);
+        detail.setAmount(orderAmount);
+        // price is the one of the last match
+        detail.setPrice(orderPrice);
+        detail.setCreatedAt(createdAt);
+        detail.setType(orderType);
+        detail.setFieldAmount(filledAmount);
+        detail.setFieldCashAmount(filledCashAmount);
+        detail.setFieldFees(filledFees);
+        detail.setSource(orderSource);
+        detail.setState(orderState);
+        return detail;
+    }
+}
@@ -1,11 +1,11 @@
 package io.magicalne.smym.dto;
 
+import io.magicalne.smym.decimal.Price;
+import io.magicalne.smym.decimal.Qty;
 import lombok.Data;
 
-import java.math.BigDecimal;
-
 @Data
 public class TradeInfo {
-    private BigDecimal price;
-    private BigDecimal qty;
+    private Price price;
+    private Qty qty;
 }
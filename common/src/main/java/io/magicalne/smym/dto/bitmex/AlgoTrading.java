@@ -9,4 +9,6 @@ public class AlgoTrading {
   private double leverage;
   private double spread;
   private int limit;
+  // optional PMML model scoring the order book features
+  private String pmml;
 }
@@ -0,0 +1,125 @@
+package io.magicalne.smym.event;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
+
+/**
+ * Hands book updates from websocket threads over to one strategy thread.
+ *
+ * Writers call {@link #onBookUpdate(int)} with the id of the symbol, which marks the symbol pending and puts
+ * its slot on a multi-producer ring buffer; the slot of an id is an array load, nothing is hashed. A pending
+ * symbol is not queued again, so updates arriving while the strategy is busy are coalesced into one call and a
+ * ring sized to the number of symbols never overflows. The strategy thread runs {@link #run()}, which passes
+ * the id of every pending symbol to the listener and parks while there is nothing to do.
+ */
+@Slf4j
+public class BookEventDispatcher implements BookUpdateListener {
+
+  private static final int EMPTY = -1;
+
+  private final BookUpdateListener listener;
+  // the id of the symbol of each slot
+  private final int[] symbolIds;
+  // the slot of each id, EMPTY for ids not subscribed
+  private final int[] slots;
+  private final AtomicIntegerArray pending;
+  private final AtomicIntegerArray ring;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong(0);
+  private final AtomicBoolean parked = new AtomicBoolean(false);
+  private long head = 0;
+  private volatile Thread consumer;
+  private volatile boolean running = true;
+
+  /**
+   * @param symbols resolved to their ids once, e.g. with {@link io.magicalne.smym.symbol.SymbolRegistry#require}.
+   */
+  public BookEventDispatcher(Collection<String> symbols, ToIntFunction<String> ids, BookUpdateListener listener) {
+    this(symbols.stream().mapToInt(ids).toArray(), listener);
+  }
+
+  /**
+   * @param symbolIds the ids of the symbols to dispatch, small non negative ints like registry ids.
+   */
+  public BookEventDispatcher(int[] symbolIds, BookUpdateListener listener) {
+    this.listener = listener;
+    this.symbolIds = symbolIds.clone();
+    int maxId = -1;
+    for (int id : this.symbolIds) {
+      if (id < 0) {
+        throw new IllegalArgumentException("Unknown symbol id: " + id);
+      }
+      maxId = Math.max(maxId, id);
+    }
+    this.slots = new int[maxId + 1];
+    Arrays.fill(this.slots, EMPTY);
+    for (int i = 0; i < this.symbolIds.length; i++) {
+      this.slots[this.symbolIds[i]] = i;
+    }
+    this.pending = new AtomicIntegerArray(this.symbolIds.length);
+    int capacity = Integer.highestOneBit(Math.max(1, this.symbolIds.length - 1)) << 1;
+    this.ring = new AtomicIntegerArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      this.ring.set(i, EMPTY);
+    }
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Called by any writer thread, updates of symbols not subscribed by this dispatcher are ignored.
+   */
+  @Override
+  public void onBookUpdate(int symbolId) {
+    int slot = symbolId >= 0 && symbolId < slots.length ? slots[symbolId] : EMPTY;
+    if (slot == EMPTY || pending.get(slot) != 0 || !pending.compareAndSet(slot, 0, 1)) {
+      return;
+    }
+    long seq = tail.getAndIncrement();
+    ring.set((int) (seq & mask), slot);
+    if (parked.get() && parked.compareAndSet(true, false)) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * Dispatch updates on the calling thread until {@link #stop()} is called or the thread is interrupted.
+   */
+  public void run() {
+    this.consumer = Thread.currentThread();
+    while (running && !Thread.currentThread().isInterrupted()) {
+      int index = (int) (head & mask);
+      int slot = ring.get(index);
+      if (slot == EMPTY) {
+        parked.set(true);
+        if (ring.get(index) == EMPTY && running) {
+          LockSupport.park(this);
+        }
+        parked.set(false);
+        continue;
+      }
+      ring.lazySet(index, EMPTY);
+      head++;
+      pending.set(slot, 0);
+      try {
+        listener.onBookUpdate(symbolIds[slot]);
+      } catch (RuntimeException e) {
+        log.error("Handle book update of symbol {} with exception.", symbolIds[slot], e);
+      }
+    }
+  }
+
+  public void stop() {
+    running = false;
+    Thread t = this.consumer;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+  }
+}
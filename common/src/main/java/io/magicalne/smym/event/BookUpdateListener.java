@@ -0,0 +1,13 @@
+package io.magicalne.smym.event;
+
+/**
+ * Notified after the local order book of a symbol changed.
+ */
+public interface BookUpdateListener {
+
+  /**
+   * @param symbolId id of the symbol in the {@link io.magicalne.smym.symbol.SymbolRegistry} of its exchange, or
+   * in the ids of the stream for exchanges without a registry.
+   */
+  void onBookUpdate(int symbolId);
+}
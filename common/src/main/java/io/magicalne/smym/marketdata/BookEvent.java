@@ -0,0 +1,160 @@
+package io.magicalne.smym.marketdata;
+
+import io.magicalne.smym.decimal.Decimals;
+
+/**
+ * One change of a local order book, preallocated in a {@link MarketDataBus} and overwritten in place.
+ *
+ * A {@link Type#CLEAR} event empties the book of the symbol, a {@link Type#BID} or {@link Type#ASK} event
+ * sets the quantity of one price level and a zero quantity removes the level. A {@link Type#TRADE} event
+ * leaves the book alone. Prices and quantities are scaled longs, see {@link Decimals}. The last event of
+ * every published update has {@link #isEndOfUpdate()} set, the books it touched are consistent from then on.
+ * Every event of an update carries the exchange time of the message and the time it was received, see
+ * {@link ReceiveClock}.
+ */
+public class BookEvent {
+
+  public enum Type {
+    CLEAR,
+    BID,
+    ASK,
+    TRADE
+  }
+
+  private Venue venue;
+  private String symbol;
+  private Type type;
+  private long price;
+  private long qty;
+  private int priceScale;
+  private int qtyScale;
+  private long updateId;
+  private boolean buy;
+  private long exchangeTime;
+  private long receiveNanos;
+  private boolean endOfUpdate;
+
+  public void set(Venue venue, String symbol, Type type, long price, long qty, int priceScale, int qtyScale,
+                  long updateId) {
+    this.venue = venue;
+    this.symbol = symbol;
+    this.type = type;
+    this.price = price;
+    this.qty = qty;
+    this.priceScale = priceScale;
+    this.qtyScale = qtyScale;
+    this.updateId = updateId;
+    this.buy = false;
+    this.endOfUpdate = false;
+  }
+
+  public void clear(Venue venue, String symbol, long updateId) {
+    set(venue, symbol, Type.CLEAR, 0, 0, 0, 0, updateId);
+  }
+
+  /**
+   * @param buy true if the taker bought.
+   * @param tradeId id of the trade if the exchange has one, else a counter.
+   */
+  public void trade(Venue venue, String symbol, long price, long qty, int priceScale, int qtyScale, boolean buy,
+                    long tradeId) {
+    set(venue, symbol, Type.TRADE, price, qty, priceScale, qtyScale, tradeId);
+    this.buy = buy;
+  }
+
+  /**
+   * Set by the source of the event after {@link #set}, e.g. the bus or a reader of recorded events.
+   */
+  public void setTimes(long exchangeTime, long receiveNanos) {
+    this.exchangeTime = exchangeTime;
+    this.receiveNanos = receiveNanos;
+  }
+
+  public void setEndOfUpdate(boolean endOfUpdate) {
+    this.endOfUpdate = endOfUpdate;
+  }
+
+  /**
+   * Copy every field of the event, e.g. to keep it after the bus reused its slot.
+   */
+  public void copyFrom(BookEvent event) {
+    set(event.venue, event.symbol, event.type, event.price, event.qty, event.priceScale, event.qtyScale,
+      event.updateId);
+    this.buy = event.buy;
+    this.exchangeTime = event.exchangeTime;
+    this.receiveNanos = event.receiveNanos;
+    this.endOfUpdate = event.endOfUpdate;
+  }
+
+  public Venue getVenue() {
+    return venue;
+  }
+
+  public String getSymbol() {
+    return symbol;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public long getPrice() {
+    return price;
+  }
+
+  public long getQty() {
+    return qty;
+  }
+
+  public double getPriceAsDouble() {
+    return Decimals.toDouble(price, priceScale);
+  }
+
+  public double getQtyAsDouble() {
+    return Decimals.toDouble(qty, qtyScale);
+  }
+
+  public int getPriceScale() {
+    return priceScale;
+  }
+
+  public int getQtyScale() {
+    return qtyScale;
+  }
+
+  public long getUpdateId() {
+    return updateId;
+  }
+
+  /**
+   * @return true if the taker of a {@link Type#TRADE} bought.
+   */
+  public boolean isBuy() {
+    return buy;
+  }
+
+  /**
+   * @return millis since the epoch the exchange stamped the message with, 0 if it has none.
+   */
+  public long getExchangeTime() {
+    return exchangeTime;
+  }
+
+  /**
+   * @return nanos since the epoch the message was received at, see {@link ReceiveClock}.
+   */
+  public long getReceiveNanos() {
+    return receiveNanos;
+  }
+
+  public boolean isEndOfUpdate() {
+    return endOfUpdate;
+  }
+
+  @Override
+  public String toString() {
+    return venue + ":" + symbol + " " + type + " " + Decimals.format(price, priceScale) + " "
+      + Decimals.format(qty, qtyScale) + (type == Type.TRADE ? (buy ? " buy" : " sell") : "") + " #" + updateId
+      + (endOfUpdate ? " end" : "");
+  }
+}
@@ -0,0 +1,14 @@
+package io.magicalne.smym.marketdata;
+
+/**
+ * Consumes {@link BookEvent}s on the thread of a {@link BookEventProcessor}. Events are reused once the
+ * handler returns, copy what has to be kept.
+ */
+public interface BookEventHandler {
+
+  /**
+   * @param endOfBatch true for the last event currently available, a good point to act on what the batch
+   *                   changed.
+   */
+  void onEvent(BookEvent event, long sequence, boolean endOfBatch);
+}
@@ -0,0 +1,65 @@
+package io.magicalne.smym.marketdata;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A batching consumer of a {@link MarketDataBus}. It hands every event published since its last batch to
+ * the handler, flags the last one as end of batch and only then advances its sequence, which lets writers
+ * reuse the slots.
+ */
+@Slf4j
+public class BookEventProcessor implements Runnable {
+
+  private final MarketDataBus bus;
+  private final AtomicLong sequence;
+  private final BookEventHandler handler;
+  private final WaitStrategy waitStrategy;
+  private volatile boolean running = true;
+
+  BookEventProcessor(MarketDataBus bus, AtomicLong sequence, BookEventHandler handler, WaitStrategy waitStrategy) {
+    this.bus = bus;
+    this.sequence = sequence;
+    this.handler = handler;
+    this.waitStrategy = waitStrategy;
+  }
+
+  /**
+   * @return the last sequence handed to the handler.
+   */
+  public long getSequence() {
+    return sequence.get();
+  }
+
+  @Override
+  public void run() {
+    long next = sequence.get() + 1;
+    int attempt = 0;
+    while (running) {
+      long available = bus.highestPublished(next, bus.getCursor());
+      if (available < next) {
+        waitStrategy.idle(attempt++);
+        continue;
+      }
+      attempt = 0;
+      for (long seq = next; seq <= available; seq++) {
+        try {
+          handler.onEvent(bus.get(seq), seq, seq == available);
+        } catch (RuntimeException e) {
+          log.error("Handle book event {} with exception.", seq, e);
+        }
+      }
+      sequence.lazySet(available);
+      next = available + 1;
+    }
+  }
+
+  /**
+   * Stop after the current batch and stop gating the writers.
+   */
+  public void halt() {
+    running = false;
+    bus.removeConsumer(sequence);
+  }
+}
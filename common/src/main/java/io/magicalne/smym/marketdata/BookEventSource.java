@@ -0,0 +1,16 @@
+package io.magicalne.smym.marketdata;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Recorded {@link BookEvent}s read back in the order they were received, e.g. by a replay.
+ */
+public interface BookEventSource extends Closeable {
+
+  /**
+   * Copy the next event into the given one.
+   * @return false once there is no event left.
+   */
+  boolean next(BookEvent event) throws IOException;
+}
@@ -0,0 +1,169 @@
+package io.magicalne.smym.marketdata;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.magicalne.smym.marketdata.MarketDataJournal.*;
+
+/**
+ * Reads the {@link BookEvent}s of journal files written by {@link JournalWriter} in the order they were
+ * appended, file after file. Files are mapped read only a region at a time, and the symbol names are only
+ * built once per file, so reading doesn't allocate per event.
+ */
+public final class JournalReader implements BookEventSource {
+
+  private static final long REGION_SIZE = (1L << 20) * RECORD_SIZE;
+  private static final Venue[] VENUES = Venue.values();
+  private static final BookEvent.Type[] TYPES = BookEvent.Type.values();
+
+  private final List<Path> files;
+  private int nextFile = 0;
+  // names of the symbol ids of the current file
+  private final List<String> names = new ArrayList<>();
+  private FileChannel channel;
+  private long size;
+  private MappedByteBuffer region;
+  private long regionStart;
+  private int symbolId;
+
+  /**
+   * Read every journal file of the directory, oldest day first.
+   */
+  public JournalReader(Path dir) throws IOException {
+    this(MarketDataJournal.files(dir));
+  }
+
+  public JournalReader(List<Path> files) {
+    this.files = new ArrayList<>(files);
+  }
+
+  /**
+   * Copy the next event into the given one.
+   * @return false at the end of the last file.
+   */
+  @Override
+  public boolean next(BookEvent event) throws IOException {
+    for (;;) {
+      if (region == null || !region.hasRemaining()) {
+        if (!advance()) {
+          return false;
+        }
+        continue;
+      }
+      int at = region.position();
+      byte type = region.get(at + TYPE);
+      if (type == END) {
+        // the rest of the file was never written
+        region = null;
+        closeFile();
+        continue;
+      }
+      region.position(at + RECORD_SIZE);
+      int id = region.getInt(at + SYMBOL_ID);
+      if (type == SYMBOL) {
+        defineSymbol(at, id);
+        continue;
+      }
+      read(at, id, type, event);
+      return true;
+    }
+  }
+
+  /**
+   * @return the journal id of the symbol of the event last read, ids are numbered per writer.
+   */
+  public int getSymbolId() {
+    return symbolId;
+  }
+
+  private void read(int at, int id, byte type, BookEvent event) throws IOException {
+    if (id >= names.size() || names.get(id) == null) {
+      throw new IOException("Symbol id " + id + " is used before its symbol record");
+    }
+    symbolId = id;
+    int flags = region.get(at + FLAGS);
+    BookEvent.Type eventType = TYPES[type - EVENT_TYPE_OFFSET];
+    Venue venue = VENUES[region.get(at + VENUE)];
+    long price = region.getLong(at + PRICE);
+    long qty = region.getLong(at + QTY);
+    int priceScale = region.get(at + PRICE_SCALE);
+    int qtyScale = region.get(at + QTY_SCALE);
+    long updateId = region.getLong(at + UPDATE_ID);
+    if (eventType == BookEvent.Type.TRADE) {
+      event.trade(venue, names.get(id), price, qty, priceScale, qtyScale, (flags & BUY) != 0, updateId);
+    } else {
+      event.set(venue, names.get(id), eventType, price, qty, priceScale, qtyScale, updateId);
+    }
+    event.setTimes(region.getLong(at + EXCHANGE_TIME), region.getLong(at + RECEIVE_NANOS));
+    event.setEndOfUpdate((flags & END_OF_UPDATE) != 0);
+  }
+
+  private void defineSymbol(int at, int id) {
+    byte[] name = new byte[region.get(at + NAME_LENGTH)];
+    for (int i = 0; i < name.length; i++) {
+      name[i] = region.get(at + NAME + i);
+    }
+    while (names.size() <= id) {
+      names.add(null);
+    }
+    names.set(id, new String(name, StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Map the next region of the current file or open the next file.
+   * @return false if there is no file left.
+   */
+  private boolean advance() throws IOException {
+    if (channel != null && regionStart + (region == null ? 0 : REGION_SIZE) < size) {
+      long start = region == null ? 0 : regionStart + REGION_SIZE;
+      map(start);
+      return true;
+    }
+    closeFile();
+    if (nextFile >= files.size()) {
+      return false;
+    }
+    Path file = files.get(nextFile++);
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    size = channel.size();
+    names.clear();
+    region = null;
+    regionStart = 0;
+    if (size < RECORD_SIZE) {
+      return true;
+    }
+    map(0);
+    if (region.getLong(HEADER_MAGIC) != MAGIC || region.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+      throw new IOException("Not a journal file: " + file);
+    }
+    region.position(RECORD_SIZE);
+    return true;
+  }
+
+  private void map(long start) throws IOException {
+    long length = Math.min(REGION_SIZE, size - start);
+    region = channel.map(FileChannel.MapMode.READ_ONLY, start, length - length % RECORD_SIZE);
+    region.order(ByteOrder.LITTLE_ENDIAN);
+    regionStart = start;
+  }
+
+  private void closeFile() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    region = null;
+    closeFile();
+  }
+}
@@ -0,0 +1,203 @@
+package io.magicalne.smym.marketdata;
+
+import io.magicalne.smym.symbol.SymbolIds;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static io.magicalne.smym.marketdata.MarketDataJournal.*;
+
+/**
+ * Appends {@link BookEvent}s to memory mapped journal files, one file per UTC day of the receive time, see
+ * {@link MarketDataJournal} for the layout. Appending copies the fields into the mapped region and does
+ * not allocate; the file is grown by mapping the next region once the current one is full.
+ *
+ * Only one thread may use a writer, and only one writer may write to a directory. A file of the current day
+ * that exists already, e.g. after a restart, is appended to.
+ */
+public final class JournalWriter implements Closeable {
+
+  private static final int DEFAULT_REGION_RECORDS = 1 << 20;
+
+  private final Path dir;
+  private final long regionSize;
+  private final SymbolIds[] ids = new SymbolIds[Venue.values().length];
+  private final List<String> names = new ArrayList<>();
+  private final List<Venue> venues = new ArrayList<>();
+  // symbol ids with a symbol record in the current file
+  private final BitSet defined = new BitSet();
+  private FileChannel channel;
+  private MappedByteBuffer region;
+  private long regionStart;
+  private long day = Long.MIN_VALUE;
+
+  public JournalWriter(Path dir) throws IOException {
+    this(dir, DEFAULT_REGION_RECORDS);
+  }
+
+  /**
+   * @param regionRecords number of records mapped at once, the file grows by as many.
+   */
+  JournalWriter(Path dir, int regionRecords) throws IOException {
+    this.dir = Files.createDirectories(dir);
+    this.regionSize = (long) regionRecords * RECORD_SIZE;
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = new SymbolIds();
+    }
+  }
+
+  /**
+   * Append the event to the file of the day it was received. An event received on an earlier day than the
+   * current file, e.g. one published late around midnight, goes to the current file.
+   * @throws IllegalArgumentException if the symbol has more than {@link MarketDataJournal#MAX_NAME_LENGTH}
+   *                                  ASCII chars.
+   */
+  public void append(BookEvent event) throws IOException {
+    long receiveNanos = event.getReceiveNanos();
+    long eventDay = dayOf(receiveNanos);
+    if (eventDay > day) {
+      roll(eventDay);
+    }
+    int id = symbolId(event.getVenue(), event.getSymbol());
+    if (!defined.get(id)) {
+      writeSymbol(id);
+      defined.set(id);
+    }
+    int at = claim();
+    region.putLong(at + RECEIVE_NANOS, receiveNanos);
+    region.putLong(at + EXCHANGE_TIME, event.getExchangeTime());
+    region.putLong(at + UPDATE_ID, event.getUpdateId());
+    region.putLong(at + PRICE, event.getPrice());
+    region.putLong(at + QTY, event.getQty());
+    region.putInt(at + SYMBOL_ID, id);
+    region.put(at + VENUE, (byte) event.getVenue().ordinal());
+    region.put(at + PRICE_SCALE, (byte) event.getPriceScale());
+    region.put(at + QTY_SCALE, (byte) event.getQtyScale());
+    region.put(at + FLAGS, (byte) ((event.isEndOfUpdate() ? END_OF_UPDATE : 0) | (event.isBuy() ? BUY : 0)));
+    // the type goes last, a reader of a live file stops at a record without one
+    region.put(at + TYPE, (byte) (event.getType().ordinal() + EVENT_TYPE_OFFSET));
+  }
+
+  private int symbolId(Venue venue, String symbol) {
+    SymbolIds venueIds = ids[venue.ordinal()];
+    int id = venueIds.get(symbol);
+    if (id == SymbolIds.UNKNOWN) {
+      if (symbol.length() > MAX_NAME_LENGTH || !StandardCharsets.US_ASCII.newEncoder().canEncode(symbol)) {
+        throw new IllegalArgumentException("Cannot journal symbol " + symbol);
+      }
+      id = names.size();
+      names.add(symbol);
+      venues.add(venue);
+      venueIds.put(symbol, id);
+    }
+    return id;
+  }
+
+  private void writeSymbol(int id) throws IOException {
+    byte[] name = names.get(id).getBytes(StandardCharsets.US_ASCII);
+    int at = claim();
+    for (int i = 0; i < name.length; i++) {
+      region.put(at + NAME + i, name[i]);
+    }
+    region.put(at + NAME_LENGTH, (byte) name.length);
+    region.putInt(at + SYMBOL_ID, id);
+    region.put(at + VENUE, (byte) venues.get(id).ordinal());
+    region.put(at + TYPE, SYMBOL);
+  }
+
+  /**
+   * @return position of the next free record in the region, mapping the next region if it is full.
+   */
+  private int claim() throws IOException {
+    if (!region.hasRemaining()) {
+      map(regionStart + regionSize);
+    }
+    int at = region.position();
+    region.position(at + RECORD_SIZE);
+    return at;
+  }
+
+  private void map(long start) throws IOException {
+    if (region != null) {
+      region.force();
+    }
+    region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+    region.order(ByteOrder.LITTLE_ENDIAN);
+    regionStart = start;
+  }
+
+  private void roll(long newDay) throws IOException {
+    closeFile();
+    Path file = MarketDataJournal.file(dir, newDay);
+    boolean exists = Files.exists(file) && Files.size(file) > 0;
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+      StandardOpenOption.WRITE);
+    day = newDay;
+    defined.clear();
+    if (exists) {
+      seekEnd(file);
+    } else {
+      map(0);
+      int at = claim();
+      region.putLong(at + HEADER_MAGIC, MAGIC);
+      region.putInt(at + HEADER_VERSION, VERSION);
+      region.putInt(at + HEADER_RECORD_SIZE, RECORD_SIZE);
+      region.putLong(at + HEADER_DAY, newDay);
+    }
+  }
+
+  /**
+   * Map the region holding the end of an existing file and position it after the last record.
+   */
+  private void seekEnd(Path file) throws IOException {
+    map(0);
+    if (region.getLong(HEADER_MAGIC) != MAGIC || region.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+      throw new IOException("Not a journal file: " + file);
+    }
+    region.position(RECORD_SIZE);
+    for (;;) {
+      while (region.hasRemaining()) {
+        if (region.get(region.position() + TYPE) == END) {
+          return;
+        }
+        region.position(region.position() + RECORD_SIZE);
+      }
+      map(regionStart + regionSize);
+    }
+  }
+
+  private void closeFile() throws IOException {
+    if (channel == null) {
+      return;
+    }
+    region.force();
+    // the mapping stays valid until it is collected, closing the channel doesn't unmap it
+    region = null;
+    channel.close();
+    channel = null;
+  }
+
+  /**
+   * Flush the mapped records of the current file to the disk.
+   */
+  public void flush() {
+    if (region != null) {
+      region.force();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeFile();
+  }
+}
@@ -0,0 +1,224 @@
+package io.magicalne.smym.marketdata;
+
+import io.magicalne.smym.orderbook.TickOrderBook;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring buffer of preallocated {@link BookEvent}s shared by all exchange adapters and strategies.
+ *
+ * Any number of writer threads claim a range of sequences, fill the events in place and publish the range.
+ * Every consumer is a {@link BookEventProcessor} with its own sequence; writers do not overwrite an event
+ * before all consumers have passed it, so a slow consumer eventually blocks the writers. Without consumers
+ * events are simply overwritten. Nothing is allocated per event.
+ */
+public class MarketDataBus {
+
+  private final BookEvent[] events;
+  private final int mask;
+  // highest claimed sequence
+  private final AtomicLong cursor = new AtomicLong(-1);
+  // sequence published into each slot, an event is available once its slot holds its sequence
+  private final AtomicLongArray published;
+  private volatile AtomicLong[] gating = new AtomicLong[0];
+  // a minimum of the consumer sequences seen by any writer, it never exceeds the current one since they only grow
+  private volatile long cachedGating = -1;
+
+  /**
+   * @param capacity a power of 2, the largest range one writer can claim at once.
+   */
+  public MarketDataBus(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+    }
+    this.events = new BookEvent[capacity];
+    for (int i = 0; i < capacity; i++) {
+      this.events[i] = new BookEvent();
+    }
+    this.mask = capacity - 1;
+    this.published = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      this.published.set(i, -1);
+    }
+  }
+
+  public int getCapacity() {
+    return events.length;
+  }
+
+  /**
+   * Claim n consecutive sequences, waiting while the slowest consumer is too far behind.
+   * @return the first claimed sequence.
+   */
+  public long claim(int n) {
+    if (n <= 0 || n > events.length) {
+      throw new IllegalArgumentException("Cannot claim " + n + " events of " + events.length);
+    }
+    for (;;) {
+      long current = cursor.get();
+      long next = current + n;
+      long wrapPoint = next - events.length;
+      if (wrapPoint > cachedGating) {
+        long min = minGatingSequence(current);
+        if (wrapPoint > min) {
+          LockSupport.parkNanos(1);
+          continue;
+        }
+        cachedGating = min;
+      }
+      if (cursor.compareAndSet(current, next)) {
+        return current + 1;
+      }
+    }
+  }
+
+  public BookEvent get(long sequence) {
+    return events[(int) (sequence & mask)];
+  }
+
+  /**
+   * Make the claimed range [lo, hi] visible to consumers as one update received now, without exchange time.
+   */
+  public void publish(long lo, long hi) {
+    publish(lo, hi, 0, ReceiveClock.nanos());
+  }
+
+  /**
+   * Make the claimed range [lo, hi] visible to consumers as one update, its last event is flagged
+   * {@link BookEvent#isEndOfUpdate()}.
+   * @param exchangeTime millis the exchange stamped the message with, 0 if it has none.
+   * @param receiveNanos when the message was received, see {@link ReceiveClock}.
+   */
+  public void publish(long lo, long hi, long exchangeTime, long receiveNanos) {
+    publish(lo, hi, exchangeTime, receiveNanos, true);
+  }
+
+  /**
+   * Make the claimed range [lo, hi] visible to consumers.
+   * @param endOfUpdate false for a part of an update larger than the capacity, only its last part completes it.
+   */
+  public void publish(long lo, long hi, long exchangeTime, long receiveNanos, boolean endOfUpdate) {
+    for (long seq = lo; seq <= hi; seq++) {
+      get(seq).setTimes(exchangeTime, receiveNanos);
+    }
+    get(hi).setEndOfUpdate(endOfUpdate);
+    for (long seq = lo; seq <= hi; seq++) {
+      published.lazySet((int) (seq & mask), seq);
+    }
+  }
+
+  /**
+   * Publish an empty book of the symbol, e.g. while the local book is out of sync.
+   */
+  public void publishClear(Venue venue, String symbol, long updateId) {
+    publishClear(venue, symbol, updateId, 0, ReceiveClock.nanos());
+  }
+
+  public void publishClear(Venue venue, String symbol, long updateId, long exchangeTime, long receiveNanos) {
+    long seq = claim(1);
+    get(seq).clear(venue, symbol, updateId);
+    publish(seq, seq, exchangeTime, receiveNanos);
+  }
+
+  /**
+   * Publish one trade as an update of its own.
+   */
+  public void publishTrade(Venue venue, String symbol, long price, long qty, int priceScale, int qtyScale,
+                           boolean buy, long tradeId, long exchangeTime, long receiveNanos) {
+    long seq = claim(1);
+    get(seq).trade(venue, symbol, price, qty, priceScale, qtyScale, buy, tradeId);
+    publish(seq, seq, exchangeTime, receiveNanos);
+  }
+
+  public void publishBook(Venue venue, String symbol, TickOrderBook book) {
+    publishBook(venue, symbol, book, 0, ReceiveClock.nanos());
+  }
+
+  /**
+   * Publish the whole book as one update: a clear followed by every level. A book larger than the capacity is
+   * published in several parts, only the last one completes the update.
+   */
+  public void publishBook(Venue venue, String symbol, TickOrderBook book, long exchangeTime, long receiveNanos) {
+    int bids = book.bidCount();
+    int total = 1 + bids + book.askCount();
+    int priceScale = book.getPriceScale();
+    int qtyScale = book.getQtyScale();
+    long updateId = book.getLastUpdateId();
+    for (int at = 0; at < total; ) {
+      int n = Math.min(total - at, events.length);
+      long lo = claim(n);
+      for (long seq = lo; seq < lo + n; seq++, at++) {
+        if (at == 0) {
+          get(seq).clear(venue, symbol, updateId);
+        } else if (at <= bids) {
+          get(seq).set(venue, symbol, BookEvent.Type.BID, book.bidTicks(at - 1), book.bidQtyUnits(at - 1),
+            priceScale, qtyScale, updateId);
+        } else {
+          get(seq).set(venue, symbol, BookEvent.Type.ASK, book.askTicks(at - 1 - bids),
+            book.askQtyUnits(at - 1 - bids), priceScale, qtyScale, updateId);
+        }
+      }
+      publish(lo, lo + n - 1, exchangeTime, receiveNanos, at == total);
+    }
+  }
+
+  /**
+   * @return the highest sequence in [lo, hi] up to which every event is published, or lo - 1.
+   */
+  long highestPublished(long lo, long hi) {
+    for (long seq = lo; seq <= hi; seq++) {
+      if (published.get((int) (seq & mask)) != seq) {
+        return seq - 1;
+      }
+    }
+    return hi;
+  }
+
+  long getCursor() {
+    return cursor.get();
+  }
+
+  /**
+   * Create a consumer which starts after the last claimed event. Run it on its own thread.
+   */
+  public BookEventProcessor addConsumer(BookEventHandler handler, WaitStrategy waitStrategy) {
+    AtomicLong sequence = new AtomicLong();
+    synchronized (this) {
+      sequence.set(cursor.get());
+      AtomicLong[] current = this.gating;
+      AtomicLong[] updated = new AtomicLong[current.length + 1];
+      System.arraycopy(current, 0, updated, 0, current.length);
+      updated[current.length] = sequence;
+      this.gating = updated;
+    }
+    return new BookEventProcessor(this, sequence, handler, waitStrategy);
+  }
+
+  synchronized void removeConsumer(AtomicLong sequence) {
+    AtomicLong[] current = this.gating;
+    int index = -1;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == sequence) {
+        index = i;
+        break;
+      }
+    }
+    if (index < 0) {
+      return;
+    }
+    AtomicLong[] updated = new AtomicLong[current.length - 1];
+    System.arraycopy(current, 0, updated, 0, index);
+    System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+    this.gating = updated;
+  }
+
+  private long minGatingSequence(long current) {
+    long min = current;
+    for (AtomicLong sequence : this.gating) {
+      min = Math.min(min, sequence.get());
+    }
+    return min;
+  }
+}
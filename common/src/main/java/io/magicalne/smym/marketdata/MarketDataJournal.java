@@ -0,0 +1,91 @@
+package io.magicalne.smym.marketdata;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Layout of the journal files written by {@link JournalWriter} and read by {@link JournalReader}.
+ *
+ * A journal file holds the {@link BookEvent}s received on one UTC day in fixed records of
+ * {@link #RECORD_SIZE} bytes, little endian. The first record is a header, every other record is:
+ * <pre>
+ *   0 long receive nanos      8 long exchange millis   16 long update id
+ *  24 long price             32 long qty              40 int symbol id
+ *  44 byte type              45 byte venue            46 byte price scale
+ *  47 byte qty scale         48 byte flags
+ * </pre>
+ * Symbol ids are numbered by the writer. A symbol record maps an id to its venue and name before the id is
+ * first used in a file, so every file reads on its own: the name is ASCII at 16 with its length at 49.
+ * Files are grown by mapping more of them, a record of type 0 marks the end.
+ */
+final class MarketDataJournal {
+
+  static final int RECORD_SIZE = 64;
+  static final long MAGIC = 0x4c4e524a4d594d53L; // "SMYMJRNL" read little endian
+  static final int VERSION = 1;
+  static final long NANOS_PER_DAY = 86_400_000_000_000L;
+
+  static final int RECEIVE_NANOS = 0;
+  static final int EXCHANGE_TIME = 8;
+  static final int UPDATE_ID = 16;
+  static final int PRICE = 24;
+  static final int QTY = 32;
+  static final int SYMBOL_ID = 40;
+  static final int TYPE = 44;
+  static final int VENUE = 45;
+  static final int PRICE_SCALE = 46;
+  static final int QTY_SCALE = 47;
+  static final int FLAGS = 48;
+  static final int NAME = 16;
+  static final int NAME_LENGTH = 49;
+  static final int MAX_NAME_LENGTH = 24;
+
+  // header
+  static final int HEADER_MAGIC = 0;
+  static final int HEADER_VERSION = 8;
+  static final int HEADER_RECORD_SIZE = 12;
+  static final int HEADER_DAY = 16;
+
+  static final byte END = 0;
+  static final byte SYMBOL = 1;
+  // the types of book events are stored as their ordinal + 2
+  static final int EVENT_TYPE_OFFSET = 2;
+
+  static final int END_OF_UPDATE = 1;
+  static final int BUY = 2;
+
+  private static final String PREFIX = "marketdata-";
+  private static final String SUFFIX = ".journal";
+
+  private MarketDataJournal() {
+  }
+
+  static long dayOf(long receiveNanos) {
+    return Math.floorDiv(receiveNanos, NANOS_PER_DAY);
+  }
+
+  static Path file(Path dir, long day) {
+    return dir.resolve(PREFIX + LocalDate.ofEpochDay(day) + SUFFIX);
+  }
+
+  /**
+   * @return the journal files of the directory, oldest day first.
+   */
+  static List<Path> files(Path dir) throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    }
+    // ISO dates sort like the days
+    Collections.sort(files);
+    return files;
+  }
+}
@@ -0,0 +1,174 @@
+package io.magicalne.smym.marketdata;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every event of a {@link MarketDataBus} into daily journal files, see {@link JournalWriter}.
+ *
+ * The recorder never holds up the writers of the bus. Its consumer only copies each event into a backlog of
+ * its own and a second thread, the only writer of the journal, appends the backlog to the files. When the disk
+ * falls a whole backlog behind the recorder drops updates instead of waiting, always a whole update so the
+ * journal never holds part of one, and counts the dropped events. The books of the symbols of a dropped update
+ * are stale in the journal until their next full book.
+ */
+@Slf4j
+public class MarketDataRecorder implements BookEventHandler, Closeable {
+
+  private static final long PARK_NANOS = 100_000;
+  private static final int BACKLOG = 1 << 16;
+
+  private final JournalWriter writer;
+  private final BookEventProcessor processor;
+  private final Thread thread;
+  private final Thread writerThread;
+  private final WaitStrategy waitStrategy = WaitStrategy.parking(PARK_NANOS);
+
+  // events copied off the bus and the bus sequences they had, waiting for the disk
+  private final BookEvent[] backlog;
+  private final long[] sequences;
+  private final int mask;
+  // next backlog slot to append, only the writer thread advances it
+  private final AtomicLong head = new AtomicLong();
+  // end of the whole updates in the backlog, only the consumer advances it
+  private final AtomicLong tail = new AtomicLong();
+  // end of the events of the current update, consumer thread only
+  private long next = 0;
+  private boolean dropping = false;
+
+  private volatile boolean running = true;
+  private volatile long failures = 0;
+  private volatile long dropped = 0;
+  private volatile long sequence = -1;
+
+  public MarketDataRecorder(MarketDataBus bus, Path dir) throws IOException {
+    this(bus, new JournalWriter(dir), BACKLOG);
+  }
+
+  /**
+   * @param backlog a power of 2, the number of events the disk may fall behind before updates are dropped.
+   */
+  MarketDataRecorder(MarketDataBus bus, JournalWriter writer, int backlog) {
+    if (backlog <= 0 || Integer.bitCount(backlog) != 1) {
+      throw new IllegalArgumentException("Backlog must be a power of 2: " + backlog);
+    }
+    this.writer = writer;
+    this.backlog = new BookEvent[backlog];
+    for (int i = 0; i < backlog; i++) {
+      this.backlog[i] = new BookEvent();
+    }
+    this.sequences = new long[backlog];
+    this.mask = backlog - 1;
+    // the recorder is not latency sensitive, park instead of burning a core
+    this.processor = bus.addConsumer(this, waitStrategy);
+    this.thread = new Thread(processor, "market-data-recorder");
+    this.thread.setDaemon(true);
+    this.writerThread = new Thread(this::drain, "market-data-journal");
+    this.writerThread.setDaemon(true);
+  }
+
+  public void start() {
+    writerThread.start();
+    thread.start();
+  }
+
+  @Override
+  public void onEvent(BookEvent event, long sequence, boolean endOfBatch) {
+    if (!dropping && next - head.get() == backlog.length) {
+      // the disk is a whole backlog behind, drop the update rather than wait or record a part of it
+      dropping = true;
+      dropped += next - tail.get();
+      next = tail.get();
+    }
+    if (dropping) {
+      dropped++;
+    } else {
+      int slot = (int) (next & mask);
+      backlog[slot].copyFrom(event);
+      sequences[slot] = sequence;
+      next++;
+    }
+    if (event.isEndOfUpdate()) {
+      if (dropping) {
+        dropping = false;
+      } else {
+        tail.lazySet(next);
+      }
+    }
+  }
+
+  private void drain() {
+    int attempt = 0;
+    for (;;) {
+      boolean stopping = !running;
+      long h = head.get();
+      long t = tail.get();
+      if (h == t) {
+        if (stopping) {
+          return;
+        }
+        waitStrategy.idle(attempt++);
+        continue;
+      }
+      attempt = 0;
+      for (; h < t; h++) {
+        int slot = (int) (h & mask);
+        append(backlog[slot]);
+        sequence = sequences[slot];
+        head.lazySet(h + 1);
+      }
+    }
+  }
+
+  private void append(BookEvent event) {
+    try {
+      writer.append(event);
+    } catch (IOException | IllegalArgumentException e) {
+      // log the first failures only, a full disk fails every event
+      if (failures++ < 10) {
+        log.error("Cannot record book event {}.", event, e);
+      }
+    }
+  }
+
+  /**
+   * @return the number of events that could not be recorded.
+   */
+  public long getFailureCount() {
+    return failures;
+  }
+
+  /**
+   * @return the number of events dropped because the disk was a whole backlog behind.
+   */
+  public long getDroppedCount() {
+    return dropped;
+  }
+
+  /**
+   * @return the last sequence of the bus handed to the journal.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Stop consuming the bus, append the backlog, flush and close the journal.
+   */
+  @Override
+  public void close() throws IOException {
+    processor.halt();
+    try {
+      thread.join(1000);
+      running = false;
+      writerThread.join(1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    writer.close();
+  }
+}
@@ -0,0 +1,18 @@
+package io.magicalne.smym.marketdata;
+
+/**
+ * Nanos since the epoch for receive timestamps. Java 8 only reads the wall clock in millis, so the clock is
+ * anchored to it once and then advanced by {@link System#nanoTime()}: precise between two readings, it
+ * drifts from the wall clock as much as the system clock is adjusted while the process runs.
+ */
+public final class ReceiveClock {
+
+  private static final long OFFSET = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+  private ReceiveClock() {
+  }
+
+  public static long nanos() {
+    return OFFSET + System.nanoTime();
+  }
+}
@@ -0,0 +1,7 @@
+package io.magicalne.smym.marketdata;
+
+public enum Venue {
+  BINANCE,
+  HUOBI,
+  BITMEX
+}
@@ -0,0 +1,40 @@
+package io.magicalne.smym.marketdata;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a {@link BookEventProcessor} does while no event is available. Busy spinning has the lowest
+ * latency and burns a core, parking frees the core and adds up to the park time to the latency.
+ */
+public interface WaitStrategy {
+
+  /**
+   * @param attempt number of times the consumer waited for the same sequence so far.
+   */
+  void idle(int attempt);
+
+  static WaitStrategy busySpin() {
+    return attempt -> {
+    };
+  }
+
+  static WaitStrategy yielding() {
+    return attempt -> Thread.yield();
+  }
+
+  /**
+   * Spin and yield a little before parking, so bursts are picked up without a park.
+   */
+  static WaitStrategy parking(long parkNanos) {
+    return attempt -> {
+      if (attempt < 100) {
+        return;
+      }
+      if (attempt < 200) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(parkNanos);
+      }
+    };
+  }
+}
@@ -0,0 +1,101 @@
+package io.magicalne.smym.orderbook;
+
+/**
+ * One side of a {@link TickOrderBook}: price levels kept best-first in primitive arrays.
+ * Lookup is a binary search, inserts and removes shift at most {@code capacity} slots.
+ */
+final class BookSide {
+
+  private final boolean descending;
+  private final long[] prices;
+  private final long[] qtys;
+  private int count;
+
+  BookSide(int capacity, boolean descending) {
+    this.descending = descending;
+    this.prices = new long[capacity];
+    this.qtys = new long[capacity];
+  }
+
+  int count() {
+    return count;
+  }
+
+  long price(int level) {
+    return prices[level];
+  }
+
+  long qty(int level) {
+    return qtys[level];
+  }
+
+  void clear() {
+    count = 0;
+  }
+
+  /**
+   * @return level of the price, or {@code -(insertion point) - 1} if absent.
+   */
+  int indexOf(long price) {
+    int lo = 0;
+    int hi = count - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      long p = prices[mid];
+      if (p == price) {
+        return mid;
+      }
+      if (p < price != descending) {
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return -(lo + 1);
+  }
+
+  void update(long price, long qty) {
+    if (qty == 0) {
+      remove(price);
+    } else {
+      upsert(price, qty);
+    }
+  }
+
+  void upsert(long price, long qty) {
+    int index = indexOf(price);
+    if (index >= 0) {
+      qtys[index] = qty;
+      return;
+    }
+    int insertAt = -index - 1;
+    int capacity = prices.length;
+    if (insertAt >= capacity) {
+      return;
+    }
+    int tail = (count == capacity ? capacity - 1 : count) - insertAt;
+    if (tail > 0) {
+      System.arraycopy(prices, insertAt, prices, insertAt + 1, tail);
+      System.arraycopy(qtys, insertAt, qtys, insertAt + 1, tail);
+    }
+    prices[insertAt] = price;
+    qtys[insertAt] = qty;
+    if (count < capacity) {
+      count++;
+    }
+  }
+
+  boolean remove(long price) {
+    int index = indexOf(price);
+    if (index < 0) {
+      return false;
+    }
+    int tail = count - index - 1;
+    if (tail > 0) {
+      System.arraycopy(prices, index + 1, prices, index, tail);
+      System.arraycopy(qtys, index + 1, qtys, index, tail);
+    }
+    count--;
+    return true;
+  }
+}
@@ -0,0 +1,86 @@
+package io.magicalne.smym.orderbook;
+
+import io.magicalne.smym.decimal.Decimals;
+
+/**
+ * Reader owned copy of an {@link OrderBookView}. Reuse one instance per reader thread to read books
+ * without allocation.
+ */
+public class OrderBookSnapshot {
+
+  long[] bidPrices = new long[0];
+  long[] bidQtys = new long[0];
+  long[] askPrices = new long[0];
+  long[] askQtys = new long[0];
+  int bidCount;
+  int askCount;
+  int priceScale;
+  int qtyScale;
+  long lastUpdateId;
+  long sequence;
+
+  void ensureDepth(int depth) {
+    if (bidPrices.length < depth) {
+      bidPrices = new long[depth];
+      bidQtys = new long[depth];
+      askPrices = new long[depth];
+      askQtys = new long[depth];
+    }
+  }
+
+  public int bidCount() {
+    return bidCount;
+  }
+
+  public int askCount() {
+    return askCount;
+  }
+
+  public long getLastUpdateId() {
+    return lastUpdateId;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public int getPriceScale() {
+    return priceScale;
+  }
+
+  public int getQtyScale() {
+    return qtyScale;
+  }
+
+  public long bidTicks(int level) {
+    return bidPrices[level];
+  }
+
+  public long askTicks(int level) {
+    return askPrices[level];
+  }
+
+  public long bidQtyUnits(int level) {
+    return bidQtys[level];
+  }
+
+  public long askQtyUnits(int level) {
+    return askQtys[level];
+  }
+
+  public double bidPrice(int level) {
+    return Decimals.toDouble(bidPrices[level], priceScale);
+  }
+
+  public double askPrice(int level) {
+    return Decimals.toDouble(askPrices[level], priceScale);
+  }
+
+  public double bidQty(int level) {
+    return Decimals.toDouble(bidQtys[level], qtyScale);
+  }
+
+  public double askQty(int level) {
+    return Decimals.toDouble(askQtys[level], qtyScale);
+  }
+}
@@ -0,0 +1,151 @@
+package io.magicalne.smym.orderbook;
+
+import io.magicalne.smym.decimal.Decimals;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Top-N levels of a {@link TickOrderBook} published by a single writer and read lock-free by any
+ * number of reader threads.
+ *
+ * This is a seqlock: the writer bumps the sequence to an odd value, copies the levels with ordered
+ * stores and bumps the sequence to the next even value. Readers retry until they see the same even
+ * sequence before and after copying, so they never observe a torn book. Publishing allocates nothing.
+ */
+public class OrderBookView {
+
+  private static final int BID_COUNT = 0;
+  private static final int ASK_COUNT = 1;
+  private static final int UPDATE_ID = 2;
+  private static final int HEADER = 3;
+
+  private final int depth;
+  private final int priceScale;
+  private final int qtyScale;
+  private final AtomicLong sequence = new AtomicLong(0);
+  // header, then (price, qty) pairs for bids followed by (price, qty) pairs for asks
+  private final AtomicLongArray data;
+
+  public OrderBookView(int depth, int priceScale, int qtyScale) {
+    this.depth = depth;
+    this.priceScale = priceScale;
+    this.qtyScale = qtyScale;
+    this.data = new AtomicLongArray(HEADER + depth * 4);
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public int getPriceScale() {
+    return priceScale;
+  }
+
+  public int getQtyScale() {
+    return qtyScale;
+  }
+
+  /**
+   * @return an even number that changes on every publish, usable to detect updates cheaply.
+   */
+  public long getSequence() {
+    return sequence.get();
+  }
+
+  /**
+   * Publish the top levels of the book. Must only be called by the book's writer thread.
+   */
+  public void publish(TickOrderBook book) {
+    long seq = sequence.get();
+    sequence.lazySet(seq + 1);
+    int bids = Math.min(depth, book.bidCount());
+    int asks = Math.min(depth, book.askCount());
+    int askOffset = HEADER + depth * 2;
+    for (int i = 0; i < bids; i++) {
+      data.lazySet(HEADER + i * 2, book.bidTicks(i));
+      data.lazySet(HEADER + i * 2 + 1, book.bidQtyUnits(i));
+    }
+    for (int i = 0; i < asks; i++) {
+      data.lazySet(askOffset + i * 2, book.askTicks(i));
+      data.lazySet(askOffset + i * 2 + 1, book.askQtyUnits(i));
+    }
+    data.lazySet(BID_COUNT, bids);
+    data.lazySet(ASK_COUNT, asks);
+    data.lazySet(UPDATE_ID, book.getLastUpdateId());
+    sequence.lazySet(seq + 2);
+  }
+
+  /**
+   * Publish an empty book, e.g. while the local book is out of sync.
+   */
+  public void invalidate() {
+    long seq = sequence.get();
+    sequence.lazySet(seq + 1);
+    data.lazySet(BID_COUNT, 0);
+    data.lazySet(ASK_COUNT, 0);
+    sequence.lazySet(seq + 2);
+  }
+
+  /**
+   * Copy a consistent view of the book into a reader owned snapshot.
+   */
+  public void read(OrderBookSnapshot dst) {
+    dst.ensureDepth(depth);
+    int askOffset = HEADER + depth * 2;
+    for (;;) {
+      long before = sequence.get();
+      if ((before & 1) != 0) {
+        continue;
+      }
+      int bids = (int) data.get(BID_COUNT);
+      int asks = (int) data.get(ASK_COUNT);
+      for (int i = 0; i < bids; i++) {
+        dst.bidPrices[i] = data.get(HEADER + i * 2);
+        dst.bidQtys[i] = data.get(HEADER + i * 2 + 1);
+      }
+      for (int i = 0; i < asks; i++) {
+        dst.askPrices[i] = data.get(askOffset + i * 2);
+        dst.askQtys[i] = data.get(askOffset + i * 2 + 1);
+      }
+      long updateId = data.get(UPDATE_ID);
+      if (sequence.get() == before) {
+        dst.bidCount = bids;
+        dst.askCount = asks;
+        dst.lastUpdateId = updateId;
+        dst.sequence = before;
+        dst.priceScale = priceScale;
+        dst.qtyScale = qtyScale;
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return best bid price or -1 if there is no bid.
+   */
+  public double bestBidPrice() {
+    return bestPrice(BID_COUNT, HEADER);
+  }
+
+  /**
+   * @return best ask price or -1 if there is no ask.
+   */
+  public double bestAskPrice() {
+    return bestPrice(ASK_COUNT, HEADER + depth * 2);
+  }
+
+  private double bestPrice(int countIndex, int offset) {
+    for (;;) {
+      long before = sequence.get();
+      if ((before & 1) != 0) {
+        continue;
+      }
+      long count = data.get(countIndex);
+      long price = data.get(offset);
+      if (sequence.get() == before) {
+        return count > 0 ? Decimals.toDouble(price, priceScale) : -1d;
+      }
+    }
+  }
+}
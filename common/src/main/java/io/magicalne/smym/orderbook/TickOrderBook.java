@@ -0,0 +1,140 @@
+package io.magicalne.smym.orderbook;
+
+import io.magicalne.smym.decimal.Decimals;
+
+/**
+ * Local order book with prices stored as long ticks (price * 10^priceScale) and quantities as
+ * long units (qty * 10^qtyScale). Levels live in preallocated primitive arrays, so updates never
+ * allocate and best price reads need no parsing.
+ *
+ * Not thread safe: a single writer is expected to own the book.
+ */
+public class TickOrderBook {
+
+  private final int capacity;
+  private final int priceScale;
+  private final int qtyScale;
+  private final BookSide bids;
+  private final BookSide asks;
+  private long lastUpdateId;
+
+  public TickOrderBook(int capacity, int priceScale, int qtyScale) {
+    this.capacity = capacity;
+    this.priceScale = priceScale;
+    this.qtyScale = qtyScale;
+    this.bids = new BookSide(capacity, true);
+    this.asks = new BookSide(capacity, false);
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getPriceScale() {
+    return priceScale;
+  }
+
+  public int getQtyScale() {
+    return qtyScale;
+  }
+
+  public long getLastUpdateId() {
+    return lastUpdateId;
+  }
+
+  public void setLastUpdateId(long lastUpdateId) {
+    this.lastUpdateId = lastUpdateId;
+  }
+
+  /**
+   * Set the quantity of a price level, a zero quantity removes the level.
+   */
+  public void updateBid(long priceTicks, long qty) {
+    bids.update(priceTicks, qty);
+  }
+
+  public void updateAsk(long priceTicks, long qty) {
+    asks.update(priceTicks, qty);
+  }
+
+  public void updateBid(CharSequence price, CharSequence qty) {
+    bids.update(Decimals.parseScaled(price, priceScale), Decimals.parseScaled(qty, qtyScale));
+  }
+
+  public void updateAsk(CharSequence price, CharSequence qty) {
+    asks.update(Decimals.parseScaled(price, priceScale), Decimals.parseScaled(qty, qtyScale));
+  }
+
+  public void clear() {
+    bids.clear();
+    asks.clear();
+  }
+
+  public int bidCount() {
+    return bids.count();
+  }
+
+  public int askCount() {
+    return asks.count();
+  }
+
+  /**
+   * @return level of the bid price, or a negative number if there is no bid at the price.
+   */
+  public int bidLevel(long priceTicks) {
+    return bids.indexOf(priceTicks);
+  }
+
+  /**
+   * @return level of the ask price, or a negative number if there is no ask at the price.
+   */
+  public int askLevel(long priceTicks) {
+    return asks.indexOf(priceTicks);
+  }
+
+  public long bidTicks(int level) {
+    return bids.price(level);
+  }
+
+  public long askTicks(int level) {
+    return asks.price(level);
+  }
+
+  public long bidQtyUnits(int level) {
+    return bids.qty(level);
+  }
+
+  public long askQtyUnits(int level) {
+    return asks.qty(level);
+  }
+
+  public double bidPrice(int level) {
+    return Decimals.toDouble(bids.price(level), priceScale);
+  }
+
+  public double askPrice(int level) {
+    return Decimals.toDouble(asks.price(level), priceScale);
+  }
+
+  public double bidQty(int level) {
+    return Decimals.toDouble(bids.qty(level), qtyScale);
+  }
+
+  public double askQty(int level) {
+    return Decimals.toDouble(asks.qty(level), qtyScale);
+  }
+
+  /**
+   * @return best bid price or -1 if the side is empty.
+   */
+  public double bestBidPrice() {
+    return bids.count() > 0 ? bidPrice(0) : -1d;
+  }
+
+  /**
+   * @return best ask price or -1 if the side is empty.
+   */
+  public double bestAskPrice() {
+    return asks.count() > 0 ? askPrice(0) : -1d;
+  }
+}
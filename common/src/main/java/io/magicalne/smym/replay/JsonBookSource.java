@@ -0,0 +1,122 @@
+package io.magicalne.smym.replay;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.marketdata.BookEvent;
+import io.magicalne.smym.marketdata.BookEventSource;
+import io.magicalne.smym.marketdata.Venue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Book snapshots of a JSON fixture like orderbook_l2.json as {@link BookEvent}s: an object of snapshots keyed
+ * by their number, each with the levels as bid_p_0, bid_vol_0, ask_p_0, ask_vol_0, bid_p_1 and so on.
+ *
+ * Every snapshot replays as one update of the whole book, in the order of the numbers. The fixture has no
+ * times, snapshot n is received at n times the interval and its number is the update id.
+ */
+public class JsonBookSource implements BookEventSource {
+
+  private static final TypeReference<Map<String, Map<String, Double>>> SNAPSHOTS =
+    new TypeReference<Map<String, Map<String, Double>>>() {};
+
+  private final Venue venue;
+  private final String symbol;
+  private final int priceScale;
+  private final int qtyScale;
+  private final long intervalNanos;
+  private final List<Long> numbers = new ArrayList<>();
+  private final List<Map<String, Double>> snapshots = new ArrayList<>();
+  private int snapshot = 0;
+  // next event of the snapshot: the clear, then the bids and the asks
+  private int next = 0;
+  private int bids;
+  private int asks;
+
+  public JsonBookSource(InputStream in, Venue venue, String symbol, int priceScale, int qtyScale,
+                        long intervalNanos) throws IOException {
+    this.venue = venue;
+    this.symbol = symbol;
+    this.priceScale = priceScale;
+    this.qtyScale = qtyScale;
+    this.intervalNanos = intervalNanos;
+    Map<String, Map<String, Double>> raw = new ObjectMapper().readValue(in, SNAPSHOTS);
+    TreeMap<Long, Map<String, Double>> sorted = new TreeMap<>();
+    for (Map.Entry<String, Map<String, Double>> e : raw.entrySet()) {
+      try {
+        sorted.put(Long.parseLong(e.getKey()), e.getValue());
+      } catch (NumberFormatException ex) {
+        throw new IOException("Snapshot key is not a number: " + e.getKey(), ex);
+      }
+    }
+    numbers.addAll(sorted.keySet());
+    snapshots.addAll(sorted.values());
+    if (!snapshots.isEmpty()) {
+      countLevels();
+    }
+  }
+
+  @Override
+  public boolean next(BookEvent event) {
+    if (snapshot >= snapshots.size()) {
+      return false;
+    }
+    Map<String, Double> levels = snapshots.get(snapshot);
+    long number = numbers.get(snapshot);
+    if (next == 0) {
+      event.clear(venue, symbol, number);
+    } else if (next <= bids) {
+      int level = next - 1;
+      event.set(venue, symbol, BookEvent.Type.BID, price(levels, "bid_p_", level),
+        qty(levels, "bid_vol_", level), priceScale, qtyScale, number);
+    } else {
+      int level = next - 1 - bids;
+      event.set(venue, symbol, BookEvent.Type.ASK, price(levels, "ask_p_", level),
+        qty(levels, "ask_vol_", level), priceScale, qtyScale, number);
+    }
+    event.setTimes(0, number * intervalNanos);
+    boolean last = next == bids + asks;
+    event.setEndOfUpdate(last);
+    if (last) {
+      snapshot++;
+      next = 0;
+      if (snapshot < snapshots.size()) {
+        countLevels();
+      }
+    } else {
+      next++;
+    }
+    return true;
+  }
+
+  private void countLevels() {
+    Map<String, Double> levels = snapshots.get(snapshot);
+    bids = 0;
+    while (levels.containsKey("bid_p_" + bids)) {
+      bids++;
+    }
+    asks = 0;
+    while (levels.containsKey("ask_p_" + asks)) {
+      asks++;
+    }
+  }
+
+  private long price(Map<String, Double> levels, String prefix, int level) {
+    return Decimals.fromDouble(levels.get(prefix + level), priceScale);
+  }
+
+  private long qty(Map<String, Double> levels, String prefix, int level) {
+    Double qty = levels.get(prefix + level);
+    return qty == null ? 0 : Decimals.fromDouble(qty, qtyScale);
+  }
+
+  @Override
+  public void close() {
+  }
+}
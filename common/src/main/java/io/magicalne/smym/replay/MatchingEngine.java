@@ -0,0 +1,317 @@
+package io.magicalne.smym.replay;
+
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.TickOrderBook;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills the orders placed during a replay against the replayed books. The recorded market doesn't see the
+ * orders, so it never reacts to them:
+ * <ul>
+ *   <li>the part of an order that crosses fills at once against the opposite levels, walking the book up to
+ *   the limit price at the price of each level. What it takes is gone from the levels until the next update of
+ *   the book;</li>
+ *   <li>the rest joins the queue of its level behind the quantity shown there. The queue ahead only shrinks:
+ *   when the level shrinks, assuming the orders ahead left first, and when trades print at the price;</li>
+ *   <li>a resting order fills at its price once trades print through it or the opposite best price reaches
+ *   it.</li>
+ * </ul>
+ * Ids are numbered in the order of placement, so a replay places and fills the same orders every time. Closed
+ * orders are forgotten, oldest first, once more than {@value #MAX_ORDERS} orders are known.
+ *
+ * Not thread safe: place, amend and cancel orders from the replay thread, i.e. in the listeners and tasks of
+ * the {@link ReplayEngine}.
+ */
+public class MatchingEngine {
+
+  static final int MAX_ORDERS = 65536;
+
+  private final ReplayEngine replay;
+  private final Map<Long, SimulatedOrder> orders = new LinkedHashMap<>();
+  private int pruneAt = MAX_ORDERS;
+  private long nextId = 1;
+
+  MatchingEngine(ReplayEngine replay) {
+    this.replay = replay;
+  }
+
+  /**
+   * Place an order on the replayed book of the symbol.
+   * @param price limit price in ticks of the book, ignored for market orders.
+   * @param qty   quantity in units of the book.
+   * @throws IllegalArgumentException if the symbol has no replayed book or the price or quantity is invalid.
+   */
+  public SimulatedOrder submit(Venue venue, String symbol, boolean buy, SimulatedOrder.Type type, long price,
+                               long qty) {
+    ReplayedBook book = replay.requireBook(venue, symbol);
+    if (qty <= 0 || (type != SimulatedOrder.Type.MARKET && price <= 0)) {
+      throw new IllegalArgumentException("Invalid order of " + symbol + ": " + qty + " @ " + price);
+    }
+    long limit = type == SimulatedOrder.Type.MARKET ? 0 : price;
+    SimulatedOrder order = new SimulatedOrder(nextId++, book, buy, type, limit, qty, replay.currentTimeMillis());
+    orders.put(order.getId(), order);
+    if (orders.size() > pruneAt) {
+      prune();
+    }
+    TickOrderBook levels = book.getBook();
+    switch (type) {
+      case POST_ONLY:
+        if (crosses(order, levels)) {
+          order.status = SimulatedOrder.Status.REJECTED;
+          return order;
+        }
+        break;
+      case FOK:
+        if (available(order, book) < qty) {
+          order.status = SimulatedOrder.Status.CANCELED;
+          return order;
+        }
+        take(order, book);
+        break;
+      default:
+        take(order, book);
+    }
+    if (order.isOpen()) {
+      if (type == SimulatedOrder.Type.GTC || type == SimulatedOrder.Type.POST_ONLY) {
+        rest(order, book);
+      } else {
+        order.status = SimulatedOrder.Status.CANCELED;
+      }
+    }
+    return order;
+  }
+
+  /**
+   * Move an open order to a new price, it loses its place in the queue. A post only order that would cross is
+   * cancelled, any other order takes what crosses.
+   * @return false if the order is unknown or not open any more.
+   */
+  public boolean amend(long orderId, long price) {
+    SimulatedOrder order = orders.get(orderId);
+    if (order == null || !order.isOpen() || order.getType() == SimulatedOrder.Type.MARKET || price <= 0) {
+      return false;
+    }
+    ReplayedBook book = order.getBook();
+    TickOrderBook levels = book.getBook();
+    book.open.remove(order);
+    order.price = price;
+    order.updateTime = replay.currentTimeMillis();
+    if (order.getType() == SimulatedOrder.Type.POST_ONLY) {
+      if (crosses(order, levels)) {
+        order.status = SimulatedOrder.Status.CANCELED;
+        return true;
+      }
+    } else {
+      take(order, book);
+    }
+    if (order.isOpen()) {
+      rest(order, book);
+    }
+    return true;
+  }
+
+  /**
+   * @return false if the order is unknown or not open any more.
+   */
+  public boolean cancel(long orderId) {
+    SimulatedOrder order = orders.get(orderId);
+    if (order == null || !order.isOpen()) {
+      return false;
+    }
+    order.getBook().open.remove(order);
+    order.status = SimulatedOrder.Status.CANCELED;
+    order.updateTime = replay.currentTimeMillis();
+    return true;
+  }
+
+  /**
+   * @return the order or null if it is unknown or was forgotten.
+   */
+  public SimulatedOrder getOrder(long orderId) {
+    return orders.get(orderId);
+  }
+
+  /**
+   * @return the orders placed on the book of the symbol which are still known, oldest first.
+   */
+  public List<SimulatedOrder> getOrders(Venue venue, String symbol) {
+    List<SimulatedOrder> list = new ArrayList<>();
+    for (SimulatedOrder order : orders.values()) {
+      if (order.getVenue() == venue && order.getSymbol().equals(symbol)) {
+        list.add(order);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * @return the open orders on the book of the symbol, in the order they joined their queues.
+   */
+  public List<SimulatedOrder> getOpenOrders(Venue venue, String symbol) {
+    ReplayedBook book = replay.findBook(venue, symbol);
+    return book == null ? new ArrayList<>() : new ArrayList<>(book.open);
+  }
+
+  /**
+   * @return net filled quantity of the symbol in units of its book, negative when more was sold than bought.
+   */
+  public long getPosition(Venue venue, String symbol) {
+    ReplayedBook book = replay.findBook(venue, symbol);
+    return book == null ? 0 : book.position;
+  }
+
+  /**
+   * @return quote amount received for the sells minus the amount paid for the buys of the symbol.
+   */
+  public double getCash(Venue venue, String symbol) {
+    ReplayedBook book = replay.findBook(venue, symbol);
+    return book == null ? 0 : book.cash;
+  }
+
+  /**
+   * Fill the resting orders the book crossed and shorten their queues, after an update of the book.
+   */
+  void onBook(ReplayedBook book) {
+    book.resetTaken();
+    if (book.open.isEmpty()) {
+      return;
+    }
+    TickOrderBook levels = book.getBook();
+    for (SimulatedOrder order : book.open) {
+      if (crosses(order, levels)) {
+        fill(order, order.getLeavesQty(), order.price);
+        continue;
+      }
+      int level = order.isBuy() ? levels.bidLevel(order.price) : levels.askLevel(order.price);
+      long shown = level < 0 ? 0 : order.isBuy() ? levels.bidQtyUnits(level) : levels.askQtyUnits(level);
+      order.queueAhead = Math.min(order.queueAhead, shown);
+    }
+    removeClosed(book);
+  }
+
+  /**
+   * Fill the resting orders a trade printed through or at, in the order they joined their queues.
+   * @param buyer true if the buyer took liquidity, i.e. asks traded.
+   */
+  void onTrade(ReplayedBook book, long price, long qty, boolean buyer) {
+    if (book.open.isEmpty()) {
+      return;
+    }
+    long left = qty;
+    for (SimulatedOrder order : book.open) {
+      if (order.isBuy() == buyer) {
+        continue;
+      }
+      if (buyer ? price > order.price : price < order.price) {
+        fill(order, order.getLeavesQty(), order.price);
+      } else if (price == order.price && left > 0) {
+        long ahead = Math.min(order.queueAhead, left);
+        order.queueAhead -= ahead;
+        left -= ahead;
+        long filled = Math.min(left, order.getLeavesQty());
+        if (filled > 0) {
+          fill(order, filled, order.price);
+          left -= filled;
+        }
+      }
+    }
+    removeClosed(book);
+  }
+
+  private void rest(SimulatedOrder order, ReplayedBook book) {
+    TickOrderBook levels = book.getBook();
+    int level = order.isBuy() ? levels.bidLevel(order.price) : levels.askLevel(order.price);
+    order.queueAhead = level < 0 ? 0 : book.shownQty(order.isBuy(), level);
+    book.open.add(order);
+  }
+
+  private static boolean crosses(SimulatedOrder order, TickOrderBook levels) {
+    if (order.isBuy()) {
+      return levels.askCount() > 0 && levels.askTicks(0) <= order.price;
+    }
+    return levels.bidCount() > 0 && levels.bidTicks(0) >= order.price;
+  }
+
+  private static boolean marketable(SimulatedOrder order, long levelPrice) {
+    if (order.getType() == SimulatedOrder.Type.MARKET) {
+      return true;
+    }
+    return order.isBuy() ? levelPrice <= order.price : levelPrice >= order.price;
+  }
+
+  /**
+   * @return quantity of the opposite levels the order could take.
+   */
+  private static long available(SimulatedOrder order, ReplayedBook book) {
+    TickOrderBook levels = book.getBook();
+    long qty = 0;
+    int count = order.isBuy() ? levels.askCount() : levels.bidCount();
+    for (int i = 0; i < count; i++) {
+      long levelPrice = order.isBuy() ? levels.askTicks(i) : levels.bidTicks(i);
+      if (!marketable(order, levelPrice)) {
+        break;
+      }
+      qty += book.shownQty(!order.isBuy(), i);
+    }
+    return qty;
+  }
+
+  private void take(SimulatedOrder order, ReplayedBook book) {
+    TickOrderBook levels = book.getBook();
+    int count = order.isBuy() ? levels.askCount() : levels.bidCount();
+    for (int i = 0; i < count && order.getLeavesQty() > 0; i++) {
+      long levelPrice = order.isBuy() ? levels.askTicks(i) : levels.bidTicks(i);
+      if (!marketable(order, levelPrice)) {
+        break;
+      }
+      long qty = Math.min(book.shownQty(!order.isBuy(), i), order.getLeavesQty());
+      if (qty > 0) {
+        fill(order, qty, levelPrice);
+        book.take(!order.isBuy(), i, qty);
+      }
+    }
+  }
+
+  private void fill(SimulatedOrder order, long qty, long price) {
+    double amount = Decimals.toDouble(price, order.getPriceScale()) * Decimals.toDouble(qty, order.getQtyScale());
+    order.filled += qty;
+    order.notional += amount;
+    order.status = order.filled == order.getQty() ? SimulatedOrder.Status.FILLED
+      : SimulatedOrder.Status.PARTIALLY_FILLED;
+    order.updateTime = replay.currentTimeMillis();
+    ReplayedBook book = order.getBook();
+    book.position += order.isBuy() ? qty : -qty;
+    book.cash += order.isBuy() ? -amount : amount;
+  }
+
+  private void prune() {
+    Iterator<SimulatedOrder> it = orders.values().iterator();
+    while (it.hasNext() && orders.size() > MAX_ORDERS / 2) {
+      if (!it.next().isOpen()) {
+        it.remove();
+      }
+    }
+    // many open orders, don't walk them again on the next order
+    pruneAt = Math.max(MAX_ORDERS, orders.size() * 2);
+  }
+
+  private static void removeClosed(ReplayedBook book) {
+    List<SimulatedOrder> open = book.open;
+    int kept = 0;
+    for (int i = 0; i < open.size(); i++) {
+      SimulatedOrder order = open.get(i);
+      if (order.isOpen()) {
+        open.set(kept++, order);
+      }
+    }
+    while (open.size() > kept) {
+      open.remove(open.size() - 1);
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package io.magicalne.smym.replay;
+
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.event.BookUpdateListener;
+import io.magicalne.smym.marketdata.BookEvent;
+import io.magicalne.smym.marketdata.BookEventSource;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import io.magicalne.smym.symbol.SymbolIds;
+
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays recorded {@link BookEvent}s, e.g. of a {@link io.magicalne.smym.marketdata.JournalReader}, into local
+ * books on the calling thread, as fast as it can go.
+ *
+ * Time is virtual: it is the receive time of the event being replayed, and tasks scheduled with
+ * {@link #schedule(long, Runnable)} run when the replay passes their time. After every update the books it
+ * changed are matched against the simulated orders of the {@link MatchingEngine}, published to their
+ * {@link OrderBookView}s and the listener of the venue is told, so a strategy reads the books and places its
+ * orders between two updates exactly like it would live. Nothing depends on the wall clock or on other
+ * threads, a replay of the same events runs the same way every time.
+ */
+public class ReplayEngine {
+
+  private static final int DEFAULT_BOOK_DEPTH = 1000;
+  private static final Venue[] VENUES = Venue.values();
+
+  private final BookEventSource source;
+  private final int bookDepth;
+  private final BookEvent event = new BookEvent();
+  private final SymbolIds[] ids = new SymbolIds[VENUES.length];
+  private final List<ReplayedBook> books = new ArrayList<>();
+  private final List<ReplayedBook> touched = new ArrayList<>();
+  private final BookUpdateListener[] listeners = new BookUpdateListener[VENUES.length];
+  private final List<Task> tasks = new ArrayList<>();
+  private final MatchingEngine matchingEngine = new MatchingEngine(this);
+  private long nanos = Long.MIN_VALUE;
+  private long updates = 0;
+
+  private static final class Task {
+    private final long period;
+    private final Runnable runnable;
+    private long next = Long.MIN_VALUE;
+
+    private Task(long period, Runnable runnable) {
+      this.period = period;
+      this.runnable = runnable;
+    }
+  }
+
+  public ReplayEngine(BookEventSource source) {
+    this(source, DEFAULT_BOOK_DEPTH);
+  }
+
+  /**
+   * @param bookDepth levels kept per side of every replayed book.
+   */
+  public ReplayEngine(BookEventSource source, int bookDepth) {
+    this.source = source;
+    this.bookDepth = bookDepth;
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = new SymbolIds();
+    }
+  }
+
+  public MatchingEngine getMatchingEngine() {
+    return matchingEngine;
+  }
+
+  /**
+   * @param symbolId the id of the symbol the listener of the venue is told, e.g. its id in a
+   * {@link io.magicalne.smym.symbol.SymbolRegistry}.
+   * @return a view of the top levels of the symbol, published after every update of its book. Events of other
+   * scales are rescaled to the given ones.
+   * @throws IllegalStateException if the symbol is replayed already with other scales or another id.
+   */
+  public OrderBookView subscribe(Venue venue, String symbol, int symbolId, int depth, int priceScale,
+                                 int qtyScale) {
+    ReplayedBook book = findBook(venue, symbol);
+    if (book == null) {
+      book = addBook(venue, symbol, priceScale, qtyScale);
+    } else if (book.getBook().getPriceScale() != priceScale || book.getBook().getQtyScale() != qtyScale) {
+      throw new IllegalStateException("Book of " + symbol + " is replayed with price scale "
+        + book.getBook().getPriceScale() + " and qty scale " + book.getBook().getQtyScale());
+    }
+    if (book.symbolId != SymbolIds.UNKNOWN && book.symbolId != symbolId) {
+      throw new IllegalStateException("Book of " + symbol + " is replayed with id " + book.symbolId);
+    }
+    book.symbolId = symbolId;
+    OrderBookView view = new OrderBookView(depth, priceScale, qtyScale);
+    book.views.add(view);
+    return view;
+  }
+
+  /**
+   * Tell the listener about every update of a subscribed book of the venue, on the replay thread.
+   */
+  public void setListener(Venue venue, BookUpdateListener listener) {
+    listeners[venue.ordinal()] = listener;
+  }
+
+  /**
+   * Run the task on the replay thread every period of virtual time, the first time one period after the
+   * first event.
+   */
+  public void schedule(long periodNanos, Runnable task) {
+    if (periodNanos <= 0) {
+      throw new IllegalArgumentException("Period must be positive: " + periodNanos);
+    }
+    tasks.add(new Task(periodNanos, task));
+  }
+
+  /**
+   * @return the replayed book of the symbol, or null if none of its events was replayed yet. Only read it on
+   * the replay thread.
+   */
+  public TickOrderBook getBook(Venue venue, String symbol) {
+    ReplayedBook book = findBook(venue, symbol);
+    return book == null ? null : book.getBook();
+  }
+
+  /**
+   * @return virtual time in nanos since the epoch, the receive time of the event being replayed.
+   */
+  public long nanos() {
+    return nanos;
+  }
+
+  public long currentTimeMillis() {
+    return Math.floorDiv(nanos, 1_000_000L);
+  }
+
+  /**
+   * @return number of updates replayed so far.
+   */
+  public long getUpdateCount() {
+    return updates;
+  }
+
+  /**
+   * Replay every event of the source.
+   * @return number of updates replayed.
+   */
+  public long run() throws IOException {
+    while (step()) {
+      // replay the next update
+    }
+    return updates;
+  }
+
+  /**
+   * Replay the events of the next update.
+   * @return false once the source has no event left.
+   */
+  public boolean step() throws IOException {
+    while (source.next(event)) {
+      advance(event.getReceiveNanos());
+      ReplayedBook book = findBook(event.getVenue(), event.getSymbol());
+      if (book == null && event.getType() != BookEvent.Type.CLEAR) {
+        // a clear has no scales, the first level of the symbol sets them
+        book = addBook(event.getVenue(), event.getSymbol(), event.getPriceScale(), event.getQtyScale());
+      }
+      if (book != null) {
+        apply(book);
+      }
+      if (event.isEndOfUpdate()) {
+        publish();
+        return true;
+      }
+    }
+    // an update cut off at the end of the source
+    publish();
+    return false;
+  }
+
+  private void apply(ReplayedBook book) {
+    TickOrderBook levels = book.getBook();
+    BookEvent e = this.event;
+    long price = rescale(e.getPrice(), e.getPriceScale(), levels.getPriceScale());
+    long qty = rescale(e.getQty(), e.getQtyScale(), levels.getQtyScale());
+    switch (e.getType()) {
+      case CLEAR:
+        levels.clear();
+        break;
+      case BID:
+        levels.updateBid(price, qty);
+        break;
+      case ASK:
+        levels.updateAsk(price, qty);
+        break;
+      case TRADE:
+        matchingEngine.onTrade(book, price, qty, e.isBuy());
+        return;
+      default:
+        return;
+    }
+    levels.setLastUpdateId(e.getUpdateId());
+    if (!book.touched) {
+      book.touched = true;
+      touched.add(book);
+    }
+  }
+
+  private static long rescale(long value, int from, int to) {
+    return from == to ? value : Decimals.rescale(value, from, to, RoundingMode.HALF_EVEN);
+  }
+
+  private void publish() {
+    for (int i = 0; i < touched.size(); i++) {
+      ReplayedBook book = touched.get(i);
+      book.touched = false;
+      matchingEngine.onBook(book);
+      for (int j = 0; j < book.views.size(); j++) {
+        book.views.get(j).publish(book.getBook());
+      }
+    }
+    for (int i = 0; i < touched.size(); i++) {
+      ReplayedBook book = touched.get(i);
+      BookUpdateListener listener = listeners[book.getVenue().ordinal()];
+      if (listener != null && book.symbolId != SymbolIds.UNKNOWN) {
+        listener.onBookUpdate(book.symbolId);
+      }
+    }
+    if (!touched.isEmpty()) {
+      updates++;
+      touched.clear();
+    }
+  }
+
+  /**
+   * Move the virtual time to the receive time of the next event, running the tasks due until then at their
+   * own time. Time never goes back, events received out of order replay at the time of the latest one.
+   */
+  private void advance(long to) {
+    for (;;) {
+      Task due = null;
+      for (Task task : tasks) {
+        if (task.next == Long.MIN_VALUE) {
+          // first period starts now
+          task.next = Math.max(nanos, to) + task.period;
+        }
+        if (task.next <= to && (due == null || task.next < due.next)) {
+          due = task;
+        }
+      }
+      if (due == null) {
+        break;
+      }
+      nanos = Math.max(nanos, due.next);
+      due.next += due.period;
+      due.runnable.run();
+    }
+    nanos = Math.max(nanos, to);
+  }
+
+  ReplayedBook findBook(Venue venue, String symbol) {
+    int id = ids[venue.ordinal()].get(symbol);
+    return id == SymbolIds.UNKNOWN ? null : books.get(id);
+  }
+
+  ReplayedBook requireBook(Venue venue, String symbol) {
+    ReplayedBook book = findBook(venue, symbol);
+    if (book == null) {
+      throw new IllegalArgumentException("There is no replayed book of " + venue + ":" + symbol);
+    }
+    return book;
+  }
+
+  private ReplayedBook addBook(Venue venue, String symbol, int priceScale, int qtyScale) {
+    ReplayedBook book = new ReplayedBook(venue, symbol, new TickOrderBook(bookDepth, priceScale, qtyScale));
+    ids[venue.ordinal()].put(symbol, books.size());
+    books.add(book);
+    return book;
+  }
+}
@@ -0,0 +1,81 @@
+package io.magicalne.smym.replay;
+
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import io.magicalne.smym.symbol.SymbolIds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The replayed book of a symbol with the views published from it and the simulated orders resting on it.
+ */
+final class ReplayedBook {
+
+  private final Venue venue;
+  private final String symbol;
+  private final TickOrderBook book;
+  final List<OrderBookView> views = new ArrayList<>();
+  final List<SimulatedOrder> open = new ArrayList<>();
+  // net quantity and quote amount of the fills
+  long position;
+  double cash;
+  boolean touched;
+  // the id the listener is told, unknown until the symbol is subscribed
+  int symbolId = SymbolIds.UNKNOWN;
+  // quantity simulated orders took from each level since the last update of the book, by index of the level
+  private long[] takenBids = new long[16];
+  private long[] takenAsks = new long[16];
+  private boolean taken;
+
+  ReplayedBook(Venue venue, String symbol, TickOrderBook book) {
+    this.venue = venue;
+    this.symbol = symbol;
+    this.book = book;
+  }
+
+  Venue getVenue() {
+    return venue;
+  }
+
+  String getSymbol() {
+    return symbol;
+  }
+
+  TickOrderBook getBook() {
+    return book;
+  }
+
+  /**
+   * @return quantity shown at the level less what simulated orders took from it.
+   */
+  long shownQty(boolean bid, int level) {
+    long shown = bid ? book.bidQtyUnits(level) : book.askQtyUnits(level);
+    long[] takenQty = bid ? takenBids : takenAsks;
+    return level < takenQty.length ? shown - takenQty[level] : shown;
+  }
+
+  void take(boolean bid, int level, long qty) {
+    if (bid && level >= takenBids.length) {
+      takenBids = Arrays.copyOf(takenBids, Math.max(level + 1, takenBids.length * 2));
+    } else if (!bid && level >= takenAsks.length) {
+      takenAsks = Arrays.copyOf(takenAsks, Math.max(level + 1, takenAsks.length * 2));
+    }
+    (bid ? takenBids : takenAsks)[level] += qty;
+    taken = true;
+  }
+
+  /**
+   * The recorded market doesn't see the simulated orders, the next update shows the levels as if nothing was
+   * taken.
+   */
+  void resetTaken() {
+    if (taken) {
+      Arrays.fill(takenBids, 0);
+      Arrays.fill(takenAsks, 0);
+      taken = false;
+    }
+  }
+}
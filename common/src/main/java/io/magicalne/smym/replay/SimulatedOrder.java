@@ -0,0 +1,152 @@
+package io.magicalne.smym.replay;
+
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.marketdata.Venue;
+
+/**
+ * An order of the {@link MatchingEngine}. Prices are ticks and quantities units of the replayed book of the
+ * symbol, see {@link #getPriceScale()} and {@link #getQtyScale()}.
+ *
+ * Only the replay thread changes an order; read it from there too.
+ */
+public final class SimulatedOrder {
+
+  public enum Type {
+    /**
+     * Take what crosses, rest the remainder until it is filled or cancelled.
+     */
+    GTC,
+    /**
+     * Take what crosses, cancel the remainder.
+     */
+    IOC,
+    /**
+     * Fill completely at once or cancel without any fill.
+     */
+    FOK,
+    /**
+     * Take at any price, cancel what the book cannot fill.
+     */
+    MARKET,
+    /**
+     * Rest without taking, rejected if it would cross when placed and cancelled if an amend makes it cross.
+     */
+    POST_ONLY
+  }
+
+  public enum Status {
+    NEW, PARTIALLY_FILLED, FILLED, CANCELED, REJECTED
+  }
+
+  private final long id;
+  private final ReplayedBook book;
+  private final boolean buy;
+  private final Type type;
+  private final long qty;
+  private final long time;
+  long price;
+  long filled;
+  double notional;
+  // quantity shown at the price before the order when it joined the level
+  long queueAhead;
+  Status status = Status.NEW;
+  long updateTime;
+
+  SimulatedOrder(long id, ReplayedBook book, boolean buy, Type type, long price, long qty, long time) {
+    this.id = id;
+    this.book = book;
+    this.buy = buy;
+    this.type = type;
+    this.price = price;
+    this.qty = qty;
+    this.time = time;
+    this.updateTime = time;
+  }
+
+  ReplayedBook getBook() {
+    return book;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public Venue getVenue() {
+    return book.getVenue();
+  }
+
+  public String getSymbol() {
+    return book.getSymbol();
+  }
+
+  public boolean isBuy() {
+    return buy;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @return limit price in ticks, 0 for market orders.
+   */
+  public long getPrice() {
+    return price;
+  }
+
+  public long getQty() {
+    return qty;
+  }
+
+  public long getFilledQty() {
+    return filled;
+  }
+
+  public long getLeavesQty() {
+    return isOpen() ? qty - filled : 0;
+  }
+
+  /**
+   * @return average price of the fills, 0 without a fill.
+   */
+  public double getAveragePrice() {
+    return filled == 0 ? 0 : notional / Decimals.toDouble(filled, getQtyScale());
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public boolean isOpen() {
+    return status == Status.NEW || status == Status.PARTIALLY_FILLED;
+  }
+
+  /**
+   * @return virtual time the order was placed at, in millis.
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * @return virtual time of the last fill, amend or cancel, in millis.
+   */
+  public long getUpdateTime() {
+    return updateTime;
+  }
+
+  public int getPriceScale() {
+    return book.getBook().getPriceScale();
+  }
+
+  public int getQtyScale() {
+    return book.getBook().getQtyScale();
+  }
+
+  @Override
+  public String toString() {
+    return getVenue() + ":" + getSymbol() + " #" + id + " " + (buy ? "buy " : "sell ") + type + " "
+      + Decimals.format(filled, getQtyScale()) + "/" + Decimals.format(qty, getQtyScale()) + " @ "
+      + Decimals.format(price, getPriceScale()) + " " + status;
+  }
+}
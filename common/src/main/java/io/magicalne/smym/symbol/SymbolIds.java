@@ -0,0 +1,138 @@
+package io.magicalne.smym.symbol;
+
+/**
+ * Map of names, e.g. exchange symbols, to int ids that can also be looked up by a region of a char array or
+ * of a longer string, so a symbol embedded in a topic or in a parser buffer is resolved without building a
+ * String of it.
+ *
+ * Open addressing with linear probing, keys hash like {@link String#hashCode()}. Lookups don't lock or
+ * allocate. Puts are meant for subscription time: they copy the table and publish the copy through a
+ * volatile field.
+ */
+public final class SymbolIds {
+
+  public static final int UNKNOWN = -1;
+
+  private static final class Table {
+    private final String[] keys;
+    private final int[] values;
+    private final int size;
+
+    private Table(String[] keys, int[] values, int size) {
+      this.keys = keys;
+      this.values = values;
+      this.size = size;
+    }
+  }
+
+  private volatile Table table = new Table(new String[16], new int[16], 0);
+
+  /**
+   * Map the name to the id, replacing the id it had.
+   */
+  public synchronized void put(String name, int id) {
+    Table t = this.table;
+    int capacity = t.keys.length;
+    // keep the load at most one half so probes stay short
+    if ((t.size + 1) * 2 > capacity) {
+      capacity *= 2;
+    }
+    String[] keys = new String[capacity];
+    int[] values = new int[capacity];
+    int size = 0;
+    for (int i = 0; i < t.keys.length; i++) {
+      if (t.keys[i] != null && !t.keys[i].equals(name)) {
+        insert(keys, values, t.keys[i], t.values[i]);
+        size++;
+      }
+    }
+    insert(keys, values, name, id);
+    this.table = new Table(keys, values, size + 1);
+  }
+
+  private static void insert(String[] keys, int[] values, String key, int value) {
+    int mask = keys.length - 1;
+    int i = mix(key.hashCode()) & mask;
+    while (keys[i] != null) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+  }
+
+  public int size() {
+    return this.table.size;
+  }
+
+  /**
+   * @return id of the name or {@link #UNKNOWN}.
+   */
+  public int get(CharSequence name) {
+    return get(name, 0, name.length());
+  }
+
+  /**
+   * @return id of the name in [from, to) of s or {@link #UNKNOWN}.
+   */
+  public int get(CharSequence s, int from, int to) {
+    int h = 0;
+    for (int i = from; i < to; i++) {
+      h = 31 * h + s.charAt(i);
+    }
+    Table t = this.table;
+    int mask = t.keys.length - 1;
+    for (int i = mix(h) & mask; ; i = (i + 1) & mask) {
+      String key = t.keys[i];
+      if (key == null) {
+        return UNKNOWN;
+      }
+      if (key.length() == to - from && regionMatches(key, s, from)) {
+        return t.values[i];
+      }
+    }
+  }
+
+  /**
+   * @return id of the name in buf[off, off + len) or {@link #UNKNOWN}.
+   */
+  public int get(char[] buf, int off, int len) {
+    int h = 0;
+    for (int i = off; i < off + len; i++) {
+      h = 31 * h + buf[i];
+    }
+    Table t = this.table;
+    int mask = t.keys.length - 1;
+    for (int i = mix(h) & mask; ; i = (i + 1) & mask) {
+      String key = t.keys[i];
+      if (key == null) {
+        return UNKNOWN;
+      }
+      if (key.length() == len && regionMatches(key, buf, off)) {
+        return t.values[i];
+      }
+    }
+  }
+
+  private static boolean regionMatches(String key, CharSequence s, int from) {
+    for (int i = 0; i < key.length(); i++) {
+      if (key.charAt(i) != s.charAt(from + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean regionMatches(String key, char[] buf, int off) {
+    for (int i = 0; i < key.length(); i++) {
+      if (key.charAt(i) != buf[off + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int mix(int h) {
+    // fold the high bits in like HashMap does, the mask only keeps the low ones
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,204 @@
+package io.magicalne.smym.symbol;
+
+import io.magicalne.smym.decimal.Decimals;
+
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Trading rules of the symbols of one exchange, interned to dense int ids.
+ *
+ * The rules live in primitive arrays indexed by id, so strategies resolve an id once and then read
+ * precisions, tick and step sizes with plain array loads. Ids are never reused or removed. Readers don't
+ * lock: an update that only adds symbols fills free slots of the arrays, an update that changes the rules
+ * of a known symbol copies them first, and either way the result is published through a volatile field.
+ * A background refresh therefore never exposes half written rules.
+ */
+public final class SymbolRegistry {
+
+  public static final int UNKNOWN = SymbolIds.UNKNOWN;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private static final class Table {
+    private final int size;
+    private final String[] names;
+    private final String[] bases;
+    private final String[] quotes;
+    private final int[] pricePrecisions;
+    private final int[] qtyPrecisions;
+    private final long[] tickUnits;
+    private final long[] stepUnits;
+    private final double[] minNotionals;
+
+    private Table(int capacity) {
+      this(0, new String[capacity], new String[capacity], new String[capacity], new int[capacity],
+        new int[capacity], new long[capacity], new long[capacity], new double[capacity]);
+    }
+
+    private Table(int size, String[] names, String[] bases, String[] quotes, int[] pricePrecisions,
+                  int[] qtyPrecisions, long[] tickUnits, long[] stepUnits, double[] minNotionals) {
+      this.size = size;
+      this.names = names;
+      this.bases = bases;
+      this.quotes = quotes;
+      this.pricePrecisions = pricePrecisions;
+      this.qtyPrecisions = qtyPrecisions;
+      this.tickUnits = tickUnits;
+      this.stepUnits = stepUnits;
+      this.minNotionals = minNotionals;
+    }
+
+    private Table copy(int size, int capacity) {
+      return new Table(size, Arrays.copyOf(names, capacity), Arrays.copyOf(bases, capacity),
+        Arrays.copyOf(quotes, capacity), Arrays.copyOf(pricePrecisions, capacity),
+        Arrays.copyOf(qtyPrecisions, capacity), Arrays.copyOf(tickUnits, capacity),
+        Arrays.copyOf(stepUnits, capacity), Arrays.copyOf(minNotionals, capacity));
+    }
+
+    private Table withSize(int size) {
+      return new Table(size, names, bases, quotes, pricePrecisions, qtyPrecisions, tickUnits, stepUnits,
+        minNotionals);
+    }
+  }
+
+  private final SymbolIds ids = new SymbolIds();
+  private volatile Table table = new Table(INITIAL_CAPACITY);
+
+  /**
+   * Add a symbol or replace its rules.
+   * @param tickSize    price increment like "0.00100000", it defines the price precision.
+   * @param stepSize    quantity increment, it defines the quantity precision.
+   * @param minNotional minimum price * quantity of an order, 0 if the exchange has none.
+   * @return id of the symbol.
+   */
+  public int put(String symbol, String base, String quote, String tickSize, String stepSize, double minNotional) {
+    int pricePrecision = Decimals.precision(tickSize);
+    int qtyPrecision = Decimals.precision(stepSize);
+    return put(symbol, base, quote, pricePrecision, qtyPrecision,
+      Decimals.parseScaled(tickSize, pricePrecision, RoundingMode.UNNECESSARY),
+      Decimals.parseScaled(stepSize, qtyPrecision, RoundingMode.UNNECESSARY), minNotional);
+  }
+
+  /**
+   * Add a symbol or replace its rules.
+   * @param tickUnits price increment in units of 10^-pricePrecision.
+   * @param stepUnits quantity increment in units of 10^-qtyPrecision.
+   * @return id of the symbol.
+   */
+  public synchronized int put(String symbol, String base, String quote, int pricePrecision, int qtyPrecision,
+                              long tickUnits, long stepUnits, double minNotional) {
+    if (pricePrecision < 0 || pricePrecision > Decimals.MAX_SCALE
+      || qtyPrecision < 0 || qtyPrecision > Decimals.MAX_SCALE) {
+      throw new IllegalArgumentException("Precision out of range of " + symbol);
+    }
+    Table t = this.table;
+    int id = this.ids.get(symbol);
+    if (id != UNKNOWN) {
+      if (t.pricePrecisions[id] != pricePrecision || t.qtyPrecisions[id] != qtyPrecision
+        || t.tickUnits[id] != tickUnits || t.stepUnits[id] != stepUnits
+        || Double.compare(t.minNotionals[id], minNotional) != 0) {
+        t = t.copy(t.size, t.names.length);
+        set(t, id, symbol, base, quote, pricePrecision, qtyPrecision, tickUnits, stepUnits, minNotional);
+        this.table = t;
+      }
+      return id;
+    }
+    id = t.size;
+    if (id == t.names.length) {
+      t = t.copy(id, id * 2);
+    }
+    // the slot is beyond the size of the published table, so no reader looks at it yet
+    set(t, id, symbol, base, quote, pricePrecision, qtyPrecision, tickUnits, stepUnits, minNotional);
+    this.table = t.withSize(id + 1);
+    this.ids.put(symbol, id);
+    return id;
+  }
+
+  private static void set(Table t, int id, String symbol, String base, String quote, int pricePrecision,
+                          int qtyPrecision, long tickUnits, long stepUnits, double minNotional) {
+    t.names[id] = symbol;
+    t.bases[id] = base;
+    t.quotes[id] = quote;
+    t.pricePrecisions[id] = pricePrecision;
+    t.qtyPrecisions[id] = qtyPrecision;
+    t.tickUnits[id] = tickUnits;
+    t.stepUnits[id] = stepUnits;
+    t.minNotionals[id] = minNotional;
+  }
+
+  /**
+   * @return id of the symbol or {@link #UNKNOWN}.
+   */
+  public int id(CharSequence symbol) {
+    return this.ids.get(symbol);
+  }
+
+  /**
+   * @return id of the symbol in [from, to) of s, e.g. the symbol part of a topic, or {@link #UNKNOWN}.
+   */
+  public int id(CharSequence s, int from, int to) {
+    return this.ids.get(s, from, to);
+  }
+
+  /**
+   * @return id of the symbol in buf[off, off + len), e.g. a parser buffer, or {@link #UNKNOWN}.
+   */
+  public int id(char[] buf, int off, int len) {
+    return this.ids.get(buf, off, len);
+  }
+
+  /**
+   * @return id of the symbol.
+   * @throws IllegalArgumentException if the symbol is not registered.
+   */
+  public int require(String symbol) {
+    int id = this.ids.get(symbol);
+    if (id == UNKNOWN) {
+      throw new IllegalArgumentException("Unknown symbol: " + symbol);
+    }
+    return id;
+  }
+
+  public int size() {
+    return this.table.size;
+  }
+
+  public String name(int id) {
+    return this.table.names[id];
+  }
+
+  public String base(int id) {
+    return this.table.bases[id];
+  }
+
+  public String quote(int id) {
+    return this.table.quotes[id];
+  }
+
+  public int pricePrecision(int id) {
+    return this.table.pricePrecisions[id];
+  }
+
+  public int qtyPrecision(int id) {
+    return this.table.qtyPrecisions[id];
+  }
+
+  /**
+   * @return price increment in units of 10^-{@link #pricePrecision(int)}.
+   */
+  public long tickUnits(int id) {
+    return this.table.tickUnits[id];
+  }
+
+  /**
+   * @return quantity increment in units of 10^-{@link #qtyPrecision(int)}.
+   */
+  public long stepUnits(int id) {
+    return this.table.stepUnits[id];
+  }
+
+  public double minNotional(int id) {
+    return this.table.minNotionals[id];
+  }
+}
@@ -0,0 +1,76 @@
+package io.magicalne.smym.decimal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+public class DecimalsTest {
+
+  private static final RoundingMode[] MODES = {
+    RoundingMode.UP, RoundingMode.DOWN, RoundingMode.CEILING, RoundingMode.FLOOR,
+    RoundingMode.HALF_UP, RoundingMode.HALF_DOWN, RoundingMode.HALF_EVEN
+  };
+
+  @Test
+  public void parseAndDivideLikeBigDecimal() {
+    Random random = new Random(7);
+    for (int i = 0; i < 20000; i++) {
+      RoundingMode mode = MODES[random.nextInt(MODES.length)];
+      long units = random.nextInt(2000001) - 1000000;
+      int scale = random.nextInt(9);
+      String s = BigDecimal.valueOf(units, scale).toPlainString();
+      int to = random.nextInt(7);
+      Assert.assertEquals(s + " " + mode + " " + to,
+        new BigDecimal(s).setScale(to, mode).unscaledValue().longValue(), Decimals.parseScaled(s, to, mode));
+
+      long divisor = random.nextInt(1000) + 1;
+      int divisorScale = random.nextInt(5);
+      Assert.assertEquals(s + " / " + divisor + " " + mode,
+        BigDecimal.valueOf(units, scale).divide(BigDecimal.valueOf(divisor, divisorScale), to, mode)
+          .unscaledValue().longValue(),
+        Decimals.divide(units, scale, divisor, divisorScale, to, mode));
+      Assert.assertEquals(s + " * " + divisor + " " + mode,
+        BigDecimal.valueOf(units, scale).multiply(BigDecimal.valueOf(divisor, divisorScale)).setScale(to, mode)
+          .unscaledValue().longValue(),
+        Decimals.multiply(units, scale, divisor, divisorScale, to, mode));
+      Assert.assertEquals(s, Decimals.format(units, scale));
+    }
+    Assert.assertEquals("-9223372036854775808", Decimals.format(Long.MIN_VALUE, 0));
+    // scales beyond a power of ten of a long take the BigDecimal path
+    Assert.assertEquals(150, Decimals.multiply(15 * Decimals.pow10(17), 18, Decimals.pow10(18), 18, 2,
+      RoundingMode.DOWN));
+    Assert.assertEquals(100, Decimals.divide(1, 0, Decimals.pow10(18), 18, 2, RoundingMode.DOWN));
+    Assert.assertEquals(10003, Decimals.multiplyRate(10000, 1.0003, RoundingMode.HALF_EVEN));
+  }
+
+  @Test
+  public void fromDoubleIgnoresRepresentationError() {
+    Assert.assertEquals(29, Decimals.fromDouble(0.29, 2, RoundingMode.DOWN));
+    Assert.assertEquals(400012, Decimals.fromDouble(4000.12, 2, RoundingMode.UP));
+    Assert.assertEquals(2, Decimals.fromDouble(0.025, 2, RoundingMode.HALF_EVEN));
+    Assert.assertEquals(3, Decimals.fromDouble(0.025, 2, RoundingMode.HALF_UP));
+    Assert.assertEquals(-3, Decimals.fromDouble(-0.0251, 2, RoundingMode.FLOOR));
+    Assert.assertEquals(-2, Decimals.fromDouble(-0.0251, 2, RoundingMode.DOWN));
+  }
+
+  @Test
+  public void sizeOrders() {
+    Price price = Price.fromDouble(4000.123, 2, RoundingMode.HALF_EVEN);
+    Assert.assertEquals("4000.12", price.toString());
+    Qty usdt = Qty.parse("15.123456789", 8, RoundingMode.DOWN);
+    Qty btc = usdt.divide(price, 6, RoundingMode.DOWN);
+    Assert.assertEquals("0.003780", btc.toString());
+    Assert.assertEquals("15.12", btc.multiply(price, 2, RoundingMode.DOWN).toString());
+    Assert.assertEquals("0.003777", btc.multiply(0.99925, RoundingMode.DOWN).toString());
+    Assert.assertEquals("15.12345678", usdt.add(Qty.of(0, 2)).toString());
+    Assert.assertEquals("15.11345678", usdt.subtract(Qty.parse("0.01", 2, RoundingMode.UNNECESSARY)).toString());
+    Assert.assertEquals("4000.92", usdt.divide(btc, 2, RoundingMode.UP).toString());
+    Assert.assertEquals("4020.12", price.multiply(1.005, RoundingMode.HALF_EVEN).toString());
+    Assert.assertEquals("3980.22", price.divide(1.005, RoundingMode.HALF_EVEN).toString());
+    Assert.assertEquals(new BigDecimal("4000.12"), price.toBigDecimal());
+    Assert.assertEquals(0, Qty.parse("1.5", 1, RoundingMode.DOWN).compareTo(Qty.parse("1.50", 2, RoundingMode.DOWN)));
+  }
+}
@@ -0,0 +1,64 @@
+package io.magicalne.smym.event;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class BookEventDispatcherTest {
+
+  @Test
+  public void coalescePendingUpdates() {
+    List<Integer> received = new ArrayList<>();
+    BookEventDispatcher[] holder = new BookEventDispatcher[1];
+    holder[0] = new BookEventDispatcher(new int[]{0, 1, 5}, symbolId -> {
+      received.add(symbolId);
+      if (received.size() == 2) {
+        holder[0].stop();
+      }
+    });
+    BookEventDispatcher dispatcher = holder[0];
+    dispatcher.onBookUpdate(0);
+    dispatcher.onBookUpdate(0);
+    // ids not subscribed, inside and outside of the slots
+    dispatcher.onBookUpdate(3);
+    dispatcher.onBookUpdate(9);
+    dispatcher.onBookUpdate(5);
+    dispatcher.onBookUpdate(0);
+    dispatcher.run();
+
+    Assert.assertEquals(Arrays.asList(0, 5), received);
+  }
+
+  @Test
+  public void wakeParkedConsumer() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1000);
+    BookEventDispatcher dispatcher =
+      new BookEventDispatcher(Arrays.asList("a", "b", "c", "d", "e"), symbol -> symbol.charAt(0) - 'a',
+        symbolId -> latch.countDown());
+    Thread consumer = new Thread(dispatcher::run);
+    consumer.start();
+    Thread[] writers = new Thread[5];
+    for (int i = 0; i < writers.length; i++) {
+      int symbolId = i;
+      writers[i] = new Thread(() -> {
+        while (latch.getCount() > 0) {
+          dispatcher.onBookUpdate(symbolId);
+          Thread.yield();
+        }
+      });
+      writers[i].start();
+    }
+    Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    dispatcher.stop();
+    consumer.join(1000);
+    Assert.assertFalse(consumer.isAlive());
+    for (Thread w : writers) {
+      w.join(1000);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package io.magicalne.smym.marketdata;
+
+import io.magicalne.smym.orderbook.TickOrderBook;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MarketDataBusTest {
+
+  @Test
+  public void replayBookIntoConsumers() throws Exception {
+    MarketDataBus bus = new MarketDataBus(16);
+    TickOrderBook source = new TickOrderBook(5, 2, 8);
+    source.updateBid("100.00", "1");
+    source.updateBid("99.50", "2");
+    source.updateAsk("100.50", "3");
+    source.setLastUpdateId(7);
+
+    TickOrderBook copy = new TickOrderBook(5, 2, 8);
+    List<Boolean> ends = new ArrayList<>();
+    CountDownLatch updates = new CountDownLatch(2);
+    BookEventProcessor replay = bus.addConsumer((event, sequence, endOfBatch) -> {
+      switch (event.getType()) {
+        case CLEAR:
+          copy.clear();
+          break;
+        case BID:
+          copy.updateBid(event.getPrice(), event.getQty());
+          break;
+        case ASK:
+          copy.updateAsk(event.getPrice(), event.getQty());
+          break;
+        default:
+      }
+      if (event.isEndOfUpdate()) {
+        copy.setLastUpdateId(event.getUpdateId());
+        updates.countDown();
+      }
+    }, WaitStrategy.yielding());
+    BookEventProcessor counter = bus.addConsumer((event, sequence, endOfBatch) -> ends.add(event.isEndOfUpdate()),
+      WaitStrategy.busySpin());
+
+    bus.publishBook(Venue.BINANCE, "BTCUSDT", source);
+    long seq = bus.claim(2);
+    bus.get(seq).set(Venue.BINANCE, "BTCUSDT", BookEvent.Type.BID, 10000, 0, 2, 8, 8);
+    bus.get(seq + 1).set(Venue.BINANCE, "BTCUSDT", BookEvent.Type.ASK, 10025, 400000000, 2, 8, 8);
+    bus.publish(seq, seq + 1);
+
+    Thread t1 = new Thread(replay);
+    Thread t2 = new Thread(counter);
+    t1.start();
+    t2.start();
+    Assert.assertTrue(updates.await(5, TimeUnit.SECONDS));
+    replay.halt();
+    t1.join(1000);
+    while (counter.getSequence() < seq + 1) {
+      Thread.yield();
+    }
+    counter.halt();
+    t2.join(1000);
+
+    Assert.assertEquals(1, copy.bidCount());
+    Assert.assertEquals(99.5, copy.bestBidPrice(), 0);
+    Assert.assertEquals(100.25, copy.bestAskPrice(), 0);
+    Assert.assertEquals(4, copy.askQty(0), 0);
+    Assert.assertEquals(8, copy.getLastUpdateId());
+    Assert.assertEquals(6, ends.size());
+    Assert.assertTrue(ends.get(3));
+    Assert.assertFalse(ends.get(4));
+    Assert.assertTrue(ends.get(5));
+  }
+
+  @Test
+  public void splitBooksLargerThanCapacity() {
+    MarketDataBus bus = new MarketDataBus(2);
+    TickOrderBook source = new TickOrderBook(5, 2, 8);
+    source.updateBid("100.00", "1");
+    source.updateBid("99.50", "2");
+    source.updateAsk("100.50", "3");
+    List<Boolean> ends = new ArrayList<>();
+    BookEventProcessor counter = bus.addConsumer((event, sequence, endOfBatch) -> ends.add(event.isEndOfUpdate()),
+      WaitStrategy.busySpin());
+    Thread t = new Thread(counter);
+    t.start();
+
+    bus.publishBook(Venue.BINANCE, "BTCUSDT", source);
+    while (counter.getSequence() < 3) {
+      Thread.yield();
+    }
+    counter.halt();
+    Assert.assertEquals(4, ends.size());
+    Assert.assertFalse(ends.get(1));
+    Assert.assertEquals(BookEvent.Type.ASK, bus.get(3).getType());
+    Assert.assertTrue(ends.get(3));
+  }
+
+  @Test
+  public void gateWritersOnSlowestConsumer() throws Exception {
+    MarketDataBus bus = new MarketDataBus(8);
+    int writers = 3;
+    int perWriter = 20000;
+    long[][] last = new long[2][writers];
+    long[] counts = new long[2];
+    List<BookEventProcessor> processors = new ArrayList<>();
+    for (int c = 0; c < 2; c++) {
+      int consumer = c;
+      for (int w = 0; w < writers; w++) {
+        last[consumer][w] = -1;
+      }
+      processors.add(bus.addConsumer((event, sequence, endOfBatch) -> {
+        int writer = (int) event.getPrice();
+        Assert.assertEquals(last[consumer][writer] + 1, event.getQty());
+        last[consumer][writer] = event.getQty();
+        counts[consumer]++;
+      }, c == 0 ? WaitStrategy.busySpin() : WaitStrategy.parking(1000)));
+    }
+    List<Thread> threads = new ArrayList<>();
+    for (BookEventProcessor p : processors) {
+      threads.add(new Thread(p));
+    }
+    for (int w = 0; w < writers; w++) {
+      int writer = w;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < perWriter; i++) {
+          long seq = bus.claim(1);
+          bus.get(seq).set(Venue.HUOBI, "btcusdt", BookEvent.Type.BID, writer, i, 0, 0, i);
+          bus.publish(seq, seq);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    long total = (long) writers * perWriter;
+    long deadline = System.currentTimeMillis() + 10000;
+    while (processors.get(0).getSequence() < total - 1 || processors.get(1).getSequence() < total - 1) {
+      Assert.assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+    for (BookEventProcessor p : processors) {
+      p.halt();
+    }
+    for (Thread t : threads) {
+      t.join(1000);
+    }
+    Assert.assertEquals(total, counts[0]);
+    Assert.assertEquals(total, counts[1]);
+  }
+}
@@ -0,0 +1,168 @@
+package io.magicalne.smym.marketdata;
+
+import io.magicalne.smym.orderbook.TickOrderBook;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MarketDataJournalTest {
+
+  private static final long DAY = MarketDataJournal.NANOS_PER_DAY;
+
+  private Path dir;
+
+  @Before
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("journal");
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    for (Path file : MarketDataJournal.files(dir)) {
+      Files.delete(file);
+    }
+    Files.delete(dir);
+  }
+
+  @Test
+  public void rollDailyAndReadBack() throws IOException {
+    List<String> written = new ArrayList<>();
+    // 3 records per region, so the files grow over several regions
+    try (JournalWriter writer = new JournalWriter(dir, 3)) {
+      for (int i = 0; i < 5; i++) {
+        BookEvent bid = event(Venue.BINANCE, "BTCUSDT", BookEvent.Type.BID, 10000 + i, i, DAY * 17000 + i);
+        writer.append(bid);
+        written.add(bid.toString() + bid.getReceiveNanos());
+      }
+      BookEvent trade = new BookEvent();
+      trade.trade(Venue.BITMEX, "XBTUSD", 650000000000L, 30, 8, 0, true, 9);
+      trade.setTimes(1468800000123L, DAY * 17001 + 5);
+      trade.setEndOfUpdate(true);
+      writer.append(trade);
+      written.add(trade.toString() + trade.getReceiveNanos());
+      BookEvent clear = event(Venue.HUOBI, "btcusdt", BookEvent.Type.CLEAR, 0, 0, DAY * 17001 + 6);
+      writer.append(clear);
+      written.add(clear.toString() + clear.getReceiveNanos());
+    }
+    List<Path> files = MarketDataJournal.files(dir);
+    Assert.assertEquals(2, files.size());
+    Assert.assertTrue(files.get(0).getFileName().toString().contains("2016-07-18"));
+    Assert.assertTrue(files.get(1).getFileName().toString().contains("2016-07-19"));
+
+    // a restart appends to the file of the day
+    try (JournalWriter writer = new JournalWriter(dir, 3)) {
+      BookEvent ask = event(Venue.BINANCE, "ETHBTC", BookEvent.Type.ASK, 3100, 7, DAY * 17001 + 7);
+      writer.append(ask);
+      written.add(ask.toString() + ask.getReceiveNanos());
+    }
+
+    List<String> read = new ArrayList<>();
+    BookEvent event = new BookEvent();
+    try (JournalReader reader = new JournalReader(dir)) {
+      while (reader.next(event)) {
+        read.add(event.toString() + event.getReceiveNanos());
+        if (event.getType() == BookEvent.Type.TRADE) {
+          Assert.assertTrue(event.isBuy());
+          Assert.assertEquals(1468800000123L, event.getExchangeTime());
+        }
+      }
+    }
+    Assert.assertEquals(written, read);
+  }
+
+  @Test
+  public void recordBusEvents() throws Exception {
+    MarketDataBus bus = new MarketDataBus(16);
+    MarketDataRecorder recorder = new MarketDataRecorder(bus, dir);
+    recorder.start();
+    TickOrderBook book = new TickOrderBook(5, 2, 8);
+    book.updateBid("100.00", "1");
+    book.updateAsk("100.50", "3");
+    book.setLastUpdateId(7);
+    bus.publishBook(Venue.BINANCE, "BTCUSDT", book, 1531000000000L, ReceiveClock.nanos());
+    bus.publishTrade(Venue.BINANCE, "BTCUSDT", 10025, 50000000, 2, 8, false, 8, 1531000000001L,
+      ReceiveClock.nanos());
+    long deadline = System.currentTimeMillis() + 5000;
+    while (recorder.getSequence() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    recorder.close();
+    Assert.assertEquals(0, recorder.getFailureCount());
+
+    List<BookEvent.Type> types = new ArrayList<>();
+    BookEvent event = new BookEvent();
+    try (JournalReader reader = new JournalReader(dir)) {
+      while (reader.next(event)) {
+        types.add(event.getType());
+        Assert.assertEquals("BTCUSDT", event.getSymbol());
+        Assert.assertEquals(0, reader.getSymbolId());
+        Assert.assertTrue(event.getReceiveNanos() > 0);
+      }
+      Assert.assertEquals(BookEvent.Type.TRADE, event.getType());
+      Assert.assertEquals(1531000000001L, event.getExchangeTime());
+      Assert.assertFalse(event.isBuy());
+      Assert.assertTrue(event.isEndOfUpdate());
+    }
+    List<BookEvent.Type> expected = new ArrayList<>();
+    expected.add(BookEvent.Type.CLEAR);
+    expected.add(BookEvent.Type.BID);
+    expected.add(BookEvent.Type.ASK);
+    expected.add(BookEvent.Type.TRADE);
+    Assert.assertEquals(expected, types);
+  }
+
+  @Test
+  public void dropWholeUpdatesWhileDiskIsBehind() throws Exception {
+    MarketDataRecorder recorder = new MarketDataRecorder(new MarketDataBus(16), new JournalWriter(dir), 4);
+    BookEvent.Type[] types = {
+      BookEvent.Type.CLEAR, BookEvent.Type.BID, BookEvent.Type.ASK,
+      // the backlog of 4 is full at the ask, the whole update is dropped
+      BookEvent.Type.BID, BookEvent.Type.ASK,
+      BookEvent.Type.TRADE};
+    boolean[] ends = {false, false, true, false, true, true};
+    long receiveNanos = 1531000000000000000L;
+    for (int seq = 0; seq < types.length; seq++) {
+      BookEvent event = event(Venue.BINANCE, "BTCUSDT", types[seq], 10000 + seq, 1, receiveNanos + seq);
+      event.setEndOfUpdate(ends[seq]);
+      recorder.onEvent(event, seq, seq == types.length - 1);
+    }
+    Assert.assertEquals(2, recorder.getDroppedCount());
+
+    recorder.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (recorder.getSequence() < 5 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    recorder.close();
+
+    List<Long> prices = new ArrayList<>();
+    BookEvent event = new BookEvent();
+    try (JournalReader reader = new JournalReader(dir)) {
+      while (reader.next(event)) {
+        prices.add(event.getPrice());
+      }
+    }
+    List<Long> expected = new ArrayList<>();
+    expected.add(10000L);
+    expected.add(10001L);
+    expected.add(10002L);
+    expected.add(10005L);
+    Assert.assertEquals(expected, prices);
+  }
+
+  private static BookEvent event(Venue venue, String symbol, BookEvent.Type type, long price, long qty,
+                                 long receiveNanos) {
+    BookEvent event = new BookEvent();
+    event.set(venue, symbol, type, price, qty, 2, 8, receiveNanos % 1000);
+    event.setTimes(receiveNanos / 1_000_000, receiveNanos);
+    event.setEndOfUpdate(qty % 2 == 0);
+    return event;
+  }
+}
@@ -0,0 +1,58 @@
+package io.magicalne.smym.orderbook;
+
+import io.magicalne.smym.decimal.Decimals;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TickOrderBookTest {
+
+  @Test
+  public void upsertKeepsSidesSortedAndBounded() {
+    TickOrderBook book = new TickOrderBook(3, 2, 8);
+    book.updateAsk("101.00000000", "1.00000000");
+    book.updateAsk("100.50000000", "2.00000000");
+    book.updateAsk("102.00000000", "3.00000000");
+    book.updateAsk("103.00000000", "4.00000000");
+    book.updateBid("99.00000000", "1.00000000");
+    book.updateBid("100.00000000", "2.00000000");
+
+    Assert.assertEquals(3, book.askCount());
+    Assert.assertEquals(100.5, book.bestAskPrice(), 0);
+    Assert.assertEquals(101, book.askPrice(1), 0);
+    Assert.assertEquals(102, book.askPrice(2), 0);
+    Assert.assertEquals(100, book.bestBidPrice(), 0);
+    Assert.assertEquals(99, book.bidPrice(1), 0);
+
+    book.updateAsk("100.40000000", "5.00000000");
+    Assert.assertEquals(3, book.askCount());
+    Assert.assertEquals(100.4, book.bestAskPrice(), 0);
+    Assert.assertEquals(101, book.askPrice(2), 0);
+
+    book.updateAsk("101.00000000", "0.50000000");
+    Assert.assertEquals(0.5, book.askQty(2), 0);
+  }
+
+  @Test
+  public void zeroQtyRemovesLevel() {
+    TickOrderBook book = new TickOrderBook(5, 2, 8);
+    book.updateBid("10.01", "1");
+    book.updateBid("10.02", "1");
+    book.updateBid("10.01", "0.00000000");
+    Assert.assertEquals(1, book.bidCount());
+    Assert.assertEquals(10.02, book.bestBidPrice(), 0);
+    book.updateBid("10.02", "0");
+    Assert.assertEquals(0, book.bidCount());
+    Assert.assertEquals(-1, book.bestBidPrice(), 0);
+  }
+
+  @Test
+  public void parseAndFormatScaledDecimals() {
+    Assert.assertEquals(1234L, Decimals.parseScaled("0.01234000", 5));
+    Assert.assertEquals(124L, Decimals.parseScaled("0.01235", 4));
+    Assert.assertEquals(-150L, Decimals.parseScaled("-1.5", 2));
+    Assert.assertEquals(7L, Decimals.parseScaled("7", 0));
+    Assert.assertEquals("0.01234", Decimals.format(1234L, 5));
+    Assert.assertEquals("-1.50", Decimals.format(-150L, 2));
+    Assert.assertEquals("42", Decimals.format(42L, 0));
+  }
+}
@@ -0,0 +1,189 @@
+package io.magicalne.smym.replay;
+
+import io.magicalne.smym.marketdata.BookEvent;
+import io.magicalne.smym.marketdata.BookEventSource;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.orderbook.OrderBookView;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplayEngineTest {
+
+  private static final String SYMBOL = "BTCUSDT";
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  public void replayBooksInVirtualTime() throws IOException {
+    Events events = new Events();
+    events.level(BookEvent.Type.BID, 10000, 5, 1, false, SECOND);
+    events.level(BookEvent.Type.ASK, 10010, 3, 1, true, SECOND);
+    events.level(BookEvent.Type.ASK, 10010, 0, 2, false, 3 * SECOND);
+    events.level(BookEvent.Type.ASK, 10020, 7, 2, true, 3 * SECOND);
+    ReplayEngine engine = new ReplayEngine(events);
+    OrderBookView view = engine.subscribe(Venue.BINANCE, SYMBOL, 7, 5, 2, 8);
+    List<String> seen = new ArrayList<>();
+    engine.setListener(Venue.BINANCE, symbolId -> seen.add(symbolId + " " + engine.nanos() + " "
+      + view.bestAskPrice()));
+    List<Long> ticks = new ArrayList<>();
+    engine.schedule(SECOND, () -> ticks.add(engine.nanos()));
+
+    Assert.assertEquals(2, engine.run());
+    Assert.assertEquals(2, seen.size());
+    Assert.assertEquals("7 " + SECOND + " 100.1", seen.get(0));
+    Assert.assertEquals("7 " + 3 * SECOND + " 100.2", seen.get(1));
+    // the task runs at its own virtual time before the update received after it
+    Assert.assertEquals(2, ticks.size());
+    Assert.assertEquals(2 * SECOND, (long) ticks.get(0));
+    Assert.assertEquals(3 * SECOND, (long) ticks.get(1));
+    OrderBookSnapshot snapshot = new OrderBookSnapshot();
+    view.read(snapshot);
+    Assert.assertEquals(2, snapshot.getLastUpdateId());
+    Assert.assertEquals(1, snapshot.askCount());
+  }
+
+  @Test
+  public void fillRestingOrderBehindItsQueue() throws IOException {
+    Events events = new Events();
+    events.level(BookEvent.Type.BID, 10000, 5_00000000L, 1, false, SECOND);
+    events.level(BookEvent.Type.ASK, 10010, 3_00000000L, 1, true, SECOND);
+    events.trade(10000, 3_00000000L, false, 2 * SECOND);
+    events.trade(10000, 4_00000000L, false, 3 * SECOND);
+    events.level(BookEvent.Type.ASK, 10000, 1_00000000L, 4, true, 4 * SECOND);
+    ReplayEngine engine = new ReplayEngine(events);
+    engine.subscribe(Venue.BINANCE, SYMBOL, 0, 5, 2, 8);
+    MatchingEngine matching = engine.getMatchingEngine();
+    Assert.assertTrue(engine.step());
+
+    SimulatedOrder bid = matching.submit(Venue.BINANCE, SYMBOL, true, SimulatedOrder.Type.GTC, 10000, 3_00000000L);
+    Assert.assertEquals(SimulatedOrder.Status.NEW, bid.getStatus());
+    Assert.assertEquals(1000, bid.getTime());
+    // 3 of the 5 ahead trade
+    Assert.assertTrue(engine.step());
+    Assert.assertEquals(0, bid.getFilledQty());
+    // 2 left ahead, the other 2 fill the order
+    Assert.assertTrue(engine.step());
+    Assert.assertEquals(2_00000000L, bid.getFilledQty());
+    Assert.assertEquals(SimulatedOrder.Status.PARTIALLY_FILLED, bid.getStatus());
+    // the ask reaches the bid
+    Assert.assertTrue(engine.step());
+    Assert.assertEquals(SimulatedOrder.Status.FILLED, bid.getStatus());
+    Assert.assertEquals(4000, bid.getUpdateTime());
+    Assert.assertEquals(100.0, bid.getAveragePrice(), 1e-9);
+    Assert.assertEquals(3_00000000L, matching.getPosition(Venue.BINANCE, SYMBOL));
+    Assert.assertEquals(-300.0, matching.getCash(Venue.BINANCE, SYMBOL), 1e-9);
+    Assert.assertTrue(matching.getOpenOrders(Venue.BINANCE, SYMBOL).isEmpty());
+    Assert.assertFalse(engine.step());
+  }
+
+  @Test
+  public void matchOrdersThatCross() throws IOException {
+    Events events = new Events();
+    events.level(BookEvent.Type.BID, 10000, 5, 1, false, SECOND);
+    events.level(BookEvent.Type.ASK, 10010, 3, 1, false, SECOND);
+    events.level(BookEvent.Type.ASK, 10020, 4, 1, true, SECOND);
+    ReplayEngine engine = new ReplayEngine(events);
+    engine.run();
+    MatchingEngine matching = engine.getMatchingEngine();
+
+    SimulatedOrder ioc = matching.submit(Venue.BINANCE, SYMBOL, true, SimulatedOrder.Type.IOC, 10020, 10);
+    Assert.assertEquals(SimulatedOrder.Status.CANCELED, ioc.getStatus());
+    Assert.assertEquals(7, ioc.getFilledQty());
+    Assert.assertEquals((3 * 100.1 + 4 * 100.2) / 7, ioc.getAveragePrice(), 1e-9);
+    // the asks are taken until the book updates
+    SimulatedOrder again = matching.submit(Venue.BINANCE, SYMBOL, true, SimulatedOrder.Type.IOC, 10020, 1);
+    Assert.assertEquals(0, again.getFilledQty());
+
+    SimulatedOrder fok = matching.submit(Venue.BINANCE, SYMBOL, false, SimulatedOrder.Type.FOK, 10000, 6);
+    Assert.assertEquals(SimulatedOrder.Status.CANCELED, fok.getStatus());
+    Assert.assertEquals(0, fok.getFilledQty());
+
+    SimulatedOrder postOnly =
+      matching.submit(Venue.BINANCE, SYMBOL, false, SimulatedOrder.Type.POST_ONLY, 10000, 1);
+    Assert.assertEquals(SimulatedOrder.Status.REJECTED, postOnly.getStatus());
+
+    SimulatedOrder ask = matching.submit(Venue.BINANCE, SYMBOL, false, SimulatedOrder.Type.POST_ONLY, 10030, 1);
+    Assert.assertTrue(ask.isOpen());
+    Assert.assertTrue(matching.amend(ask.getId(), 10000));
+    Assert.assertEquals(SimulatedOrder.Status.CANCELED, ask.getStatus());
+    Assert.assertFalse(matching.cancel(ask.getId()));
+
+    SimulatedOrder market = matching.submit(Venue.BINANCE, SYMBOL, false, SimulatedOrder.Type.MARKET, 0, 2);
+    Assert.assertEquals(SimulatedOrder.Status.FILLED, market.getStatus());
+    Assert.assertEquals(5, matching.getPosition(Venue.BINANCE, SYMBOL));
+    Assert.assertEquals(6, matching.getOrders(Venue.BINANCE, SYMBOL).size());
+  }
+
+  @Test
+  public void replayJsonSnapshots() throws IOException {
+    String json = "{\"11\":{\"ask_p_0\":6506.5,\"ask_vol_0\":10.0,\"bid_p_0\":6506.0,\"bid_vol_0\":20.0},"
+      + "\"10\":{\"ask_p_0\":6506.0,\"ask_vol_0\":30.0,\"ask_p_1\":6506.5,\"ask_vol_1\":5.0,"
+      + "\"bid_p_0\":6505.5,\"bid_vol_0\":40.0}}";
+    JsonBookSource source = new JsonBookSource(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+      Venue.BITMEX, "XBTUSD", 8, 0, SECOND);
+    ReplayEngine engine = new ReplayEngine(source);
+    OrderBookView view = engine.subscribe(Venue.BITMEX, "XBTUSD", 0, 10, 8, 0);
+    List<Double> asks = new ArrayList<>();
+    engine.setListener(Venue.BITMEX, symbolId -> asks.add(view.bestAskPrice()));
+
+    Assert.assertEquals(2, engine.run());
+    Assert.assertEquals(2, asks.size());
+    Assert.assertEquals(6506.0, asks.get(0), 0);
+    Assert.assertEquals(6506.5, asks.get(1), 0);
+    Assert.assertEquals(11 * SECOND, engine.nanos());
+    OrderBookSnapshot snapshot = new OrderBookSnapshot();
+    view.read(snapshot);
+    Assert.assertEquals(1, snapshot.askCount());
+    Assert.assertEquals(1, snapshot.bidCount());
+    Assert.assertEquals(11, snapshot.getLastUpdateId());
+  }
+
+  private static final class Events implements BookEventSource {
+    private final List<BookEvent> events = new ArrayList<>();
+    private int next = 0;
+
+    private void level(BookEvent.Type type, long price, long qty, long updateId, boolean end, long nanos) {
+      BookEvent event = new BookEvent();
+      event.set(Venue.BINANCE, SYMBOL, type, price, qty, 2, 8, updateId);
+      event.setTimes(0, nanos);
+      event.setEndOfUpdate(end);
+      events.add(event);
+    }
+
+    private void trade(long price, long qty, boolean buy, long nanos) {
+      BookEvent event = new BookEvent();
+      event.trade(Venue.BINANCE, SYMBOL, price, qty, 2, 8, buy, 0);
+      event.setTimes(0, nanos);
+      event.setEndOfUpdate(true);
+      events.add(event);
+    }
+
+    @Override
+    public boolean next(BookEvent event) {
+      if (next == events.size()) {
+        return false;
+      }
+      BookEvent e = events.get(next++);
+      if (e.getType() == BookEvent.Type.TRADE) {
+        event.trade(e.getVenue(), e.getSymbol(), e.getPrice(), e.getQty(), e.getPriceScale(), e.getQtyScale(),
+          e.isBuy(), e.getUpdateId());
+      } else {
+        event.set(e.getVenue(), e.getSymbol(), e.getType(), e.getPrice(), e.getQty(), e.getPriceScale(),
+          e.getQtyScale(), e.getUpdateId());
+      }
+      event.setTimes(e.getExchangeTime(), e.getReceiveNanos());
+      event.setEndOfUpdate(e.isEndOfUpdate());
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
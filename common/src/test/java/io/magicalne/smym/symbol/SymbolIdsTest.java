@@ -0,0 +1,29 @@
+package io.magicalne.smym.symbol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SymbolIdsTest {
+
+  @Test
+  public void lookupRegionsWithoutStrings() {
+    SymbolIds ids = new SymbolIds();
+    for (int i = 0; i < 500; i++) {
+      ids.put("sym" + i + "usdt", i);
+    }
+    Assert.assertEquals(500, ids.size());
+    Assert.assertEquals(42, ids.get("sym42usdt"));
+    Assert.assertEquals(SymbolIds.UNKNOWN, ids.get("sym42usd"));
+    Assert.assertEquals(SymbolIds.UNKNOWN, ids.get(""));
+
+    String topic = "market.sym7usdt.depth.step0";
+    Assert.assertEquals(7, ids.get(topic, 7, 15));
+    Assert.assertEquals(SymbolIds.UNKNOWN, ids.get(topic, 7, 14));
+    char[] buf = ("xx" + topic).toCharArray();
+    Assert.assertEquals(7, ids.get(buf, 9, 8));
+
+    ids.put("sym7usdt", 1000);
+    Assert.assertEquals(1000, ids.get(topic, 7, 15));
+    Assert.assertEquals(500, ids.size());
+  }
+}
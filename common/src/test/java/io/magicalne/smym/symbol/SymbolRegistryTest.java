@@ -0,0 +1,59 @@
+package io.magicalne.smym.symbol;
+
+import io.magicalne.smym.decimal.Decimals;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SymbolRegistryTest {
+
+  @Test
+  public void internSymbolsWithTheirRules() {
+    SymbolRegistry registry = new SymbolRegistry();
+    int btc = registry.put("BTCUSDT", "BTC", "USDT", "0.01000000", "0.00000100", 10);
+    int eth = registry.put("ETHBTC", "ETH", "BTC", "0.00000500", "0.00100000", 0.001);
+    Assert.assertEquals(0, btc);
+    Assert.assertEquals(1, eth);
+    Assert.assertEquals(2, registry.size());
+    Assert.assertEquals(eth, registry.id("ETHBTC"));
+    Assert.assertEquals(SymbolRegistry.UNKNOWN, registry.id("LTCBTC"));
+    Assert.assertEquals("ETHBTC", registry.name(eth));
+    Assert.assertEquals("ETH", registry.base(eth));
+    Assert.assertEquals("BTC", registry.quote(eth));
+
+    Assert.assertEquals(2, registry.pricePrecision(btc));
+    Assert.assertEquals(6, registry.qtyPrecision(btc));
+    Assert.assertEquals(1, registry.tickUnits(btc));
+    Assert.assertEquals(6, registry.pricePrecision(eth));
+    Assert.assertEquals(5, registry.tickUnits(eth));
+    Assert.assertEquals(3, registry.qtyPrecision(eth));
+    Assert.assertEquals(1, registry.stepUnits(eth));
+    Assert.assertEquals(0.001, registry.minNotional(eth), 0);
+
+    // a refresh keeps the id and replaces the rules
+    Assert.assertEquals(btc, registry.put("BTCUSDT", "BTC", "USDT", "0.10000000", "0.00001000", 10));
+    Assert.assertEquals(1, registry.pricePrecision(btc));
+    Assert.assertEquals(5, registry.qtyPrecision(btc));
+    Assert.assertEquals(2, registry.size());
+  }
+
+  @Test
+  public void growBeyondInitialCapacity() {
+    SymbolRegistry registry = new SymbolRegistry();
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(i, registry.put("S" + i, "B" + i, "Q", i % 9, i % 7, 1, 1, 0));
+    }
+    for (int i = 0; i < 1000; i++) {
+      int id = registry.require("S" + i);
+      Assert.assertEquals(i % 9, registry.pricePrecision(id));
+      Assert.assertEquals(i % 7, registry.qtyPrecision(id));
+    }
+  }
+
+  @Test
+  public void precisionOfIncrements() {
+    Assert.assertEquals(0, Decimals.precision("1.00000000"));
+    Assert.assertEquals(0, Decimals.precision("10"));
+    Assert.assertEquals(3, Decimals.precision("0.00500000"));
+    Assert.assertEquals(8, Decimals.precision("0.00000001"));
+  }
+}
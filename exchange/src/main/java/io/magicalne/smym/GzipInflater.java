@@ -0,0 +1,178 @@
+package io.magicalne.smym;
+
+import okio.ByteString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reusable gzip decoder: one native {@link Inflater} and growable input/output buffers, the gzip header
+ * is parsed by hand. Inflating a message allocates nothing once the buffers are big enough.
+ *
+ * Not thread safe, use one instance per connection or per thread.
+ */
+public class GzipInflater {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+    private static final int MAX_OUTPUT_SIZE = 64 << 20;
+
+    private final Inflater inflater = new Inflater(true);
+    private byte[] input;
+    private byte[] output;
+    private int inputLength;
+    // appends to the input buffer, ByteString hands its bytes out through a stream without copying them
+    private final OutputStream inputWriter = new OutputStream() {
+        @Override
+        public void write(int b) {
+            ensureInput(inputLength + 1);
+            input[inputLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureInput(inputLength + len);
+            System.arraycopy(b, off, input, inputLength, len);
+            inputLength += len;
+        }
+    };
+
+    public GzipInflater() {
+        this(4096, 16384);
+    }
+
+    public GzipInflater(int inputSize, int outputSize) {
+        this.input = new byte[inputSize];
+        this.output = new byte[outputSize];
+    }
+
+    /**
+     * @return the buffer holding the result of the last inflate, valid until the next call.
+     */
+    public byte[] buffer() {
+        return output;
+    }
+
+    /**
+     * Inflate the remaining bytes of src, src's position is not changed.
+     * @return number of inflated bytes in {@link #buffer()}.
+     */
+    public int inflate(ByteBuffer src) throws ZipException {
+        if (src.hasArray()) {
+            return inflate(src.array(), src.arrayOffset() + src.position(), src.remaining());
+        }
+        int len = src.remaining();
+        ensureInput(len);
+        src.duplicate().get(input, 0, len);
+        return inflate(input, 0, len);
+    }
+
+    /**
+     * Inflate a websocket frame. {@link ByteString#asByteBuffer()} is read only, so it never exposes an array;
+     * the frame is written once into the reused input buffer instead, since the {@link Inflater} of Java 8 only
+     * reads arrays.
+     * @return number of inflated bytes in {@link #buffer()}.
+     */
+    public int inflate(ByteString src) throws IOException {
+        ensureInput(src.size());
+        inputLength = 0;
+        src.write(inputWriter);
+        return inflate(input, 0, inputLength);
+    }
+
+    private void ensureInput(int len) {
+        if (input.length < len) {
+            input = Arrays.copyOf(input, Math.max(len, input.length * 2));
+        }
+    }
+
+    /**
+     * @return number of inflated bytes in {@link #buffer()}.
+     */
+    public int inflate(byte[] src, int off, int len) throws ZipException {
+        int end = off + len;
+        int pos = skipHeader(src, off, end);
+        if (end - pos < TRAILER_SIZE) {
+            throw new ZipException("Truncated gzip data.");
+        }
+        int size = (src[end - 4] & 0xff) | (src[end - 3] & 0xff) << 8 | (src[end - 2] & 0xff) << 16
+                | (src[end - 1] & 0xff) << 24;
+        if (size < 0 || size > MAX_OUTPUT_SIZE) {
+            throw new ZipException("Bad gzip trailer size " + size + ".");
+        }
+        if (size > output.length) {
+            output = new byte[size];
+        }
+        inflater.reset();
+        inflater.setInput(src, pos, end - TRAILER_SIZE - pos);
+        int n = 0;
+        try {
+            while (!inflater.finished()) {
+                if (n == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int r = inflater.inflate(output, n, output.length - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated deflate data.");
+                }
+                n += r;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        if (n != size) {
+            throw new ZipException("Inflated size " + n + " does not match gzip trailer " + size + ".");
+        }
+        return n;
+    }
+
+    public void end() {
+        inflater.end();
+    }
+
+    private static int skipHeader(byte[] src, int pos, int end) throws ZipException {
+        if (end - pos < HEADER_SIZE || (src[pos] & 0xff) != 0x1f || (src[pos + 1] & 0xff) != 0x8b) {
+            throw new ZipException("Not in gzip format.");
+        }
+        if (src[pos + 2] != 8) {
+            throw new ZipException("Unsupported compression method.");
+        }
+        int flags = src[pos + 3] & 0xff;
+        pos += HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            pos += 2 + ((src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            pos = skipZeroTerminated(src, pos, end);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            pos = skipZeroTerminated(src, pos, end);
+        }
+        if ((flags & FHCRC) != 0) {
+            pos += 2;
+        }
+        if (pos > end) {
+            throw new ZipException("Truncated gzip header.");
+        }
+        return pos;
+    }
+
+    private static int skipZeroTerminated(byte[] src, int pos, int end) throws ZipException {
+        while (pos < end && src[pos] != 0) {
+            pos++;
+        }
+        if (pos == end) {
+            throw new ZipException("Truncated gzip header.");
+        }
+        return pos + 1;
+    }
+}
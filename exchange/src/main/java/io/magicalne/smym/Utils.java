@@ -2,29 +2,65 @@ package io.magicalne.smym;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
-import java.util.zip.GZIPInputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 @Slf4j
 public class Utils {
 
+    private static final ThreadLocal<GzipInflater> INFLATER = ThreadLocal.withInitial(GzipInflater::new);
+    private static final ThreadLocal<ByteBuffer> INFLATE_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(16384));
+
+    /**
+     * Ungzip into a new array, backed by the inflater of the calling thread.
+     */
     public static byte[] ungzip(byte[] source) throws IOException {
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(source);
-        GZIPInputStream gzipInputStream = new GZIPInputStream(byteArrayInputStream);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        int res = 0;
-        byte buf[] = new byte[1024];
-        while (res >= 0) {
-            res = gzipInputStream.read(buf, 0, buf.length);
-            if (res > 0) {
-                byteArrayOutputStream.write(buf, 0, res);
-            }
+        GzipInflater inflater = INFLATER.get();
+        int n = inflater.inflate(source, 0, source.length);
+        return Arrays.copyOf(inflater.buffer(), n);
+    }
+
+    /**
+     * Ungzip the remaining bytes of src into a direct buffer of the calling thread.
+     * @return a slice of the inflated bytes, valid until the next inflate on this thread.
+     */
+    public static ByteBuffer inflate(ByteBuffer src) throws IOException {
+        GzipInflater inflater = INFLATER.get();
+        int n = inflater.inflate(src);
+        ByteBuffer dst = INFLATE_BUFFER.get();
+        if (dst.capacity() < n) {
+            dst = ByteBuffer.allocateDirect(Math.max(n, dst.capacity() * 2));
+            INFLATE_BUFFER.set(dst);
+        }
+        dst.clear();
+        return copy(inflater, n, dst);
+    }
+
+    /**
+     * Ungzip the remaining bytes of src into dst starting at its position, dst's position is moved past
+     * the inflated bytes.
+     * @return a slice of the inflated bytes.
+     * @throws BufferOverflowException if dst has not enough room.
+     */
+    public static ByteBuffer inflate(ByteBuffer src, ByteBuffer dst) throws IOException {
+        GzipInflater inflater = INFLATER.get();
+        int n = inflater.inflate(src);
+        return copy(inflater, n, dst);
+    }
+
+    private static ByteBuffer copy(GzipInflater inflater, int n, ByteBuffer dst) {
+        if (dst.remaining() < n) {
+            throw new BufferOverflowException();
         }
-        return byteArrayOutputStream.toByteArray();
+        ByteBuffer slice = dst.slice();
+        slice.limit(n);
+        dst.put(inflater.buffer(), 0, n);
+        return slice;
     }
 
     public static Proxy getProxyFromEnv(String httpProxy) {
@@ -0,0 +1,255 @@
+package io.magicalne.smym.exchanges;
+
+import com.binance.api.client.BinanceApiAsyncRestClient;
+import com.binance.api.client.domain.event.DepthEvent;
+import com.binance.api.client.domain.market.OrderBook;
+import com.binance.api.client.domain.market.OrderBookEntry;
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.event.BookUpdateListener;
+import io.magicalne.smym.marketdata.BookEvent;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.ReceiveClock;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one local order book in sync with a Binance diff depth stream.
+ *
+ * Diffs are buffered until a REST snapshot arrives, aligned to the snapshot's lastUpdateId and then
+ * applied in sequence. When a diff does not continue from the previous one (U != last u + 1) the
+ * book is marked out of sync and a new snapshot is requested asynchronously while diffs keep being
+ * buffered. Snapshots are handed over to the websocket thread, which stays the only writer of the book
+ * and publishes it to an {@link OrderBookView} after every change. The view is emptied while the book
+ * is out of sync. An optional {@link BookUpdateListener} is told about every publish, an optional
+ * {@link MarketDataBus} receives the whole book on every sync, each applied diff and a clear on every resync,
+ * stamped with the event time and the receive time of the diff being handled.
+ */
+@Slf4j
+public class BinanceDepthSynchronizer {
+
+  private static final int MAX_BUFFERED_EVENTS = 1024;
+
+  private final String symbol;
+  // the id the listener is told
+  private final int symbolId;
+  private final int depth;
+  private final TickOrderBook orderBook;
+  private final OrderBookView view;
+  private final BinanceApiAsyncRestClient restClient;
+  private final ArrayDeque<DepthEvent> buffer = new ArrayDeque<>();
+  private final AtomicBoolean snapshotInFlight = new AtomicBoolean(false);
+  private final AtomicLong gaps = new AtomicLong(0);
+  private final AtomicLong resyncs = new AtomicLong(0);
+  private volatile OrderBook pendingSnapshot;
+  private volatile boolean synced = false;
+  private volatile BookUpdateListener listener;
+  private MarketDataBus bus;
+  // times of the diff being handled, for the bus
+  private long eventTime;
+  private long receiveNanos;
+
+  public BinanceDepthSynchronizer(String symbol, int symbolId, int depth, TickOrderBook orderBook,
+                                  OrderBookView view, BinanceApiAsyncRestClient restClient) {
+    this.symbol = symbol;
+    this.symbolId = symbolId;
+    this.depth = depth;
+    this.orderBook = orderBook;
+    this.view = view;
+    this.restClient = restClient;
+  }
+
+  public void start() {
+    requestSnapshot();
+  }
+
+  public void setListener(BookUpdateListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Must be set before {@link #start()}.
+   */
+  public void setMarketDataBus(MarketDataBus bus) {
+    this.bus = bus;
+  }
+
+  public String getSymbol() {
+    return symbol;
+  }
+
+  public boolean isSynced() {
+    return synced;
+  }
+
+  public long getGapCount() {
+    return gaps.get();
+  }
+
+  public long getResyncCount() {
+    return resyncs.get();
+  }
+
+  /**
+   * Called from the websocket thread for every diff of this symbol.
+   */
+  public void onEvent(DepthEvent event) {
+    this.receiveNanos = ReceiveClock.nanos();
+    this.eventTime = event.getEventTime();
+    OrderBook snapshot = this.pendingSnapshot;
+    if (snapshot != null) {
+      this.pendingSnapshot = null;
+      buffer(event);
+      applySnapshot(snapshot);
+      return;
+    }
+    if (!synced) {
+      buffer(event);
+      if (!snapshotInFlight.get()) {
+        requestSnapshot();
+      }
+      return;
+    }
+    long lastUpdateId = orderBook.getLastUpdateId();
+    if (event.getFinalUpdateId() <= lastUpdateId) {
+      return;
+    }
+    if (event.getFirstUpdateId() > lastUpdateId + 1) {
+      gaps.incrementAndGet();
+      log.warn("Depth gap of {}, expected update id {} but got {}. Resync order book.",
+        symbol, lastUpdateId + 1, event.getFirstUpdateId());
+      buffer(event);
+      resync();
+      return;
+    }
+    apply(event, bus);
+    publish();
+  }
+
+  private void applySnapshot(OrderBook snapshot) {
+    long lastUpdateId = snapshot.getLastUpdateId();
+    while (!buffer.isEmpty() && buffer.peekFirst().getFinalUpdateId() <= lastUpdateId) {
+      buffer.pollFirst();
+    }
+    DepthEvent first = buffer.peekFirst();
+    if (first != null && first.getFirstUpdateId() > lastUpdateId + 1) {
+      log.warn("Snapshot of {} is older than buffered diffs, snapshot: {}, first diff: {}.",
+        symbol, lastUpdateId, first.getFirstUpdateId());
+      resync();
+      return;
+    }
+    orderBook.clear();
+    for (OrderBookEntry ask : snapshot.getAsks()) {
+      orderBook.updateAsk(ask.getPrice(), ask.getQty());
+    }
+    for (OrderBookEntry bid : snapshot.getBids()) {
+      orderBook.updateBid(bid.getPrice(), bid.getQty());
+    }
+    orderBook.setLastUpdateId(lastUpdateId);
+    DepthEvent event;
+    while ((event = buffer.pollFirst()) != null) {
+      if (event.getFirstUpdateId() > orderBook.getLastUpdateId() + 1) {
+        gaps.incrementAndGet();
+        buffer.addFirst(event);
+        resync();
+        return;
+      }
+      apply(event, null);
+    }
+    synced = true;
+    if (bus != null) {
+      bus.publishBook(Venue.BINANCE, symbol, orderBook, eventTime, receiveNanos);
+    }
+    publish();
+    log.info("Order book of {} synced at update id {}.", symbol, orderBook.getLastUpdateId());
+  }
+
+  /**
+   * Apply a diff and publish its levels to the bus, if any.
+   */
+  private void apply(DepthEvent event, MarketDataBus bus) {
+    int priceScale = orderBook.getPriceScale();
+    int qtyScale = orderBook.getQtyScale();
+    long updateId = event.getFinalUpdateId();
+    List<OrderBookEntry> asks = event.getAsks();
+    List<OrderBookEntry> bids = event.getBids();
+    int levels = asks.size() + bids.size();
+    boolean deltas = bus != null && levels > 0 && levels <= bus.getCapacity();
+    long lo = deltas ? bus.claim(levels) : 0;
+    long seq = lo;
+    for (int i = 0; i < asks.size(); i++) {
+      OrderBookEntry ask = asks.get(i);
+      long price = Decimals.parseScaled(ask.getPrice(), priceScale);
+      long qty = Decimals.parseScaled(ask.getQty(), qtyScale);
+      orderBook.updateAsk(price, qty);
+      if (deltas) {
+        bus.get(seq++).set(Venue.BINANCE, symbol, BookEvent.Type.ASK, price, qty, priceScale, qtyScale, updateId);
+      }
+    }
+    for (int i = 0; i < bids.size(); i++) {
+      OrderBookEntry bid = bids.get(i);
+      long price = Decimals.parseScaled(bid.getPrice(), priceScale);
+      long qty = Decimals.parseScaled(bid.getQty(), qtyScale);
+      orderBook.updateBid(price, qty);
+      if (deltas) {
+        bus.get(seq++).set(Venue.BINANCE, symbol, BookEvent.Type.BID, price, qty, priceScale, qtyScale, updateId);
+      }
+    }
+    orderBook.setLastUpdateId(updateId);
+    if (deltas) {
+      bus.publish(lo, seq - 1, eventTime, receiveNanos);
+    } else if (bus != null && levels > 0) {
+      bus.publishBook(Venue.BINANCE, symbol, orderBook, eventTime, receiveNanos);
+    }
+  }
+
+  private void publish() {
+    view.publish(orderBook);
+    BookUpdateListener l = this.listener;
+    if (l != null) {
+      l.onBookUpdate(symbolId);
+    }
+  }
+
+  private void buffer(DepthEvent event) {
+    if (buffer.size() >= MAX_BUFFERED_EVENTS) {
+      buffer.pollFirst();
+    }
+    buffer.addLast(event);
+  }
+
+  private void resync() {
+    synced = false;
+    view.invalidate();
+    if (bus != null) {
+      bus.publishClear(Venue.BINANCE, symbol, orderBook.getLastUpdateId(), eventTime, receiveNanos);
+    }
+    resyncs.incrementAndGet();
+    requestSnapshot();
+  }
+
+  private void requestSnapshot() {
+    if (!snapshotInFlight.compareAndSet(false, true)) {
+      return;
+    }
+    restClient.getOrderBook(symbol, depth, new UniverseApiCallback<OrderBook>() {
+      @Override
+      public void onResponse(OrderBook snapshot) {
+        pendingSnapshot = snapshot;
+        snapshotInFlight.set(false);
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        snapshotInFlight.set(false);
+        log.error("Cannot get order book snapshot of {}.", symbol, cause);
+      }
+    });
+  }
+}
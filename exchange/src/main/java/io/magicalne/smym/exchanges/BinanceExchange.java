@@ -6,6 +6,7 @@ import com.binance.api.client.domain.account.*;
 import com.binance.api.client.domain.account.request.AllOrdersRequest;
 import com.binance.api.client.domain.account.request.CancelOrderRequest;
 import com.binance.api.client.domain.account.request.OrderStatusRequest;
+import com.binance.api.client.domain.event.AggTradeEvent;
 import com.binance.api.client.domain.event.CandlestickEvent;
 import com.binance.api.client.domain.event.DepthEvent;
 import com.binance.api.client.domain.general.ExchangeInfo;
@@ -16,14 +17,26 @@ import com.binance.api.client.domain.market.CandlestickInterval;
 import com.binance.api.client.domain.market.OrderBook;
 import com.binance.api.client.domain.market.OrderBookEntry;
 import com.binance.api.client.exception.BinanceApiException;
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.event.BookUpdateListener;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.ReceiveClock;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import io.magicalne.smym.replay.ReplayEngine;
+import io.magicalne.smym.symbol.SymbolRegistry;
 import lombok.extern.slf4j.Slf4j;
 
-import java.math.BigDecimal;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class BinanceExchange {
@@ -31,16 +44,42 @@ public class BinanceExchange {
   private final BinanceApiWebSocketClient wsClient;
   private final BinanceApiRestClient restClient;
   private final BinanceApiAsyncRestClient asyncRestClient;
-  private ConcurrentMap<String, OrderBook> orderBookMap;
+  private static final int QTY_SCALE = 8;
+  private static final long INITIAL_SYNC_TIMEOUT_MS = 10000;
+
+  private static final ThreadLocal<OrderBookSnapshot> READ_BUFFER = ThreadLocal.withInitial(OrderBookSnapshot::new);
+
+  // indexed by the id of the symbol in the registry, null for symbols without a local book
+  private volatile OrderBookView[] orderBooks = new OrderBookView[0];
+  private volatile BinanceDepthSynchronizer[] depthSyncs = new BinanceDepthSynchronizer[0];
   private BinanceEventHandler<CandlestickEvent> candlestickHandler;
-  private int orderBookSize;
-  private ExchangeInfo exchangeInfo;
+  private volatile ExchangeInfo exchangeInfo;
+  private final SymbolRegistry symbolRegistry = new SymbolRegistry();
+  private ScheduledExecutorService symbolRefresher;
+  private BinanceOrderPipeline orderPipeline;
+  private volatile BookUpdateListener bookUpdateListener;
+  private MarketDataBus marketDataBus;
+  // null unless the books are replayed
+  private final ReplayEngine replayEngine;
 
   public BinanceExchange(String accessKey, String secretKey) {
     BinanceApiClientFactory factory = BinanceApiClientFactory.newInstance(accessKey, secretKey);
     this.wsClient = factory.newWebSocketClient();
     this.restClient = factory.newRestClient();
     this.asyncRestClient = factory.newAsyncRestClient();
+    this.replayEngine = null;
+  }
+
+  /**
+   * Read the local order books from the replay instead of depth streams and trade through the rest client on
+   * the replay thread, e.g. a {@link io.magicalne.smym.exchanges.replay.SimulatedBinanceClient} of the same
+   * replay. There are no streams to subscribe and no rate limits in virtual time.
+   */
+  public BinanceExchange(BinanceApiRestClient restClient, ReplayEngine replayEngine) {
+    this.wsClient = null;
+    this.restClient = restClient;
+    this.asyncRestClient = null;
+    this.replayEngine = replayEngine;
   }
 
   public void subscribeCandlestickEvent(Set<String> symbols, BinanceEventHandler<CandlestickEvent> handler) {
@@ -66,7 +105,23 @@ public class BinanceExchange {
   }
 
   public OrderBook getOrderBook(String symbol) {
-    return this.orderBookMap.get(symbol);
+    OrderBookSnapshot orderBook = readOrderBook(symbol, new OrderBookSnapshot());
+    if (orderBook == null) {
+      return null;
+    }
+    List<OrderBookEntry> asks = new ArrayList<>(orderBook.askCount());
+    for (int i = 0; i < orderBook.askCount(); i++) {
+      asks.add(toEntry(orderBook.askTicks(i), orderBook.askQtyUnits(i), orderBook));
+    }
+    List<OrderBookEntry> bids = new ArrayList<>(orderBook.bidCount());
+    for (int i = 0; i < orderBook.bidCount(); i++) {
+      bids.add(toEntry(orderBook.bidTicks(i), orderBook.bidQtyUnits(i), orderBook));
+    }
+    OrderBook copy = new OrderBook();
+    copy.setLastUpdateId(orderBook.getLastUpdateId());
+    copy.setAsks(asks);
+    copy.setBids(bids);
+    return copy;
   }
 
   public List<Order> orderHistory(String symbol) {
@@ -110,6 +165,33 @@ public class BinanceExchange {
     return this.restClient.newOrder(newOrder);
   }
 
+  /**
+   * Place the orders through the rate limited {@link BinanceOrderPipeline}, many of them in flight at once.
+   * @return responses of the accepted orders in the order of the request.
+   */
+  public CompletableFuture<List<NewOrderResponse>> placeOrders(List<NewOrder> orders) {
+    if (this.replayEngine != null) {
+      // there are no rate limits in virtual time, place them one after the other on the replay thread
+      List<NewOrderResponse> responses = new ArrayList<>(orders.size());
+      for (NewOrder order : orders) {
+        try {
+          responses.add(this.restClient.newOrder(order));
+        } catch (BinanceApiException e) {
+          log.error("Cannot place order {}", order, e);
+        }
+      }
+      return CompletableFuture.completedFuture(responses);
+    }
+    return getOrderPipeline().submit(orders);
+  }
+
+  public synchronized BinanceOrderPipeline getOrderPipeline() {
+    if (this.orderPipeline == null) {
+      this.orderPipeline = new BinanceOrderPipeline(this.asyncRestClient, getExchangeInfo().getRateLimits());
+    }
+    return this.orderPipeline;
+  }
+
   public void cancelOrder(String symbol, long orderId) {
     CancelOrderRequest request = new CancelOrderRequest(symbol, orderId);
     this.restClient.cancelOrder(request);
@@ -128,153 +210,315 @@ public class BinanceExchange {
     }
   }
 
-  public void createLocalOrderBook(Set<String> symbols, int depth) {
-    this.orderBookMap = new ConcurrentHashMap<>(symbols.size() / 3 * 4);
-    this.orderBookSize = depth;
+  /**
+   * Subscribe diff depth streams and keep a local order book per symbol. Books are aligned to REST
+   * snapshots asynchronously, this method only waits a bounded time for the initial sync. Each book is
+   * only written by its websocket thread, other threads read it through an {@link OrderBookView}. In a replay
+   * the books are the replayed ones, see {@link #BinanceExchange(BinanceApiRestClient, ReplayEngine)}.
+   */
+  public synchronized void createLocalOrderBook(Set<String> symbols, int depth) {
+    SymbolRegistry registry = getSymbolRegistry();
+    OrderBookView[] books = Arrays.copyOf(this.orderBooks, registry.size());
+    if (this.replayEngine != null) {
+      for (String symbol : symbols) {
+        int id = registry.require(symbol);
+        if (books[id] == null) {
+          books[id] = this.replayEngine.subscribe(Venue.BINANCE, symbol, id, depth, registry.pricePrecision(id),
+            QTY_SCALE);
+        }
+      }
+      this.orderBooks = books;
+      log.info("Replay {} market order books.", symbols.size());
+      return;
+    }
+    BinanceDepthSynchronizer[] syncs = Arrays.copyOf(this.depthSyncs, registry.size());
     BinanceApiCallback<DepthEvent> callback = new UniverseApiCallback<DepthEvent>() {
       @Override
       public void onResponse(DepthEvent event) {
-        updateOrderBook(event);
+        int id = registry.id(event.getSymbol());
+        BinanceDepthSynchronizer sync = id >= 0 && id < syncs.length ? syncs[id] : null;
+        if (sync != null) {
+          sync.onEvent(event);
+        }
       }
     };
+    List<BinanceDepthSynchronizer> created = new ArrayList<>(symbols.size());
     for (String symbol : symbols) {
-      OrderBook orderBook = this.restClient.getOrderBook(symbol, depth);
-      this.orderBookMap.put(symbol, orderBook);
-      this.wsClient.onDepthEvent(symbol.toLowerCase(), callback);
-    }
-    log.info("Create {} market order books.", symbols.size());
-  }
-
-  private void updateOrderBook(DepthEvent event) {
-    String symbol = event.getSymbol();
-    OrderBook orderBook = this.orderBookMap.get(symbol);
-    List<OrderBookEntry> asks = event.getAsks();
-    for (OrderBookEntry ask : asks) {
-      if (new BigDecimal(ask.getQty()).stripTrailingZeros().equals(BigDecimal.ZERO)) {
-        removePriceLevel(ask.getPrice(), orderBook.getAsks());
-      } else {
-        upsertPriceLevel(ask, orderBook.getAsks(), true);
+      int id = registry.require(symbol);
+      if (books[id] != null) {
+        continue;
       }
+      int priceScale = registry.pricePrecision(id);
+      TickOrderBook orderBook = new TickOrderBook(depth, priceScale, QTY_SCALE);
+      OrderBookView view = new OrderBookView(depth, priceScale, QTY_SCALE);
+      BinanceDepthSynchronizer sync =
+        new BinanceDepthSynchronizer(symbol, id, depth, orderBook, view, asyncRestClient);
+      sync.setListener(this.bookUpdateListener);
+      sync.setMarketDataBus(this.marketDataBus);
+      books[id] = view;
+      syncs[id] = sync;
+      created.add(sync);
     }
-    List<OrderBookEntry> bids = event.getBids();
-    for (OrderBookEntry bid : bids) {
-      if (new BigDecimal(bid.getQty()).stripTrailingZeros().equals(BigDecimal.ZERO)) {
-        removePriceLevel(bid.getPrice(), orderBook.getBids());
-      } else {
-        upsertPriceLevel(bid, orderBook.getBids(), false);
-      }
+    this.orderBooks = books;
+    this.depthSyncs = syncs;
+    // subscribe once the books are published, the first events must find their synchronizer
+    for (BinanceDepthSynchronizer sync : created) {
+      this.wsClient.onDepthEvent(sync.getSymbol().toLowerCase(), callback);
+      sync.start();
     }
+    subscribeTrades(created, registry);
+    awaitSynced(created);
+    log.info("Create {} market order books.", created.size());
   }
 
-  private void upsertPriceLevel(OrderBookEntry entry, List<OrderBookEntry> orderBookEntries, boolean ascending) {
-    for (OrderBookEntry e : orderBookEntries) {
-      if (entry.getPrice().equals(e.getPrice())) {
-        e.setQty(entry.getQty());
-        return;
-      }
+  /**
+   * Publish the aggregated trades of the new books into the bus, if any.
+   */
+  private void subscribeTrades(List<BinanceDepthSynchronizer> created, SymbolRegistry registry) {
+    MarketDataBus bus = this.marketDataBus;
+    if (bus == null) {
+      return;
     }
-    orderBookEntries.add(entry);
-    Comparator<OrderBookEntry> sortAsc = (e1, e2) -> {
-      double p1 = Double.parseDouble(e1.getPrice());
-      double p2 = Double.parseDouble(e2.getPrice());
-      if (p1 - p2 > 0) {
-        return 1;
-      }
-      if (p1 - p2 < 0) {
-        return -1;
+    BinanceApiCallback<AggTradeEvent> callback = new UniverseApiCallback<AggTradeEvent>() {
+      @Override
+      public void onResponse(AggTradeEvent event) {
+        long receiveNanos = ReceiveClock.nanos();
+        int id = registry.id(event.getSymbol());
+        if (id < 0) {
+          return;
+        }
+        int priceScale = registry.pricePrecision(id);
+        // the maker of a trade is the buyer when the taker sold
+        bus.publishTrade(Venue.BINANCE, registry.name(id), Decimals.parseScaled(event.getPrice(), priceScale),
+          Decimals.parseScaled(event.getQuantity(), QTY_SCALE), priceScale, QTY_SCALE, !event.isBuyerMaker(),
+          event.getAggregatedTradeId(), event.getTradeTime(), receiveNanos);
       }
-      return 0;
     };
+    for (BinanceDepthSynchronizer sync : created) {
+      this.wsClient.onAggTradeEvent(sync.getSymbol().toLowerCase(), callback);
+    }
+  }
 
-    Comparator<OrderBookEntry> sortDesc = (e1, e2) -> {
-      double p1 = Double.parseDouble(e1.getPrice());
-      double p2 = Double.parseDouble(e2.getPrice());
-      if (p1 - p2 > 0) {
-        return -1;
+  /**
+   * Notify the listener from the websocket threads whenever a local order book changed, e.g. a
+   * {@link io.magicalne.smym.event.BookEventDispatcher} waking a strategy.
+   */
+  public void setBookUpdateListener(BookUpdateListener listener) {
+    this.bookUpdateListener = listener;
+    if (this.replayEngine != null) {
+      this.replayEngine.setListener(Venue.BINANCE, listener);
+    }
+    for (BinanceDepthSynchronizer sync : this.depthSyncs) {
+      if (sync != null) {
+        sync.setListener(listener);
       }
-      if (p1 - p2 < 0) {
-        return 1;
+    }
+  }
+
+  /**
+   * Publish the local order books created from now on and the aggregated trades of their symbols into the bus.
+   */
+  public void setMarketDataBus(MarketDataBus bus) {
+    this.marketDataBus = bus;
+  }
+
+  private void awaitSynced(List<BinanceDepthSynchronizer> syncs) {
+    long deadline = System.currentTimeMillis() + INITIAL_SYNC_TIMEOUT_MS;
+    for (BinanceDepthSynchronizer sync : syncs) {
+      while (!sync.isSynced()) {
+        if (System.currentTimeMillis() > deadline) {
+          log.warn("Order book of {} is not synced yet, it will be synced in background.", sync.getSymbol());
+          break;
+        }
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          log.error("Thread sleep with interrupted exception.", e);
+          return;
+        }
       }
-      return 0;
-    };
-    orderBookEntries.sort(ascending ? sortAsc : sortDesc);
-    int size = orderBookEntries.size();
-    if (size > orderBookSize) {
-      orderBookEntries.remove(size - 1);
     }
   }
 
-  private void removePriceLevel(String price, List<OrderBookEntry> orderBookEntries) {
-    int index = 0;
-    for (OrderBookEntry e : orderBookEntries) {
-      if (price.equals(e.getPrice())) {
-        orderBookEntries.remove(index);
-        return;
+  public boolean isOrderBookSynced(String symbol) {
+    if (this.replayEngine != null) {
+      return getOrderBookView(symbol) != null;
+    }
+    int id = this.symbolRegistry.id(symbol);
+    BinanceDepthSynchronizer[] syncs = this.depthSyncs;
+    BinanceDepthSynchronizer sync = id >= 0 && id < syncs.length ? syncs[id] : null;
+    return sync != null && sync.isSynced();
+  }
+
+  /**
+   * @return number of sequence gaps detected on all depth streams.
+   */
+  public long getDepthGapCount() {
+    long gaps = 0;
+    for (BinanceDepthSynchronizer sync : this.depthSyncs) {
+      if (sync != null) {
+        gaps += sync.getGapCount();
       }
-      index++;
     }
+    return gaps;
   }
 
-  public ExchangeInfo getExchangeInfo() {
-    if (exchangeInfo == null) {
-      this.exchangeInfo = this.restClient.getExchangeInfo();
+  /**
+   * @return number of snapshot re-requests on all depth streams.
+   */
+  public long getDepthResyncCount() {
+    long resyncs = 0;
+    for (BinanceDepthSynchronizer sync : this.depthSyncs) {
+      if (sync != null) {
+        resyncs += sync.getResyncCount();
+      }
     }
-    return this.exchangeInfo;
+    return resyncs;
+  }
+
+  public ExchangeInfo getExchangeInfo() {
+    ExchangeInfo info = this.exchangeInfo;
+    return info == null ? getRecentExchangeInfo() : info;
   }
 
   public ExchangeInfo getRecentExchangeInfo() {
-    this.exchangeInfo = this.restClient.getExchangeInfo();
-    return exchangeInfo;
+    ExchangeInfo info = this.restClient.getExchangeInfo();
+    for (SymbolInfo s : info.getSymbols()) {
+      SymbolFilter priceFilter = s.getSymbolFilter(FilterType.PRICE_FILTER);
+      SymbolFilter lotSize = s.getSymbolFilter(FilterType.LOT_SIZE);
+      SymbolFilter minNotional = s.getSymbolFilter(FilterType.MIN_NOTIONAL);
+      if (priceFilter == null || lotSize == null) {
+        continue;
+      }
+      this.symbolRegistry.put(s.getSymbol(), s.getBaseAsset(), s.getQuoteAsset(), priceFilter.getTickSize(),
+        lotSize.getStepSize(), minNotional == null ? 0 : Double.parseDouble(minNotional.getMinNotional()));
+    }
+    this.exchangeInfo = info;
+    return info;
   }
 
-  public OrderBookEntry getBestAsk(String symbol) {
-    OrderBook orderBook = this.orderBookMap.get(symbol);
-    if (orderBook != null) {
-      List<OrderBookEntry> asks = orderBook.getAsks();
-      if (asks != null && !asks.isEmpty()) {
-        return asks.get(0);
+  /**
+   * Trading rules of all symbols, loaded with the exchange info on first use. Resolve the id of a symbol once
+   * and read its precisions from the registry on hot paths.
+   */
+  public SymbolRegistry getSymbolRegistry() {
+    if (this.exchangeInfo == null) {
+      getRecentExchangeInfo();
+    }
+    return this.symbolRegistry;
+  }
+
+  /**
+   * Reload the exchange info in background, so rule changes and new listings show up in the registry.
+   */
+  public synchronized void refreshSymbols(long period, TimeUnit unit) {
+    if (this.symbolRefresher != null) {
+      return;
+    }
+    this.symbolRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "binance-symbol-refresh");
+      t.setDaemon(true);
+      return t;
+    });
+    this.symbolRefresher.scheduleWithFixedDelay(() -> {
+      try {
+        getRecentExchangeInfo();
+      } catch (Exception e) {
+        log.warn("Cannot refresh exchange info, keep the current symbol rules.", e);
       }
+    }, period, period, unit);
+  }
+
+  public OrderBookView getOrderBookView(String symbol) {
+    return getOrderBookView(this.symbolRegistry.id(symbol));
+  }
+
+  /**
+   * @return the local order book of the symbol with the id in {@link #getSymbolRegistry()}, or null.
+   */
+  public OrderBookView getOrderBookView(int symbolId) {
+    OrderBookView[] books = this.orderBooks;
+    return symbolId >= 0 && symbolId < books.length ? books[symbolId] : null;
+  }
+
+  /**
+   * Copy a consistent view of the local order book into dst.
+   * @return dst, or null if there is no local order book of the symbol.
+   */
+  public OrderBookSnapshot readOrderBook(String symbol, OrderBookSnapshot dst) {
+    return readOrderBook(this.symbolRegistry.id(symbol), dst);
+  }
+
+  /**
+   * Copy a consistent view of the local order book of the symbol with the id into dst.
+   * @return dst, or null if there is no local order book of the symbol.
+   */
+  public OrderBookSnapshot readOrderBook(int symbolId, OrderBookSnapshot dst) {
+    OrderBookView view = getOrderBookView(symbolId);
+    if (view == null) {
+      return null;
+    }
+    view.read(dst);
+    return dst;
+  }
+
+  public OrderBookEntry getBestAsk(String symbol) {
+    OrderBookSnapshot orderBook = readOrderBook(symbol, READ_BUFFER.get());
+    if (orderBook != null && orderBook.askCount() > 0) {
+      return toEntry(orderBook.askTicks(0), orderBook.askQtyUnits(0), orderBook);
     }
     return null;
   }
 
   public OrderBookEntry getBestBid(String symbol) {
-    OrderBook orderBook = this.orderBookMap.get(symbol);
-    if (orderBook != null) {
-      List<OrderBookEntry> bids = orderBook.getBids();
-      if (bids != null && !bids.isEmpty()) {
-        return bids.get(0);
-      }
+    OrderBookSnapshot orderBook = readOrderBook(symbol, READ_BUFFER.get());
+    if (orderBook != null && orderBook.bidCount() > 0) {
+      return toEntry(orderBook.bidTicks(0), orderBook.bidQtyUnits(0), orderBook);
     }
     return null;
   }
 
+  /**
+   * @return best ask price or -1 if there is no ask.
+   */
+  public double getBestAskPrice(String symbol) {
+    OrderBookView view = getOrderBookView(symbol);
+    return view == null ? -1d : view.bestAskPrice();
+  }
+
+  /**
+   * @return best bid price or -1 if there is no bid.
+   */
+  public double getBestBidPrice(String symbol) {
+    OrderBookView view = getOrderBookView(symbol);
+    return view == null ? -1d : view.bestBidPrice();
+  }
+
   public double getMidPriceFromOrderBook(String symbol) {
-    OrderBookEntry bestAsk = getBestAsk(symbol);
-    OrderBookEntry bestBid = getBestBid(symbol);
-    if (bestAsk == null || bestBid == null) {
+    double ask = getBestAskPrice(symbol);
+    double bid = getBestBidPrice(symbol);
+    if (ask < 0 || bid < 0) {
       return -1d;
     } else {
-      double ask = Double.parseDouble(bestAsk.getPrice());
-      double bid = Double.parseDouble(bestBid.getPrice());
       return (ask + bid) / 2;
     }
   }
 
+  private static OrderBookEntry toEntry(long priceTicks, long qtyUnits, OrderBookSnapshot orderBook) {
+    OrderBookEntry entry = new OrderBookEntry();
+    entry.setPrice(Decimals.format(priceTicks, orderBook.getPriceScale()));
+    entry.setQty(Decimals.format(qtyUnits, orderBook.getQtyScale()));
+    return entry;
+  }
+
   public int getQtyPrecision(String symbol) {
-    SymbolInfo symbolInfo = getExchangeInfo().getSymbolInfo(symbol);
-    SymbolFilter lotSize = symbolInfo.getSymbolFilter(FilterType.LOT_SIZE);
-    String minQty = lotSize.getMinQty();
-    int index = minQty.indexOf('1');
-    return index == 0 ? index : index - 1;
+    SymbolRegistry registry = getSymbolRegistry();
+    return registry.qtyPrecision(registry.require(symbol));
   }
 
   public int getPricePrecision(String symbol) {
-    SymbolInfo symbolInfo = getExchangeInfo().getSymbolInfo(symbol);
-    SymbolFilter priceFilter = symbolInfo.getSymbolFilter(FilterType.PRICE_FILTER);
-    String tickSize = priceFilter.getTickSize();
-    int index = tickSize.indexOf("1");
-    return index == 0 ? index : index - 1;
+    SymbolRegistry registry = getSymbolRegistry();
+    return registry.pricePrecision(registry.require(symbol));
   }
 
   public AssetBalance getBalance(String symbol) {
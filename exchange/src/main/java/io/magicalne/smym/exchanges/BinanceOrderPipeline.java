@@ -0,0 +1,312 @@
+package io.magicalne.smym.exchanges;
+
+import com.binance.api.client.BinanceApiAsyncRestClient;
+import com.binance.api.client.BinanceApiCallback;
+import com.binance.api.client.domain.account.NewOrder;
+import com.binance.api.client.domain.account.NewOrderResponse;
+import com.binance.api.client.domain.account.Order;
+import com.binance.api.client.domain.account.request.OrderStatusRequest;
+import com.binance.api.client.domain.general.RateLimit;
+import com.binance.api.client.domain.general.RateLimitInterval;
+import com.binance.api.client.domain.general.RateLimitType;
+import com.binance.api.client.exception.BinanceApiException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends orders through the async rest client as fast as the rate limits of the account allow.
+ *
+ * A single sender thread takes orders from a queue, waits on the {@link SlidingWindowLimit}s of the order and
+ * request weight limits, and fires the request without waiting for the previous response, so many orders are
+ * in flight at once. Orders rejected for exceeding a rate limit are queued again, other failures are logged
+ * and dropped from the batch.
+ *
+ * The client drops some responses, e.g. a 504 of the gateway, without calling back. An order without an answer
+ * in time has an unknown status, so it is looked up by its client order id and only sent again when the exchange
+ * does not know it.
+ */
+@Slf4j
+public class BinanceOrderPipeline {
+
+  // weight of POST /api/v3/order
+  private static final int ORDER_WEIGHT = 1;
+  private static final int TOO_MANY_REQUESTS = -1003;
+  private static final int TOO_MANY_ORDERS = -1015;
+  private static final int NO_SUCH_ORDER = -2013;
+  private static final int MAX_ATTEMPTS = 3;
+  private static final long DEFAULT_TIMEOUT_MS = 10000;
+
+  private final BinanceApiAsyncRestClient client;
+  private final List<SlidingWindowLimit> orderLimits;
+  private final List<SlidingWindowLimit> weightLimits;
+  private final long timeoutMs;
+  private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "binance-order-timeout");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private static final class Pending {
+    private final NewOrder order;
+    private final CompletableFuture<NewOrderResponse> future = new CompletableFuture<>();
+    private int attempts;
+    // request or status query the order waits for, a late response of an older one is still taken
+    private int stage;
+
+    private Pending(NewOrder order) {
+      this.order = order;
+      if (order.getNewClientOrderId() == null) {
+        order.newClientOrderId(UUID.randomUUID().toString());
+      }
+    }
+
+    private synchronized int enter() {
+      return ++this.stage;
+    }
+
+    /**
+     * @return true for the first failure or timeout of the current stage of an order still waiting.
+     */
+    private synchronized boolean leave(int stage) {
+      if (this.stage != stage || this.future.isDone()) {
+        return false;
+      }
+      this.stage++;
+      return true;
+    }
+  }
+
+  /**
+   * @param rateLimits limits of the exchange info, defaults of Binance are used for a missing kind.
+   */
+  public BinanceOrderPipeline(BinanceApiAsyncRestClient client, List<RateLimit> rateLimits) {
+    this(client, rateLimits, DEFAULT_TIMEOUT_MS);
+  }
+
+  /**
+   * @param timeoutMs time to wait for the response of an order or of its status query.
+   */
+  public BinanceOrderPipeline(BinanceApiAsyncRestClient client, List<RateLimit> rateLimits, long timeoutMs) {
+    this.client = client;
+    this.timeoutMs = timeoutMs;
+    long now = System.nanoTime();
+    this.orderLimits = windows(rateLimits, RateLimitType.ORDERS, now);
+    this.weightLimits = windows(rateLimits, RateLimitType.REQUEST_WEIGHT, now);
+    if (this.orderLimits.isEmpty()) {
+      this.orderLimits.add(new SlidingWindowLimit(10, 1, TimeUnit.SECONDS, now));
+      this.orderLimits.add(new SlidingWindowLimit(100000, 1, TimeUnit.DAYS, now));
+    }
+    if (this.weightLimits.isEmpty()) {
+      this.weightLimits.add(new SlidingWindowLimit(1200, 1, TimeUnit.MINUTES, now));
+    }
+    Thread sender = new Thread(this::send, "binance-order-pipeline");
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  private static List<SlidingWindowLimit> windows(List<RateLimit> rateLimits, RateLimitType type, long now) {
+    List<SlidingWindowLimit> windows = new ArrayList<>();
+    if (rateLimits == null) {
+      return windows;
+    }
+    for (RateLimit limit : rateLimits) {
+      if (limit.getRateLimitType() == type && limit.getLimit() != null && limit.getInterval() != null) {
+        windows.add(new SlidingWindowLimit(limit.getLimit(), 1, toTimeUnit(limit.getInterval()), now));
+      }
+    }
+    return windows;
+  }
+
+  private static TimeUnit toTimeUnit(RateLimitInterval interval) {
+    switch (interval) {
+      case SECOND:
+        return TimeUnit.SECONDS;
+      case MINUTE:
+        return TimeUnit.MINUTES;
+      default:
+        return TimeUnit.DAYS;
+    }
+  }
+
+  /**
+   * Queue the orders for sending.
+   * @return responses of the accepted orders in the order of the request, it completes when every order got
+   * a response, failed or timed out.
+   */
+  public CompletableFuture<List<NewOrderResponse>> submit(List<NewOrder> orders) {
+    List<CompletableFuture<NewOrderResponse>> futures = new ArrayList<>(orders.size());
+    for (NewOrder order : orders) {
+      Pending pending = new Pending(order);
+      futures.add(pending.future);
+      this.queue.add(pending);
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).handle((v, e) -> {
+      List<NewOrderResponse> responses = new ArrayList<>(futures.size());
+      for (CompletableFuture<NewOrderResponse> f : futures) {
+        if (!f.isCompletedExceptionally()) {
+          responses.add(f.join());
+        }
+      }
+      return responses;
+    });
+  }
+
+  public int getQueuedCount() {
+    return this.queue.size();
+  }
+
+  private void send() {
+    while (true) {
+      Pending pending;
+      try {
+        pending = this.queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      long now = System.nanoTime();
+      // every limit counts the order at the same time, the latest one due
+      long due = now;
+      for (SlidingWindowLimit window : this.orderLimits) {
+        due = Math.max(due, window.due(1, now));
+      }
+      for (SlidingWindowLimit window : this.weightLimits) {
+        due = Math.max(due, window.due(ORDER_WEIGHT, now));
+      }
+      for (SlidingWindowLimit window : this.orderLimits) {
+        window.take(1, due);
+      }
+      for (SlidingWindowLimit window : this.weightLimits) {
+        window.take(ORDER_WEIGHT, due);
+      }
+      for (long left = due - now; left > 0; left = due - System.nanoTime()) {
+        LockSupport.parkNanos(left);
+      }
+      pending.attempts++;
+      // the order may have waited in the queue longer than the receiving window
+      pending.order.timestamp(System.currentTimeMillis());
+      int stage = pending.enter();
+      this.timer.schedule(() -> queryStatus(pending, stage), this.timeoutMs, TimeUnit.MILLISECONDS);
+      try {
+        this.client.newOrder(pending.order, new Callback(pending, stage));
+      } catch (Exception e) {
+        pending.future.completeExceptionally(e);
+      }
+    }
+  }
+
+  private void queryStatus(Pending pending, int timedOut) {
+    if (!pending.leave(timedOut)) {
+      return;
+    }
+    log.warn("No response for order {}, query its status.", pending.order);
+    int stage = pending.enter();
+    this.timer.schedule(() -> {
+      if (pending.leave(stage)) {
+        log.error("Status of order {} is unknown.", pending.order);
+        pending.future.completeExceptionally(new TimeoutException("No response for " + pending.order));
+      }
+    }, this.timeoutMs, TimeUnit.MILLISECONDS);
+    OrderStatusRequest request = new OrderStatusRequest(pending.order.getSymbol(), pending.order.getNewClientOrderId());
+    try {
+      this.client.getOrderStatus(request, new StatusCallback(pending, stage));
+    } catch (Exception e) {
+      pending.future.completeExceptionally(e);
+    }
+  }
+
+  private class Callback implements BinanceApiCallback<NewOrderResponse> {
+    private final Pending pending;
+    private final int stage;
+
+    private Callback(Pending pending, int stage) {
+      this.pending = pending;
+      this.stage = stage;
+    }
+
+    @Override
+    public void onResponse(NewOrderResponse response) {
+      this.pending.future.complete(response);
+    }
+
+    @Override
+    public void onFailure(Throwable cause) {
+      if (!this.pending.leave(this.stage)) {
+        return;
+      }
+      if (isRateLimited(cause) && this.pending.attempts < MAX_ATTEMPTS) {
+        log.warn("Rate limit hit, queue {} again.", this.pending.order);
+        queue.add(this.pending);
+        return;
+      }
+      log.error("Cannot place order {}", this.pending.order, cause);
+      this.pending.future.completeExceptionally(cause);
+    }
+  }
+
+  private class StatusCallback implements BinanceApiCallback<Order> {
+    private final Pending pending;
+    private final int stage;
+
+    private StatusCallback(Pending pending, int stage) {
+      this.pending = pending;
+      this.stage = stage;
+    }
+
+    @Override
+    public void onResponse(Order order) {
+      NewOrderResponse response = new NewOrderResponse();
+      response.setSymbol(order.getSymbol());
+      response.setOrderId(order.getOrderId());
+      response.setClientOrderId(order.getClientOrderId());
+      response.setTransactTime(order.getTime());
+      response.setPrice(order.getPrice());
+      response.setOrigQty(order.getOrigQty());
+      response.setExecutedQty(order.getExecutedQty());
+      response.setStatus(order.getStatus());
+      response.setTimeInForce(order.getTimeInForce());
+      response.setType(order.getType());
+      response.setSide(order.getSide());
+      this.pending.future.complete(response);
+    }
+
+    @Override
+    public void onFailure(Throwable cause) {
+      if (!this.pending.leave(this.stage)) {
+        return;
+      }
+      if (errorCode(cause) == NO_SUCH_ORDER && this.pending.attempts < MAX_ATTEMPTS) {
+        log.warn("Order {} did not reach the exchange, queue it again.", this.pending.order);
+        queue.add(this.pending);
+        return;
+      }
+      log.error("Cannot query order {}", this.pending.order, cause);
+      this.pending.future.completeExceptionally(cause);
+    }
+  }
+
+  private static boolean isRateLimited(Throwable cause) {
+    int code = errorCode(cause);
+    return code == TOO_MANY_REQUESTS || code == TOO_MANY_ORDERS;
+  }
+
+  private static int errorCode(Throwable cause) {
+    if (!(cause instanceof BinanceApiException)) {
+      return 0;
+    }
+    BinanceApiException e = (BinanceApiException) cause;
+    return e.getError() == null ? 0 : e.getError().getCode();
+  }
+}
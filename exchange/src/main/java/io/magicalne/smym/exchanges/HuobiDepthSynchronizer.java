@@ -0,0 +1,242 @@
+package io.magicalne.smym.exchanges;
+
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.dto.HuobiDepthTick;
+import io.magicalne.smym.event.BookUpdateListener;
+import io.magicalne.smym.marketdata.BookEvent;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.ReceiveClock;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Keeps one local order book of a huobi symbol and publishes it to an {@link OrderBookView}.
+ *
+ * With depth.step* topics every tick is a full book and simply replaces the local one. With mbp.*
+ * topics ticks are increments chained by prevSeqNum/seqNum: they are buffered until a snapshot (req of
+ * the same topic) arrives, then applied in sequence. A broken chain requests a new snapshot.
+ * All methods except {@link #start()} are expected to be called from the websocket thread. Ticks may be
+ * reused by the caller after a call returns, buffered ticks are copied. An optional
+ * {@link BookUpdateListener} is told about every publish. An optional {@link MarketDataBus} receives full
+ * books and snapshots as a whole book, mbp increments as level changes and a clear on every resync, stamped
+ * with the ts and the receive time of the tick being handled.
+ */
+@Slf4j
+public class HuobiDepthSynchronizer {
+
+    private static final int MAX_BUFFERED_TICKS = 1024;
+    private static final long SNAPSHOT_TIMEOUT_MS = 5000;
+
+    private final String symbol;
+    // the id the listener is told
+    private final int symbolId;
+    private final TickOrderBook orderBook;
+    private final OrderBookView view;
+    private final Consumer<String> snapshotRequester;
+    private final ArrayDeque<HuobiDepthTick> buffer = new ArrayDeque<>();
+    private volatile boolean started = false;
+    private volatile boolean synced = false;
+    private volatile long snapshotRequestedAt = 0;
+    private volatile BookUpdateListener listener;
+    private MarketDataBus bus;
+    // times of the tick being handled, for the bus
+    private long tickTime;
+    private long receiveNanos;
+    private long gaps = 0;
+
+    public HuobiDepthSynchronizer(String symbol, int symbolId, TickOrderBook orderBook, OrderBookView view,
+                                  Consumer<String> snapshotRequester) {
+        this.symbol = symbol;
+        this.symbolId = symbolId;
+        this.orderBook = orderBook;
+        this.view = view;
+        this.snapshotRequester = snapshotRequester;
+    }
+
+    public void start() {
+        this.started = true;
+        if (snapshotRequester != null) {
+            requestSnapshot();
+        }
+    }
+
+    public void setListener(BookUpdateListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Must be set before the first tick.
+     */
+    public void setMarketDataBus(MarketDataBus bus) {
+        this.bus = bus;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public long getGapCount() {
+        return gaps;
+    }
+
+    /**
+     * A full book of depth.step* topics.
+     */
+    public void onDepth(HuobiDepthTick tick) {
+        received(tick);
+        orderBook.clear();
+        apply(tick, null, 0);
+        orderBook.setLastUpdateId(tick.getVersion());
+        synced = true;
+        publishBook();
+        publish();
+    }
+
+    /**
+     * An increment of mbp.* topics.
+     */
+    public void onIncrement(HuobiDepthTick tick) {
+        received(tick);
+        if (!synced) {
+            buffer(tick);
+            if (started && System.currentTimeMillis() - snapshotRequestedAt > SNAPSHOT_TIMEOUT_MS) {
+                requestSnapshot();
+            }
+            return;
+        }
+        long lastSeqNum = orderBook.getLastUpdateId();
+        if (tick.getSeqNum() <= lastSeqNum) {
+            return;
+        }
+        if (tick.getPrevSeqNum() != lastSeqNum) {
+            gaps++;
+            log.warn("Mbp gap of {}, expected prevSeqNum {} but got {}. Resync order book.",
+                    symbol, lastSeqNum, tick.getPrevSeqNum());
+            buffer(tick);
+            resync();
+            return;
+        }
+        apply(tick, bus, tick.getSeqNum());
+        orderBook.setLastUpdateId(tick.getSeqNum());
+        publish();
+    }
+
+    /**
+     * A snapshot of mbp.* topics, i.e. the data of a req response.
+     */
+    public void onSnapshot(HuobiDepthTick snapshot) {
+        received(snapshot);
+        long seqNum = snapshot.getSeqNum();
+        while (!buffer.isEmpty() && buffer.peekFirst().getSeqNum() <= seqNum) {
+            buffer.pollFirst();
+        }
+        HuobiDepthTick first = buffer.peekFirst();
+        if (first != null && first.getPrevSeqNum() > seqNum) {
+            log.warn("Mbp snapshot of {} is older than buffered ticks, snapshot: {}, first prevSeqNum: {}.",
+                    symbol, seqNum, first.getPrevSeqNum());
+            resync();
+            return;
+        }
+        orderBook.clear();
+        apply(snapshot, null, 0);
+        orderBook.setLastUpdateId(seqNum);
+        HuobiDepthTick tick;
+        while ((tick = buffer.pollFirst()) != null) {
+            if (tick.getPrevSeqNum() != orderBook.getLastUpdateId()) {
+                gaps++;
+                buffer.addFirst(tick);
+                resync();
+                return;
+            }
+            apply(tick, null, 0);
+            orderBook.setLastUpdateId(tick.getSeqNum());
+        }
+        synced = true;
+        publishBook();
+        publish();
+        log.info("Order book of {} synced at seqNum {}.", symbol, orderBook.getLastUpdateId());
+    }
+
+    /**
+     * Apply a tick and publish its levels to the bus, if any.
+     */
+    private void apply(HuobiDepthTick tick, MarketDataBus bus, long updateId) {
+        int priceScale = orderBook.getPriceScale();
+        int qtyScale = orderBook.getQtyScale();
+        int levels = tick.askCount() + tick.bidCount();
+        boolean deltas = bus != null && levels > 0 && levels <= bus.getCapacity();
+        long lo = deltas ? bus.claim(levels) : 0;
+        long seq = lo;
+        for (int i = 0; i < tick.askCount(); i++) {
+            long price = Decimals.fromDouble(tick.askPrice(i), priceScale);
+            long qty = Decimals.fromDouble(tick.askAmount(i), qtyScale);
+            orderBook.updateAsk(price, qty);
+            if (deltas) {
+                bus.get(seq++).set(Venue.HUOBI, symbol, BookEvent.Type.ASK, price, qty, priceScale, qtyScale, updateId);
+            }
+        }
+        for (int i = 0; i < tick.bidCount(); i++) {
+            long price = Decimals.fromDouble(tick.bidPrice(i), priceScale);
+            long qty = Decimals.fromDouble(tick.bidAmount(i), qtyScale);
+            orderBook.updateBid(price, qty);
+            if (deltas) {
+                bus.get(seq++).set(Venue.HUOBI, symbol, BookEvent.Type.BID, price, qty, priceScale, qtyScale, updateId);
+            }
+        }
+        if (deltas) {
+            bus.publish(lo, seq - 1, tickTime, receiveNanos);
+        } else if (bus != null && levels > 0) {
+            orderBook.setLastUpdateId(updateId);
+            bus.publishBook(Venue.HUOBI, symbol, orderBook, tickTime, receiveNanos);
+        }
+    }
+
+    private void publishBook() {
+        if (bus != null) {
+            bus.publishBook(Venue.HUOBI, symbol, orderBook, tickTime, receiveNanos);
+        }
+    }
+
+    private void received(HuobiDepthTick tick) {
+        this.receiveNanos = ReceiveClock.nanos();
+        this.tickTime = tick.getTs();
+    }
+
+    private void publish() {
+        view.publish(orderBook);
+        BookUpdateListener l = this.listener;
+        if (l != null) {
+            l.onBookUpdate(symbolId);
+        }
+    }
+
+    private void buffer(HuobiDepthTick tick) {
+        if (buffer.size() >= MAX_BUFFERED_TICKS) {
+            buffer.pollFirst();
+        }
+        buffer.addLast(tick.copy());
+    }
+
+    private void resync() {
+        synced = false;
+        view.invalidate();
+        if (bus != null) {
+            bus.publishClear(Venue.HUOBI, symbol, orderBook.getLastUpdateId(), tickTime, receiveNanos);
+        }
+        requestSnapshot();
+    }
+
+    private void requestSnapshot() {
+        snapshotRequestedAt = System.currentTimeMillis();
+        snapshotRequester.accept(symbol);
+    }
+}
@@ -1,103 +1,383 @@
 package io.magicalne.smym.exchanges;
 
 import io.magicalne.smym.dto.*;
+import io.magicalne.smym.event.BookUpdateListener;
 import io.magicalne.smym.exception.ApiException;
 import io.magicalne.smym.exchanges.huobi.HuobiApiClientFactory;
+import io.magicalne.smym.exchanges.huobi.HuobiDepthSink;
+import io.magicalne.smym.exchanges.huobi.HuobiProAsyncRest;
 import io.magicalne.smym.exchanges.huobi.HuobiProRest;
 import io.magicalne.smym.exchanges.huobi.HuobiProWebSocketClient;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import io.magicalne.smym.replay.ReplayEngine;
+import io.magicalne.smym.symbol.SymbolRegistry;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.WebSocket;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @Slf4j
 public class HuobiExchange {
 
     public static final String CANCELED = "canceled";
-    private static final String FILLED = "filled";
     public static final String PARTIAL_CANCELED = "partial-canceled";
     private final HuobiProRest restClient;
+    private final HuobiProAsyncRest asyncRestClient;
     private final HuobiProWebSocketClient webSocketClient;
     private final String accountId;
+    private final HuobiOrderTracker orderTracker;
 
-    private ConcurrentMap<String, Depth> orderBookMap;
-    private int orderBookSize;
+    private static final int QTY_SCALE = 8;
+    private static final long FALLBACK_POLL_DELAY_MS = 150;
+    private static final long PUSHED_POLL_DELAY_MS = 1000;
+    private static final int MAX_CANCEL_ATTEMPTS = 5;
+    private static final long CANCEL_TIMEOUT_MS = 30000;
+    private static final ThreadLocal<OrderBookSnapshot> READ_BUFFER = ThreadLocal.withInitial(OrderBookSnapshot::new);
+
+    // indexed by the id of the symbol in the registry, null for symbols without a local book
+    private volatile OrderBookView[] orderBooks = new OrderBookView[0];
+    private volatile HuobiDepthSynchronizer[] depthSyncs = new HuobiDepthSynchronizer[0];
+    private final SymbolRegistry symbolRegistry = new SymbolRegistry();
+    private ScheduledExecutorService symbolRefresher;
+    private volatile WebSocket mbpSocket;
+    private volatile BookUpdateListener bookUpdateListener;
+    private MarketDataBus marketDataBus;
+    private volatile ReplayEngine replayEngine;
 
     public HuobiExchange(String accountId, String accessKey, String secretKey) {
         this.accountId = accountId;
         HuobiApiClientFactory instance = HuobiApiClientFactory.newInstance(accessKey, secretKey);
         this.restClient = instance.createRestClient();
+        this.asyncRestClient = instance.createAsyncRestClient();
         this.webSocketClient = instance.createWebSocketClient();
+        this.orderTracker = new HuobiOrderTracker(this::queryOrderAsync, FALLBACK_POLL_DELAY_MS);
+    }
+
+    /**
+     * Subscribe order updates of the account, so waiting for an order relies on pushes and polls REST only
+     * as a fallback.
+     */
+    public void subscribeOrderUpdates(Set<String> symbols) {
+        this.orderTracker.setInitialPollDelayMs(PUSHED_POLL_DELAY_MS);
+        this.webSocketClient.onOrderEvent(symbols, new UniverseApiCallback<HuobiOrderUpdate>() {
+            @Override
+            public void onResponse(HuobiOrderUpdate update) {
+                orderTracker.onUpdate(update);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                log.error("Huobi order websocket failed, fall back to polling.", cause);
+                orderTracker.setInitialPollDelayMs(FALLBACK_POLL_DELAY_MS);
+            }
+        });
+        log.info("Subscribe order updates of {} symbols.", symbols.size());
     }
 
     public List<Symbol> getSymbolInfo() {
-        return this.restClient.getSymbols();
+        List<Symbol> symbols = this.restClient.getSymbols();
+        for (Symbol s : symbols) {
+            // huobi only publishes precisions, the increments are one unit of them
+            this.symbolRegistry.put(s.getSymbol(), s.getBaseCurrency(), s.getQuoteCurrency(),
+                s.getPricePrecision(), s.getAmountPrecision(), 1, 1, 0);
+        }
+        return symbols;
+    }
+
+    /**
+     * Precisions of all symbols, loaded on first use. Resolve the id of a symbol once and read its precisions
+     * from the registry on hot paths.
+     */
+    public SymbolRegistry getSymbolRegistry() {
+        if (this.symbolRegistry.size() == 0) {
+            getSymbolInfo();
+        }
+        return this.symbolRegistry;
+    }
+
+    /**
+     * Reload the symbols in background, so precision changes and new listings show up in the registry.
+     */
+    public synchronized void refreshSymbols(long period, TimeUnit unit) {
+        if (this.symbolRefresher != null) {
+            return;
+        }
+        this.symbolRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "huobi-symbol-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        this.symbolRefresher.scheduleWithFixedDelay(() -> {
+            try {
+                getSymbolInfo();
+            } catch (Exception e) {
+                log.warn("Cannot refresh symbols, keep the current precisions.", e);
+            }
+        }, period, period, unit);
     }
 
     public BalanceResponse getAccount(String accountId) {
         return this.restClient.balance(accountId);
     }
 
-    public List<Double> getBestAsk(String symbol) {
-        Depth depth = this.orderBookMap.get(symbol);
-        List<List<Double>> asks = depth.getAsks();
-        if (asks != null && !asks.isEmpty()) {
-            return asks.get(0);
-        } else {
-            return null;
-        }
+    /**
+     * @return best ask price or -1 if there is no ask.
+     */
+    public double getBestAskPrice(String symbol) {
+        OrderBookView view = getOrderBookView(symbol);
+        return view == null ? -1d : view.bestAskPrice();
     }
 
-    public List<Double> getBestBid(String symbol) {
-        Depth depth = this.orderBookMap.get(symbol);
-        List<List<Double>> bids = depth.getBids();
-        if (bids != null && !bids.isEmpty()) {
-            return bids.get(0);
-        } else {
+    /**
+     * @return best bid price or -1 if there is no bid.
+     */
+    public double getBestBidPrice(String symbol) {
+        OrderBookView view = getOrderBookView(symbol);
+        return view == null ? -1d : view.bestBidPrice();
+    }
+
+    public OrderBookView getOrderBookView(String symbol) {
+        return getOrderBookView(this.symbolRegistry.id(symbol));
+    }
+
+    /**
+     * @return the local order book of the symbol with the id in {@link #getSymbolRegistry()}, or null.
+     */
+    public OrderBookView getOrderBookView(int symbolId) {
+        OrderBookView[] books = this.orderBooks;
+        return symbolId >= 0 && symbolId < books.length ? books[symbolId] : null;
+    }
+
+    /**
+     * Copy a consistent view of the local order book into dst.
+     * @return dst, or null if there is no local order book of the symbol.
+     */
+    public OrderBookSnapshot readOrderBook(String symbol, OrderBookSnapshot dst) {
+        return readOrderBook(this.symbolRegistry.id(symbol), dst);
+    }
+
+    /**
+     * Copy a consistent view of the local order book of the symbol with the id into dst.
+     * @return dst, or null if there is no local order book of the symbol.
+     */
+    public OrderBookSnapshot readOrderBook(int symbolId, OrderBookSnapshot dst) {
+        OrderBookView view = getOrderBookView(symbolId);
+        if (view == null) {
             return null;
         }
+        view.read(dst);
+        return dst;
     }
 
+    /**
+     * @return a boxed copy of the local order book, prefer {@link #readOrderBook} on hot paths.
+     */
     public Depth getOrderBook(String symbol) {
-        return this.orderBookMap.get(symbol);
+        OrderBookSnapshot orderBook = readOrderBook(symbol, READ_BUFFER.get());
+        if (orderBook == null) {
+            return null;
+        }
+        List<List<Double>> asks = new ArrayList<>(orderBook.askCount());
+        for (int i = 0; i < orderBook.askCount(); i++) {
+            asks.add(Arrays.asList(orderBook.askPrice(i), orderBook.askQty(i)));
+        }
+        List<List<Double>> bids = new ArrayList<>(orderBook.bidCount());
+        for (int i = 0; i < orderBook.bidCount(); i++) {
+            bids.add(Arrays.asList(orderBook.bidPrice(i), orderBook.bidQty(i)));
+        }
+        Depth depth = new Depth();
+        depth.setVersion(orderBook.getLastUpdateId());
+        depth.setAsks(asks);
+        depth.setBids(bids);
+        return depth;
     }
 
+    /**
+     * Subscribe full depth (depth.step0) streams, every push replaces the local book.
+     */
     public void createOrderBook(Set<String> symbols, int size) {
-        this.orderBookMap = new ConcurrentHashMap<>(symbols.size() / 3 * 4);
-        this.orderBookSize = size;
-
-        UniverseApiCallback<DepthResponse> callback = new UniverseApiCallback<DepthResponse>() {
+        Set<String> created = initOrderBooks(symbols, size, null);
+        HuobiDepthSynchronizer[] syncs = this.depthSyncs;
+        HuobiDepthSink sink = new DepthSink() {
             @Override
-            public void onResponse(DepthResponse depth) {
-                String ch = depth.getCh();
-                String symbolFromTopic = getSymbolFromTopic(ch);
-                updateOrderBook(symbolFromTopic, depth.getTick());
+            public void onTick(int symbolId, HuobiDepthTick tick) {
+                HuobiDepthSynchronizer sync = symbolId < syncs.length ? syncs[symbolId] : null;
+                if (sync != null) {
+                    sync.onDepth(tick);
+                }
             }
         };
-        this.webSocketClient.onDepthEvent(symbols, callback);
+        this.webSocketClient.onDepthEvent(created, this.symbolRegistry, sink);
+        subscribeTrades(created);
         try {
             Thread.sleep(500);
         } catch (InterruptedException e) {
             log.error("Thread sleep with interrupted exception.", e);
         }
-        log.info("Create {} market order books.", symbols.size());
+        log.info("Create {} market order books.", created.size());
+    }
+
+    /**
+     * Subscribe incremental market by price (mbp) streams and keep a local book per symbol, so deep books
+     * do not need full retransmits. levels is one of 5, 20 and 150.
+     */
+    public void createMbpOrderBook(Set<String> symbols, int levels) {
+        Set<String> created = initOrderBooks(symbols, levels,
+                s -> this.webSocketClient.requestMbpSnapshot(this.mbpSocket, s, levels));
+        HuobiDepthSynchronizer[] syncs = this.depthSyncs;
+        HuobiDepthSink sink = new DepthSink() {
+            @Override
+            public void onTick(int symbolId, HuobiDepthTick tick) {
+                HuobiDepthSynchronizer sync = symbolId < syncs.length ? syncs[symbolId] : null;
+                if (sync != null) {
+                    sync.onIncrement(tick);
+                }
+            }
+
+            @Override
+            public void onSnapshot(int symbolId, HuobiDepthTick data) {
+                HuobiDepthSynchronizer sync = symbolId < syncs.length ? syncs[symbolId] : null;
+                if (sync != null) {
+                    sync.onSnapshot(data);
+                }
+            }
+        };
+        this.mbpSocket = this.webSocketClient.onMbpEvent(created, levels, this.symbolRegistry, sink);
+        subscribeTrades(created);
+        for (String symbol : created) {
+            syncs[this.symbolRegistry.id(symbol)].start();
+        }
+        log.info("Create {} mbp order books with {} levels.", created.size(), levels);
+    }
+
+    /**
+     * Publish the trades of the symbols into the bus, if any, next to their books.
+     */
+    private void subscribeTrades(Set<String> symbols) {
+        MarketDataBus bus = this.marketDataBus;
+        if (bus != null) {
+            this.webSocketClient.onTradeEvent(symbols, this.symbolRegistry, bus, QTY_SCALE);
+        }
     }
 
-    private String getSymbolFromTopic(String topic) {
-        //market.btcusdt.depth.step5
-        int start = topic.indexOf('.');
-        int end = topic.indexOf('.', start + 1);
-        return topic.substring(start + 1, end);
+    /**
+     * Read the local order books from the replay instead of depth streams, the listener is told on the replay
+     * thread. Only the books are replayed and there is no simulated Huobi account, so placing or canceling an
+     * order fails from now on instead of trading on the exchange at recorded prices.
+     */
+    public synchronized void replayOrderBook(ReplayEngine replay, Set<String> symbols, int size) {
+        SymbolRegistry registry = getSymbolRegistry();
+        OrderBookView[] books = Arrays.copyOf(this.orderBooks, registry.size());
+        for (String symbol : symbols) {
+            int id = registry.require(symbol);
+            if (books[id] == null) {
+                books[id] = replay.subscribe(Venue.HUOBI, symbol, id, size, registry.pricePrecision(id), QTY_SCALE);
+            }
+        }
+        this.orderBooks = books;
+        this.replayEngine = replay;
+        replay.setListener(Venue.HUOBI, this.bookUpdateListener);
+        log.info("Replay {} market order books.", symbols.size());
     }
 
-    private void updateOrderBook(String symbol, Depth depth) {
-        this.orderBookMap.put(symbol, depth);
+    /**
+     * @return the symbols that had no book yet, the books of the others are kept.
+     */
+    private synchronized Set<String> initOrderBooks(Set<String> symbols, int size,
+                                                    Consumer<String> snapshotRequester) {
+        SymbolRegistry registry = getSymbolRegistry();
+        OrderBookView[] books = Arrays.copyOf(this.orderBooks, registry.size());
+        HuobiDepthSynchronizer[] syncs = Arrays.copyOf(this.depthSyncs, registry.size());
+        Set<String> created = new HashSet<>();
+        for (String symbol : symbols) {
+            int id = registry.require(symbol);
+            if (books[id] != null) {
+                continue;
+            }
+            int priceScale = registry.pricePrecision(id);
+            TickOrderBook orderBook = new TickOrderBook(size, priceScale, QTY_SCALE);
+            OrderBookView view = new OrderBookView(size, priceScale, QTY_SCALE);
+            books[id] = view;
+            HuobiDepthSynchronizer sync = new HuobiDepthSynchronizer(symbol, id, orderBook, view, snapshotRequester);
+            sync.setListener(this.bookUpdateListener);
+            sync.setMarketDataBus(this.marketDataBus);
+            syncs[id] = sync;
+            created.add(symbol);
+        }
+        this.orderBooks = books;
+        this.depthSyncs = syncs;
+        return created;
+    }
+
+    /**
+     * Notify the listener from the websocket threads whenever a local order book changed, e.g. a
+     * {@link io.magicalne.smym.event.BookEventDispatcher} waking a strategy.
+     */
+    public void setBookUpdateListener(BookUpdateListener listener) {
+        this.bookUpdateListener = listener;
+        if (this.replayEngine != null) {
+            this.replayEngine.setListener(Venue.HUOBI, listener);
+        }
+        for (HuobiDepthSynchronizer sync : this.depthSyncs) {
+            if (sync != null) {
+                sync.setListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Publish the local order books created from now on and the trades of their symbols into
+     * the bus.
+     */
+    public void setMarketDataBus(MarketDataBus bus) {
+        this.marketDataBus = bus;
+    }
+
+    public boolean isOrderBookSynced(String symbol) {
+        if (this.replayEngine != null) {
+            return getOrderBookView(symbol) != null;
+        }
+        int id = this.symbolRegistry.id(symbol);
+        HuobiDepthSynchronizer[] syncs = this.depthSyncs;
+        HuobiDepthSynchronizer sync = id >= 0 && id < syncs.length ? syncs[id] : null;
+        return sync != null && sync.isSynced();
+    }
+
+    private abstract static class DepthSink implements HuobiDepthSink {
+
+        @Override
+        public void onSnapshot(int symbolId, HuobiDepthTick data) {
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+            log.error("Huobi depth stream failed.", cause);
+        }
+    }
+
+    private void checkNotReplaying() {
+        if (this.replayEngine != null) {
+            throw new IllegalStateException("Huobi books are replayed, orders are not sent to the exchange.");
+        }
     }
 
     private OrderPlaceResponse order(String symbol, String quantity, String price, OrderType orderType) {
+        checkNotReplaying();
         OrderPlaceRequest req = new OrderPlaceRequest();
         req.setAccountId(accountId);
         req.setSymbol(symbol);
@@ -110,33 +390,99 @@ public class HuobiExchange {
     public OrderDetail marketBuy(String symbol, String quoteQuantity) {
         OrderPlaceResponse res = order(symbol, quoteQuantity, null, OrderType.BUY_MARKET);
         if (res.checkStatusOK()) {
-            String orderId = res.getData();
-            for (;;) {
-                OrderDetail detail = queryOrder(orderId);
-                if (FILLED.equals(detail.getState())) {
-                    return detail;
-                }
-            }
+            return this.orderTracker.awaitTerminal(res.getData()).join();
         } else {
             return marketBuy(symbol, quoteQuantity);
         }
     }
 
+    /**
+     * Place a market buy without blocking, the future completes with the filled order.
+     */
+    public CompletableFuture<OrderDetail> marketBuyAsync(String symbol, String quoteQuantity) {
+        return orderAsync(symbol, quoteQuantity, null, OrderType.BUY_MARKET).thenCompose(res -> res.checkStatusOK()
+                ? this.orderTracker.awaitTerminal(res.getData()) : marketBuyAsync(symbol, quoteQuantity));
+    }
+
+    public CompletableFuture<OrderDetail> marketSellAsync(String symbol, String baseQuantity) {
+        return orderAsync(symbol, baseQuantity, null, OrderType.SELL_MARKET).thenCompose(res -> res.checkStatusOK()
+                ? this.orderTracker.awaitTerminal(res.getData()) : marketSellAsync(symbol, baseQuantity));
+    }
+
     public OrderDetail marketSell(String symbol, String baseQuantity) {
         OrderPlaceResponse res = order(symbol, baseQuantity, null, OrderType.SELL_MARKET);
         if (res.checkStatusOK()) {
-            String orderId = res.getData();
-            for (;;) {
-                OrderDetail detail = queryOrder(orderId);
-                if (FILLED.equals(detail.getState())) {
-                    return detail;
-                }
-            }
+            return this.orderTracker.awaitTerminal(res.getData()).join();
         } else {
-            return marketBuy(symbol, baseQuantity);
+            return marketSell(symbol, baseQuantity);
         }
     }
 
+    private CompletableFuture<OrderPlaceResponse> orderAsync(String symbol, String quantity, String price,
+                                                             OrderType orderType) {
+        checkNotReplaying();
+        OrderPlaceRequest req = new OrderPlaceRequest();
+        req.setAccountId(accountId);
+        req.setSymbol(symbol);
+        req.setType(orderType.getType());
+        req.setPrice(price);
+        req.setAmount(quantity);
+        return this.asyncRestClient.orderPlace(req);
+    }
+
+    /**
+     * Place a limit buy without blocking, so several legs can be sent at once.
+     */
+    public CompletableFuture<OrderPlaceResponse> limitBuyAsync(String symbol, String quantity, String price) {
+        return orderAsync(symbol, quantity, price, OrderType.BUY_LIMIT);
+    }
+
+    public CompletableFuture<OrderPlaceResponse> limitSellAsync(String symbol, String quantity, String price) {
+        return orderAsync(symbol, quantity, price, OrderType.SELL_LIMIT);
+    }
+
+    public CompletableFuture<SubmitCancelResponse> submitCancelAsync(String orderId) {
+        checkNotReplaying();
+        return this.asyncRestClient.submitcancel(orderId);
+    }
+
+    /**
+     * Cancel an order without blocking, the future completes with the order once it is terminal, or with the last
+     * queried order if no update arrives within {@link #CANCEL_TIMEOUT_MS}. The cancel request is sent at most
+     * {@link #MAX_CANCEL_ATTEMPTS} times before the future fails with {@link ApiException}.
+     */
+    public CompletableFuture<OrderDetail> cancelAsync(String orderId) {
+        return cancelAsync(orderId, MAX_CANCEL_ATTEMPTS);
+    }
+
+    private CompletableFuture<OrderDetail> cancelAsync(String orderId, int attempts) {
+        return submitCancelAsync(orderId).thenCompose(res -> {
+            if (res.checkStatusOK()) {
+                return this.orderTracker.awaitTerminal(orderId, CANCEL_TIMEOUT_MS).thenCompose(detail ->
+                        detail != null ? CompletableFuture.completedFuture(detail) : queryOrderAsync(orderId));
+            }
+            return queryOrderAsync(orderId).thenCompose(detail -> {
+                if (HuobiOrderTracker.isTerminal(detail.getState())) {
+                    return CompletableFuture.completedFuture(detail);
+                }
+                if (attempts <= 1) {
+                    throw new ApiException(res.getErrCode(), res.getErrMsg());
+                }
+                return cancelAsync(orderId, attempts - 1);
+            });
+        });
+    }
+
+    public CompletableFuture<OrderDetail> queryOrderAsync(String orderId) {
+        return this.asyncRestClient.ordersDetail(orderId).thenApply(res -> {
+            if (res.checkStatusOK()) {
+                return res.getData();
+            } else {
+                throw new ApiException(res.getErrCode(), res.getErrMsg());
+            }
+        });
+    }
+
     public OrderPlaceResponse limitBuy(String symbol, String quantity, String price) {
         return order(symbol, quantity, price, OrderType.BUY_LIMIT);
     }
@@ -145,26 +491,62 @@ public class HuobiExchange {
         return order(symbol, quantity, price, OrderType.SELL_LIMIT);
     }
 
+    /**
+     * Blocking version of {@link #cancelAsync(String)}.
+     */
     public OrderDetail cancel(String orderId) {
-        boolean status = this.restClient.submitcancel(orderId).checkStatusOK();
-        if (status) {
-            for (;;) {
-                OrderDetail detail = queryOrder(orderId);
-                String state = detail.getState();
-                if (CANCELED.equals(state) ||
-                        PARTIAL_CANCELED.equals(state) ||
-                        FILLED.equals(state)) {
-                    return detail;
-                }
-                try {
-                    TimeUnit.MILLISECONDS.sleep(150);
-                } catch (InterruptedException e) {
-                    log.error("Interrupted exception.", e);
-                }
+        checkNotReplaying();
+        for (int attempt = 1; ; attempt++) {
+            SubmitCancelResponse res = this.restClient.submitcancel(orderId);
+            if (res.checkStatusOK()) {
+                break;
+            }
+            OrderDetail detail = queryOrder(orderId);
+            if (HuobiOrderTracker.isTerminal(detail.getState())) {
+                return detail;
+            }
+            if (attempt >= MAX_CANCEL_ATTEMPTS) {
+                throw new ApiException(res.getErrCode(), res.getErrMsg());
             }
-        } else {
-            return cancel(orderId);
         }
+        OrderDetail detail = awaitOrder(orderId, CANCEL_TIMEOUT_MS);
+        return detail != null ? detail : queryOrder(orderId);
+    }
+
+    /**
+     * @return the order once it is filled, canceled or partial-canceled, or null if it is still open after
+     * timeoutMs.
+     */
+    public OrderDetail awaitOrder(String orderId, long timeoutMs) {
+        try {
+            return this.orderTracker.awaitTerminal(orderId).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new ApiException(e);
+        }
+    }
+
+    public CompletableFuture<OrderDetail> awaitOrderAsync(String orderId) {
+        return this.orderTracker.awaitTerminal(orderId);
+    }
+
+    /**
+     * @return a future completed like {@link #awaitOrder(String, long)} returns, without blocking.
+     */
+    public CompletableFuture<OrderDetail> awaitOrderAsync(String orderId, long timeoutMs) {
+        return this.orderTracker.awaitTerminal(orderId, timeoutMs);
+    }
+
+    /**
+     * @return a future completed with the order once it is partial-filled or terminal, or with null if nothing
+     * is filled after timeoutMs.
+     */
+    public CompletableFuture<OrderDetail> awaitFillAsync(String orderId, long timeoutMs) {
+        return this.orderTracker.awaitFill(orderId, timeoutMs);
     }
 
     public OrderDetail queryOrder(String orderId) {
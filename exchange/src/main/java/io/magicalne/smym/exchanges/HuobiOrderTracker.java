@@ -0,0 +1,200 @@
+package io.magicalne.smym.exchanges;
+
+import io.magicalne.smym.dto.HuobiOrderUpdate;
+import io.magicalne.smym.dto.OrderDetail;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Local order state keyed by order id, fed by the order websocket.
+ *
+ * {@link #awaitTerminal(String)} returns a future completed when the order reaches filled, canceled or
+ * partial-canceled, {@link #awaitFill(String, long)} one completed already when it is partial-filled. Pushes
+ * complete them right away; REST polling with exponential backoff is only kept as a fallback in case a push is
+ * missed or the websocket is down.
+ */
+@Slf4j
+public class HuobiOrderTracker {
+
+    private static final String FILLED = "filled";
+    private static final String CANCELED = "canceled";
+    private static final String PARTIAL_CANCELED = "partial-canceled";
+    private static final String PARTIAL_FILLED = "partial-filled";
+    private static final int MAX_ORDERS = 4096;
+    private static final long MAX_POLL_DELAY_MS = 5000;
+
+    private final Function<String, CompletableFuture<OrderDetail>> queryOrder;
+    private final ScheduledExecutorService scheduler;
+    private volatile long initialPollDelayMs;
+    private final Map<String, OrderDetail> orders = new LinkedHashMap<String, OrderDetail>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OrderDetail> eldest) {
+            return size() > MAX_ORDERS;
+        }
+    };
+    private final ConcurrentMap<String, CompletableFuture<OrderDetail>> waiters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<OrderDetail>> fillWaiters = new ConcurrentHashMap<>();
+
+    /**
+     * @param queryOrder         REST fallback to query an order.
+     * @param initialPollDelayMs delay of the first fallback poll, doubled after each poll.
+     */
+    public HuobiOrderTracker(Function<String, CompletableFuture<OrderDetail>> queryOrder,
+                             long initialPollDelayMs) {
+        this.queryOrder = queryOrder;
+        this.initialPollDelayMs = initialPollDelayMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "huobi-order-poller");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void setInitialPollDelayMs(long initialPollDelayMs) {
+        this.initialPollDelayMs = initialPollDelayMs;
+    }
+
+    public static boolean isTerminal(String state) {
+        return FILLED.equals(state) || CANCELED.equals(state) || PARTIAL_CANCELED.equals(state);
+    }
+
+    private static boolean isFilling(String state) {
+        return PARTIAL_FILLED.equals(state) || isTerminal(state);
+    }
+
+    private static int progress(String state) {
+        return isTerminal(state) ? 2 : PARTIAL_FILLED.equals(state) ? 1 : 0;
+    }
+
+    private static double filled(OrderDetail detail) {
+        return detail.getFieldAmount() == null ? 0 : Double.parseDouble(detail.getFieldAmount());
+    }
+
+    /**
+     * Pushes and polls arrive in any order, the state of an order only moves forward and its filled amount only
+     * grows, so an update behind the known one is stale.
+     */
+    private static boolean isBehind(OrderDetail detail, OrderDetail known) {
+        int progress = progress(detail.getState());
+        int knownProgress = progress(known.getState());
+        return progress < knownProgress || progress == knownProgress && filled(detail) < filled(known);
+    }
+
+    public void onUpdate(HuobiOrderUpdate update) {
+        onOrderDetail(update.toOrderDetail());
+    }
+
+    public void onOrderDetail(OrderDetail detail) {
+        String orderId = String.valueOf(detail.getId());
+        synchronized (orders) {
+            OrderDetail known = orders.get(orderId);
+            if (known != null && isBehind(detail, known)) {
+                return;
+            }
+            orders.put(orderId, detail);
+        }
+        if (isFilling(detail.getState())) {
+            CompletableFuture<OrderDetail> waiter = fillWaiters.remove(orderId);
+            if (waiter != null) {
+                waiter.complete(detail);
+            }
+        }
+        if (isTerminal(detail.getState())) {
+            CompletableFuture<OrderDetail> waiter = waiters.remove(orderId);
+            if (waiter != null) {
+                waiter.complete(detail);
+            }
+        }
+    }
+
+    /**
+     * @return the last known state of the order, or null.
+     */
+    public OrderDetail getOrder(String orderId) {
+        synchronized (orders) {
+            return orders.get(orderId);
+        }
+    }
+
+    public CompletableFuture<OrderDetail> awaitTerminal(String orderId) {
+        return await(orderId, waiters, HuobiOrderTracker::isTerminal);
+    }
+
+    /**
+     * @return a future completed with the order once it is terminal, or with null if it is still open after
+     * timeoutMs. The order keeps being tracked after the timeout.
+     */
+    public CompletableFuture<OrderDetail> awaitTerminal(String orderId, long timeoutMs) {
+        return within(awaitTerminal(orderId), timeoutMs);
+    }
+
+    /**
+     * @return a future completed with the order once it is partial-filled or terminal, or with null if nothing
+     * is filled after timeoutMs.
+     */
+    public CompletableFuture<OrderDetail> awaitFill(String orderId, long timeoutMs) {
+        return within(await(orderId, fillWaiters, HuobiOrderTracker::isFilling), timeoutMs);
+    }
+
+    private CompletableFuture<OrderDetail> await(String orderId,
+                                                 ConcurrentMap<String, CompletableFuture<OrderDetail>> byOrder,
+                                                 Predicate<String> reached) {
+        CompletableFuture<OrderDetail> created = new CompletableFuture<>();
+        CompletableFuture<OrderDetail> waiter = byOrder.putIfAbsent(orderId, created);
+        if (waiter != null) {
+            return waiter;
+        }
+        OrderDetail known = getOrder(orderId);
+        if (known != null && reached.test(known.getState())) {
+            byOrder.remove(orderId, created);
+            created.complete(known);
+            return created;
+        }
+        schedulePoll(orderId, created, initialPollDelayMs);
+        return created;
+    }
+
+    private CompletableFuture<OrderDetail> within(CompletableFuture<OrderDetail> waiter, long timeoutMs) {
+        CompletableFuture<OrderDetail> result = new CompletableFuture<>();
+        waiter.whenComplete((detail, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(detail);
+            }
+        });
+        if (!result.isDone()) {
+            ScheduledFuture<?> timeout = scheduler.schedule(() -> result.complete(null), timeoutMs,
+                    TimeUnit.MILLISECONDS);
+            result.whenComplete((detail, e) -> timeout.cancel(false));
+        }
+        return result;
+    }
+
+    private void schedulePoll(String orderId, CompletableFuture<OrderDetail> waiter, long delayMs) {
+        scheduler.schedule(() -> {
+            if (waiter.isDone()) {
+                return;
+            }
+            queryOrder.apply(orderId).whenComplete((detail, e) -> {
+                if (e != null) {
+                    log.warn("Fallback query of order {} failed: {}", orderId, e.getMessage());
+                } else {
+                    onOrderDetail(detail);
+                }
+                if (!waiter.isDone()) {
+                    schedulePoll(orderId, waiter, Math.min(delayMs * 2, MAX_POLL_DELAY_MS));
+                }
+            });
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,69 @@
+package io.magicalne.smym.exchanges;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding window for an exchange rate limit of {@code limit} permits per interval.
+ *
+ * Exchanges count requests in windows of the interval. The times of the last {@code limit} permits are kept in
+ * a ring, a permit is due once the permit {@code limit} places before it left the window, so no window of the
+ * interval, wherever it starts, ever sees more than the limit and the full limit is used. Permits are reserved
+ * ahead: a caller that gets a positive delay owns its permits and must wait that long before it sends.
+ */
+public final class SlidingWindowLimit {
+
+  private final long intervalNanos;
+  // due time of the last limit permits, slot of permit i is i % limit
+  private final long[] times;
+  private long count = 0;
+  private long lastDue;
+
+  public SlidingWindowLimit(int limit, long interval, TimeUnit unit, long now) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit must be positive: " + limit);
+    }
+    this.intervalNanos = unit.toNanos(interval);
+    this.times = new long[limit];
+    this.lastDue = now;
+  }
+
+  /**
+   * Take permits, after the ones reserved before.
+   * @param now current {@link System#nanoTime()}.
+   * @return nanos to wait until the permits are due, 0 if they are available now.
+   */
+  public synchronized long reserve(int permits, long now) {
+    long due = due(permits, now);
+    take(permits, due);
+    return due - now;
+  }
+
+  /**
+   * @param now current {@link System#nanoTime()}.
+   * @return the earliest time the permits are allowed at, not before now and the permits taken before.
+   */
+  public synchronized long due(int permits, long now) {
+    int limit = times.length;
+    if (permits <= 0 || permits > limit) {
+      throw new IllegalArgumentException("Cannot reserve " + permits + " permits of " + limit);
+    }
+    long due = Math.max(now, lastDue);
+    long oldest = count + permits - 1 - limit;
+    if (oldest >= 0) {
+      due = Math.max(due, times[(int) (oldest % limit)] + intervalNanos);
+    }
+    return due;
+  }
+
+  /**
+   * Take permits sent at a time no earlier than {@link #due(int, long)}, e.g. the latest due time of all
+   * limits a request counts against.
+   */
+  public synchronized void take(int permits, long due) {
+    int limit = times.length;
+    for (int i = 0; i < permits; i++) {
+      times[(int) (count++ % limit)] = due;
+    }
+    lastDue = Math.max(lastDue, due);
+  }
+}
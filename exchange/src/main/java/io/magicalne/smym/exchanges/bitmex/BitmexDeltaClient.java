@@ -15,16 +15,24 @@ import org.knowm.xchange.bitmex.dto.trade.BitmexSide;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class BitmexDeltaClient {
 
+  private static final TypeReference<List<BitmexPrivateOrder>> ORDER_LIST =
+    new TypeReference<List<BitmexPrivateOrder>>() {};
+
   private final String baseUrl;
   private final OkHttpClient client;
   private final ObjectMapper objectMapper;
+  // orders of each symbol by id, a refresh replaces the map of the symbol and never changes a published one
+  private final Map<String, Map<String, BitmexPrivateOrder>> orderCache = new ConcurrentHashMap<>();
 
   public BitmexDeltaClient(String host, int port) {
     client = new OkHttpClient();
@@ -35,42 +43,81 @@ public class BitmexDeltaClient {
       .registerModule(new ThreeTenModule());
   }
 
-  public BitmexPrivateOrder getOrderById(String symbol, String orderId) throws BitmexQueryOrderException, IOException {
+  /**
+   * Without a delta server, for a simulated client that overrides the calls it serves.
+   */
+  protected BitmexDeltaClient() {
+    client = null;
+    baseUrl = null;
+    objectMapper = null;
+  }
+
+  /**
+   * Fetch the order list of the symbol once and index it by order id. Lookups through
+   * {@link #getOrderById(String, String)} and {@link #getOrdersByIds(String, Collection)} are served from this
+   * cache until the next refresh, so call it once per tick. Readers on other threads see either the old or the
+   * new orders of the symbol, never a partial list.
+   */
+  public void refreshOrders(String symbol) throws IOException {
     Request req = new Request.Builder().url(baseUrl + "/order?symbol=" + symbol).get().build();
     Call call = client.newCall(req);
     try (Response res = call.execute()) {
-      if (res.isSuccessful()) {
-        ResponseBody body = res.body();
-        Preconditions.checkNotNull(body);
-        TypeReference<List<BitmexPrivateOrder>> ref = new TypeReference<List<BitmexPrivateOrder>>() {
-        };
-        List<BitmexPrivateOrder> orders = objectMapper.readValue(body.string(), ref);
-        for (BitmexPrivateOrder order : orders) {
-          if (order.getId().equals(orderId)) {
-            return order;
-          }
-        }
+      if (!res.isSuccessful()) {
+        throw new IOException("Cannot get orders of " + symbol + ", code: " + res.code());
+      }
+      ResponseBody body = res.body();
+      Preconditions.checkNotNull(body);
+      List<BitmexPrivateOrder> orders = objectMapper.readValue(body.byteStream(), ORDER_LIST);
+      Map<String, BitmexPrivateOrder> cache = new HashMap<>(orders.size() * 2);
+      for (BitmexPrivateOrder order : orders) {
+        cache.put(order.getId(), order);
       }
+      orderCache.put(symbol, cache);
     }
-    throw new BitmexQueryOrderException("There is no such order in delta server. order id: " + orderId);
+  }
+
+  /**
+   * Look up an order in the cache of the symbol. The cache is refreshed once if it is empty or does not know
+   * the order yet, e.g. an order placed after the last refresh.
+   */
+  public BitmexPrivateOrder getOrderById(String symbol, String orderId) throws BitmexQueryOrderException, IOException {
+    Map<String, BitmexPrivateOrder> cache = orderCache.get(symbol);
+    BitmexPrivateOrder order = cache == null ? null : cache.get(orderId);
+    if (order == null) {
+      refreshOrders(symbol);
+      order = orderCache.get(symbol).get(orderId);
+    }
+    if (order == null) {
+      throw new BitmexQueryOrderException("There is no such order in delta server. order id: " + orderId);
+    }
+    return order;
+  }
+
+  /**
+   * @return orders in the same order as the ids, with null for ids unknown to the delta server.
+   */
+  public List<BitmexPrivateOrder> getOrdersByIds(String symbol, Collection<String> orderIds) throws IOException {
+    Map<String, BitmexPrivateOrder> cache = orderCache.get(symbol);
+    if (cache == null || !cache.keySet().containsAll(orderIds)) {
+      refreshOrders(symbol);
+      cache = orderCache.get(symbol);
+    }
+    List<BitmexPrivateOrder> orders = new ArrayList<>(orderIds.size());
+    for (String id : orderIds) {
+      orders.add(cache.get(id));
+    }
+    return orders;
   }
 
   public List<BitmexPrivateOrder> getNewOrders(String symbol) throws IOException {
-    Request req = new Request.Builder().url(baseUrl + "/order?symbol=" + symbol).get().build();
-    Call call = client.newCall(req);
-    try (Response res = call.execute()) {
-      if (res.isSuccessful()) {
-        ResponseBody body = res.body();
-        Preconditions.checkNotNull(body);
-        TypeReference<List<BitmexPrivateOrder>> ref = new TypeReference<List<BitmexPrivateOrder>>() {};
-        List<BitmexPrivateOrder> orders = objectMapper.readValue(body.string(), ref);
-        return orders
-          .stream()
-          .filter(o -> o.getOrderStatus() == BitmexPrivateOrder.OrderStatus.New)
-          .collect(Collectors.toList());
+    refreshOrders(symbol);
+    List<BitmexPrivateOrder> orders = new ArrayList<>();
+    for (BitmexPrivateOrder order : orderCache.get(symbol).values()) {
+      if (order.getOrderStatus() == BitmexPrivateOrder.OrderStatus.New) {
+        orders.add(order);
       }
     }
-    return null;
+    return orders;
   }
 
   public BitmexPosition getPosition(String symbol) throws IOException {
@@ -1,5 +1,6 @@
 package io.magicalne.smym.exchanges.bitmex;
 
+import io.magicalne.smym.decimal.Price;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.ExchangeFactory;
 import org.knowm.xchange.ExchangeSpecification;
@@ -10,6 +11,7 @@ import org.knowm.xchange.bitmex.service.BitmexMarketDataService;
 import org.knowm.xchange.bitmex.service.BitmexTradeService;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -30,11 +32,19 @@ public class BitmexExchange {
     marketDataService = (BitmexMarketDataService) exchange.getMarketDataService();
   }
 
+  /**
+   * Without a connection, for a simulated exchange that overrides the calls it serves.
+   */
+  protected BitmexExchange() {
+    tradeService = null;
+    marketDataService = null;
+  }
+
   public BitmexPrivateOrder placeLimitOrder(String symbol, double price, int contracts, BitmexSide side) {
     BitmexPlaceOrderParameters param = new BitmexPlaceOrderParameters.Builder(symbol)
       .setSide(side)
-      .setPrice(new BigDecimal(price))
-      .setOrderQuantity(new BigDecimal(contracts))
+      .setPrice(toPrice(price))
+      .setOrderQuantity(toQuantity(contracts))
       .setOrderType(BitmexOrderType.LIMIT)
       .setExecutionInstructions(Collections.singletonList(BitmexExecutionInstruction.PARTICIPATE_DO_NOT_INITIATE))
       .build();
@@ -44,7 +54,7 @@ public class BitmexExchange {
   public BitmexPrivateOrder placeMarketOrder(String symbol, int contracts, BitmexSide side) {
     BitmexPlaceOrderParameters param = new BitmexPlaceOrderParameters.Builder(symbol)
       .setSide(side)
-      .setOrderQuantity(new BigDecimal(contracts))
+      .setOrderQuantity(toQuantity(contracts))
       .setOrderType(BitmexOrderType.MARKET)
       .build();
     return this.tradeService.placeOrder(param);
@@ -53,16 +63,16 @@ public class BitmexExchange {
   public List<BitmexPrivateOrder> placePairOrders(String symbol, double bidPrice, double askPrice, int contracts) {
     BitmexPlaceOrderParameters bidParam = new BitmexPlaceOrderParameters.Builder(symbol)
       .setSide(BitmexSide.BUY)
-      .setPrice(new BigDecimal(bidPrice))
-      .setOrderQuantity(new BigDecimal(contracts))
+      .setPrice(toPrice(bidPrice))
+      .setOrderQuantity(toQuantity(contracts))
       .setOrderType(BitmexOrderType.LIMIT)
       .setExecutionInstructions(Collections.singletonList(BitmexExecutionInstruction.PARTICIPATE_DO_NOT_INITIATE))
       .build();
     PlaceOrderCommand bid = new PlaceOrderCommand(bidParam);
     BitmexPlaceOrderParameters askParam = new BitmexPlaceOrderParameters.Builder(symbol)
       .setSide(BitmexSide.SELL)
-      .setPrice(new BigDecimal(askPrice))
-      .setOrderQuantity(new BigDecimal(contracts))
+      .setPrice(toPrice(askPrice))
+      .setOrderQuantity(toQuantity(contracts))
       .setOrderType(BitmexOrderType.LIMIT)
       .setExecutionInstructions(Collections.singletonList(BitmexExecutionInstruction.PARTICIPATE_DO_NOT_INITIATE))
       .build();
@@ -79,8 +89,8 @@ public class BitmexExchange {
   public BitmexPrivateOrder amendOrderPrice(String orderId, int contracts, double price, String text) {
     BitmexReplaceOrderParameters param = new BitmexReplaceOrderParameters.Builder()
       .setOrderId(orderId)
-      .setOrderQuantity(new BigDecimal(contracts))
-      .setPrice(new BigDecimal(price))
+      .setOrderQuantity(toQuantity(contracts))
+      .setPrice(toPrice(price))
       .setText(text)
       .build();
     return this.tradeService.replaceOrder(param);
@@ -92,16 +102,16 @@ public class BitmexExchange {
 
   public List<BitmexPrivateOrder> amendPairOrder(String longOrderId, double bidPrice,
                                                  String shortOrderId, double askPrice, int contracts) {
-    BigDecimal orderQuantity = new BigDecimal(contracts);
+    BigDecimal orderQuantity = toQuantity(contracts);
     BitmexReplaceOrderParameters bidParam = new BitmexReplaceOrderParameters.Builder()
       .setOrderId(longOrderId)
-      .setPrice(new BigDecimal(bidPrice))
+      .setPrice(toPrice(bidPrice))
       .setOrderQuantity(orderQuantity)
       .build();
     ReplaceOrderCommand bid = new ReplaceOrderCommand(bidParam);
     BitmexReplaceOrderParameters askParam = new BitmexReplaceOrderParameters.Builder()
       .setOrderId(shortOrderId)
-      .setPrice(new BigDecimal(askPrice))
+      .setPrice(toPrice(askPrice))
       .setOrderQuantity(orderQuantity)
       .build();
     ReplaceOrderCommand ask = new ReplaceOrderCommand(askParam);
@@ -114,11 +124,22 @@ public class BitmexExchange {
   }
 
   public BitmexPosition setLeverage(String symbol, double leverage) {
-    return this.tradeService.updateLeveragePosition(symbol, new BigDecimal(leverage));
+    return this.tradeService.updateLeveragePosition(symbol, BigDecimal.valueOf(leverage));
   }
 
   public List<BitmexKline> getRecentStats(String symbol) {
 
     return marketDataService.getBucketedTrades("1h", false, symbol, 240, true);
   }
+
+  /**
+   * Round a price to the precision of the local books instead of expanding the binary double.
+   */
+  public static BigDecimal toPrice(double price) {
+    return Price.fromDouble(price, BitmexLocalOrderBook.PRICE_SCALE, RoundingMode.HALF_EVEN).toBigDecimal();
+  }
+
+  public static BigDecimal toQuantity(int contracts) {
+    return BigDecimal.valueOf(contracts);
+  }
 }
@@ -0,0 +1,213 @@
+package io.magicalne.smym.exchanges.bitmex;
+
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.marketdata.BookEvent;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import org.knowm.xchange.bitmex.dto.trade.BitmexSide;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Level book of one symbol built from Bitmex orderBookL2 actions. Levels are keyed by their Bitmex id since
+ * update and delete actions carry no price.
+ *
+ * Only the websocket thread applies actions. After each message it publishes an immutable
+ * {@link BitmexDeltaClient.OrderBookL2} which any thread reads with a single volatile load.
+ */
+public class BitmexLocalOrderBook {
+
+  /**
+   * Scales of prices and sizes on a {@link MarketDataBus}, sizes are whole contracts.
+   */
+  public static final int PRICE_SCALE = 8;
+  public static final int QTY_SCALE = 0;
+
+  private final String symbol;
+  private final int symbolId;
+  private final Map<Long, BitmexDeltaClient.OrderBookEntry> levels = new HashMap<>();
+  private final TreeMap<Double, BitmexDeltaClient.OrderBookEntry> bids = new TreeMap<>(Collections.reverseOrder());
+  private final TreeMap<Double, BitmexDeltaClient.OrderBookEntry> asks = new TreeMap<>();
+  private volatile BitmexDeltaClient.OrderBookL2 published;
+  private boolean partial = false;
+
+  /**
+   * @param symbolId the id of the symbol in its {@link BitmexOrderBookStream}.
+   */
+  public BitmexLocalOrderBook(String symbol, int symbolId) {
+    this.symbol = symbol;
+    this.symbolId = symbolId;
+  }
+
+  public String getSymbol() {
+    return symbol;
+  }
+
+  public int getSymbolId() {
+    return symbolId;
+  }
+
+  /**
+   * @return the latest book or null before the first partial or while disconnected.
+   */
+  public BitmexDeltaClient.OrderBookL2 getOrderBookL2() {
+    return published;
+  }
+
+  public boolean isSynced() {
+    return published != null;
+  }
+
+  void clear() {
+    levels.clear();
+    bids.clear();
+    asks.clear();
+    partial = false;
+    published = null;
+  }
+
+  void partial() {
+    clear();
+    partial = true;
+  }
+
+  boolean hasPartial() {
+    return partial;
+  }
+
+  void insert(long id, BitmexSide side, long size, double price) {
+    BitmexDeltaClient.OrderBookEntry entry = new BitmexDeltaClient.OrderBookEntry();
+    entry.setSymbol(symbol);
+    entry.setId(id);
+    entry.setSide(side);
+    entry.setSize(size);
+    entry.setPrice(price);
+    BitmexDeltaClient.OrderBookEntry old = levels.put(id, entry);
+    if (old != null) {
+      sideOf(old.getSide()).remove(old.getPrice());
+    }
+    sideOf(side).put(price, entry);
+  }
+
+  /**
+   * @return the updated level or null if it is unknown, which means the book is out of sync.
+   */
+  BitmexDeltaClient.OrderBookEntry update(long id, BitmexSide side, long size) {
+    BitmexDeltaClient.OrderBookEntry entry = levels.get(id);
+    if (entry == null) {
+      return null;
+    }
+    if (side != null && side != entry.getSide()) {
+      sideOf(entry.getSide()).remove(entry.getPrice());
+      entry.setSide(side);
+      sideOf(side).put(entry.getPrice(), entry);
+    }
+    entry.setSize(size);
+    return entry;
+  }
+
+  /**
+   * @return the removed level or null if it is unknown.
+   */
+  BitmexDeltaClient.OrderBookEntry delete(long id) {
+    BitmexDeltaClient.OrderBookEntry entry = levels.remove(id);
+    if (entry != null) {
+      sideOf(entry.getSide()).remove(entry.getPrice());
+    }
+    return entry;
+  }
+
+  void publish() {
+    if (!partial || bids.isEmpty() || asks.isEmpty()) {
+      published = null;
+      return;
+    }
+    published = new BitmexDeltaClient.OrderBookL2(copy(asks), copy(bids));
+  }
+
+  /**
+   * Publish a replayed book instead of the levels of the actions. A replay has no level ids, they are 0.
+   */
+  void publish(OrderBookSnapshot snapshot) {
+    if (snapshot.bidCount() == 0 || snapshot.askCount() == 0) {
+      published = null;
+      return;
+    }
+    List<BitmexDeltaClient.OrderBookEntry> asks = new ArrayList<>(snapshot.askCount());
+    for (int i = 0; i < snapshot.askCount(); i++) {
+      asks.add(entry(BitmexSide.SELL, snapshot.askPrice(i), snapshot.askQtyUnits(i)));
+    }
+    List<BitmexDeltaClient.OrderBookEntry> bids = new ArrayList<>(snapshot.bidCount());
+    for (int i = 0; i < snapshot.bidCount(); i++) {
+      bids.add(entry(BitmexSide.BUY, snapshot.bidPrice(i), snapshot.bidQtyUnits(i)));
+    }
+    published = new BitmexDeltaClient.OrderBookL2(asks, bids);
+  }
+
+  private BitmexDeltaClient.OrderBookEntry entry(BitmexSide side, double price, long size) {
+    BitmexDeltaClient.OrderBookEntry entry = new BitmexDeltaClient.OrderBookEntry();
+    entry.setSymbol(symbol);
+    entry.setSide(side);
+    entry.setSize(size);
+    entry.setPrice(price);
+    return entry;
+  }
+
+  /**
+   * Publish the whole book as one update: a clear followed by every level. A book larger than the bus is
+   * published in several updates of at most its capacity, only the last one completes the book.
+   */
+  void publishTo(MarketDataBus bus, long updateId, long receiveNanos) {
+    int remaining = 1 + bids.size() + asks.size();
+    int n = Math.min(remaining, bus.getCapacity());
+    long lo = bus.claim(n);
+    long hi = lo + n - 1;
+    long seq = lo;
+    bus.get(seq++).clear(Venue.BITMEX, symbol, updateId);
+    remaining--;
+    for (int i = 0; i < 2; i++) {
+      TreeMap<Double, BitmexDeltaClient.OrderBookEntry> side = i == 0 ? bids : asks;
+      for (BitmexDeltaClient.OrderBookEntry e : side.values()) {
+        if (seq > hi) {
+          bus.publish(lo, hi, 0, receiveNanos, false);
+          n = Math.min(remaining, bus.getCapacity());
+          lo = bus.claim(n);
+          hi = lo + n - 1;
+          seq = lo;
+        }
+        set(bus.get(seq++), e.getSide(), e.getPrice(), e.getSize(), updateId);
+        remaining--;
+      }
+    }
+    bus.publish(lo, hi, 0, receiveNanos);
+  }
+
+  void set(BookEvent event, BitmexSide side, double price, long size, long updateId) {
+    event.set(Venue.BITMEX, symbol, side == BitmexSide.BUY ? BookEvent.Type.BID : BookEvent.Type.ASK,
+      Decimals.fromDouble(price, PRICE_SCALE), size, PRICE_SCALE, QTY_SCALE, updateId);
+  }
+
+  private TreeMap<Double, BitmexDeltaClient.OrderBookEntry> sideOf(BitmexSide side) {
+    return side == BitmexSide.BUY ? bids : asks;
+  }
+
+  private static List<BitmexDeltaClient.OrderBookEntry> copy(TreeMap<Double, BitmexDeltaClient.OrderBookEntry> side) {
+    List<BitmexDeltaClient.OrderBookEntry> list = new ArrayList<>(side.size());
+    for (BitmexDeltaClient.OrderBookEntry e : side.values()) {
+      BitmexDeltaClient.OrderBookEntry entry = new BitmexDeltaClient.OrderBookEntry();
+      entry.setSymbol(e.getSymbol());
+      entry.setId(e.getId());
+      entry.setSide(e.getSide());
+      entry.setSize(e.getSize());
+      entry.setPrice(e.getPrice());
+      list.add(entry);
+    }
+    return list;
+  }
+}
@@ -0,0 +1,481 @@
+package io.magicalne.smym.exchanges.bitmex;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.event.BookUpdateListener;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.ReceiveClock;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.replay.ReplayEngine;
+import io.magicalne.smym.symbol.SymbolIds;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import org.knowm.xchange.bitmex.dto.trade.BitmexSide;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps local order books of the Bitmex realtime orderBookL2 tables.
+ *
+ * Frames are walked once with a token level parser into reused rows, then the partial, insert, update and
+ * delete actions are applied by level id and the touched books are published. On a failure every book is
+ * emptied and the stream reconnects; the new subscription starts again from a partial. An optional
+ * {@link BookUpdateListener} is told the id of every published book, the ids of the symbols are the order they
+ * were subscribed in, see {@link #symbolId(String)}. An optional {@link MarketDataBus} receives
+ * partials as whole books, the applied rows of every other message as one update, or the books they changed
+ * if there are more rows than the bus takes at once, and a clear for every emptied book. Bitmex has no sequence
+ * numbers, the update id on the bus counts messages. Updates on the bus carry the receive time of their message
+ * and no exchange time. A stream made with trades also subscribes the trade table and publishes every new trade
+ * to the bus with its timestamp, trade ids on the bus count trades.
+ *
+ * A stream made by {@link #replay(ReplayEngine, Set, int)} keeps the books of a replay instead.
+ */
+@Slf4j
+public class BitmexOrderBookStream extends WebSocketListener implements Closeable {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final long RECONNECT_DELAY_MS = 1000;
+  private static final String TRADE = "trade";
+
+  private final OkHttpClient client;
+  private final String url;
+  private final Map<String, BitmexLocalOrderBook> books = new HashMap<>();
+  // indexed by the id of the symbol
+  private final List<BitmexLocalOrderBook> booksById = new ArrayList<>();
+  private final List<Row> rows = new ArrayList<>();
+  private final List<BitmexLocalOrderBook> touched = new ArrayList<>();
+  private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "bitmex-orderbook-reconnect");
+    t.setDaemon(true);
+    return t;
+  });
+  private volatile WebSocket webSocket;
+  private volatile boolean closing = false;
+  private volatile BookUpdateListener listener;
+  private volatile MarketDataBus bus;
+  private long messages = 0;
+  private long trades = 0;
+  private long receiveNanos;
+  // views of the replayed books by symbol id, empty unless the stream replays
+  private final List<OrderBookView> replayed = new ArrayList<>();
+  private final OrderBookSnapshot replayBuffer = new OrderBookSnapshot();
+
+  BitmexOrderBookStream(OkHttpClient client, String baseUrl, String table, Set<String> symbols) {
+    this(client, baseUrl, table, symbols, false);
+  }
+
+  /**
+   * @param trades also subscribe the trades of the symbols, for the bus.
+   */
+  BitmexOrderBookStream(OkHttpClient client, String baseUrl, String table, Set<String> symbols, boolean trades) {
+    this.client = client;
+    StringBuilder sb = new StringBuilder(baseUrl).append("?subscribe=");
+    boolean first = true;
+    for (String symbol : symbols) {
+      addBook(symbol);
+      if (!first) {
+        sb.append(',');
+      }
+      sb.append(table).append(':').append(symbol);
+      if (trades) {
+        sb.append(',').append(TRADE).append(':').append(symbol);
+      }
+      first = false;
+    }
+    this.url = sb.toString();
+  }
+
+  private BitmexOrderBookStream(Set<String> symbols) {
+    this.client = null;
+    this.url = null;
+    for (String symbol : symbols) {
+      addBook(symbol);
+    }
+  }
+
+  private void addBook(String symbol) {
+    BitmexLocalOrderBook book = new BitmexLocalOrderBook(symbol, booksById.size());
+    books.put(symbol, book);
+    booksById.add(book);
+  }
+
+  /**
+   * Keep the books of the symbols from the replay instead of the websocket. Every update of a book is
+   * published and the listener told on the replay thread, nothing is recorded into a bus.
+   * @param depth levels kept per side, e.g. 25 like the orderBookL2_25 table.
+   */
+  public static BitmexOrderBookStream replay(ReplayEngine replay, Set<String> symbols, int depth) {
+    BitmexOrderBookStream stream = new BitmexOrderBookStream(symbols);
+    for (BitmexLocalOrderBook book : stream.booksById) {
+      stream.replayed.add(replay.subscribe(Venue.BITMEX, book.getSymbol(), book.getSymbolId(), depth,
+        BitmexLocalOrderBook.PRICE_SCALE, BitmexLocalOrderBook.QTY_SCALE));
+    }
+    replay.setListener(Venue.BITMEX, stream::onReplayedBook);
+    return stream;
+  }
+
+  private void onReplayedBook(int symbolId) {
+    if (symbolId < 0 || symbolId >= replayed.size()) {
+      return;
+    }
+    replayed.get(symbolId).read(replayBuffer);
+    BitmexLocalOrderBook book = booksById.get(symbolId);
+    book.publish(replayBuffer);
+    BookUpdateListener l = this.listener;
+    if (l != null && book.isSynced()) {
+      l.onBookUpdate(symbolId);
+    }
+  }
+
+  void connect() {
+    Request request = new Request.Builder().url(url).build();
+    this.webSocket = client.newWebSocket(request, this);
+  }
+
+  /**
+   * @return the latest book of the symbol or null if it is not subscribed or not synced yet.
+   */
+  public BitmexDeltaClient.OrderBookL2 getOrderBookL2(String symbol) {
+    BitmexLocalOrderBook book = books.get(symbol);
+    return book == null ? null : book.getOrderBookL2();
+  }
+
+  /**
+   * @return the latest book of the symbol with the id or null if it is not synced yet.
+   */
+  public BitmexDeltaClient.OrderBookL2 getOrderBookL2(int symbolId) {
+    return booksById.get(symbolId).getOrderBookL2();
+  }
+
+  /**
+   * @return the id the listener is told for the symbol, or {@link SymbolIds#UNKNOWN} if it is not subscribed.
+   */
+  public int symbolId(String symbol) {
+    BitmexLocalOrderBook book = books.get(symbol);
+    return book == null ? SymbolIds.UNKNOWN : book.getSymbolId();
+  }
+
+  public String symbol(int symbolId) {
+    return booksById.get(symbolId).getSymbol();
+  }
+
+  public void setListener(BookUpdateListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Set before the stream connects, books are only published whole after a partial.
+   */
+  public void setMarketDataBus(MarketDataBus bus) {
+    this.bus = bus;
+  }
+
+  public BitmexLocalOrderBook getLocalOrderBook(String symbol) {
+    return books.get(symbol);
+  }
+
+  @Override
+  public void onMessage(WebSocket webSocket, String text) {
+    try {
+      decode(text);
+    } catch (IOException e) {
+      log.error("Read bitmex order book message with exception.", e);
+    } catch (Exception e) {
+      log.error("Handle bitmex order book message with exception.", e);
+    }
+  }
+
+  void decode(String text) throws IOException {
+    receiveNanos = ReceiveClock.nanos();
+    String table = null;
+    String action = null;
+    int count = 0;
+    try (JsonParser p = JSON_FACTORY.createParser(text)) {
+      if (p.nextToken() != JsonToken.START_OBJECT) {
+        return;
+      }
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.getCurrentName();
+        p.nextToken();
+        switch (field) {
+          case "table":
+            table = p.getText();
+            break;
+          case "action":
+            action = p.getText();
+            break;
+          case "data":
+            count = readRows(p, TRADE.equals(table));
+            break;
+          case "subscribe":
+            log.info("Subscribed {}.", p.getText());
+            break;
+          case "error":
+            log.error("Bitmex websocket error: {}", p.getText());
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
+    }
+    if (TRADE.equals(table)) {
+      // the partial of the trade table holds past trades
+      if ("insert".equals(action)) {
+        publishTrades(count);
+      }
+    } else if (action != null) {
+      apply(action, count);
+    }
+  }
+
+  private int readRows(JsonParser p, boolean trade) throws IOException {
+    if (p.currentToken() != JsonToken.START_ARRAY) {
+      p.skipChildren();
+      return 0;
+    }
+    int count = 0;
+    while (p.nextToken() == JsonToken.START_OBJECT) {
+      if (count == rows.size()) {
+        rows.add(new Row());
+      }
+      Row row = rows.get(count++);
+      row.reset();
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.getCurrentName();
+        p.nextToken();
+        switch (field) {
+          case "symbol":
+            row.symbol = p.getText();
+            break;
+          case "id":
+            row.id = p.getLongValue();
+            break;
+          case "side":
+            row.side = "Buy".equals(p.getText()) ? BitmexSide.BUY : BitmexSide.SELL;
+            break;
+          case "size":
+            row.size = p.getLongValue();
+            break;
+          case "price":
+            row.price = p.getDoubleValue();
+            break;
+          case "timestamp":
+            if (trade) {
+              row.time = Instant.parse(p.getText()).toEpochMilli();
+            }
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
+    }
+    return count;
+  }
+
+  private void apply(String action, int count) {
+    touched.clear();
+    long updateId = ++messages;
+    for (int i = 0; i < count; i++) {
+      Row row = rows.get(i);
+      BitmexLocalOrderBook book = books.get(row.symbol);
+      if (book == null) {
+        continue;
+      }
+      if (!touched.contains(book)) {
+        touched.add(book);
+        if ("partial".equals(action)) {
+          book.partial();
+        }
+      }
+      if (!book.hasPartial()) {
+        continue;
+      }
+      switch (action) {
+        case "partial":
+        case "insert":
+          book.insert(row.id, row.side, row.size, row.price);
+          row.book = book;
+          break;
+        case "update":
+          BitmexDeltaClient.OrderBookEntry updated = book.update(row.id, row.side, row.size);
+          if (updated == null) {
+            log.warn("Unknown level {} of {}, wait for a new partial.", row.id, row.symbol);
+            book.clear();
+            publishClear(book, updateId);
+            resubscribe();
+          } else {
+            row.resolve(book, updated.getSide(), updated.getPrice(), updated.getSize());
+          }
+          break;
+        case "delete":
+          BitmexDeltaClient.OrderBookEntry deleted = book.delete(row.id);
+          if (deleted != null) {
+            row.resolve(book, deleted.getSide(), deleted.getPrice(), 0);
+          }
+          break;
+        default:
+      }
+    }
+    MarketDataBus bus = this.bus;
+    if (bus != null) {
+      if ("partial".equals(action)) {
+        for (int i = 0; i < touched.size(); i++) {
+          if (touched.get(i).hasPartial()) {
+            touched.get(i).publishTo(bus, updateId, receiveNanos);
+          }
+        }
+      } else {
+        publishRows(bus, count, updateId);
+      }
+    }
+    BookUpdateListener l = this.listener;
+    for (int i = 0; i < touched.size(); i++) {
+      BitmexLocalOrderBook book = touched.get(i);
+      book.publish();
+      if (l != null && book.isSynced()) {
+        l.onBookUpdate(book.getSymbolId());
+      }
+    }
+  }
+
+  private void publishRows(MarketDataBus bus, int count, long updateId) {
+    int applied = 0;
+    for (int i = 0; i < count; i++) {
+      BitmexLocalOrderBook book = rows.get(i).book;
+      if (book != null && book.hasPartial()) {
+        applied++;
+      }
+    }
+    if (applied == 0) {
+      return;
+    }
+    if (applied > bus.getCapacity()) {
+      // more rows than the bus takes at once, publish the books they changed instead
+      for (int i = 0; i < touched.size(); i++) {
+        if (touched.get(i).hasPartial()) {
+          touched.get(i).publishTo(bus, updateId, receiveNanos);
+        }
+      }
+      return;
+    }
+    long lo = bus.claim(applied);
+    long seq = lo;
+    for (int i = 0; i < count; i++) {
+      Row row = rows.get(i);
+      if (row.book != null && row.book.hasPartial()) {
+        row.book.set(bus.get(seq++), row.side, row.price, row.size, updateId);
+      }
+    }
+    bus.publish(lo, seq - 1, 0, receiveNanos);
+  }
+
+  /**
+   * Publish the trades of the subscribed symbols, the side of a trade is the side of its taker.
+   */
+  private void publishTrades(int count) {
+    MarketDataBus bus = this.bus;
+    if (bus == null) {
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      Row row = rows.get(i);
+      BitmexLocalOrderBook book = books.get(row.symbol);
+      if (book != null) {
+        bus.publishTrade(Venue.BITMEX, book.getSymbol(),
+          Decimals.fromDouble(row.price, BitmexLocalOrderBook.PRICE_SCALE), row.size,
+          BitmexLocalOrderBook.PRICE_SCALE, BitmexLocalOrderBook.QTY_SCALE, row.side == BitmexSide.BUY, ++trades,
+          row.time, receiveNanos);
+      }
+    }
+  }
+
+  private void publishClear(BitmexLocalOrderBook book, long updateId) {
+    MarketDataBus bus = this.bus;
+    if (bus != null) {
+      bus.publishClear(Venue.BITMEX, book.getSymbol(), updateId);
+    }
+  }
+
+  private void resubscribe() {
+    WebSocket ws = this.webSocket;
+    if (ws != null) {
+      ws.close(1000, "resync");
+    }
+  }
+
+  @Override
+  public void onClosed(WebSocket webSocket, int code, String reason) {
+    reconnect();
+  }
+
+  @Override
+  public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+    log.error("Bitmex order book websocket failed.", t);
+    reconnect();
+  }
+
+  private void reconnect() {
+    for (BitmexLocalOrderBook book : books.values()) {
+      book.clear();
+      publishClear(book, messages);
+    }
+    if (!closing) {
+      reconnector.schedule(this::connect, RECONNECT_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void close() {
+    closing = true;
+    reconnector.shutdownNow();
+    WebSocket ws = this.webSocket;
+    if (ws != null) {
+      ws.close(1000, null);
+    }
+  }
+
+  private static final class Row {
+    private String symbol;
+    private long id;
+    private BitmexSide side;
+    private long size;
+    private double price;
+    // millis of a trade
+    private long time;
+    private BitmexLocalOrderBook book;
+
+    private void resolve(BitmexLocalOrderBook book, BitmexSide side, double price, long size) {
+      this.book = book;
+      this.side = side;
+      this.price = price;
+      this.size = size;
+    }
+
+    private void reset() {
+      book = null;
+      symbol = null;
+      side = null;
+      size = 0;
+      price = 0;
+      time = 0;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package io.magicalne.smym.exchanges.bitmex;
+
+import io.magicalne.smym.marketdata.MarketDataBus;
+import okhttp3.OkHttpClient;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class BitmexWebSocketClient implements Closeable {
+
+  private static final String REALTIME_URL = "wss://www.bitmex.com/realtime";
+  private static final String ORDER_BOOK_L2_25 = "orderBookL2_25";
+  private static final String ORDER_BOOK_L2 = "orderBookL2";
+
+  private final OkHttpClient client;
+  private final String url;
+
+  public BitmexWebSocketClient() {
+    this(REALTIME_URL);
+  }
+
+  public BitmexWebSocketClient(String url) {
+    this.url = url;
+    this.client = new OkHttpClient.Builder().pingInterval(5, TimeUnit.SECONDS).build();
+  }
+
+  /**
+   * Stream the top 25 levels of each symbol, the same depth the delta server serves.
+   */
+  public BitmexOrderBookStream onOrderBookL2(Set<String> symbols) {
+    return onOrderBookL2(symbols, false);
+  }
+
+  public BitmexOrderBookStream onOrderBookL2(Set<String> symbols, boolean fullDepth) {
+    return onOrderBookL2(symbols, fullDepth, null);
+  }
+
+  /**
+   * @param bus receives the books from the first partial on and the trades of the symbols, may be null.
+   */
+  public BitmexOrderBookStream onOrderBookL2(Set<String> symbols, boolean fullDepth, MarketDataBus bus) {
+    BitmexOrderBookStream stream =
+      new BitmexOrderBookStream(client, url, fullDepth ? ORDER_BOOK_L2 : ORDER_BOOK_L2_25, symbols, bus != null);
+    stream.setMarketDataBus(bus);
+    stream.connect();
+    return stream;
+  }
+
+  @Override
+  public void close() {
+    this.client.dispatcher().executorService().shutdown();
+  }
+}
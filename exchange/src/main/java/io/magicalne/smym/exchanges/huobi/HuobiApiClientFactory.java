@@ -21,7 +21,11 @@ public class HuobiApiClientFactory {
         return new HuobiProRest(accessKey, secretKey);
     }
 
+    public HuobiProAsyncRest createAsyncRestClient() {
+        return new HuobiProAsyncRest(accessKey, secretKey);
+    }
+
     public HuobiProWebSocketClient createWebSocketClient() {
-        return new HuobiProWebSocketClient();
+        return new HuobiProWebSocketClient(accessKey, secretKey);
     }
 }
@@ -0,0 +1,23 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import io.magicalne.smym.dto.HuobiDepthTick;
+
+/**
+ * Receives depth ticks decoded by {@link HuobiDepthStreamListener}. The tick instance is reused for the
+ * next frame, so implementations must copy whatever they keep.
+ */
+public interface HuobiDepthSink {
+
+    /**
+     * A push of a subscribed topic, e.g. market.btcusdt.depth.step0 or market.btcusdt.mbp.150.
+     * @param symbolId id of the symbol of the topic in the {@link io.magicalne.smym.symbol.SymbolRegistry}.
+     */
+    void onTick(int symbolId, HuobiDepthTick tick);
+
+    /**
+     * The data of a req response, e.g. an mbp snapshot.
+     */
+    void onSnapshot(int symbolId, HuobiDepthTick data);
+
+    void onFailure(Throwable cause);
+}
@@ -0,0 +1,156 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.magicalne.smym.GzipInflater;
+import io.magicalne.smym.dto.HuobiDepthTick;
+import io.magicalne.smym.dto.HuobiDepthTickDeserializer;
+import io.magicalne.smym.symbol.SymbolRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+import java.io.IOException;
+
+/**
+ * Depth listener that decodes frames without building Strings of the payload.
+ *
+ * Each frame is inflated into a buffer owned by this connection, then walked once with a token level
+ * {@link JsonParser}: pings are answered, sub acks logged and tick/data levels are read straight into a
+ * reused {@link HuobiDepthTick} which is handed to the sink. The symbol of the topic is resolved to its id
+ * in the {@link SymbolRegistry} from the characters of the parser, without building a String.
+ */
+@Slf4j
+public class HuobiDepthStreamListener extends WebSocketListener {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final SymbolRegistry symbols;
+    private final HuobiDepthSink sink;
+    private final GzipInflater inflater = new GzipInflater();
+    private final HuobiDepthTick tick = new HuobiDepthTick();
+    private boolean closing = false;
+
+    public HuobiDepthStreamListener(SymbolRegistry symbols, HuobiDepthSink sink) {
+        this.symbols = symbols;
+        this.sink = sink;
+    }
+
+    @Override
+    public void onMessage(WebSocket webSocket, ByteString bytes) {
+        try {
+            int len = inflater.inflate(bytes);
+            decode(webSocket, inflater.buffer(), 0, len);
+        } catch (IOException e) {
+            log.error("Read huobi pro depth message with exception.", e);
+        } catch (Exception e) {
+            log.error("Handle huobi pro depth message with exception.", e);
+        }
+    }
+
+    void decode(WebSocket webSocket, byte[] buf, int off, int len) throws IOException {
+        boolean hasTopic = false;
+        int symbolId = SymbolRegistry.UNKNOWN;
+        boolean response = false;
+        boolean hasTick = false;
+        String status = null;
+        try (JsonParser p = JSON_FACTORY.createParser(buf, off, len)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                p.nextToken();
+                switch (field) {
+                    case "ping":
+                        webSocket.send("{\"pong\":" + p.getLongValue() + "}");
+                        return;
+                    case "subbed":
+                        log.info("Subscribed {}.", p.getText());
+                        return;
+                    case "ch":
+                        hasTopic = true;
+                        symbolId = symbolOf(p, symbols);
+                        break;
+                    case "rep":
+                        hasTopic = true;
+                        symbolId = symbolOf(p, symbols);
+                        response = true;
+                        break;
+                    case "status":
+                        status = p.getText();
+                        break;
+                    case "tick":
+                    case "data":
+                        if (p.currentToken() == JsonToken.START_OBJECT) {
+                            HuobiDepthTickDeserializer.read(p, tick);
+                            hasTick = true;
+                        } else {
+                            p.skipChildren();
+                        }
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+        }
+        if (!hasTopic || !hasTick) {
+            if (status != null && !"ok".equals(status)) {
+                log.warn("Huobi pro depth error response: {}", new String(buf, off, len, "UTF-8"));
+            }
+            return;
+        }
+        if (symbolId == SymbolRegistry.UNKNOWN) {
+            return;
+        }
+        if (response) {
+            sink.onSnapshot(symbolId, tick);
+        } else {
+            sink.onTick(symbolId, tick);
+        }
+    }
+
+    /**
+     * @return id of the symbol of a topic like market.btcusdt.depth.step0.
+     */
+    static int symbolOf(JsonParser p, SymbolRegistry symbols) throws IOException {
+        if (p.currentToken() != JsonToken.VALUE_STRING) {
+            return SymbolRegistry.UNKNOWN;
+        }
+        char[] chars = p.getTextCharacters();
+        int from = p.getTextOffset();
+        int to = from + p.getTextLength();
+        int start = indexOfDot(chars, from, to) + 1;
+        int end = start == 0 ? -1 : indexOfDot(chars, start, to);
+        return end < 0 ? SymbolRegistry.UNKNOWN : symbols.id(chars, start, end - start);
+    }
+
+    private static int indexOfDot(char[] chars, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (chars[i] == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void onClosing(WebSocket webSocket, int code, String reason) {
+        this.closing = true;
+    }
+
+    @Override
+    public void onClosed(WebSocket webSocket, int code, String reason) {
+        inflater.end();
+    }
+
+    @Override
+    public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+        if (!this.closing) {
+            this.sink.onFailure(t);
+        }
+    }
+}
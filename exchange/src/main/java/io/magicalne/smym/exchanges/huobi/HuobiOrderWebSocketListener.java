@@ -0,0 +1,88 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.magicalne.smym.GzipInflater;
+import io.magicalne.smym.dto.HuobiOrderUpdate;
+import io.magicalne.smym.exchanges.UniverseApiCallback;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+import java.util.Set;
+
+/**
+ * Listener of the authenticated huobi websocket (/ws/v1). Authenticates on open, subscribes orders.$symbol
+ * once the auth is accepted and passes every order notify to the callback.
+ */
+@Slf4j
+public class HuobiOrderWebSocketListener extends WebSocketListener {
+
+    private static final String SUB_TEMPLATE = "{\"op\":\"sub\",\"cid\":\"%s\",\"topic\":\"orders.%s\"}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GzipInflater inflater = new GzipInflater();
+    private final String authMessage;
+    private final Set<String> symbols;
+    private final UniverseApiCallback<HuobiOrderUpdate> callback;
+    private boolean closing = false;
+
+    public HuobiOrderWebSocketListener(String authMessage, Set<String> symbols,
+                                       UniverseApiCallback<HuobiOrderUpdate> callback) {
+        this.authMessage = authMessage;
+        this.symbols = symbols;
+        this.callback = callback;
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket, Response response) {
+        webSocket.send(authMessage);
+    }
+
+    @Override
+    public void onMessage(WebSocket webSocket, ByteString bytes) {
+        try {
+            int len = inflater.inflate(bytes);
+            JsonNode msg = objectMapper.readTree(objectMapper.getFactory().createParser(inflater.buffer(), 0, len));
+            String op = msg.path("op").asText();
+            switch (op) {
+                case "ping":
+                    webSocket.send("{\"op\":\"pong\",\"ts\":" + msg.path("ts").asLong() + "}");
+                    break;
+                case "auth":
+                    if (msg.path("err-code").asInt() == 0) {
+                        for (String symbol : symbols) {
+                            webSocket.send(String.format(SUB_TEMPLATE, symbol, symbol));
+                        }
+                    } else {
+                        log.error("Huobi order websocket auth failed: {}", msg);
+                    }
+                    break;
+                case "notify":
+                    callback.onResponse(objectMapper.treeToValue(msg.path("data"), HuobiOrderUpdate.class));
+                    break;
+                case "sub":
+                    log.info("Subscribed {}, err-code: {}.", msg.path("topic").asText(), msg.path("err-code").asInt());
+                    break;
+                default:
+                    log.debug("Huobi order websocket message: {}", msg);
+            }
+        } catch (Exception e) {
+            log.error("Read huobi order websocket message with exception.", e);
+        }
+    }
+
+    @Override
+    public void onClosing(WebSocket webSocket, int code, String reason) {
+        this.closing = true;
+    }
+
+    @Override
+    public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+        if (!this.closing) {
+            this.callback.onFailure(t);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Strings;
+import io.magicalne.smym.Utils;
+import io.magicalne.smym.dto.*;
+import io.magicalne.smym.exception.ApiException;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking variant of {@link HuobiProRest}. Requests are sent with OkHttp's enqueue, responses are
+ * parsed on the dispatcher threads and complete the returned futures, so no caller thread waits on a
+ * socket read. Failures complete the future exceptionally with {@link ApiException}.
+ */
+@Slf4j
+public class HuobiProAsyncRest {
+
+    private static final int CONN_TIMEOUT = 5;
+    private static final int READ_TIMEOUT = 5;
+    private static final int WRITE_TIMEOUT = 5;
+    private static final String API_HOST = "api.huobi.pro";
+    private static final String API_URL = "https://" + API_HOST;
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final OkHttpClient client;
+    private final HuobiRequestSigner signer;
+
+    public HuobiProAsyncRest(String accessKeyId, String accessKeySecret) {
+        this(accessKeyId, accessKeySecret, defaultDispatcher(), new ConnectionPool(10, 5, TimeUnit.MINUTES));
+    }
+
+    /**
+     * @param dispatcher     bounds concurrent requests, e.g. keep maxRequestsPerHost above the number of
+     *                       order legs sent at once.
+     * @param connectionPool keeps warm connections to the api host.
+     */
+    public HuobiProAsyncRest(String accessKeyId, String accessKeySecret, Dispatcher dispatcher,
+                             ConnectionPool connectionPool) {
+        this.signer = new HuobiRequestSigner(accessKeyId, accessKeySecret);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool);
+        String httpProxy = System.getenv("http_proxy");
+        if (!Strings.isNullOrEmpty(httpProxy)) {
+            builder.proxy(Utils.getProxyFromEnv(httpProxy));
+        }
+        this.client = builder.connectTimeout(CONN_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private static Dispatcher defaultDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(32);
+        return dispatcher;
+    }
+
+    public CompletableFuture<List<Symbol>> getSymbols() {
+        return this.<ApiResponse<List<Symbol>>>get("/v1/common/symbols", null,
+                new TypeReference<ApiResponse<List<Symbol>>>() {})
+                .thenApply(ApiResponse::checkAndReturn);
+    }
+
+    public CompletableFuture<OrderPlaceResponse> orderPlace(OrderPlaceRequest req) {
+        return post("/v1/order/orders/place", req, new TypeReference<OrderPlaceResponse>() {});
+    }
+
+    public CompletableFuture<SubmitCancelResponse> submitcancel(String orderId) {
+        return post("/v1/order/orders/" + orderId + "/submitcancel", null,
+                new TypeReference<SubmitCancelResponse>() {});
+    }
+
+    public CompletableFuture<OrdersDetailResponse> ordersDetail(String orderId) {
+        return get("/v1/order/orders/" + orderId, null, new TypeReference<OrdersDetailResponse>() {});
+    }
+
+    public CompletableFuture<MatchresultsOrdersDetailResponse> matchresults(String orderId) {
+        return get("/v1/order/orders/" + orderId + "/matchresults", null,
+                new TypeReference<MatchresultsOrdersDetailResponse>() {});
+    }
+
+    public CompletableFuture<BalanceResponse> balance(String accountId) {
+        return get("/v1/account/accounts/" + accountId + "/balance", null,
+                new TypeReference<BalanceResponse>() {});
+    }
+
+    public CompletableFuture<AccountsResponse> accounts() {
+        return get("/v1/account/accounts", null, new TypeReference<AccountsResponse>() {});
+    }
+
+    public CompletableFuture<TimestampResponse> timestamp() {
+        return get("/v1/common/timestamp", null, new TypeReference<TimestampResponse>() {});
+    }
+
+    public void close() {
+        this.client.dispatcher().executorService().shutdown();
+        this.client.connectionPool().evictAll();
+    }
+
+    private <T> CompletableFuture<T> get(String uri, Map<String, String> params, TypeReference<T> ref) {
+        Request request = new Request.Builder()
+                .url(API_URL + uri + "?" + signer.sign("GET", API_HOST, uri, params))
+                .get()
+                .build();
+        return enqueue(request, ref);
+    }
+
+    private <T> CompletableFuture<T> post(String uri, Object object, TypeReference<T> ref) {
+        RequestBody body;
+        try {
+            body = RequestBody.create(JSON, HuobiProRest.JsonUtil.writeValue(object));
+        } catch (IOException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ApiException(e));
+            return failed;
+        }
+        Request request = new Request.Builder()
+                .url(API_URL + uri + "?" + signer.sign(HuobiProRest.POST, API_HOST, uri, null))
+                .post(body)
+                .build();
+        return enqueue(request, ref);
+    }
+
+    private <T> CompletableFuture<T> enqueue(Request request, TypeReference<T> ref) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Call call = client.newCall(request);
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(new ApiException(e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                String s = null;
+                try (ResponseBody body = response.body()) {
+                    s = body.string();
+                    future.complete(HuobiProRest.JsonUtil.readValue(s, ref));
+                } catch (IOException e) {
+                    log.error("API exception! request: {}, response: {}", request.url().encodedPath(), s);
+                    future.completeExceptionally(new ApiException(e));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+}
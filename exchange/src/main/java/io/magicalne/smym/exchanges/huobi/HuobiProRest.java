@@ -13,23 +13,14 @@ import io.magicalne.smym.exception.ApiException;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.Proxy;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class HuobiProRest {
@@ -44,21 +35,17 @@ public class HuobiProRest {
     private static final MediaType JSON = MediaType.parse("application/json");
     private static final OkHttpClient client = createOkHttpClient();
     public static final String POST = "POST";
-    public static final String HMAC_SHA_256 = "HmacSHA256";
+    public static final String HMAC_SHA_256 = HuobiRequestSigner.HMAC_SHA_256;
 
-    private final String accessKeyId;
-    private final String accessKeySecret;
+    private final HuobiRequestSigner signer;
     private final String assetPassword;
 
     public HuobiProRest(String accessKey, String accessKeySecret) {
-        this.accessKeyId = accessKey;
-        this.accessKeySecret = accessKeySecret;
-        this.assetPassword = null;
+        this(accessKey, accessKeySecret, null);
     }
 
     public HuobiProRest(String accessKeyId, String accessKeySecret, String assetPassword) {
-        this.accessKeyId = accessKeyId;
-        this.accessKeySecret = accessKeySecret;
+        this.signer = new HuobiRequestSigner(accessKeyId, accessKeySecret);
         this.assetPassword = assetPassword;
     }
 
@@ -356,30 +343,26 @@ public class HuobiProRest {
 
     // send a GET request.
     private <T> T get(String uri, Map<String, String> params, TypeReference<T> ref) {
-        if (params == null) {
-            params = new HashMap<>();
-        }
         return call("GET", uri, null, params, ref);
     }
 
     // send a POST request.
     private <T> T post(String uri, Object object, TypeReference<T> ref) {
-        return call(POST, uri, object, new HashMap<>(), ref);
+        return call(POST, uri, object, null, ref);
     }
 
     // call api by endpoint.
     private <T> T call(String method, String uri, Object object, Map<String, String> params,
                        TypeReference<T> ref) {
-        ApiSignature sign = new ApiSignature();
-        sign.createSignature(this.accessKeyId, this.accessKeySecret, method, API_HOST, uri, params);
+        String query = signer.sign(method, API_HOST, uri, params);
         String s = null;
         try {
             Request.Builder builder;
             if ("POST".equals(method)) {
                 RequestBody body = RequestBody.create(JSON, JsonUtil.writeValue(object));
-                builder = new Request.Builder().url(API_URL + uri + "?" + toQueryString(params)).post(body);
+                builder = new Request.Builder().url(API_URL + uri + "?" + query).post(body);
             } else {
-                builder = new Request.Builder().url(API_URL + uri + "?" + toQueryString(params)).get();
+                builder = new Request.Builder().url(API_URL + uri + "?" + query).get();
             }
             if (this.assetPassword != null) {
                 builder.addHeader("AuthData", authData());
@@ -406,21 +389,12 @@ public class HuobiProRest {
         Map<String, String> map = new HashMap<>();
         map.put("assetPwd", DatatypeConverter.printHexBinary(md.digest()).toLowerCase());
         try {
-            return ApiSignature.urlEncode(JsonUtil.writeValue(map));
+            return HuobiRequestSigner.urlEncode(JsonUtil.writeValue(map));
         } catch (IOException e) {
             throw new RuntimeException("Get json failed: " + e.getMessage());
         }
     }
 
-    // Encode as "a=1&b=%20&c=&d=AAA"
-    String toQueryString(Map<String, String> params) {
-        List<String> collect = params.entrySet()
-                .stream()
-                .map((entry) -> entry.getKey() + "=" + ApiSignature.urlEncode(entry.getValue()))
-                .collect(Collectors.toList());
-        return String.join("&", collect);
-    }
-
     // create OkHttpClient:
     private static OkHttpClient createOkHttpClient() {
         OkHttpClient.Builder builder = new OkHttpClient.Builder();
@@ -434,94 +408,6 @@ public class HuobiProRest {
                 .build();
     }
 
-    static class ApiSignature {
-
-        static final DateTimeFormatter DT_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss");
-        static final ZoneId ZONE_GMT = ZoneId.of("Z");
-
-        /**
-         * 创建一个有效的签名。该方法为客户端调用，将在传入的params中添加AccessKeyId、Timestamp、SignatureVersion、SignatureMethod、Signature参数。
-         *
-         * @param appKey       AppKeyId.
-         * @param appSecretKey AppKeySecret.
-         * @param method       请求方法，"GET"或"POST"
-         * @param host         请求域名，例如"be.huobi.com"
-         * @param uri          请求路径，注意不含?以及后的参数，例如"/v1/api/info"
-         * @param params       原始请求参数，以Key-Value存储，注意Value不要编码
-         */
-        void createSignature(String appKey, String appSecretKey, String method, String host,
-                             String uri, Map<String, String> params) {
-            StringBuilder sb = new StringBuilder(1024);
-            sb.append(method.toUpperCase()).append('\n') // GET
-                    .append(host.toLowerCase()).append('\n') // Host
-                    .append(uri).append('\n'); // /path
-            params.remove("Signature");
-            params.put("AccessKeyId", appKey);
-            params.put("SignatureVersion", "2");
-            params.put("SignatureMethod", HMAC_SHA_256);
-            params.put("Timestamp", gmtNow());
-            // build signature:
-            SortedMap<String, String> map = new TreeMap<>(params);
-            for (Map.Entry<String, String> entry : map.entrySet()) {
-                String key = entry.getKey();
-                String value = entry.getValue();
-                sb.append(key).append('=').append(urlEncode(value)).append('&');
-            }
-            // remove last '&':
-            sb.deleteCharAt(sb.length() - 1);
-            // sign:
-            Mac hmacSha256;
-            try {
-                hmacSha256 = Mac.getInstance(HMAC_SHA_256);
-                SecretKeySpec secKey =
-                        new SecretKeySpec(appSecretKey.getBytes(StandardCharsets.UTF_8), HMAC_SHA_256);
-                hmacSha256.init(secKey);
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException("No such algorithm: " + e.getMessage());
-            } catch (InvalidKeyException e) {
-                throw new RuntimeException("Invalid key: " + e.getMessage());
-            }
-            String payload = sb.toString();
-            byte[] hash = hmacSha256.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-            String actualSign = Base64.getEncoder().encodeToString(hash);
-            params.put("Signature", actualSign);
-
-
-            if (log.isDebugEnabled()) {
-                log.debug("Dump parameters:");
-                for (Map.Entry<String, String> entry : params.entrySet()) {
-                    log.debug("  key: " + entry.getKey() + ", value: " + entry.getValue());
-                }
-            }
-        }
-
-
-        /**
-         * 使用标准URL Encode编码。注意和JDK默认的不同，空格被编码为%20而不是+。
-         *
-         * @param s String字符串
-         * @return URL编码后的字符串
-         */
-        static String urlEncode(String s) {
-            try {
-                return URLEncoder.encode(s, "UTF-8").replaceAll("\\+", "%20");
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalArgumentException("UTF-8 encoding not supported!");
-            }
-        }
-
-        /**
-         * Return epoch seconds
-         */
-        long epochNow() {
-            return Instant.now().getEpochSecond();
-        }
-
-        String gmtNow() {
-            return Instant.ofEpochSecond(epochNow()).atZone(ZONE_GMT).format(DT_FORMAT);
-        }
-    }
-
     static class JsonUtil {
 
         static String writeValue(Object obj) throws IOException {
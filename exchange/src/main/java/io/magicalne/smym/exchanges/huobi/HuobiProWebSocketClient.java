@@ -1,12 +1,15 @@
 package io.magicalne.smym.exchanges.huobi;
 
 import com.binance.api.client.Util;
-import io.magicalne.smym.dto.DepthResponse;
+import io.magicalne.smym.dto.HuobiOrderUpdate;
 import io.magicalne.smym.exchanges.UniverseApiCallback;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.symbol.SymbolRegistry;
 import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
 
 import java.io.Closeable;
 import java.util.Set;
@@ -14,8 +17,19 @@ import java.util.Set;
 public class HuobiProWebSocketClient implements Closeable {
 
     private static final String API_HUOBI_PRO_WS = "wss://api.huobi.pro/ws";
+    private static final String API_HUOBI_PRO_FEED = "wss://api.huobi.pro/feed";
+    private static final String API_HOST = "api.huobi.pro";
+    private static final String ORDER_WS_PATH = "/ws/v1";
     private static final String SUB_REQUEST_TEMPLATE = "{\"sub\": \"%s\", \"id\": \"%s\"}";
+    private static final String REQ_REQUEST_TEMPLATE = "{\"req\": \"%s\", \"id\": \"%s\"}";
+    private static final String MBP_TEMPLATE = "market.%s.mbp.%d";
     private OkHttpClient client;
+    private HuobiRequestSigner signer;
+
+    public HuobiProWebSocketClient(String accessKey, String secretKey) {
+        this();
+        this.signer = new HuobiRequestSigner(accessKey, secretKey);
+    }
 
     public HuobiProWebSocketClient() {
         Dispatcher d = new Dispatcher();
@@ -23,14 +37,65 @@ public class HuobiProWebSocketClient implements Closeable {
         this.client = Util.createOKHTTPClient().dispatcher(d).build();
     }
 
-    Closeable createNewWebSocket(String template, Set<String> symbols, HuobiApiWebSocketListener<?> listener) {
-        Request request = new Request.Builder().url(API_HUOBI_PRO_WS).build();
+    Closeable createNewWebSocket(String template, Set<String> symbols, WebSocketListener listener) {
+        final WebSocket webSocket = subscribe(API_HUOBI_PRO_WS, template, symbols, listener);
+        return () -> {
+            final int code = 1000;
+            listener.onClosing(webSocket, code, null);
+            webSocket.close(code, null);
+            listener.onClosed(webSocket, code, null);
+        };
+    }
+
+    private WebSocket subscribe(String url, String template, Set<String> symbols,
+                                WebSocketListener listener) {
+        Request request = new Request.Builder().url(url).build();
         final WebSocket webSocket = client.newWebSocket(request, listener);
         for (String symbol : symbols) {
             String topic = String.format(template, symbol);
             String reqBody = String.format(SUB_REQUEST_TEMPLATE, topic, symbol);
             webSocket.send(reqBody);
         }
+        return webSocket;
+    }
+
+    /**
+     * Subscribe full depth streams, pushes are passed to the sink with the id of their symbol in the registry.
+     */
+    public Closeable onDepthEvent(Set<String> symbols, SymbolRegistry registry, HuobiDepthSink sink) {
+        String template = "market.%s.depth.step0";
+        return this.createNewWebSocket(template, symbols, new HuobiDepthStreamListener(registry, sink));
+    }
+
+    /**
+     * Subscribe trade detail streams and publish every trade to the bus, quantities with qtyScale digits.
+     */
+    public Closeable onTradeEvent(Set<String> symbols, SymbolRegistry registry, MarketDataBus bus, int qtyScale) {
+        String template = "market.%s.trade.detail";
+        return this.createNewWebSocket(template, symbols, new HuobiTradeStreamListener(registry, bus, qtyScale));
+    }
+
+    /**
+     * Subscribe incremental market by price streams, levels is one of 5, 20 and 150.
+     * Snapshots are requested on the returned socket with {@link #requestMbpSnapshot}.
+     */
+    public WebSocket onMbpEvent(Set<String> symbols, int levels, SymbolRegistry registry, HuobiDepthSink sink) {
+        String template = "market.%s.mbp." + levels;
+        return subscribe(levels == 150 ? API_HUOBI_PRO_FEED : API_HUOBI_PRO_WS, template, symbols,
+                new HuobiDepthStreamListener(registry, sink));
+    }
+
+    /**
+     * Subscribe order updates of the account on the authenticated websocket.
+     */
+    public Closeable onOrderEvent(Set<String> symbols, UniverseApiCallback<HuobiOrderUpdate> callback) {
+        if (signer == null) {
+            throw new IllegalStateException("Order updates need api keys.");
+        }
+        HuobiOrderWebSocketListener listener =
+                new HuobiOrderWebSocketListener(signer.webSocketAuth(API_HOST, ORDER_WS_PATH), symbols, callback);
+        Request request = new Request.Builder().url("wss://" + API_HOST + ORDER_WS_PATH).build();
+        final WebSocket webSocket = client.newWebSocket(request, listener);
         return () -> {
             final int code = 1000;
             listener.onClosing(webSocket, code, null);
@@ -39,10 +104,9 @@ public class HuobiProWebSocketClient implements Closeable {
         };
     }
 
-    public Closeable onDepthEvent(Set<String> symbols, UniverseApiCallback<DepthResponse> callback) {
-        String template = "market.%s.depth.step0";
-        HuobiApiWebSocketListener<DepthResponse> cb = new HuobiApiWebSocketListener<>(callback, DepthResponse.class);
-        return this.createNewWebSocket(template, symbols, cb);
+    public void requestMbpSnapshot(WebSocket webSocket, String symbol, int levels) {
+        String topic = String.format(MBP_TEMPLATE, symbol, levels);
+        webSocket.send(String.format(REQ_REQUEST_TEMPLATE, topic, symbol));
     }
 
     @Override
@@ -0,0 +1,237 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Signs huobi pro REST requests (signature version 2).
+ *
+ * Each thread keeps an initialized {@link Mac} and a reusable builder, the Timestamp parameter is formatted
+ * once per second. Parameters are sorted and url encoded once, the same characters are hashed and returned
+ * as the final query string.
+ */
+public class HuobiRequestSigner {
+
+    static final String HMAC_SHA_256 = "HmacSHA256";
+    private static final DateTimeFormatter DT_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss");
+    private static final ZoneId ZONE_GMT = ZoneId.of("Z");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    // sorted by key
+    private static final String[] AUTH_KEYS = {"AccessKeyId", "SignatureMethod", "SignatureVersion", "Timestamp"};
+
+    private final String accessKeyId;
+    private final String encodedAccessKeyId;
+    private final ThreadLocal<Mac> mac;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+    private volatile Timestamp timestamp = new Timestamp(-1, null);
+
+    public HuobiRequestSigner(String accessKeyId, String accessKeySecret) {
+        this.accessKeyId = accessKeyId;
+        this.encodedAccessKeyId = urlEncode(accessKeyId);
+        SecretKeySpec key = new SecretKeySpec(accessKeySecret.getBytes(StandardCharsets.UTF_8), HMAC_SHA_256);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance(HMAC_SHA_256);
+                m.init(key);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot init " + HMAC_SHA_256, e);
+            }
+        });
+    }
+
+    /**
+     * @param method GET or POST, signed in upper case.
+     * @param host   e.g. api.huobi.pro, signed in lower case.
+     * @param uri    path without query, e.g. /v1/order/orders.
+     * @param params request parameters, not encoded, may be null.
+     * @return the encoded query string including the auth parameters and Signature.
+     */
+    public String sign(String method, String host, String uri, Map<String, String> params) {
+        return sign(method, host, uri, params, System.currentTimeMillis() / 1000);
+    }
+
+    String sign(String method, String host, String uri, Map<String, String> params, long epochSecond) {
+        Buffers b = buffers.get();
+        StringBuilder sb = b.sb;
+        sb.setLength(0);
+        // both return the same string when it is already normalized
+        sb.append(method.toUpperCase(Locale.ROOT)).append('\n')
+                .append(host.toLowerCase(Locale.ROOT)).append('\n')
+                .append(uri).append('\n');
+        int queryStart = sb.length();
+
+        int n = 0;
+        if (params != null) {
+            if (b.keys.length < params.size()) {
+                b.keys = new String[params.size() * 2];
+            }
+            for (String key : params.keySet()) {
+                if (!"Signature".equals(key)) {
+                    b.keys[n++] = key;
+                }
+            }
+            Arrays.sort(b.keys, 0, n);
+        }
+        String[] keys = b.keys;
+        int i = 0;
+        int j = 0;
+        while (i < n || j < AUTH_KEYS.length) {
+            if (j == AUTH_KEYS.length || (i < n && keys[i].compareTo(AUTH_KEYS[j]) < 0)) {
+                appendParam(sb, keys[i], params.get(keys[i]));
+                i++;
+            } else {
+                appendAuthParam(sb, j, epochSecond);
+                j++;
+            }
+        }
+        Arrays.fill(keys, 0, n, null);
+
+        int len = sb.length();
+        if (b.bytes.length < len) {
+            b.bytes = new byte[len * 2];
+        }
+        // everything after url encoding is ascii
+        for (int k = 0; k < len; k++) {
+            b.bytes[k] = (byte) sb.charAt(k);
+        }
+        Mac m = mac.get();
+        m.update(b.bytes, 0, len);
+        byte[] signature = Base64.getEncoder().encode(m.doFinal());
+        sb.append("&Signature=");
+        for (byte c : signature) {
+            appendEncoded(sb, (char) c);
+        }
+        return sb.substring(queryStart);
+    }
+
+    /**
+     * @return the auth message of the authenticated websocket, e.g. path /ws/v1.
+     */
+    public String webSocketAuth(String host, String path) {
+        long now = System.currentTimeMillis() / 1000;
+        String query = sign("GET", host, path, null, now);
+        String signature = query.substring(query.indexOf("&Signature=") + "&Signature=".length());
+        try {
+            signature = URLDecoder.decode(signature, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        String timestamp = Instant.ofEpochSecond(now).atZone(ZONE_GMT).format(DT_FORMAT);
+        return "{\"op\":\"auth\",\"AccessKeyId\":\"" + accessKeyId + "\",\"SignatureMethod\":\"" + HMAC_SHA_256
+                + "\",\"SignatureVersion\":\"2\",\"Timestamp\":\"" + timestamp + "\",\"Signature\":\"" + signature
+                + "\"}";
+    }
+
+    private void appendAuthParam(StringBuilder sb, int index, long epochSecond) {
+        if (sb.charAt(sb.length() - 1) != '\n') {
+            sb.append('&');
+        }
+        sb.append(AUTH_KEYS[index]).append('=');
+        switch (index) {
+            case 0:
+                sb.append(encodedAccessKeyId);
+                break;
+            case 1:
+                sb.append(HMAC_SHA_256);
+                break;
+            case 2:
+                sb.append('2');
+                break;
+            default:
+                sb.append(encodedTimestamp(epochSecond));
+        }
+    }
+
+    private static void appendParam(StringBuilder sb, String key, String value) {
+        if (sb.charAt(sb.length() - 1) != '\n') {
+            sb.append('&');
+        }
+        sb.append(key).append('=');
+        urlEncode(sb, value);
+    }
+
+    private String encodedTimestamp(long epochSecond) {
+        Timestamp ts = this.timestamp;
+        if (ts.epochSecond != epochSecond) {
+            String formatted = Instant.ofEpochSecond(epochSecond).atZone(ZONE_GMT).format(DT_FORMAT);
+            ts = new Timestamp(epochSecond, urlEncode(formatted));
+            this.timestamp = ts;
+        }
+        return ts.encoded;
+    }
+
+    /**
+     * Url encode like {@link java.net.URLEncoder} with UTF-8, except that space becomes %20 instead of +.
+     */
+    static String urlEncode(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        urlEncode(sb, s);
+        return sb.toString();
+    }
+
+    static void urlEncode(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                appendEncoded(sb, c);
+            } else if (c < 0x800) {
+                appendHex(sb, 0xc0 | (c >> 6));
+                appendHex(sb, 0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                appendHex(sb, 0xf0 | (cp >> 18));
+                appendHex(sb, 0x80 | ((cp >> 12) & 0x3f));
+                appendHex(sb, 0x80 | ((cp >> 6) & 0x3f));
+                appendHex(sb, 0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                appendHex(sb, '?');
+            } else {
+                appendHex(sb, 0xe0 | (c >> 12));
+                appendHex(sb, 0x80 | ((c >> 6) & 0x3f));
+                appendHex(sb, 0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static void appendEncoded(StringBuilder sb, char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_') {
+            sb.append(c);
+        } else {
+            appendHex(sb, c);
+        }
+    }
+
+    private static void appendHex(StringBuilder sb, int b) {
+        sb.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+    }
+
+    private static final class Timestamp {
+        final long epochSecond;
+        final String encoded;
+
+        Timestamp(long epochSecond, String encoded) {
+            this.epochSecond = epochSecond;
+            this.encoded = encoded;
+        }
+    }
+
+    private static final class Buffers {
+        final StringBuilder sb = new StringBuilder(512);
+        String[] keys = new String[16];
+        byte[] bytes = new byte[1024];
+    }
+}
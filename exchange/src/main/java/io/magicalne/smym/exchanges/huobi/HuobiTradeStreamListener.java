@@ -0,0 +1,182 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.magicalne.smym.GzipInflater;
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.ReceiveClock;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.symbol.SymbolRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Publishes the trades of market.$symbol.trade.detail pushes to a {@link MarketDataBus}, each as an update of
+ * its own.
+ *
+ * Frames are decoded like in {@link HuobiDepthStreamListener}. The topic may follow the tick in a push, so the
+ * trades are read into reused primitive arrays first and published once the symbol is known.
+ */
+@Slf4j
+public class HuobiTradeStreamListener extends WebSocketListener {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int INITIAL_TRADES = 16;
+
+    private final SymbolRegistry symbols;
+    private final MarketDataBus bus;
+    private final int qtyScale;
+    private final GzipInflater inflater = new GzipInflater();
+    private double[] prices = new double[INITIAL_TRADES];
+    private double[] amounts = new double[INITIAL_TRADES];
+    private long[] tradeIds = new long[INITIAL_TRADES];
+    private long[] times = new long[INITIAL_TRADES];
+    private boolean[] buys = new boolean[INITIAL_TRADES];
+    private int count;
+    private boolean closing = false;
+
+    public HuobiTradeStreamListener(SymbolRegistry symbols, MarketDataBus bus, int qtyScale) {
+        this.symbols = symbols;
+        this.bus = bus;
+        this.qtyScale = qtyScale;
+    }
+
+    @Override
+    public void onMessage(WebSocket webSocket, ByteString bytes) {
+        long receiveNanos = ReceiveClock.nanos();
+        try {
+            int len = inflater.inflate(bytes);
+            decode(webSocket, inflater.buffer(), 0, len, receiveNanos);
+        } catch (IOException e) {
+            log.error("Read huobi pro trade message with exception.", e);
+        } catch (Exception e) {
+            log.error("Handle huobi pro trade message with exception.", e);
+        }
+    }
+
+    void decode(WebSocket webSocket, byte[] buf, int off, int len, long receiveNanos) throws IOException {
+        int symbolId = SymbolRegistry.UNKNOWN;
+        count = 0;
+        try (JsonParser p = JSON_FACTORY.createParser(buf, off, len)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                p.nextToken();
+                switch (field) {
+                    case "ping":
+                        webSocket.send("{\"pong\":" + p.getLongValue() + "}");
+                        return;
+                    case "subbed":
+                        log.info("Subscribed {}.", p.getText());
+                        return;
+                    case "ch":
+                        symbolId = HuobiDepthStreamListener.symbolOf(p, symbols);
+                        break;
+                    case "tick":
+                        readTick(p);
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+        }
+        if (symbolId == SymbolRegistry.UNKNOWN) {
+            return;
+        }
+        String symbol = symbols.name(symbolId);
+        int priceScale = symbols.pricePrecision(symbolId);
+        for (int i = 0; i < count; i++) {
+            bus.publishTrade(Venue.HUOBI, symbol, Decimals.fromDouble(prices[i], priceScale),
+                    Decimals.fromDouble(amounts[i], qtyScale), priceScale, qtyScale, buys[i], tradeIds[i], times[i],
+                    receiveNanos);
+        }
+    }
+
+    private void readTick(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            if ("data".equals(field) && p.currentToken() == JsonToken.START_ARRAY) {
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    readTrade(p);
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    private void readTrade(JsonParser p) throws IOException {
+        if (count == prices.length) {
+            prices = Arrays.copyOf(prices, count * 2);
+            amounts = Arrays.copyOf(amounts, count * 2);
+            tradeIds = Arrays.copyOf(tradeIds, count * 2);
+            times = Arrays.copyOf(times, count * 2);
+            buys = Arrays.copyOf(buys, count * 2);
+        }
+        long id = 0;
+        long tradeId = 0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "price":
+                    prices[count] = p.getValueAsDouble();
+                    break;
+                case "amount":
+                    amounts[count] = p.getValueAsDouble();
+                    break;
+                case "direction":
+                    buys[count] = "buy".equals(p.getText());
+                    break;
+                case "ts":
+                    times[count] = p.getValueAsLong();
+                    break;
+                case "tradeId":
+                    tradeId = p.getValueAsLong();
+                    break;
+                case "id":
+                    // may not fit a long, keep its low bits
+                    id = p.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+                            ? p.getBigIntegerValue().longValue() : p.getValueAsLong();
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        // older pushes only have the long id
+        tradeIds[count] = tradeId != 0 ? tradeId : id;
+        count++;
+    }
+
+    @Override
+    public void onClosing(WebSocket webSocket, int code, String reason) {
+        this.closing = true;
+    }
+
+    @Override
+    public void onClosed(WebSocket webSocket, int code, String reason) {
+        inflater.end();
+    }
+
+    @Override
+    public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+        if (!this.closing) {
+            log.error("Huobi trade stream failed.", t);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package io.magicalne.smym.exchanges.replay;
+
+import com.binance.api.client.BinanceApiError;
+import com.binance.api.client.BinanceApiRestClient;
+import com.binance.api.client.domain.OrderSide;
+import com.binance.api.client.domain.OrderStatus;
+import com.binance.api.client.domain.OrderType;
+import com.binance.api.client.domain.TimeInForce;
+import com.binance.api.client.domain.account.*;
+import com.binance.api.client.domain.account.request.AllOrdersRequest;
+import com.binance.api.client.domain.account.request.CancelOrderRequest;
+import com.binance.api.client.domain.account.request.OrderRequest;
+import com.binance.api.client.domain.account.request.OrderStatusRequest;
+import com.binance.api.client.domain.general.Asset;
+import com.binance.api.client.domain.general.ExchangeInfo;
+import com.binance.api.client.domain.general.SymbolInfo;
+import com.binance.api.client.domain.market.*;
+import com.binance.api.client.exception.BinanceApiException;
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import io.magicalne.smym.replay.MatchingEngine;
+import io.magicalne.smym.replay.ReplayEngine;
+import io.magicalne.smym.replay.SimulatedOrder;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The account and order endpoints of Binance, served by the {@link MatchingEngine} of a replay. Hand it to
+ * {@link io.magicalne.smym.exchanges.BinanceExchange#BinanceExchange(BinanceApiRestClient, ReplayEngine)} to run
+ * a strategy against recorded books.
+ *
+ * Orders and their errors follow the live api: a LIMIT_MAKER order that would take is rejected with an
+ * exception, IOC, FOK and market orders expire with what they could fill. The balances are the initial ones
+ * plus the fills, without commission. Market data other than the replayed books is not simulated, those
+ * endpoints throw {@link UnsupportedOperationException}.
+ *
+ * Call it on the replay thread only.
+ */
+public class SimulatedBinanceClient implements BinanceApiRestClient {
+
+  private static final int BALANCE_SCALE = 8;
+  private static final int DEFAULT_ORDER_LIMIT = 500;
+
+  private final ReplayEngine replay;
+  private final MatchingEngine matching;
+  private final ExchangeInfo exchangeInfo;
+  private final Map<String, Double> initialBalances;
+
+  /**
+   * @param exchangeInfo trading rules of the recorded symbols, e.g. saved from the live api.
+   * @param balances     free balance of each asset when the replay starts.
+   */
+  public SimulatedBinanceClient(ReplayEngine replay, ExchangeInfo exchangeInfo, Map<String, Double> balances) {
+    this.replay = replay;
+    this.matching = replay.getMatchingEngine();
+    this.exchangeInfo = exchangeInfo;
+    this.initialBalances = new LinkedHashMap<>(balances);
+  }
+
+  @Override
+  public void ping() {
+  }
+
+  @Override
+  public Long getServerTime() {
+    return replay.currentTimeMillis();
+  }
+
+  @Override
+  public ExchangeInfo getExchangeInfo() {
+    return exchangeInfo;
+  }
+
+  @Override
+  public OrderBook getOrderBook(String symbol, Integer limit) {
+    TickOrderBook book = requireBook(symbol);
+    int asks = Math.min(book.askCount(), limit);
+    int bids = Math.min(book.bidCount(), limit);
+    List<OrderBookEntry> askEntries = new ArrayList<>(asks);
+    for (int i = 0; i < asks; i++) {
+      askEntries.add(toEntry(book.askTicks(i), book.askQtyUnits(i), book));
+    }
+    List<OrderBookEntry> bidEntries = new ArrayList<>(bids);
+    for (int i = 0; i < bids; i++) {
+      bidEntries.add(toEntry(book.bidTicks(i), book.bidQtyUnits(i), book));
+    }
+    OrderBook orderBook = new OrderBook();
+    orderBook.setLastUpdateId(book.getLastUpdateId());
+    orderBook.setAsks(askEntries);
+    orderBook.setBids(bidEntries);
+    return orderBook;
+  }
+
+  @Override
+  public NewOrderResponse newOrder(NewOrder order) {
+    TickOrderBook book = requireBook(order.getSymbol());
+    SimulatedOrder.Type type = toType(order);
+    SimulatedOrder placed;
+    try {
+      long qty = Decimals.parseScaled(order.getQuantity(), book.getQtyScale(), RoundingMode.DOWN);
+      long price = type == SimulatedOrder.Type.MARKET ? 0
+        : Decimals.parseScaled(order.getPrice(), book.getPriceScale(), RoundingMode.HALF_EVEN);
+      placed = matching.submit(Venue.BINANCE, order.getSymbol(), order.getSide() == OrderSide.BUY, type, price,
+        qty);
+    } catch (IllegalArgumentException e) {
+      throw error(-1013, e.getMessage());
+    }
+    if (placed.getStatus() == SimulatedOrder.Status.REJECTED) {
+      throw error(-2010, "Order would immediately match and take.");
+    }
+    NewOrderResponse response = new NewOrderResponse();
+    response.setSymbol(placed.getSymbol());
+    response.setOrderId(placed.getId());
+    response.setClientOrderId(order.getNewClientOrderId());
+    response.setTransactTime(placed.getTime());
+    response.setPrice(Decimals.format(placed.getPrice(), placed.getPriceScale()));
+    response.setOrigQty(Decimals.format(placed.getQty(), placed.getQtyScale()));
+    response.setExecutedQty(Decimals.format(placed.getFilledQty(), placed.getQtyScale()));
+    response.setCummulativeQuoteQty(formatBalance(placed.getAveragePrice() * filledQty(placed)));
+    response.setStatus(toStatus(placed));
+    response.setTimeInForce(order.getTimeInForce());
+    response.setType(order.getType());
+    response.setSide(order.getSide());
+    return response;
+  }
+
+  @Override
+  public void newOrderTest(NewOrder order) {
+    requireBook(order.getSymbol());
+  }
+
+  @Override
+  public Order getOrderStatus(OrderStatusRequest request) {
+    return toOrder(requireOrder(request.getSymbol(), request.getOrderId()));
+  }
+
+  @Override
+  public void cancelOrder(CancelOrderRequest request) {
+    SimulatedOrder order = requireOrder(request.getSymbol(), request.getOrderId());
+    if (!matching.cancel(order.getId())) {
+      throw error(-2011, "Unknown order sent.");
+    }
+  }
+
+  @Override
+  public List<Order> getOpenOrders(OrderRequest request) {
+    List<Order> orders = new ArrayList<>();
+    for (String symbol : symbolsOf(request.getSymbol())) {
+      for (SimulatedOrder order : matching.getOpenOrders(Venue.BINANCE, symbol)) {
+        orders.add(toOrder(order));
+      }
+    }
+    return orders;
+  }
+
+  @Override
+  public List<Order> getAllOrders(AllOrdersRequest request) {
+    long fromId = request.getOrderId() == null ? 0 : request.getOrderId();
+    int limit = request.getLimit() == null ? DEFAULT_ORDER_LIMIT : request.getLimit();
+    List<Order> orders = new ArrayList<>();
+    for (SimulatedOrder order : matching.getOrders(Venue.BINANCE, request.getSymbol())) {
+      if (order.getId() >= fromId && orders.size() < limit) {
+        orders.add(toOrder(order));
+      }
+    }
+    return orders;
+  }
+
+  @Override
+  public Account getAccount(Long recvWindow, Long timestamp) {
+    return getAccount();
+  }
+
+  @Override
+  public Account getAccount() {
+    Map<String, Double> free = new LinkedHashMap<>(initialBalances);
+    Map<String, Double> locked = new HashMap<>();
+    for (SymbolInfo info : exchangeInfo.getSymbols()) {
+      TickOrderBook book = replay.getBook(Venue.BINANCE, info.getSymbol());
+      if (book == null) {
+        continue;
+      }
+      long position = matching.getPosition(Venue.BINANCE, info.getSymbol());
+      add(free, info.getBaseAsset(), Decimals.toDouble(position, book.getQtyScale()));
+      add(free, info.getQuoteAsset(), matching.getCash(Venue.BINANCE, info.getSymbol()));
+      for (SimulatedOrder order : matching.getOpenOrders(Venue.BINANCE, info.getSymbol())) {
+        double leaves = Decimals.toDouble(order.getLeavesQty(), order.getQtyScale());
+        if (order.isBuy()) {
+          double amount = leaves * Decimals.toDouble(order.getPrice(), order.getPriceScale());
+          add(free, info.getQuoteAsset(), -amount);
+          add(locked, info.getQuoteAsset(), amount);
+        } else {
+          add(free, info.getBaseAsset(), -leaves);
+          add(locked, info.getBaseAsset(), leaves);
+        }
+      }
+    }
+    List<AssetBalance> balances = new ArrayList<>(free.size());
+    for (Map.Entry<String, Double> e : free.entrySet()) {
+      AssetBalance balance = new AssetBalance();
+      balance.setAsset(e.getKey());
+      balance.setFree(formatBalance(e.getValue()));
+      balance.setLocked(formatBalance(locked.getOrDefault(e.getKey(), 0d)));
+      balances.add(balance);
+    }
+    Account account = new Account();
+    account.setCanTrade(true);
+    account.setUpdateTime(replay.currentTimeMillis());
+    account.setBalances(balances);
+    return account;
+  }
+
+  private static void add(Map<String, Double> balances, String asset, double amount) {
+    balances.merge(asset, amount, Double::sum);
+  }
+
+  private List<String> symbolsOf(String symbol) {
+    List<String> symbols = new ArrayList<>();
+    if (symbol != null) {
+      symbols.add(symbol);
+      return symbols;
+    }
+    for (SymbolInfo info : exchangeInfo.getSymbols()) {
+      symbols.add(info.getSymbol());
+    }
+    return symbols;
+  }
+
+  private TickOrderBook requireBook(String symbol) {
+    TickOrderBook book = replay.getBook(Venue.BINANCE, symbol);
+    if (book == null) {
+      throw error(-1121, "Invalid symbol.");
+    }
+    return book;
+  }
+
+  private SimulatedOrder requireOrder(String symbol, Long orderId) {
+    SimulatedOrder order = orderId == null ? null : matching.getOrder(orderId);
+    if (order == null || order.getVenue() != Venue.BINANCE || !order.getSymbol().equals(symbol)) {
+      throw error(-2013, "Order does not exist.");
+    }
+    return order;
+  }
+
+  private static SimulatedOrder.Type toType(NewOrder order) {
+    if (order.getType() == OrderType.MARKET) {
+      return SimulatedOrder.Type.MARKET;
+    }
+    if (order.getType() == OrderType.LIMIT_MAKER) {
+      return SimulatedOrder.Type.POST_ONLY;
+    }
+    if (order.getType() != OrderType.LIMIT) {
+      throw error(-1116, "Invalid orderType.");
+    }
+    TimeInForce timeInForce = order.getTimeInForce() == null ? TimeInForce.GTC : order.getTimeInForce();
+    switch (timeInForce) {
+      case IOC:
+        return SimulatedOrder.Type.IOC;
+      case FOK:
+        return SimulatedOrder.Type.FOK;
+      default:
+        return SimulatedOrder.Type.GTC;
+    }
+  }
+
+  private static OrderStatus toStatus(SimulatedOrder order) {
+    switch (order.getStatus()) {
+      case NEW:
+        return OrderStatus.NEW;
+      case PARTIALLY_FILLED:
+        return OrderStatus.PARTIALLY_FILLED;
+      case FILLED:
+        return OrderStatus.FILLED;
+      case REJECTED:
+        return OrderStatus.REJECTED;
+      default:
+        // the exchange expires what an immediate order could not fill
+        SimulatedOrder.Type type = order.getType();
+        return type == SimulatedOrder.Type.IOC || type == SimulatedOrder.Type.FOK
+          || type == SimulatedOrder.Type.MARKET ? OrderStatus.EXPIRED : OrderStatus.CANCELED;
+    }
+  }
+
+  private static Order toOrder(SimulatedOrder simulated) {
+    Order order = new Order();
+    order.setSymbol(simulated.getSymbol());
+    order.setOrderId(simulated.getId());
+    order.setPrice(Decimals.format(simulated.getPrice(), simulated.getPriceScale()));
+    order.setOrigQty(Decimals.format(simulated.getQty(), simulated.getQtyScale()));
+    order.setExecutedQty(Decimals.format(simulated.getFilledQty(), simulated.getQtyScale()));
+    order.setStatus(toStatus(simulated));
+    order.setSide(simulated.isBuy() ? OrderSide.BUY : OrderSide.SELL);
+    switch (simulated.getType()) {
+      case MARKET:
+        order.setType(OrderType.MARKET);
+        break;
+      case POST_ONLY:
+        order.setType(OrderType.LIMIT_MAKER);
+        break;
+      default:
+        order.setType(OrderType.LIMIT);
+        order.setTimeInForce(TimeInForce.valueOf(simulated.getType().name()));
+    }
+    order.setTime(simulated.getTime());
+    return order;
+  }
+
+  private static double filledQty(SimulatedOrder order) {
+    return Decimals.toDouble(order.getFilledQty(), order.getQtyScale());
+  }
+
+  private static String formatBalance(double amount) {
+    return Decimals.format(Decimals.fromDouble(amount, BALANCE_SCALE), BALANCE_SCALE);
+  }
+
+  private static OrderBookEntry toEntry(long priceTicks, long qtyUnits, TickOrderBook book) {
+    OrderBookEntry entry = new OrderBookEntry();
+    entry.setPrice(Decimals.format(priceTicks, book.getPriceScale()));
+    entry.setQty(Decimals.format(qtyUnits, book.getQtyScale()));
+    return entry;
+  }
+
+  private static BinanceApiException error(int code, String msg) {
+    BinanceApiError error = new BinanceApiError();
+    error.setCode(code);
+    error.setMsg(msg);
+    return new BinanceApiException(error);
+  }
+
+  private static UnsupportedOperationException notSimulated(String endpoint) {
+    return new UnsupportedOperationException(endpoint + " is not simulated in a replay");
+  }
+
+  @Override
+  public List<Asset> getAllAssets() {
+    throw notSimulated("getAllAssets");
+  }
+
+  @Override
+  public List<TradeHistoryItem> getTrades(String symbol, Integer limit) {
+    throw notSimulated("getTrades");
+  }
+
+  @Override
+  public List<TradeHistoryItem> getHistoricalTrades(String symbol, Integer limit, Long fromId) {
+    throw notSimulated("getHistoricalTrades");
+  }
+
+  @Override
+  public List<AggTrade> getAggTrades(String symbol, String fromId, Integer limit, Long startTime, Long endTime) {
+    throw notSimulated("getAggTrades");
+  }
+
+  @Override
+  public List<AggTrade> getAggTrades(String symbol) {
+    throw notSimulated("getAggTrades");
+  }
+
+  @Override
+  public List<Candlestick> getCandlestickBars(String symbol, CandlestickInterval interval, Integer limit,
+                                              Long startTime, Long endTime) {
+    throw notSimulated("getCandlestickBars");
+  }
+
+  @Override
+  public List<Candlestick> getCandlestickBars(String symbol, CandlestickInterval interval) {
+    throw notSimulated("getCandlestickBars");
+  }
+
+  @Override
+  public TickerStatistics get24HrPriceStatistics(String symbol) {
+    throw notSimulated("get24HrPriceStatistics");
+  }
+
+  @Override
+  public List<TickerStatistics> getAll24HrPriceStatistics() {
+    throw notSimulated("getAll24HrPriceStatistics");
+  }
+
+  @Override
+  public List<TickerPrice> getAllPrices() {
+    throw notSimulated("getAllPrices");
+  }
+
+  @Override
+  public TickerPrice getPrice(String symbol) {
+    throw notSimulated("getPrice");
+  }
+
+  @Override
+  public List<BookTicker> getBookTickers() {
+    throw notSimulated("getBookTickers");
+  }
+
+  @Override
+  public List<Trade> getMyTrades(String symbol, Integer limit, Long fromId, Long recvWindow, Long timestamp) {
+    throw notSimulated("getMyTrades");
+  }
+
+  @Override
+  public List<Trade> getMyTrades(String symbol, Integer limit) {
+    throw notSimulated("getMyTrades");
+  }
+
+  @Override
+  public List<Trade> getMyTrades(String symbol) {
+    throw notSimulated("getMyTrades");
+  }
+
+  @Override
+  public WithdrawResult withdraw(String asset, String address, String amount, String name, String addressTag) {
+    throw notSimulated("withdraw");
+  }
+
+  @Override
+  public DepositHistory getDepositHistory(String asset) {
+    throw notSimulated("getDepositHistory");
+  }
+
+  @Override
+  public WithdrawHistory getWithdrawHistory(String asset) {
+    throw notSimulated("getWithdrawHistory");
+  }
+
+  @Override
+  public DepositAddress getDepositAddress(String asset) {
+    throw notSimulated("getDepositAddress");
+  }
+
+  @Override
+  public String startUserDataStream() {
+    throw notSimulated("startUserDataStream");
+  }
+
+  @Override
+  public void keepAliveUserDataStream(String listenKey) {
+    throw notSimulated("keepAliveUserDataStream");
+  }
+
+  @Override
+  public void closeUserDataStream(String listenKey) {
+    throw notSimulated("closeUserDataStream");
+  }
+}
@@ -0,0 +1,113 @@
+package io.magicalne.smym.exchanges.replay;
+
+import io.magicalne.smym.exchanges.bitmex.BitmexDeltaClient;
+import io.magicalne.smym.exchanges.bitmex.BitmexQueryOrderException;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import io.magicalne.smym.replay.MatchingEngine;
+import io.magicalne.smym.replay.ReplayEngine;
+import io.magicalne.smym.replay.SimulatedOrder;
+import org.knowm.xchange.bitmex.dto.marketdata.BitmexPrivateOrder;
+import org.knowm.xchange.bitmex.dto.trade.BitmexPosition;
+import org.knowm.xchange.bitmex.dto.trade.BitmexSide;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link BitmexDeltaClient} that reads the orders of a {@link SimulatedBitmexExchange} and the books of the
+ * same replay instead of asking a delta server. Orders are always up to date, there is no cache to refresh.
+ * Positions and trades are not simulated.
+ *
+ * Call it on the replay thread only.
+ */
+public class SimulatedBitmexDeltaClient extends BitmexDeltaClient {
+
+  private static final int BOOK_DEPTH = 25;
+
+  private final ReplayEngine replay;
+  private final MatchingEngine matching;
+
+  public SimulatedBitmexDeltaClient(ReplayEngine replay) {
+    this.replay = replay;
+    this.matching = replay.getMatchingEngine();
+  }
+
+  @Override
+  public void refreshOrders(String symbol) {
+  }
+
+  @Override
+  public BitmexPrivateOrder getOrderById(String symbol, String orderId) throws BitmexQueryOrderException {
+    BitmexPrivateOrder order = findOrder(symbol, orderId);
+    if (order == null) {
+      throw new BitmexQueryOrderException("There is no such order in delta server. order id: " + orderId);
+    }
+    return order;
+  }
+
+  @Override
+  public List<BitmexPrivateOrder> getOrdersByIds(String symbol, Collection<String> orderIds) {
+    List<BitmexPrivateOrder> orders = new ArrayList<>(orderIds.size());
+    for (String id : orderIds) {
+      orders.add(findOrder(symbol, id));
+    }
+    return orders;
+  }
+
+  @Override
+  public List<BitmexPrivateOrder> getNewOrders(String symbol) {
+    List<BitmexPrivateOrder> orders = new ArrayList<>();
+    for (SimulatedOrder order : matching.getOpenOrders(Venue.BITMEX, symbol)) {
+      if (order.getStatus() == SimulatedOrder.Status.NEW) {
+        orders.add(SimulatedBitmexExchange.toBitmexOrder(order));
+      }
+    }
+    return orders;
+  }
+
+  @Override
+  public BitmexPosition getPosition(String symbol) {
+    throw new UnsupportedOperationException("Positions are not simulated in a replay");
+  }
+
+  @Override
+  public OrderBookL2 getOrderBookL2(String symbol) throws IOException {
+    TickOrderBook book = replay.getBook(Venue.BITMEX, symbol);
+    if (book == null) {
+      throw new IOException("Cannot get order book!");
+    }
+    int asks = Math.min(book.askCount(), BOOK_DEPTH);
+    List<OrderBookEntry> askEntries = new ArrayList<>(asks);
+    for (int i = 0; i < asks; i++) {
+      askEntries.add(entry(symbol, BitmexSide.SELL, book.askPrice(i), book.askQty(i)));
+    }
+    int bids = Math.min(book.bidCount(), BOOK_DEPTH);
+    List<OrderBookEntry> bidEntries = new ArrayList<>(bids);
+    for (int i = 0; i < bids; i++) {
+      bidEntries.add(entry(symbol, BitmexSide.BUY, book.bidPrice(i), book.bidQty(i)));
+    }
+    return new OrderBookL2(askEntries, bidEntries);
+  }
+
+  @Override
+  public Trades getTrade(String symbol) {
+    throw new UnsupportedOperationException("Trades are not simulated in a replay");
+  }
+
+  private BitmexPrivateOrder findOrder(String symbol, String orderId) {
+    SimulatedOrder order = SimulatedBitmexExchange.findOrder(matching, orderId);
+    return order == null || !order.getSymbol().equals(symbol) ? null : SimulatedBitmexExchange.toBitmexOrder(order);
+  }
+
+  private static OrderBookEntry entry(String symbol, BitmexSide side, double price, double size) {
+    OrderBookEntry entry = new OrderBookEntry();
+    entry.setSymbol(symbol);
+    entry.setSide(side);
+    entry.setSize((long) size);
+    entry.setPrice(price);
+    return entry;
+  }
+}
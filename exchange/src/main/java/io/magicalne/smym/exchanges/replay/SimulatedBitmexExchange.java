@@ -0,0 +1,210 @@
+package io.magicalne.smym.exchanges.replay;
+
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.exchanges.bitmex.BitmexExchange;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import io.magicalne.smym.replay.MatchingEngine;
+import io.magicalne.smym.replay.ReplayEngine;
+import io.magicalne.smym.replay.SimulatedOrder;
+import org.knowm.xchange.bitmex.dto.marketdata.BitmexKline;
+import org.knowm.xchange.bitmex.dto.marketdata.BitmexPrivateOrder;
+import org.knowm.xchange.bitmex.dto.trade.BitmexPosition;
+import org.knowm.xchange.bitmex.dto.trade.BitmexSide;
+import org.knowm.xchange.bitmex.dto.trade.PlaceOrderCommand;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A {@link BitmexExchange} that places its orders on the {@link MatchingEngine} of a replay. Read the orders back
+ * through a {@link SimulatedBitmexDeltaClient} of the same replay.
+ *
+ * Like the live exchange a ParticipateDoNotInitiate order that would take is cancelled, amends keep the
+ * quantity of the order and only move its price, and an order that is not open any more is returned as it is.
+ * Order ids are the numbers of the matching engine. Leverage and the bucketed trades are not simulated.
+ *
+ * Call it on the replay thread only.
+ */
+public class SimulatedBitmexExchange extends BitmexExchange {
+
+  private static final String POST_ONLY_TEXT = "Canceled: Order had execInst of ParticipateDoNotInitiate";
+
+  private final ReplayEngine replay;
+  private final MatchingEngine matching;
+
+  public SimulatedBitmexExchange(ReplayEngine replay) {
+    this.replay = replay;
+    this.matching = replay.getMatchingEngine();
+  }
+
+  @Override
+  public BitmexPrivateOrder placeLimitOrder(String symbol, double price, int contracts, BitmexSide side) {
+    return place(symbol, side == BitmexSide.BUY, SimulatedOrder.Type.POST_ONLY, price, contracts);
+  }
+
+  @Override
+  public BitmexPrivateOrder placeMarketOrder(String symbol, int contracts, BitmexSide side) {
+    return place(symbol, side == BitmexSide.BUY, SimulatedOrder.Type.MARKET, 0, contracts);
+  }
+
+  @Override
+  public List<BitmexPrivateOrder> placePairOrders(String symbol, double bidPrice, double askPrice, int contracts) {
+    return Arrays.asList(
+      place(symbol, true, SimulatedOrder.Type.POST_ONLY, bidPrice, contracts),
+      place(symbol, false, SimulatedOrder.Type.POST_ONLY, askPrice, contracts));
+  }
+
+  @Override
+  public List<BitmexPrivateOrder> placeOrdersBulk(List<PlaceOrderCommand> commands) {
+    List<BitmexPrivateOrder> orders = new ArrayList<>(commands.size());
+    for (PlaceOrderCommand command : commands) {
+      boolean market = "Market".equalsIgnoreCase(command.orderType);
+      boolean postOnly = command.executionInstructions != null
+        && command.executionInstructions.contains("ParticipateDoNotInitiate");
+      SimulatedOrder.Type type = market ? SimulatedOrder.Type.MARKET
+        : postOnly ? SimulatedOrder.Type.POST_ONLY : SimulatedOrder.Type.GTC;
+      double price = command.price == null ? 0 : command.price.doubleValue();
+      orders.add(place(command.symbol, "Buy".equalsIgnoreCase(command.side), type, price,
+        command.orderQuantity.intValue()));
+    }
+    return orders;
+  }
+
+  @Override
+  public BitmexPrivateOrder amendOrderPrice(String orderId, int contracts, double price, String text) {
+    SimulatedOrder order = requireOrder(orderId);
+    matching.amend(order.getId(), Decimals.fromDouble(price, order.getPriceScale()));
+    return toBitmexOrder(order);
+  }
+
+  @Override
+  public BitmexPrivateOrder amendOrderPrice(String orderId, int contracts, double price) {
+    return amendOrderPrice(orderId, contracts, price, null);
+  }
+
+  @Override
+  public List<BitmexPrivateOrder> amendPairOrder(String longOrderId, double bidPrice,
+                                                 String shortOrderId, double askPrice, int contracts) {
+    return Arrays.asList(
+      amendOrderPrice(longOrderId, contracts, bidPrice),
+      amendOrderPrice(shortOrderId, contracts, askPrice));
+  }
+
+  @Override
+  public boolean cancel(String orderId) {
+    return matching.cancel(requireOrder(orderId).getId());
+  }
+
+  @Override
+  public BitmexPosition setLeverage(String symbol, double leverage) {
+    return new BitmexPosition();
+  }
+
+  @Override
+  public List<BitmexKline> getRecentStats(String symbol) {
+    throw new UnsupportedOperationException("Bucketed trades are not simulated in a replay");
+  }
+
+  private BitmexPrivateOrder place(String symbol, boolean buy, SimulatedOrder.Type type, double price,
+                                   int contracts) {
+    TickOrderBook book = replay.getBook(Venue.BITMEX, symbol);
+    if (book == null) {
+      throw new IllegalArgumentException("There is no replayed book of " + symbol);
+    }
+    long ticks = type == SimulatedOrder.Type.MARKET ? 0 : Decimals.fromDouble(price, book.getPriceScale());
+    long qty = Decimals.fromDouble(contracts, book.getQtyScale());
+    return toBitmexOrder(matching.submit(Venue.BITMEX, symbol, buy, type, ticks, qty));
+  }
+
+  private SimulatedOrder requireOrder(String orderId) {
+    SimulatedOrder order = findOrder(matching, orderId);
+    if (order == null) {
+      throw new IllegalArgumentException("Unknown order " + orderId);
+    }
+    return order;
+  }
+
+  static SimulatedOrder findOrder(MatchingEngine matching, String orderId) {
+    try {
+      SimulatedOrder order = matching.getOrder(Long.parseLong(orderId));
+      return order != null && order.getVenue() == Venue.BITMEX ? order : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  static BitmexPrivateOrder toBitmexOrder(SimulatedOrder order) {
+    BitmexPrivateOrder.OrderStatus status;
+    String text = null;
+    switch (order.getStatus()) {
+      case NEW:
+        status = BitmexPrivateOrder.OrderStatus.New;
+        break;
+      case PARTIALLY_FILLED:
+        status = BitmexPrivateOrder.OrderStatus.PartiallyFilled;
+        break;
+      case FILLED:
+        status = BitmexPrivateOrder.OrderStatus.Filled;
+        break;
+      case REJECTED:
+        // Bitmex cancels a post only order that would take instead of rejecting it
+        status = BitmexPrivateOrder.OrderStatus.Canceled;
+        text = POST_ONLY_TEXT;
+        break;
+      default:
+        status = BitmexPrivateOrder.OrderStatus.Canceled;
+    }
+    SimulatedOrder.Type type = order.getType();
+    String orderType = type == SimulatedOrder.Type.MARKET ? "Market" : "Limit";
+    String timeInForce = type == SimulatedOrder.Type.IOC || type == SimulatedOrder.Type.MARKET ? "ImmediateOrCancel"
+      : type == SimulatedOrder.Type.FOK ? "FillOrKill" : "GoodTillCancel";
+    String execInst = type == SimulatedOrder.Type.POST_ONLY ? "ParticipateDoNotInitiate" : "";
+    BigDecimal price = type == SimulatedOrder.Type.MARKET ? null : decimal(order.getPrice(), order.getPriceScale());
+    BigDecimal avgPx = order.getFilledQty() == 0 ? null
+      : decimal(Decimals.fromDouble(order.getAveragePrice(), order.getPriceScale()), order.getPriceScale());
+    return new BitmexPrivateOrder(
+      price,
+      Long.toString(order.getId()),
+      decimal(order.getQty(), order.getQtyScale()),
+      order.isBuy() ? BitmexSide.BUY : BitmexSide.SELL,
+      order.getSymbol(),
+      null,
+      new Date(order.getTime()),
+      status,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      orderType,
+      timeInForce,
+      execInst,
+      null,
+      null,
+      null,
+      order.isOpen(),
+      null,
+      null,
+      decimal(order.getLeavesQty(), order.getQtyScale()),
+      null,
+      decimal(order.getFilledQty(), order.getQtyScale()),
+      avgPx,
+      null,
+      text,
+      new Date(order.getUpdateTime()),
+      null);
+  }
+
+  private static BigDecimal decimal(long value, int scale) {
+    BigDecimal decimal = BigDecimal.valueOf(value, scale).stripTrailingZeros();
+    // like the json of the api, 10 rather than 1E+1
+    return decimal.scale() < 0 ? decimal.setScale(0) : decimal;
+  }
+}
@@ -0,0 +1,55 @@
+package io.magicalne.smym;
+
+import okio.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+public class UtilsTest {
+
+    @Test
+    public void ungzipAndInflate() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("{\"ping\": ").append(i).append('}');
+        }
+        byte[] json = sb.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = gzip(json);
+
+        Assert.assertArrayEquals(json, Utils.ungzip(gzip));
+        Assert.assertArrayEquals(json, Utils.ungzip(gzip));
+
+        ByteBuffer slice = Utils.inflate(ByteBuffer.wrap(gzip));
+        Assert.assertTrue(slice.isDirect());
+        Assert.assertEquals(json.length, slice.remaining());
+        byte[] out = new byte[slice.remaining()];
+        slice.get(out);
+        Assert.assertArrayEquals(json, out);
+
+        ByteBuffer dst = ByteBuffer.allocate(json.length + 10);
+        dst.position(10);
+        slice = Utils.inflate(ByteBuffer.wrap(gzip), dst);
+        Assert.assertEquals(json.length + 10, dst.position());
+        Assert.assertEquals(json.length, slice.remaining());
+        Assert.assertEquals('{', slice.get(0));
+
+        // websocket frames, the input buffer grows to the frame
+        GzipInflater inflater = new GzipInflater(16, 16);
+        int n = inflater.inflate(ByteString.of(gzip));
+        Assert.assertArrayEquals(json, Arrays.copyOf(inflater.buffer(), n));
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+package io.magicalne.smym.exchanges;
+
+import com.binance.api.client.BinanceApiAsyncRestClient;
+import com.binance.api.client.BinanceApiCallback;
+import com.binance.api.client.domain.event.DepthEvent;
+import com.binance.api.client.domain.market.OrderBook;
+import com.binance.api.client.domain.market.OrderBookEntry;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+
+public class BinanceDepthSynchronizerTest {
+
+  private BinanceApiAsyncRestClient restClient;
+  private TickOrderBook orderBook;
+  private OrderBookView view;
+  private BinanceDepthSynchronizer sync;
+
+  @Before
+  public void setup() {
+    restClient = Mockito.mock(BinanceApiAsyncRestClient.class);
+    orderBook = new TickOrderBook(5, 2, 8);
+    view = new OrderBookView(5, 2, 8);
+    sync = new BinanceDepthSynchronizer("BTCUSDT", 0, 5, orderBook, view, restClient);
+  }
+
+  @Test
+  public void alignBufferedEventsToSnapshot() {
+    sync.start();
+    BinanceApiCallback<OrderBook> callback = captureSnapshotCallback(1);
+    sync.onEvent(event(90, 99, "100.00", "1"));
+    sync.onEvent(event(100, 105, "101.00", "2"));
+    Assert.assertFalse(sync.isSynced());
+
+    callback.onResponse(snapshot(101, "100.50", "3"));
+    sync.onEvent(event(106, 108, "102.00", "1"));
+
+    Assert.assertTrue(sync.isSynced());
+    Assert.assertEquals(108, orderBook.getLastUpdateId());
+    Assert.assertEquals(100.5, orderBook.bestAskPrice(), 0);
+    Assert.assertEquals(3, orderBook.askCount());
+    Assert.assertEquals(0, sync.getGapCount());
+    Assert.assertEquals(100.5, view.bestAskPrice(), 0);
+    Assert.assertEquals(99, view.bestBidPrice(), 0);
+  }
+
+  @Test
+  public void gapTriggersResync() {
+    sync.start();
+    captureSnapshotCallback(1).onResponse(snapshot(10, "100.50", "3"));
+    sync.onEvent(event(11, 12, "101.00", "1"));
+    Assert.assertTrue(sync.isSynced());
+
+    sync.onEvent(event(20, 21, "102.00", "1"));
+    Assert.assertFalse(sync.isSynced());
+    Assert.assertEquals(1, sync.getGapCount());
+    Assert.assertEquals(1, sync.getResyncCount());
+    Assert.assertEquals(-1, view.bestAskPrice(), 0);
+
+    captureSnapshotCallback(2).onResponse(snapshot(20, "100.50", "3"));
+    sync.onEvent(event(22, 22, "103.00", "1"));
+    Assert.assertTrue(sync.isSynced());
+    Assert.assertEquals(22, orderBook.getLastUpdateId());
+    Assert.assertEquals(3, orderBook.askCount());
+
+    OrderBookSnapshot snapshot = new OrderBookSnapshot();
+    view.read(snapshot);
+    Assert.assertEquals(3, snapshot.askCount());
+    Assert.assertEquals(103, snapshot.askPrice(2), 0);
+    Assert.assertEquals(22, snapshot.getLastUpdateId());
+  }
+
+  @SuppressWarnings("unchecked")
+  private BinanceApiCallback<OrderBook> captureSnapshotCallback(int times) {
+    ArgumentCaptor<BinanceApiCallback> captor = ArgumentCaptor.forClass(BinanceApiCallback.class);
+    Mockito.verify(restClient, Mockito.times(times))
+      .getOrderBook(Mockito.eq("BTCUSDT"), Mockito.eq(5), captor.capture());
+    return captor.getValue();
+  }
+
+  private static DepthEvent event(long first, long last, String askPrice, String askQty) {
+    DepthEvent event = new DepthEvent();
+    event.setSymbol("BTCUSDT");
+    event.setFirstUpdateId(first);
+    event.setFinalUpdateId(last);
+    event.setAsks(Collections.singletonList(entry(askPrice, askQty)));
+    event.setBids(Collections.emptyList());
+    return event;
+  }
+
+  private static OrderBook snapshot(long lastUpdateId, String askPrice, String askQty) {
+    OrderBook orderBook = new OrderBook();
+    orderBook.setLastUpdateId(lastUpdateId);
+    orderBook.setAsks(Collections.singletonList(entry(askPrice, askQty)));
+    orderBook.setBids(Collections.singletonList(entry("99.00", "1")));
+    return orderBook;
+  }
+
+  private static OrderBookEntry entry(String price, String qty) {
+    OrderBookEntry entry = new OrderBookEntry();
+    entry.setPrice(price);
+    entry.setQty(qty);
+    return entry;
+  }
+}
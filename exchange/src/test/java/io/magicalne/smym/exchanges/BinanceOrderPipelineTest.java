@@ -0,0 +1,101 @@
+package io.magicalne.smym.exchanges;
+
+import com.binance.api.client.BinanceApiAsyncRestClient;
+import com.binance.api.client.BinanceApiCallback;
+import com.binance.api.client.BinanceApiError;
+import com.binance.api.client.domain.TimeInForce;
+import com.binance.api.client.domain.account.NewOrder;
+import com.binance.api.client.domain.account.NewOrderResponse;
+import com.binance.api.client.domain.account.Order;
+import com.binance.api.client.domain.account.request.OrderStatusRequest;
+import com.binance.api.client.exception.BinanceApiException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class BinanceOrderPipelineTest {
+
+  @Test
+  public void pipelineOrdersAndRetryRateLimited() {
+    BinanceApiAsyncRestClient restClient = Mockito.mock(BinanceApiAsyncRestClient.class);
+    BinanceOrderPipeline pipeline = new BinanceOrderPipeline(restClient, null);
+    List<NewOrder> orders = Arrays.asList(
+      NewOrder.limitBuy("BTCUSDT", TimeInForce.GTC, "1", "100"),
+      NewOrder.limitBuy("BTCUSDT", TimeInForce.GTC, "1", "99"),
+      NewOrder.limitBuy("BTCUSDT", TimeInForce.GTC, "1", "98"));
+    CompletableFuture<List<NewOrderResponse>> placed = pipeline.submit(orders);
+
+    // all orders are sent before any response arrives
+    List<BinanceApiCallback<NewOrderResponse>> callbacks = captureCallbacks(restClient, 3);
+    callbacks.get(0).onResponse(response(1));
+    callbacks.get(1).onFailure(new BinanceApiException(error(-1015)));
+    callbacks.get(2).onFailure(new BinanceApiException(error(-2010)));
+    Assert.assertFalse(placed.isDone());
+
+    captureCallbacks(restClient, 4).get(3).onResponse(response(2));
+    List<NewOrderResponse> responses = placed.join();
+    Assert.assertEquals(2, responses.size());
+    Assert.assertEquals(1, responses.get(0).getOrderId().longValue());
+    Assert.assertEquals(2, responses.get(1).getOrderId().longValue());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void queryStatusOfOrdersWithoutResponse() {
+    BinanceApiAsyncRestClient restClient = Mockito.mock(BinanceApiAsyncRestClient.class);
+    BinanceOrderPipeline pipeline = new BinanceOrderPipeline(restClient, null, 200);
+    List<NewOrder> orders = Arrays.asList(
+      NewOrder.limitBuy("BTCUSDT", TimeInForce.GTC, "1", "100"),
+      NewOrder.limitBuy("BTCUSDT", TimeInForce.GTC, "1", "99"));
+    CompletableFuture<List<NewOrderResponse>> placed = pipeline.submit(orders);
+
+    // neither order gets a response, the first one reached the exchange, the second one did not
+    captureCallbacks(restClient, 2);
+    ArgumentCaptor<OrderStatusRequest> requests = ArgumentCaptor.forClass(OrderStatusRequest.class);
+    ArgumentCaptor<BinanceApiCallback> callbacks = ArgumentCaptor.forClass(BinanceApiCallback.class);
+    Mockito.verify(restClient, Mockito.timeout(5000).times(2)).getOrderStatus(requests.capture(), callbacks.capture());
+    for (int i = 0; i < 2; i++) {
+      BinanceApiCallback<Order> callback = callbacks.getAllValues().get(i);
+      if (orders.get(0).getNewClientOrderId().equals(requests.getAllValues().get(i).getOrigClientOrderId())) {
+        Order order = new Order();
+        order.setOrderId(1L);
+        callback.onResponse(order);
+      } else {
+        callback.onFailure(new BinanceApiException(error(-2013)));
+      }
+    }
+    Assert.assertFalse(placed.isDone());
+
+    captureCallbacks(restClient, 3).get(2).onResponse(response(2));
+    List<NewOrderResponse> responses = placed.join();
+    Assert.assertEquals(2, responses.size());
+    Assert.assertEquals(1, responses.get(0).getOrderId().longValue());
+    Assert.assertEquals(2, responses.get(1).getOrderId().longValue());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<BinanceApiCallback<NewOrderResponse>> captureCallbacks(BinanceApiAsyncRestClient restClient,
+                                                                             int times) {
+    ArgumentCaptor<BinanceApiCallback> captor = ArgumentCaptor.forClass(BinanceApiCallback.class);
+    Mockito.verify(restClient, Mockito.timeout(5000).times(times))
+      .newOrder(Mockito.any(NewOrder.class), captor.capture());
+    return (List) captor.getAllValues();
+  }
+
+  private static NewOrderResponse response(long orderId) {
+    NewOrderResponse response = new NewOrderResponse();
+    response.setOrderId(orderId);
+    return response;
+  }
+
+  private static BinanceApiError error(int code) {
+    BinanceApiError error = new BinanceApiError();
+    error.setCode(code);
+    return error;
+  }
+}
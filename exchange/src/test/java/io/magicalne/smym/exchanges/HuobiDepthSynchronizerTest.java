@@ -0,0 +1,69 @@
+package io.magicalne.smym.exchanges;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.magicalne.smym.dto.HuobiDepthTick;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HuobiDepthSynchronizerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> requests = new ArrayList<>();
+    private OrderBookView view;
+    private HuobiDepthSynchronizer sync;
+
+    @Before
+    public void setup() {
+        view = new OrderBookView(150, 2, 8);
+        sync = new HuobiDepthSynchronizer("btcusdt", 0, new TickOrderBook(150, 2, 8), view, requests::add);
+    }
+
+    @Test
+    public void parseLevelsIntoPrimitiveArrays() throws IOException {
+        HuobiDepthTick tick = objectMapper.readValue("{\"bids\":[[7964,0.0678],[7963,0.9162]]," +
+                "\"asks\":[[7979,0.0736],[8020,13.6584]],\"version\":100,\"ts\":1489474082800}",
+                HuobiDepthTick.class);
+        Assert.assertEquals(2, tick.bidCount());
+        Assert.assertEquals(7964, tick.bestBidPrice(), 0);
+        Assert.assertEquals(13.6584, tick.askAmount(1), 0);
+        Assert.assertEquals(100, tick.getVersion());
+
+        sync.onDepth(tick);
+        Assert.assertEquals(7979, view.bestAskPrice(), 0);
+    }
+
+    @Test
+    public void applyMbpIncrementsOnSnapshot() throws IOException {
+        sync.start();
+        Assert.assertEquals(1, requests.size());
+        sync.onIncrement(increment(10, 11, "[[100.5,1]]", "[]"));
+        sync.onIncrement(increment(11, 12, "[[100.4,2]]", "[[99,0]]"));
+        Assert.assertFalse(sync.isSynced());
+
+        sync.onSnapshot(objectMapper.readValue("{\"seqNum\":11,\"bids\":[[99,1],[98,1]],\"asks\":[[100.5,1]]}",
+                HuobiDepthTick.class));
+
+        Assert.assertTrue(sync.isSynced());
+        Assert.assertEquals(100.4, view.bestAskPrice(), 0);
+        Assert.assertEquals(98, view.bestBidPrice(), 0);
+
+        sync.onIncrement(increment(15, 16, "[]", "[]"));
+        Assert.assertFalse(sync.isSynced());
+        Assert.assertEquals(1, sync.getGapCount());
+        Assert.assertEquals(2, requests.size());
+        Assert.assertEquals(-1, view.bestAskPrice(), 0);
+    }
+
+    private HuobiDepthTick increment(long prevSeqNum, long seqNum, String asks, String bids) throws IOException {
+        String json = "{\"seqNum\":" + seqNum + ",\"prevSeqNum\":" + prevSeqNum + ",\"bids\":" + bids +
+                ",\"asks\":" + asks + "}";
+        return objectMapper.readValue(json, HuobiDepthTick.class);
+    }
+}
@@ -0,0 +1,106 @@
+package io.magicalne.smym.exchanges;
+
+import io.magicalne.smym.dto.HuobiOrderUpdate;
+import io.magicalne.smym.dto.OrderDetail;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HuobiOrderTrackerTest {
+
+    private final AtomicInteger queries = new AtomicInteger();
+    private volatile String restState = "submitted";
+    private final HuobiOrderTracker tracker = new HuobiOrderTracker(orderId -> {
+        queries.incrementAndGet();
+        OrderDetail detail = new OrderDetail();
+        detail.setId(Long.parseLong(orderId));
+        detail.setState(restState);
+        return CompletableFuture.completedFuture(detail);
+    }, 10000);
+
+    @After
+    public void tearDown() {
+        tracker.close();
+    }
+
+    @Test
+    public void pushCompletesWaiter() throws Exception {
+        CompletableFuture<OrderDetail> future = tracker.awaitTerminal("42");
+        tracker.onUpdate(update(42, "partial-filled"));
+        Assert.assertFalse(future.isDone());
+        tracker.onUpdate(update(42, "filled"));
+        Assert.assertEquals("filled", future.get(1, TimeUnit.SECONDS).getState());
+        Assert.assertEquals(0, queries.get());
+
+        tracker.onUpdate(update(43, "canceled"));
+        Assert.assertEquals("canceled", tracker.awaitTerminal("43").getNow(null).getState());
+    }
+
+    @Test
+    public void pollWhenPushIsMissing() throws Exception {
+        tracker.setInitialPollDelayMs(5);
+        CompletableFuture<OrderDetail> future = tracker.awaitTerminal("7");
+        Thread.sleep(50);
+        Assert.assertFalse(future.isDone());
+        restState = "partial-canceled";
+        Assert.assertEquals("partial-canceled", future.get(2, TimeUnit.SECONDS).getState());
+        Assert.assertTrue(queries.get() >= 2);
+    }
+
+    @Test
+    public void timeoutCompletesWithNull() throws Exception {
+        Assert.assertNull(tracker.awaitTerminal("8", 20).get(1, TimeUnit.SECONDS));
+        // still tracked after the timeout
+        CompletableFuture<OrderDetail> future = tracker.awaitTerminal("8", 10000);
+        tracker.onUpdate(update(8, "canceled"));
+        Assert.assertEquals("canceled", future.get(1, TimeUnit.SECONDS).getState());
+    }
+
+    @Test
+    public void fillCompletesOnPartialFilled() throws Exception {
+        CompletableFuture<OrderDetail> fill = tracker.awaitFill("9", 10000);
+        CompletableFuture<OrderDetail> terminal = tracker.awaitTerminal("9");
+        tracker.onUpdate(update(9, "submitted"));
+        Assert.assertFalse(fill.isDone());
+        tracker.onUpdate(update(9, "partial-filled"));
+        Assert.assertEquals("partial-filled", fill.get(1, TimeUnit.SECONDS).getState());
+        Assert.assertFalse(terminal.isDone());
+        tracker.onUpdate(update(9, "partial-canceled"));
+        Assert.assertEquals("partial-canceled", terminal.get(1, TimeUnit.SECONDS).getState());
+    }
+
+    @Test
+    public void ignoreStaleUpdates() {
+        HuobiOrderUpdate filled = update(10, "filled");
+        filled.setOrderPrice("1.5");
+        filled.setPrice("1.4");
+        tracker.onUpdate(filled);
+        Assert.assertEquals("1.5", tracker.getOrder("10").getPrice());
+
+        // a poll answered before the fill arrives late
+        OrderDetail polled = new OrderDetail();
+        polled.setId(10);
+        polled.setState("submitted");
+        tracker.onOrderDetail(polled);
+        Assert.assertEquals("filled", tracker.getOrder("10").getState());
+
+        HuobiOrderUpdate partial = update(11, "partial-filled");
+        partial.setFilledAmount("2");
+        tracker.onUpdate(partial);
+        partial = update(11, "partial-filled");
+        partial.setFilledAmount("1");
+        tracker.onUpdate(partial);
+        Assert.assertEquals("2", tracker.getOrder("11").getFieldAmount());
+    }
+
+    private static HuobiOrderUpdate update(long orderId, String state) {
+        HuobiOrderUpdate update = new HuobiOrderUpdate();
+        update.setOrderId(orderId);
+        update.setOrderState(state);
+        return update;
+    }
+}
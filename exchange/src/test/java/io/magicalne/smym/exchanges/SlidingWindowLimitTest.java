@@ -0,0 +1,59 @@
+package io.magicalne.smym.exchanges;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class SlidingWindowLimitTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void admitFullLimitPerInterval() {
+    SlidingWindowLimit window = new SlidingWindowLimit(10, 1, TimeUnit.SECONDS, 0);
+    // the whole limit goes through at once
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(0, window.reserve(1, 0));
+    }
+    // the next ones wait until the first ones left the window
+    Assert.assertEquals(SECOND, window.reserve(1, 0));
+    Assert.assertEquals(SECOND, window.reserve(1, 0));
+
+    // two of the second interval are taken, eight are left
+    for (int i = 0; i < 8; i++) {
+      Assert.assertEquals(0, window.reserve(1, SECOND));
+    }
+    Assert.assertEquals(SECOND, window.reserve(1, SECOND));
+  }
+
+  @Test
+  public void neverExceedLimitInAnyWindow() {
+    SlidingWindowLimit window = new SlidingWindowLimit(10, 1, TimeUnit.SECONDS, 0);
+    for (int i = 0; i < 5; i++) {
+      Assert.assertEquals(0, window.reserve(1, SECOND / 2));
+    }
+    for (int i = 0; i < 5; i++) {
+      Assert.assertEquals(0, window.reserve(1, SECOND));
+    }
+    // the window (0.5s, 1.5s] is full
+    Assert.assertEquals(SECOND / 2, window.reserve(1, SECOND));
+    Assert.assertEquals(0, window.reserve(1, 2 * SECOND));
+  }
+
+  @Test
+  public void reserveWeights() {
+    SlidingWindowLimit window = new SlidingWindowLimit(1200, 1, TimeUnit.MINUTES, 0);
+    Assert.assertEquals(0, window.reserve(1200, 0));
+    long minute = TimeUnit.MINUTES.toNanos(1);
+    Assert.assertEquals(minute, window.reserve(1, 0));
+    long hour = TimeUnit.HOURS.toNanos(1);
+    Assert.assertEquals(0, window.reserve(1200, hour));
+    Assert.assertEquals(minute, window.reserve(1, hour));
+    // all limits of a request count it at the latest due time
+    Assert.assertEquals(hour + minute, window.due(1, hour));
+    window.take(1, hour + 3 * minute);
+    // never before the permits taken earlier
+    Assert.assertEquals(hour + 3 * minute, window.due(1199, hour));
+  }
+}
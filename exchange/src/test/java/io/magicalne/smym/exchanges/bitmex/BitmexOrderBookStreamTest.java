@@ -0,0 +1,151 @@
+package io.magicalne.smym.exchanges.bitmex;
+
+import io.magicalne.smym.marketdata.BookEvent;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class BitmexOrderBookStreamTest {
+
+  private BitmexOrderBookStream stream;
+
+  @Before
+  public void setup() {
+    stream = new BitmexOrderBookStream(new OkHttpClient(), "ws://localhost", "orderBookL2_25",
+      Collections.singleton("XBTUSD"));
+  }
+
+  @After
+  public void tearDown() {
+    stream.close();
+  }
+
+  @Test
+  public void replayActions() throws Exception {
+    stream.decode("{\"info\":\"Welcome to the BitMEX Realtime API.\",\"version\":\"2018-10-02T22:53:23.000Z\"}");
+    stream.decode("{\"success\":true,\"subscribe\":\"orderBookL2_25:XBTUSD\"}");
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"update\",\"data\":"
+      + "[{\"symbol\":\"XBTUSD\",\"id\":8799350000,\"side\":\"Sell\",\"size\":1}]}");
+    Assert.assertNull(stream.getOrderBookL2("XBTUSD"));
+
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"partial\",\"keys\":[\"symbol\",\"id\",\"side\"],"
+      + "\"data\":["
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799350000,\"side\":\"Sell\",\"size\":100,\"price\":6500},"
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799349950,\"side\":\"Sell\",\"size\":300,\"price\":6500.5},"
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799350050,\"side\":\"Buy\",\"size\":200,\"price\":6499.5},"
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799350100,\"side\":\"Buy\",\"size\":50,\"price\":6499}]}");
+    BitmexDeltaClient.OrderBookL2 book = stream.getOrderBookL2("XBTUSD");
+    Assert.assertEquals(6499.5, book.getBestBid().getPrice(), 0);
+    Assert.assertEquals(6500, book.getBestAsk().getPrice(), 0);
+    Assert.assertEquals((200 - 100) / 300d, book.imbalance(), 1e-12);
+    Assert.assertEquals(6500.5, book.findFairAsk(), 0);
+
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"update\",\"data\":"
+      + "[{\"symbol\":\"XBTUSD\",\"id\":8799350050,\"side\":\"Buy\",\"size\":20}]}");
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"insert\",\"data\":"
+      + "[{\"symbol\":\"XBTUSD\",\"id\":8799350150,\"side\":\"Buy\",\"size\":500,\"price\":6498.5}]}");
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"delete\",\"data\":"
+      + "[{\"symbol\":\"XBTUSD\",\"id\":8799350000,\"side\":\"Sell\"}]}");
+    BitmexDeltaClient.OrderBookL2 updated = stream.getOrderBookL2("XBTUSD");
+    Assert.assertEquals(3, updated.getBids().size());
+    Assert.assertEquals(20, updated.getBestBid().getSize());
+    Assert.assertEquals(6498.5, updated.getBids().get(2).getPrice(), 0);
+    Assert.assertEquals(6500.5, updated.getBestAsk().getPrice(), 0);
+    Assert.assertEquals(6498.5, updated.findFairBid(), 0);
+
+    Assert.assertEquals(200, book.getBestBid().getSize());
+    Assert.assertEquals(2, book.getAsks().size());
+  }
+
+  @Test
+  public void publishToBus() throws Exception {
+    MarketDataBus bus = new MarketDataBus(16);
+    stream.setMarketDataBus(bus);
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"partial\",\"data\":["
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799350000,\"side\":\"Sell\",\"size\":100,\"price\":6500},"
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799350050,\"side\":\"Buy\",\"size\":200,\"price\":6499.5}]}");
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"update\",\"data\":"
+      + "[{\"symbol\":\"XBTUSD\",\"id\":8799350050,\"side\":\"Buy\",\"size\":20},"
+      + "{\"symbol\":\"ETHUSD\",\"id\":1,\"side\":\"Buy\",\"size\":20}]}");
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"delete\",\"data\":"
+      + "[{\"symbol\":\"XBTUSD\",\"id\":8799350000,\"side\":\"Sell\"}]}");
+
+    BookEvent clear = bus.get(0);
+    Assert.assertEquals(BookEvent.Type.CLEAR, clear.getType());
+    Assert.assertEquals(BookEvent.Type.BID, bus.get(1).getType());
+    Assert.assertEquals(6499.5, bus.get(1).getPriceAsDouble(), 0);
+    Assert.assertEquals(BookEvent.Type.ASK, bus.get(2).getType());
+    Assert.assertTrue(bus.get(2).isEndOfUpdate());
+
+    BookEvent update = bus.get(3);
+    Assert.assertEquals(BookEvent.Type.BID, update.getType());
+    Assert.assertEquals(6499.5, update.getPriceAsDouble(), 0);
+    Assert.assertEquals(20, update.getQty());
+    Assert.assertTrue(update.isEndOfUpdate());
+
+    BookEvent delete = bus.get(4);
+    Assert.assertEquals(BookEvent.Type.ASK, delete.getType());
+    Assert.assertEquals(6500, delete.getPriceAsDouble(), 0);
+    Assert.assertEquals(0, delete.getQty());
+    Assert.assertEquals(3, delete.getUpdateId());
+  }
+
+  @Test
+  public void splitBooksLargerThanBus() throws Exception {
+    MarketDataBus bus = new MarketDataBus(2);
+    stream.setMarketDataBus(bus);
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"partial\",\"data\":["
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799350000,\"side\":\"Sell\",\"size\":100,\"price\":6500},"
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799350050,\"side\":\"Buy\",\"size\":200,\"price\":6499.5}]}");
+    // the clear and the bid, then the ask
+    Assert.assertEquals(BookEvent.Type.BID, bus.get(1).getType());
+    Assert.assertFalse(bus.get(1).isEndOfUpdate());
+    Assert.assertEquals(BookEvent.Type.ASK, bus.get(2).getType());
+    Assert.assertTrue(bus.get(2).isEndOfUpdate());
+
+    // three rows do not fit, the book is published instead
+    stream.decode("{\"table\":\"orderBookL2_25\",\"action\":\"insert\",\"data\":["
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799349950,\"side\":\"Sell\",\"size\":300,\"price\":6500.5},"
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799349900,\"side\":\"Sell\",\"size\":400,\"price\":6501},"
+      + "{\"symbol\":\"XBTUSD\",\"id\":8799350100,\"side\":\"Buy\",\"size\":500,\"price\":6499}]}");
+    Assert.assertEquals(BookEvent.Type.ASK, bus.get(7).getType());
+    Assert.assertFalse(bus.get(7).isEndOfUpdate());
+    Assert.assertEquals(BookEvent.Type.ASK, bus.get(8).getType());
+    Assert.assertEquals(6501, bus.get(8).getPriceAsDouble(), 0);
+    Assert.assertTrue(bus.get(8).isEndOfUpdate());
+  }
+
+  @Test
+  public void publishTrades() throws Exception {
+    MarketDataBus bus = new MarketDataBus(16);
+    stream.setMarketDataBus(bus);
+    // past trades
+    stream.decode("{\"table\":\"trade\",\"action\":\"partial\",\"data\":["
+      + "{\"timestamp\":\"2018-10-03T09:00:00.000Z\",\"symbol\":\"XBTUSD\",\"side\":\"Buy\",\"size\":5,"
+      + "\"price\":6499}]}");
+    stream.decode("{\"table\":\"trade\",\"action\":\"insert\",\"data\":["
+      + "{\"timestamp\":\"2018-10-03T09:00:01.500Z\",\"symbol\":\"XBTUSD\",\"side\":\"Sell\",\"size\":30,"
+      + "\"price\":6499.5,\"tickDirection\":\"MinusTick\",\"trdMatchID\":\"6b9b4e8e\"},"
+      + "{\"timestamp\":\"2018-10-03T09:00:01.500Z\",\"symbol\":\"ETHUSD\",\"side\":\"Buy\",\"size\":1,"
+      + "\"price\":220}]}");
+    // trades never touch the books
+    Assert.assertNull(stream.getOrderBookL2("XBTUSD"));
+
+    BookEvent trade = bus.get(0);
+    Assert.assertEquals(BookEvent.Type.TRADE, trade.getType());
+    Assert.assertEquals("XBTUSD", trade.getSymbol());
+    Assert.assertEquals(6499.5, trade.getPriceAsDouble(), 0);
+    Assert.assertEquals(30, trade.getQty());
+    Assert.assertFalse(trade.isBuy());
+    Assert.assertEquals(1, trade.getUpdateId());
+    Assert.assertEquals(1538557201500L, trade.getExchangeTime());
+    Assert.assertTrue(trade.isEndOfUpdate());
+    // the other symbol is not subscribed
+    Assert.assertNull(bus.get(1).getType());
+  }
+}
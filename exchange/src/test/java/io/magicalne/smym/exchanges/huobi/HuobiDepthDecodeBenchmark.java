@@ -0,0 +1,88 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.magicalne.smym.Utils;
+import io.magicalne.smym.dto.DepthResponse;
+import io.magicalne.smym.dto.HuobiDepthTick;
+import io.magicalne.smym.symbol.SymbolRegistry;
+import okhttp3.WebSocket;
+import okio.ByteString;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+
+/**
+ * Compares the old decode path of depth frames (ungzip, new String, contains, ObjectMapper) with
+ * {@link HuobiDepthStreamListener}. Run the main method, it is not part of the unit tests.
+ */
+public class HuobiDepthDecodeBenchmark {
+
+    private static final int LEVELS = 150;
+    private static final int WARMUP = 20000;
+    private static final int ROUNDS = 100000;
+
+    private static long sink;
+
+    public static void main(String[] args) throws IOException {
+        ByteString frame = HuobiDepthStreamListenerTest.gzip(depthJson());
+        WebSocket webSocket = Mockito.mock(WebSocket.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        SymbolRegistry registry = new SymbolRegistry();
+        registry.put("btcusdt", "btc", "usdt", 2, 4, 1, 1, 0);
+        HuobiDepthStreamListener listener = new HuobiDepthStreamListener(registry, new HuobiDepthSink() {
+            @Override
+            public void onTick(int symbolId, HuobiDepthTick tick) {
+                sink += tick.bidCount();
+            }
+
+            @Override
+            public void onSnapshot(int symbolId, HuobiDepthTick data) {
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+            }
+        });
+
+        for (int i = 0; i < WARMUP; i++) {
+            stringPath(frame, objectMapper);
+            listener.onMessage(webSocket, frame);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            stringPath(frame, objectMapper);
+        }
+        long stringNs = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            listener.onMessage(webSocket, frame);
+        }
+        long streamNs = System.nanoTime() - start;
+        System.out.printf("%d levels, %d frames of %d bytes%n", LEVELS, ROUNDS, frame.size());
+        System.out.printf("string + ObjectMapper: %.2f us/frame%n", stringNs / 1000.0 / ROUNDS);
+        System.out.printf("streaming decoder:     %.2f us/frame%n", streamNs / 1000.0 / ROUNDS);
+        System.out.println(sink);
+    }
+
+    private static void stringPath(ByteString frame, ObjectMapper objectMapper) throws IOException {
+        String res = new String(Utils.ungzip(frame.toByteArray()));
+        if (res.contains("ping") || res.contains("subbed")) {
+            return;
+        }
+        DepthResponse depth = objectMapper.readValue(res, DepthResponse.class);
+        sink += depth.getTick().getBids().size();
+    }
+
+    private static String depthJson() {
+        StringBuilder sb = new StringBuilder("{\"ch\":\"market.btcusdt.depth.step0\",\"ts\":1489474082831,");
+        sb.append("\"tick\":{\"bids\":[");
+        for (int i = 0; i < LEVELS; i++) {
+            sb.append(i == 0 ? "" : ",").append('[').append(7964 - i * 0.01).append(',').append(0.0678 + i).append(']');
+        }
+        sb.append("],\"asks\":[");
+        for (int i = 0; i < LEVELS; i++) {
+            sb.append(i == 0 ? "" : ",").append('[').append(7979 + i * 0.01).append(',').append(0.0736 + i).append(']');
+        }
+        return sb.append("],\"version\":100,\"ts\":1489474082800}}").toString();
+    }
+}
@@ -0,0 +1,73 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import io.magicalne.smym.dto.HuobiDepthTick;
+import io.magicalne.smym.symbol.SymbolRegistry;
+import okhttp3.WebSocket;
+import okio.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class HuobiDepthStreamListenerTest {
+
+    private final SymbolRegistry registry = new SymbolRegistry();
+    private final List<String> topics = new ArrayList<>();
+    private final List<Double> bestAsks = new ArrayList<>();
+    private final HuobiDepthStreamListener listener = new HuobiDepthStreamListener(registry, new HuobiDepthSink() {
+        @Override
+        public void onTick(int symbolId, HuobiDepthTick tick) {
+            topics.add(registry.name(symbolId));
+            bestAsks.add(tick.bestAskPrice());
+        }
+
+        @Override
+        public void onSnapshot(int symbolId, HuobiDepthTick data) {
+            topics.add("rep:" + registry.name(symbolId));
+            bestAsks.add(data.bestAskPrice());
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+        }
+    });
+
+    @Test
+    public void decodeGzippedFrames() throws IOException {
+        registry.put("ethbtc", "eth", "btc", 6, 4, 1, 1, 0);
+        registry.put("btcusdt", "btc", "usdt", 2, 4, 1, 1, 0);
+        WebSocket webSocket = Mockito.mock(WebSocket.class);
+        listener.onMessage(webSocket, gzip("{\"ping\": 1492420473027}"));
+        Mockito.verify(webSocket).send("{\"pong\":1492420473027}");
+
+        listener.onMessage(webSocket, gzip("{\"id\":\"btcusdt\",\"status\":\"ok\"," +
+                "\"subbed\":\"market.btcusdt.depth.step0\",\"ts\":1489474081631}"));
+        listener.onMessage(webSocket, gzip("{\"ts\":1489474082831,\"tick\":{\"bids\":[[7964,0.0678]]," +
+                "\"asks\":[[7979,0.0736],[8020,13.6584]],\"ts\":1489474082800},\"ch\":\"market.btcusdt.depth.step0\"}"));
+        listener.onMessage(webSocket, gzip("{\"id\":\"btcusdt\",\"rep\":\"market.btcusdt.mbp.150\",\"status\":\"ok\"," +
+                "\"data\":{\"seqNum\":11,\"bids\":[],\"asks\":[[100.5,1]]}}"));
+        // pushes of symbols without an id are dropped
+        listener.onMessage(webSocket, gzip("{\"ch\":\"market.ltcusdt.depth.step0\"," +
+                "\"tick\":{\"bids\":[],\"asks\":[[50,1]]}}"));
+
+        Assert.assertEquals(2, topics.size());
+        Assert.assertEquals("btcusdt", topics.get(0));
+        Assert.assertEquals(7979, bestAsks.get(0), 0);
+        Assert.assertEquals("rep:btcusdt", topics.get(1));
+        Assert.assertEquals(100.5, bestAsks.get(1), 0);
+    }
+
+    static ByteString gzip(String json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return ByteString.of(out.toByteArray());
+    }
+}
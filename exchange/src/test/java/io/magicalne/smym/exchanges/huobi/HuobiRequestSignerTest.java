@@ -0,0 +1,64 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+public class HuobiRequestSignerTest {
+
+    private static final String ACCESS_KEY = "e2xxxxxx-99xxxxxx-84xxxxxx-7xxxx";
+    private static final String SECRET_KEY = "b0xxxxxx-c6xxxxxx-94xxxxxx-dxxxx";
+
+    @Test
+    public void matchReferenceSignature() throws Exception {
+        HuobiRequestSigner signer = new HuobiRequestSigner(ACCESS_KEY, SECRET_KEY);
+        Map<String, String> params = new HashMap<>();
+        params.put("symbol", "btcusdt");
+        params.put("states", "filled,partial-canceled");
+        params.put("start-date", "2018-01-01");
+        params.put("note", "a b*~é");
+        long now = 1494684476L;
+
+        String query = signer.sign("GET", "api.huobi.pro", "/v1/order/orders", params, now);
+        Assert.assertEquals(reference("GET", "api.huobi.pro", "/v1/order/orders", params, now), query);
+        Assert.assertEquals(4, params.size());
+
+        String post = signer.sign("POST", "api.huobi.pro", "/v1/order/orders/place", null, now + 1);
+        Assert.assertEquals(reference("POST", "api.huobi.pro", "/v1/order/orders/place",
+                new HashMap<>(), now + 1), post);
+        Assert.assertTrue(post.contains("Timestamp=2017-05-13T14%3A07%3A57"));
+
+        Assert.assertEquals(query, signer.sign("get", "API.Huobi.pro", "/v1/order/orders", params, now));
+    }
+
+    private static String reference(String method, String host, String uri, Map<String, String> params,
+                                    long epochSecond) throws Exception {
+        SortedMap<String, String> map = new TreeMap<>(params);
+        map.put("AccessKeyId", ACCESS_KEY);
+        map.put("SignatureVersion", "2");
+        map.put("SignatureMethod", "HmacSHA256");
+        map.put("Timestamp", Instant.ofEpochSecond(epochSecond).atZone(ZoneId.of("Z"))
+                .format(DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss")));
+        StringJoiner query = new StringJoiner("&");
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            query.add(e.getKey() + "=" + encode(e.getValue()));
+        }
+        String payload = method + "\n" + host + "\n" + uri + "\n" + query;
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET_KEY.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String signature = Base64.getEncoder().encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        return query + "&Signature=" + encode(signature);
+    }
+
+    private static String encode(String s) throws Exception {
+        return URLEncoder.encode(s, "UTF-8").replaceAll("\\+", "%20");
+    }
+}
@@ -0,0 +1,57 @@
+package io.magicalne.smym.exchanges.huobi;
+
+import io.magicalne.smym.marketdata.BookEvent;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.symbol.SymbolRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+public class HuobiTradeStreamListenerTest {
+
+    private final SymbolRegistry registry = new SymbolRegistry();
+    private final MarketDataBus bus = new MarketDataBus(16);
+    private final HuobiTradeStreamListener listener = new HuobiTradeStreamListener(registry, bus, 8);
+
+    @Test
+    public void publishTradeDetails() throws IOException {
+        registry.put("btcusdt", "btc", "usdt", 2, 4, 1, 1, 0);
+        // the topic follows the tick
+        decode("{\"tick\":{\"id\":14650745135,\"ts\":1533265950234,\"data\":["
+                + "{\"id\":146507451359183894799,\"tradeId\":102043495674,\"amount\":0.0099,\"ts\":1533265950234,"
+                + "\"price\":401.74,\"direction\":\"buy\"},"
+                + "{\"id\":146507451359183894800,\"amount\":1.5,\"ts\":1533265950235,\"price\":401.7,"
+                + "\"direction\":\"sell\"}]},\"ch\":\"market.btcusdt.trade.detail\",\"ts\":1533265950261}");
+        // pushes of symbols without an id are dropped
+        decode("{\"ch\":\"market.ltcusdt.trade.detail\",\"tick\":{\"data\":[{\"tradeId\":1,\"amount\":1,"
+                + "\"price\":50,\"direction\":\"buy\"}]}}");
+
+        BookEvent buy = bus.get(0);
+        Assert.assertEquals(Venue.HUOBI, buy.getVenue());
+        Assert.assertEquals(BookEvent.Type.TRADE, buy.getType());
+        Assert.assertEquals("btcusdt", buy.getSymbol());
+        Assert.assertEquals(40174, buy.getPrice());
+        Assert.assertEquals(990000, buy.getQty());
+        Assert.assertTrue(buy.isBuy());
+        Assert.assertEquals(102043495674L, buy.getUpdateId());
+        Assert.assertEquals(1533265950234L, buy.getExchangeTime());
+        Assert.assertTrue(buy.isEndOfUpdate());
+
+        BookEvent sell = bus.get(1);
+        Assert.assertEquals(401.7, sell.getPriceAsDouble(), 0);
+        Assert.assertEquals(1.5, sell.getQtyAsDouble(), 0);
+        Assert.assertFalse(sell.isBuy());
+        // without a tradeId the low bits of the id
+        Assert.assertEquals(new BigInteger("146507451359183894800").longValue(), sell.getUpdateId());
+        Assert.assertNull(bus.get(2).getType());
+    }
+
+    private void decode(String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        listener.decode(null, bytes, 0, bytes.length, 1);
+    }
+}
@@ -0,0 +1,64 @@
+package io.magicalne.smym.exchanges.replay;
+
+import io.magicalne.smym.exchanges.bitmex.BitmexDeltaClient;
+import io.magicalne.smym.exchanges.bitmex.BitmexOrderBookStream;
+import io.magicalne.smym.marketdata.Venue;
+import io.magicalne.smym.replay.JsonBookSource;
+import io.magicalne.smym.replay.ReplayEngine;
+import org.junit.Assert;
+import org.junit.Test;
+import org.knowm.xchange.bitmex.dto.marketdata.BitmexPrivateOrder;
+import org.knowm.xchange.bitmex.dto.trade.BitmexSide;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SimulatedBitmexExchangeTest {
+
+  private static final String SYMBOL = "XBTUSD";
+
+  @Test
+  public void tradeOnReplayedBooks() throws Exception {
+    String json = "{\"1\":{\"ask_p_0\":6506.5,\"ask_vol_0\":10.0,\"bid_p_0\":6506.0,\"bid_vol_0\":20.0},"
+      + "\"2\":{\"ask_p_0\":6505.0,\"ask_vol_0\":30.0,\"bid_p_0\":6504.5,\"bid_vol_0\":40.0}}";
+    ReplayEngine engine = new ReplayEngine(new JsonBookSource(
+      new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), Venue.BITMEX, SYMBOL, 8, 0, 1_000_000_000L));
+    BitmexOrderBookStream stream = BitmexOrderBookStream.replay(engine, Collections.singleton(SYMBOL), 25);
+    SimulatedBitmexExchange exchange = new SimulatedBitmexExchange(engine);
+    SimulatedBitmexDeltaClient deltaClient = new SimulatedBitmexDeltaClient(engine);
+    List<BitmexDeltaClient.OrderBookL2> books = new ArrayList<>();
+    List<BitmexPrivateOrder> pair = new ArrayList<>();
+    stream.setListener(symbolId -> {
+      books.add(stream.getOrderBookL2(symbolId));
+      if (pair.isEmpty()) {
+        pair.addAll(exchange.placePairOrders(SYMBOL, 6505.5, 6507, 10));
+      }
+    });
+
+    Assert.assertEquals(2, engine.run());
+    Assert.assertEquals(2, books.size());
+    Assert.assertEquals(6506.0, books.get(0).getBestBid().getPrice(), 0);
+    Assert.assertEquals(6505.0, books.get(1).getBestAsk().getPrice(), 0);
+
+    // the ask of the second book reached the bid
+    BitmexPrivateOrder bid = deltaClient.getOrderById(SYMBOL, pair.get(0).getId());
+    Assert.assertEquals(BitmexPrivateOrder.OrderStatus.Filled, bid.getOrderStatus());
+    Assert.assertEquals("10", bid.getCumQty().toPlainString());
+    BitmexPrivateOrder ask = deltaClient.getOrderById(SYMBOL, pair.get(1).getId());
+    Assert.assertEquals(BitmexPrivateOrder.OrderStatus.New, ask.getOrderStatus());
+    Assert.assertEquals(Collections.singletonList(ask.getId()),
+      Collections.singletonList(deltaClient.getNewOrders(SYMBOL).get(0).getId()));
+
+    // a post only order that would take is cancelled
+    BitmexPrivateOrder taker = exchange.placeLimitOrder(SYMBOL, 6505, 1, BitmexSide.BUY);
+    Assert.assertEquals(BitmexPrivateOrder.OrderStatus.Canceled, taker.getOrderStatus());
+
+    BitmexPrivateOrder amended = exchange.amendOrderPrice(ask.getId(), 10, 6506);
+    Assert.assertEquals(6506, amended.getPrice().doubleValue(), 0);
+    Assert.assertTrue(exchange.cancel(ask.getId()));
+    Assert.assertTrue(deltaClient.getNewOrders(SYMBOL).isEmpty());
+  }
+}
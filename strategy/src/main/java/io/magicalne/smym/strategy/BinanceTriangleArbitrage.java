@@ -6,30 +6,35 @@ import com.binance.api.client.domain.account.Account;
 import com.binance.api.client.domain.account.AssetBalance;
 import com.binance.api.client.domain.account.NewOrderResponse;
 import com.binance.api.client.domain.general.ExchangeInfo;
-import com.binance.api.client.domain.general.FilterType;
-import com.binance.api.client.domain.general.SymbolFilter;
 import com.binance.api.client.domain.general.SymbolInfo;
-import com.binance.api.client.domain.market.OrderBook;
 import com.binance.api.client.domain.market.OrderBookEntry;
 import com.binance.api.client.exception.BinanceApiException;
+import io.magicalne.smym.decimal.Price;
+import io.magicalne.smym.decimal.Qty;
 import io.magicalne.smym.dto.TradeInfo;
 import io.magicalne.smym.dto.Triangular;
+import io.magicalne.smym.event.BookEventDispatcher;
 import io.magicalne.smym.exception.BuyFailureException;
 import io.magicalne.smym.exception.SellFailureException;
 import io.magicalne.smym.exchanges.BinanceExchange;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.symbol.SymbolRegistry;
 import lombok.extern.slf4j.Slf4j;
 
-import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class BinanceTriangleArbitrage {
 
-    private static final double TRIPLE_COMMISSION = 0.99925*0.99925*0.99925;
-    private static final BigDecimal COMMISSION = new BigDecimal("0.99925").setScale(3, RoundingMode.HALF_EVEN);
+    private static final double FEE = 0.99925;
+    private static final double TRIPLE_COMMISSION = FEE*FEE*FEE;
+    private static final double COMMISSION = 0.999;
     private static final String USDT = "USDT";
     private static final String BTC = "BTC";
     private static final String ETH = "ETH";
@@ -37,6 +42,8 @@ public class BinanceTriangleArbitrage {
     private static final double UPPER_BOUND = 1.00001;
     private static final double BUY_SLIPPAGE = 1.000;
     private static final double SELL_SLIPPAGE = 1;
+    private static final int MAX_CYCLE_LENGTH = 4;
+    private static final long SYMBOL_REFRESH_MINUTES = 30;
 
     private String usdtCapital = "15";
     private String btcCapital = "0.002";
@@ -48,6 +55,15 @@ public class BinanceTriangleArbitrage {
     private List<Triangular> ethusdtPairList;
     private List<Triangular> bnbusdtPairList;
     private ExchangeInfo exchangeInfo;
+    private SymbolRegistry symbolRegistry;
+    private Set<String> symbols;
+    private TriangleScanner scanner;
+    private CurrencyGraph graph;
+    private final OrderBookSnapshot book = new OrderBookSnapshot();
+    private final OrderBookSnapshot sourceBook = new OrderBookSnapshot();
+    private final OrderBookSnapshot middleBook = new OrderBookSnapshot();
+    private final OrderBookSnapshot lastBook = new OrderBookSnapshot();
+    private final DepthEvaluator evaluator = new DepthEvaluator(3, FEE);
 
     public BinanceTriangleArbitrage(String accessId, String secretKey) {
         this.exchange = new BinanceExchange(accessId, secretKey);
@@ -55,6 +71,10 @@ public class BinanceTriangleArbitrage {
 
     public void setup() {
         this.exchangeInfo = this.exchange.getExchangeInfo();
+        this.symbolRegistry = this.exchange.getSymbolRegistry();
+        this.scanner = new TriangleScanner(TRIPLE_COMMISSION, UPPER_BOUND, this.symbolRegistry);
+        this.graph = new CurrencyGraph(FEE, MAX_CYCLE_LENGTH, UPPER_BOUND, this.symbolRegistry);
+        this.exchange.refreshSymbols(SYMBOL_REFRESH_MINUTES, TimeUnit.MINUTES);
         List<SymbolInfo> symbols = exchangeInfo.getSymbols();
         Map<String, List<SymbolInfo>> quoteGroup =
                 symbols.stream().collect(Collectors.groupingBy(SymbolInfo::getQuoteAsset));
@@ -97,22 +117,28 @@ public class BinanceTriangleArbitrage {
         this.ethusdtPairList = ethusdtPairList;
         this.bnbusdtPairList = bnbusdtPairList;
 
-        Set<String> symbolSet = new HashSet<>();
-        btcusdtPairList.forEach(t -> {
-            symbolSet.add(t.getSource());
-            symbolSet.add(t.getMiddle());
-            symbolSet.add(t.getLast());
-        });
-        ethusdtPairList.forEach(t -> {
-            symbolSet.add(t.getSource());
-            symbolSet.add(t.getMiddle());
-            symbolSet.add(t.getLast());
-        });
-        bnbusdtPairList.forEach(t -> {
-            symbolSet.add(t.getSource());
-            symbolSet.add(t.getMiddle());
-            symbolSet.add(t.getLast());
-        });
+        btcusdtPairList.forEach(t -> this.scanner.add(t, BTC));
+        ethusdtPairList.forEach(t -> this.scanner.add(t, ETH));
+        bnbusdtPairList.forEach(t -> this.scanner.add(t, BNB));
+        Set<String> assets = new HashSet<>();
+        for (SymbolInfo info : symbols) {
+            if (this.scanner.symbols().contains(info.getSymbol())) {
+                assets.add(info.getBaseAsset());
+                assets.add(info.getQuoteAsset());
+            }
+        }
+        for (SymbolInfo info : symbols) {
+            int id = this.symbolRegistry.id(info.getSymbol());
+            // symbols without trading rules are not registered
+            if (id != SymbolRegistry.UNKNOWN
+                    && assets.contains(info.getBaseAsset()) && assets.contains(info.getQuoteAsset())) {
+                this.graph.addSymbol(id);
+            }
+        }
+        Set<String> symbolSet = new HashSet<>(this.scanner.symbols());
+        symbolSet.addAll(this.graph.symbols());
+        this.symbols = symbolSet;
+        this.exchange.setMarketDataBus(Strategy.recordMarketData());
         this.exchange.createLocalOrderBook(symbolSet, 10);
     }
 
@@ -143,71 +169,76 @@ public class BinanceTriangleArbitrage {
         return assetBalances;
     }
 
+    /**
+     * Block the calling thread and look for arbitrage whenever one of the local order books changed.
+     */
     public void run() {
 
         initCapital();
-        for (; ; ) {
-            findArbitrage(this.btcusdtPairList, BTC);
-            findArbitrage(this.ethusdtPairList, ETH);
-            findArbitrage(this.bnbusdtPairList, BNB);
+        BookEventDispatcher dispatcher =
+                new BookEventDispatcher(this.symbols, this.symbolRegistry::require, this::onBookUpdate);
+        this.exchange.setBookUpdateListener(dispatcher);
+        dispatcher.run();
+    }
+
+    private void onBookUpdate(int id) {
+        OrderBookSnapshot book = this.exchange.readOrderBook(id, this.book);
+        this.scanner.onBookUpdate(id, book, this::onOpportunity);
+        if (book == null) {
+            this.graph.update(id, 0, 0);
+            return;
+        }
+        this.graph.update(id, book.bidCount() > 0 ? book.bidPrice(0) : 0,
+                book.askCount() > 0 ? book.askPrice(0) : 0);
+        for (CurrencyGraph.Cycle cycle : this.graph.findCycles(id)) {
+            log.info("Use 1st price in order book. {} legs cycle: {}", cycle.length(), cycle);
         }
     }
 
-    private void findArbitrage(List<Triangular> pairList, String assetType) {
-        String assetQty;
+    private void onOpportunity(TriangleScanner.Triangle triangle, boolean clockwise,
+                               double source, double middle, double last, double profit) {
+        Triangular triangular = triangle.triangular;
+        OrderBookSnapshot sourceOB = this.exchange.readOrderBook(triangle.source, this.sourceBook);
+        OrderBookSnapshot middleOB = this.exchange.readOrderBook(triangle.middle, this.middleBook);
+        OrderBookSnapshot lastOB = this.exchange.readOrderBook(triangle.last, this.lastBook);
+        if (sourceOB == null || middleOB == null || lastOB == null) {
+            return;
+        }
+        // usdt which can be put in while every level still clears the bound
+        double usdt = clockwise
+                ? this.evaluator.evaluateClockwise(sourceOB, middleOB, lastOB, UPPER_BOUND, Double.MAX_VALUE)
+                : this.evaluator.evaluateReverse(sourceOB, middleOB, lastOB, UPPER_BOUND, Double.MAX_VALUE);
+        if (usdt <= 0) {
+            return;
+        }
+        double vwapProfit = this.evaluator.getRate();
+        if (clockwise) {
+            log.info("Clockwise, {}: {} -> {}: {} -> {}: {}, profit: {}, executable usdt: {}, vwap profit: {}",
+                    triangular.getSource(), source,
+                    triangular.getMiddle(), middle,
+                    triangular.getLast(), last,
+                    profit, usdt, vwapProfit);
+//            takeIt(triangular, source, middle, last, this.usdtCapital, getAssetQty(triangle.assetType),
+//                    triangle.assetType, true);
+        } else {
+            log.info("Reverse, {}: {} -> {}: {} -> {}: {}, profit: {}, executable usdt: {}, vwap profit: {}",
+                    triangular.getLast(), last, triangular.getMiddle(), middle,
+                    triangular.getSource(), source, profit, usdt, vwapProfit);
+//            takeIt(triangular, source, middle, last, this.usdtCapital, getAssetQty(triangle.assetType),
+//                    triangle.assetType, false);
+        }
+    }
+
+    private String getAssetQty(String assetType) {
         if (BTC.equals(assetType)) {
-            assetQty = this.btcCapital;
+            return this.btcCapital;
         } else if (ETH.equals(assetType)) {
-            assetQty = this.ethCapital;
+            return this.ethCapital;
+        } else if (BNB.equals(assetType)) {
+            return this.bnbCapital;
         } else {
             throw new IllegalArgumentException("Wrong argument: baseType: " + assetType);
         }
-        for (Triangular triangular : pairList) {
-            //use order book price level
-            final int priceLevel = 0;
-            OrderBook sourceOB = this.exchange.getOrderBook(triangular.getSource());
-            OrderBook middleOB = this.exchange.getOrderBook(triangular.getMiddle());
-            OrderBook lastOB = this.exchange.getOrderBook(triangular.getLast());
-
-            List<OrderBookEntry> sourceOBAsks = sourceOB.getAsks();
-            List<OrderBookEntry> middleOBAsks = middleOB.getAsks();
-            List<OrderBookEntry> lastOBBids = lastOB.getBids();
-            if (sourceOBAsks != null && sourceOBAsks.size() > priceLevel+1 &&
-                    middleOBAsks != null && middleOBAsks.size() > priceLevel+1 &&
-                    lastOBBids != null && lastOBBids.size() > priceLevel+1) {
-                double source = Double.parseDouble(sourceOBAsks.get(priceLevel).getPrice());
-                double middle = Double.parseDouble(middleOBAsks.get(priceLevel).getPrice());
-                double last = Double.parseDouble(lastOBBids.get(priceLevel+1).getPrice());
-                double profit = getClockwise(source, middle, last);
-                if (profit > UPPER_BOUND) {
-                    log.info("Use {}st price in order book. Clockwise, {}: {} -> {}: {} -> {}: {}, profit: {}",
-                            priceLevel+1,
-                            triangular.getSource(), source,
-                            triangular.getMiddle(), middle,
-                            triangular.getLast(), last,
-                            profit);
-//                    takeIt(triangular, source, middle, last, this.usdtCapital, assetQty, assetType,true);
-                }
-            }
-
-            List<OrderBookEntry> sourceOBBids = sourceOB.getBids();
-            List<OrderBookEntry> middleOBBids = middleOB.getBids();
-            List<OrderBookEntry> lastOBAsks = lastOB.getAsks();
-            if (sourceOBBids != null && sourceOBBids.size() > priceLevel+1 &&
-                    middleOBBids != null && middleOBBids.size() > priceLevel+1 &&
-                    lastOBAsks != null && lastOBAsks.size() > priceLevel+1) {
-                double source = Double.parseDouble(sourceOBBids.get(priceLevel).getPrice());
-                double middle = Double.parseDouble(middleOBBids.get(priceLevel+1).getPrice());
-                double last = Double.parseDouble(lastOBAsks.get(priceLevel).getPrice());
-                double profit = getReverse(source, middle, last);
-                if (profit > UPPER_BOUND) {
-                    log.info("Use {}st price in order book. Reverse, {}: {} -> {}: {} -> {}: {}, profit: {}",
-                            priceLevel+1, triangular.getLast(), last, triangular.getMiddle(), middle,
-                            triangular.getSource(), source, profit);
-//                    takeIt(triangular, source, middle, last, this.usdtCapital, assetQty, assetType,false);
-                }
-            }
-        }
     }
 
     public void takeIt(Triangular triangular, double sourcePrice, double middlePrice, double lastPrice,
@@ -234,33 +265,30 @@ public class BinanceTriangleArbitrage {
                     TradeInfo middleTradeInfo = quickBuy(triangular.getMiddle(), middlePrice, base, false);
                     return quickSell(triangular.getLast(), lastPrice, middleTradeInfo.getQty(), true);
                 });
-        for (;;) {
-            if (buyBase.isDone() && getSpreed.isDone()) {
-                if (buyBase.isCompletedExceptionally() && getSpreed.isCompletedExceptionally()) {
-                    log.info("Both failed, so give up.");
-                    return false;
-                } else if (buyBase.isCompletedExceptionally()) {
-                    log.info("Buy btcusdt failed, buy it now.");
-                    quickBuy(triangular.getSource(), sourcePrice, usdt, true);
-                } else if (getSpreed.isCompletedExceptionally()) {
-                    Triangular pair = findBestPairToUsdt(baseType);
-                    log.info("Buy alt coin failed, try again with new pair: {}.", pair);
-                    String source = pair.getSource();
-                    if (source != null) {
-                        String p = this.exchange.getBestBid(source).getPrice();
-                        quickSell(source, Double.parseDouble(p), base, true);
-                    } else {
-                        String pm = pair.getMiddle();
-                        String pmPrice = this.exchange.getBestAsk(pm).getPrice();
-                        String pl = pair.getLast();
-                        String plPrice = this.exchange.getBestBid(pl).getPrice();
-                        TradeInfo middleTradeInfo = quickBuy(pm, Double.parseDouble(pmPrice), base, true);
-                        quickSell(pl, Double.parseDouble(plPrice), middleTradeInfo.getQty(), true);
-                    }
-                }
-                return true;
+        awaitQuietly(buyBase, getSpreed);
+        if (buyBase.isCompletedExceptionally() && getSpreed.isCompletedExceptionally()) {
+            log.info("Both failed, so give up.");
+            return false;
+        } else if (buyBase.isCompletedExceptionally()) {
+            log.info("Buy btcusdt failed, buy it now.");
+            quickBuy(triangular.getSource(), sourcePrice, usdt, true);
+        } else if (getSpreed.isCompletedExceptionally()) {
+            Triangular pair = findBestPairToUsdt(baseType);
+            log.info("Buy alt coin failed, try again with new pair: {}.", pair);
+            String source = pair.getSource();
+            if (source != null) {
+                String p = this.exchange.getBestBid(source).getPrice();
+                quickSell(source, Double.parseDouble(p), base, true);
+            } else {
+                String pm = pair.getMiddle();
+                String pmPrice = this.exchange.getBestAsk(pm).getPrice();
+                String pl = pair.getLast();
+                String plPrice = this.exchange.getBestBid(pl).getPrice();
+                TradeInfo middleTradeInfo = quickBuy(pm, Double.parseDouble(pmPrice), base, true);
+                quickSell(pl, Double.parseDouble(plPrice), middleTradeInfo.getQty(), true);
             }
         }
+        return true;
     }
 
     private boolean reverseArbitrage(Triangular triangular, double sourcePrice, double middlePrice, double lastPrice,
@@ -272,61 +300,50 @@ public class BinanceTriangleArbitrage {
                 });
 
         CompletableFuture<TradeInfo> getSpreed = CompletableFuture
-                .supplyAsync(() -> quickSell(triangular.getSource(), sourcePrice, new BigDecimal(base), false));
-        for (; ; ) {
-            if (buyBase.isDone() && getSpreed.isDone()) {
-                if (buyBase.isCompletedExceptionally() && getSpreed.isCompletedExceptionally()) {
-                    log.info("Both failed, so give up.");
-                    return false;
-                } else if (buyBase.isCompletedExceptionally()) {
-                    log.info("Buy base failed, buy it now.");
-
-                    Triangular pair = findBestPairToBase(baseType);
-                    String source = pair.getSource();
-                    if (source != null) {
-                        String p = this.exchange.getBestAsk(source).getPrice();
-                        quickBuy(source, Double.parseDouble(p), usdt, true);
-                    } else {
-                        String pl = pair.getLast();
-                        Double plPrice = Double.valueOf(this.exchange.getBestAsk(pl).getPrice());
-                        String pm = pair.getMiddle();
-                        Double pmPrice = Double.valueOf(this.exchange.getBestBid(pm).getPrice());
-                        TradeInfo tradeInfo = quickBuy(pl, plPrice, usdt, true);
-                        quickSell(pm, pmPrice, tradeInfo.getQty(), true);
-                    }
-                } else if (getSpreed.isCompletedExceptionally()) {
-                    quickSell(triangular.getSource(), sourcePrice, new BigDecimal(base), true);
-                }
-                return true;
+                .supplyAsync(() -> quickSell(triangular.getSource(), sourcePrice, base, false));
+        awaitQuietly(buyBase, getSpreed);
+        if (buyBase.isCompletedExceptionally() && getSpreed.isCompletedExceptionally()) {
+            log.info("Both failed, so give up.");
+            return false;
+        } else if (buyBase.isCompletedExceptionally()) {
+            log.info("Buy base failed, buy it now.");
+
+            Triangular pair = findBestPairToBase(baseType);
+            String source = pair.getSource();
+            if (source != null) {
+                String p = this.exchange.getBestAsk(source).getPrice();
+                quickBuy(source, Double.parseDouble(p), usdt, true);
+            } else {
+                String pl = pair.getLast();
+                Double plPrice = Double.valueOf(this.exchange.getBestAsk(pl).getPrice());
+                String pm = pair.getMiddle();
+                Double pmPrice = Double.valueOf(this.exchange.getBestBid(pm).getPrice());
+                TradeInfo tradeInfo = quickBuy(pl, plPrice, usdt, true);
+                quickSell(pm, pmPrice, tradeInfo.getQty(), true);
             }
+        } else if (getSpreed.isCompletedExceptionally()) {
+            quickSell(triangular.getSource(), sourcePrice, base, true);
         }
+        return true;
     }
 
     private int getQtyPrecision(String symbol) {
-        SymbolInfo symbolInfo = this.exchangeInfo.getSymbolInfo(symbol);
-        SymbolFilter lotSize = symbolInfo.getSymbolFilter(FilterType.LOT_SIZE);
-        String minQty = lotSize.getMinQty();
-        int index = minQty.indexOf('1');
-        return index == 0 ? index : index - 1;
+        return this.symbolRegistry.qtyPrecision(this.symbolRegistry.require(symbol));
     }
 
     private int getPricePrecision(String symbol) {
-        SymbolInfo symbolInfo = this.exchangeInfo.getSymbolInfo(symbol);
-        SymbolFilter priceFilter = symbolInfo.getSymbolFilter(FilterType.PRICE_FILTER);
-        String tickSize = priceFilter.getTickSize();
-        int index = tickSize.indexOf("1");
-        return index == 0 ? index : index - 1;
+        return this.symbolRegistry.pricePrecision(this.symbolRegistry.require(symbol));
     }
 
     private TradeInfo quickBuy(String symbol, double price, String quoteQty, boolean force) {
         int basePrecision = getQtyPrecision(symbol);
         int quotePrecision = getPricePrecision(symbol);
-        BigDecimal p = new BigDecimal(price).setScale(quotePrecision, RoundingMode.HALF_EVEN);
-        BigDecimal q = new BigDecimal(quoteQty).setScale(quotePrecision, RoundingMode.DOWN);
-        BigDecimal qty = q.divide(p, RoundingMode.DOWN).setScale(basePrecision, RoundingMode.DOWN);
+        Price p = Price.fromDouble(price, quotePrecision, RoundingMode.HALF_EVEN);
+        Qty q = Qty.parse(quoteQty, quotePrecision, RoundingMode.DOWN);
+        Qty qty = q.divide(p, basePrecision, RoundingMode.DOWN);
 
-        String qtyStr = qty.toPlainString();
-        String priceStr = p.toPlainString();
+        String qtyStr = qty.toString();
+        String priceStr = p.toString();
         NewOrderResponse res = null;
         try {
             res = this.exchange.limitBuy(symbol, TimeInForce.IOC, qtyStr, priceStr, 5000);
@@ -347,9 +364,8 @@ public class BinanceTriangleArbitrage {
     private TradeInfo quickSell(String symbol, double price, String baseQty, boolean force) {
         int basePrecision = getQtyPrecision(symbol);
         int quotePrecision = getPricePrecision(symbol);
-        BigDecimal p = new BigDecimal(price).setScale(quotePrecision, RoundingMode.HALF_EVEN);
-        String baseQtyStr = new BigDecimal(baseQty).setScale(basePrecision, RoundingMode.DOWN).toPlainString();
-        String priceStr = p.toPlainString();
+        String baseQtyStr = Qty.parse(baseQty, basePrecision, RoundingMode.DOWN).toString();
+        String priceStr = Price.fromDouble(price, quotePrecision, RoundingMode.HALF_EVEN).toString();
         NewOrderResponse res = null;
         try {
             res = this.exchange.limitSell(symbol, TimeInForce.IOC, baseQtyStr, priceStr, 5000);
@@ -367,12 +383,11 @@ public class BinanceTriangleArbitrage {
         throw new SellFailureException(symbol, res == null ? null : res.getOrderId());
     }
 
-    private TradeInfo quickSell(String symbol, double price, BigDecimal baseQty, boolean force) {
+    private TradeInfo quickSell(String symbol, double price, Qty baseQty, boolean force) {
         int basePrecision = getQtyPrecision(symbol);
         int quotePrecision = getPricePrecision(symbol);
-        BigDecimal p = new BigDecimal(price).setScale(quotePrecision, RoundingMode.HALF_EVEN);
-        String baseQtyStr = baseQty.setScale(basePrecision, RoundingMode.DOWN).toPlainString();
-        String priceStr = p.toPlainString();
+        String baseQtyStr = baseQty.setScale(basePrecision, RoundingMode.DOWN).toString();
+        String priceStr = Price.fromDouble(price, quotePrecision, RoundingMode.HALF_EVEN).toString();
         NewOrderResponse res = null;
         try {
             res = this.exchange.limitSell(symbol, TimeInForce.IOC, baseQtyStr, priceStr, 5000);
@@ -391,18 +406,24 @@ public class BinanceTriangleArbitrage {
     }
 
     private TradeInfo getTradeInfoFromOrder(NewOrderResponse res, int basePrecision, int quotePrecision) {
-        BigDecimal quotePrice = new BigDecimal(res.getPrice())
-                .setScale(quotePrecision, RoundingMode.UP);
+        Price quotePrice = Price.parse(res.getPrice(), quotePrecision, RoundingMode.UP);
         TradeInfo tradeInfo = new TradeInfo();
         tradeInfo.setPrice(quotePrice);
-        BigDecimal totalQty;
-        BigDecimal baseQty = new BigDecimal(res.getExecutedQty()).setScale(basePrecision, RoundingMode.DOWN);
-        totalQty = baseQty.multiply(COMMISSION);
+        Qty baseQty = Qty.parse(res.getExecutedQty(), basePrecision, RoundingMode.DOWN);
+        Qty totalQty = baseQty.multiply(COMMISSION, RoundingMode.DOWN);
         tradeInfo.setQty(totalQty);
 
         return tradeInfo;
     }
 
+    private static void awaitQuietly(CompletableFuture<?>... futures) {
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException | CancellationException ignore) {
+            // the caller checks which one failed
+        }
+    }
+
     private Triangular findBestPairToUsdt(String base) {
         List<Triangular> tList;
         Triangular bestPair = null;
@@ -433,7 +454,7 @@ public class BinanceTriangleArbitrage {
         OrderBookEntry btcusdt = this.exchange.getBestBid("BTCUSDT");
         if (btcusdt != null) {
             Double price = Double.valueOf(btcusdt.getPrice());
-            if (price < max*COMMISSION.doubleValue()) {
+            if (price < max*COMMISSION) {
                 return new Triangular("BTCUSDT", null, null);
             }
         }
@@ -472,21 +493,13 @@ public class BinanceTriangleArbitrage {
         OrderBookEntry baseAsk = this.exchange.getBestAsk(symbol);
         if (baseAsk != null) {
             Double price = Double.valueOf(baseAsk.getPrice());
-            if (price > min*COMMISSION.doubleValue()) {
+            if (price > min*COMMISSION) {
                 return new Triangular(symbol, null, null);
             }
         }
         return new Triangular(null, bestPair.getMiddle(), bestPair.getLast());
     }
 
-    private double getReverse(double source, double middle, double last) {
-        return middle * source / last * TRIPLE_COMMISSION;
-    }
-
-    private double getClockwise(double source, double middle, double last) {
-        return last / (source * middle) * TRIPLE_COMMISSION;
-    }
-
     public static void main(String[] args) {
         String accessKey = System.getenv("BINANCE_ACCESS_KEY");
         String secretKey = System.getenv("BINANCE_ACCESS_SECRET_KEY");
@@ -7,13 +7,13 @@ import com.binance.api.client.domain.account.Order;
 import com.binance.api.client.domain.market.OrderBookEntry;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.magicalne.smym.decimal.Decimals;
 import io.magicalne.smym.dto.Triangle;
 import io.magicalne.smym.dto.TriangleArbitrageConfig;
 import io.magicalne.smym.exchanges.BinanceExchange;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -58,7 +58,7 @@ public class BinanceTriangleArbitrageV2 extends Strategy<TriangleArbitrageConfig
     private final BinanceExchange exchange;
     private static final double COMMSSION = Math.pow(0.999, 3);
     private final double priceRate;
-    private final String startQty;
+    private final long startQty;
     private final String startSymbol;
     private final String middleSymbol;
     private final String lastSymbol;
@@ -76,19 +76,20 @@ public class BinanceTriangleArbitrageV2 extends Strategy<TriangleArbitrageConfig
 
     private Executor(Triangle triangle, BinanceExchange exchange) {
       this.priceRate = triangle.getPriceRate();
-      this.startQty = triangle.getStartQty();
       this.startSymbol = triangle.getStartSymbol();
       this.middleSymbol = triangle.getMiddleSymbol();
       this.lastSymbol = triangle.getLastSymbol();
       this.exchange = exchange;
       this.startSymbolPricePrecision = this.exchange.getPricePrecision(startSymbol);
       this.startSymbolQtyPrecision = this.exchange.getQtyPrecision(startSymbol);
+      this.startQty = Decimals.parseScaled(triangle.getStartQty(), startSymbolQtyPrecision, RoundingMode.HALF_EVEN);
       this.middleSymbolPricePrecision = this.exchange.getPricePrecision(middleSymbol);
       this.middleSymbolQtyPrecision = this.exchange.getQtyPrecision(middleSymbol);
       this.lastSymbolPricePrecision = this.exchange.getPricePrecision(lastSymbol);
       this.lastSymbolQtyPrecision = this.exchange.getQtyPrecision(lastSymbol);
       HashSet<String> symbols =
         Sets.newHashSet(triangle.getStartSymbol(), triangle.getMiddleSymbol(), triangle.getLastSymbol());
+      this.exchange.setMarketDataBus(recordMarketData());
       this.exchange.createLocalOrderBook(symbols, 5);
 
       executorService =
@@ -107,19 +108,18 @@ public class BinanceTriangleArbitrageV2 extends Strategy<TriangleArbitrageConfig
         if (findArbitrage(sp, mp, lp)) {
           log.info("Find arbitrage space.");
           List<Callable<NewOrderResponse>> calls = new LinkedList<>();
-          BigDecimal sQty = new BigDecimal(startQty).setScale(startSymbolQtyPrecision, RoundingMode.HALF_EVEN);
-          BigDecimal spbd = new BigDecimal(sp).setScale(startSymbolPricePrecision, RoundingMode.HALF_EVEN);
-          calls.add(() ->
-            exchange.limitBuy(startSymbol, TimeInForce.GTC, sQty.toPlainString(), spbd.toPlainString()));
+          String sQty = Decimals.format(startQty, startSymbolQtyPrecision);
+          String spbd = format(sp, startSymbolPricePrecision);
+          calls.add(() -> exchange.limitBuy(startSymbol, TimeInForce.GTC, sQty, spbd));
 
-          BigDecimal mpbd = new BigDecimal(mp).setScale(middleSymbolPricePrecision, RoundingMode.HALF_EVEN);
-          BigDecimal mQty = sQty.divide(mpbd, middleSymbolQtyPrecision, RoundingMode.HALF_EVEN);
-          calls.add(() ->
-            exchange.limitBuy(middleSymbol, TimeInForce.GTC, mQty.toPlainString(), mpbd.toPlainString()));
+          long mpUnits = Decimals.fromDouble(mp, middleSymbolPricePrecision, RoundingMode.HALF_EVEN);
+          String mpbd = Decimals.format(mpUnits, middleSymbolPricePrecision);
+          String mQty = Decimals.format(Decimals.divide(startQty, startSymbolQtyPrecision, mpUnits,
+            middleSymbolPricePrecision, middleSymbolQtyPrecision, RoundingMode.HALF_EVEN), middleSymbolQtyPrecision);
+          calls.add(() -> exchange.limitBuy(middleSymbol, TimeInForce.GTC, mQty, mpbd));
 
-          BigDecimal lpbd = new BigDecimal(lp).setScale(lastSymbolPricePrecision, RoundingMode.HALF_EVEN);
-          calls.add(() ->
-            exchange.limitSell(lastSymbol, TimeInForce.GTC, mQty.toPlainString(), lpbd.toPlainString()));
+          String lpbd = format(lp, lastSymbolPricePrecision);
+          calls.add(() -> exchange.limitSell(lastSymbol, TimeInForce.GTC, mQty, lpbd));
 
           List<Future<NewOrderResponse>> futures = executorService.invokeAll(calls);
           List<NewOrderResponse> orderIdList = new LinkedList<>();
@@ -194,5 +194,9 @@ public class BinanceTriangleArbitrageV2 extends Strategy<TriangleArbitrageConfig
     private boolean findArbitrage(double sp, double mp, double lp) {
       return lp*COMMSSION/mp/sp > priceRate;
     }
+
+    private static String format(double price, int precision) {
+      return Decimals.format(Decimals.fromDouble(price, precision, RoundingMode.HALF_EVEN), precision);
+    }
   }
 }
@@ -1,17 +1,22 @@
 package io.magicalne.smym.strategy;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import io.magicalne.smym.decimal.Decimals;
 import io.magicalne.smym.dto.bitmex.AlgoTrading;
 import io.magicalne.smym.dto.bitmex.BitmexConfig;
+import io.magicalne.smym.event.BookEventDispatcher;
 import io.magicalne.smym.exchanges.bitmex.BitmexDeltaClient;
 import io.magicalne.smym.exchanges.bitmex.BitmexExchange;
+import io.magicalne.smym.exchanges.bitmex.BitmexOrderBookStream;
 import io.magicalne.smym.exchanges.bitmex.BitmexQueryOrderException;
+import io.magicalne.smym.exchanges.bitmex.BitmexWebSocketClient;
+import io.magicalne.smym.exchanges.replay.SimulatedBitmexDeltaClient;
+import io.magicalne.smym.exchanges.replay.SimulatedBitmexExchange;
+import io.magicalne.smym.replay.ReplayEngine;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.dmg.pmml.PMML;
-import org.jpmml.evaluator.Evaluator;
-import org.jpmml.evaluator.ModelEvaluatorFactory;
 import org.jpmml.model.PMMLUtil;
 import org.knowm.xchange.bitmex.dto.marketdata.BitmexPrivateOrder;
 import org.knowm.xchange.bitmex.dto.trade.*;
@@ -32,43 +37,114 @@ import java.util.*;
 @Slf4j
 public class BitmexAlgo extends Strategy<BitmexConfig> {
 
+  // the depth of the orderBookL2_25 table the live makers trade on
+  private static final int REPLAY_DEPTH = 25;
+
   private final BitmexExchange exchange;
+  private final BitmexWebSocketClient wsClient;
   private final BitmexConfig config;
+  // the makers of each symbol by the id of the symbol in the order book stream
+  private final List<List<MarketMaker>> makers = new ArrayList<>();
+  // null unless the books are replayed
+  private final ReplayEngine replayEngine;
 
   public BitmexAlgo(String path)
     throws IOException {
     String accessKey = System.getenv("BITMEX_ACCESS_KEY");
     String secretKey = System.getenv("BITMEX_ACCESS_SECRET_KEY");
     this.exchange = new BitmexExchange(accessKey, secretKey);
+    this.wsClient = new BitmexWebSocketClient();
     this.config = readYaml(path, BitmexConfig.class);
+    this.replayEngine = null;
+  }
+
+  /**
+   * Trade on a {@link SimulatedBitmexExchange} against the books of the replay instead, see {@link #replay()}.
+   */
+  public BitmexAlgo(BitmexConfig config, ReplayEngine replayEngine) {
+    this.exchange = new SimulatedBitmexExchange(replayEngine);
+    this.wsClient = null;
+    this.config = config;
+    this.replayEngine = replayEngine;
   }
 
-  public void execute() throws InterruptedException {
+  /**
+   * Block the calling thread and run the market makers of a symbol whenever its order book changed.
+   */
+  public void execute() {
     List<AlgoTrading> algoTradings = config.getAlgoTradings();
-    List<MarketMaker> list = new LinkedList<>();
+    Set<String> symbols = new HashSet<>();
+    for (AlgoTrading a : algoTradings) {
+      symbols.add(a.getSymbol());
+    }
+    BitmexOrderBookStream orderBooks = wsClient.onOrderBookL2(symbols, false, recordMarketData());
     for (AlgoTrading a : algoTradings) {
-      MarketMaker afp = new MarketMaker(config.getDeltaHost(), config.getDeltaPort(), a, exchange);
+      MarketMaker afp = new MarketMaker(config.getDeltaHost(), config.getDeltaPort(), a, exchange, orderBooks);
       afp.setup();
-      list.add(afp);
-    }
-
-    for (; ; ) {
-      for (MarketMaker ofp : list) {
-        try {
-          ofp.execute();
-        } catch (RateLimitExceededException e) {
-          log.warn("Need to retry in second due to: ", e);
-          Thread.sleep(1500);
-        } catch (ExchangeException e) {
-          log.error("Bitmex exehange exception: ", e);
-          Thread.sleep(1500);
-        } catch (Exception e) {
-          log.error("Trading with exception: ", e);
-        }
+      addMaker(orderBooks.symbolId(a.getSymbol()), afp);
+    }
+
+    BookEventDispatcher dispatcher = new BookEventDispatcher(symbols, orderBooks::symbolId, this::onBookUpdate);
+    orderBooks.setListener(dispatcher);
+    dispatcher.run();
+  }
+
+  /**
+   * Run the market makers of a symbol after every replayed update of its book until the recorded books run out.
+   * The calling thread is the replay thread, the makers run on it without a dispatcher.
+   * @return the number of replayed updates.
+   */
+  public long replay() throws IOException {
+    Preconditions.checkState(replayEngine != null, "Not created for a replay.");
+    List<AlgoTrading> algoTradings = config.getAlgoTradings();
+    Set<String> symbols = new HashSet<>();
+    for (AlgoTrading a : algoTradings) {
+      symbols.add(a.getSymbol());
+    }
+    BitmexOrderBookStream orderBooks = BitmexOrderBookStream.replay(replayEngine, symbols, REPLAY_DEPTH);
+    BitmexDeltaClient deltaClient = new SimulatedBitmexDeltaClient(replayEngine);
+    for (AlgoTrading a : algoTradings) {
+      MarketMaker afp = new MarketMaker(a, exchange, deltaClient, orderBooks);
+      afp.setup();
+      addMaker(orderBooks.symbolId(a.getSymbol()), afp);
+    }
+    orderBooks.setListener(this::onBookUpdate);
+    long updates = replayEngine.run();
+    log.info("Replayed {} updates.", updates);
+    return updates;
+  }
+
+  private void addMaker(int symbolId, MarketMaker maker) {
+    while (makers.size() <= symbolId) {
+      makers.add(new LinkedList<>());
+    }
+    makers.get(symbolId).add(maker);
+  }
+
+  private void onBookUpdate(int symbolId) {
+    for (MarketMaker ofp : makers.get(symbolId)) {
+      try {
+        ofp.execute();
+      } catch (RateLimitExceededException e) {
+        log.warn("Need to retry in second due to: ", e);
+        pause(1500);
+      } catch (ExchangeException e) {
+        log.error("Bitmex exehange exception: ", e);
+        pause(1500);
+      } catch (Exception e) {
+        log.error("Trading with exception: ", e);
       }
     }
   }
 
+  private static void pause(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Slf4j
   public static class MarketMaker {
 
@@ -78,6 +154,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
     private static final double IMBALANCE = 0.3;
     private final double spread;
     private final BitmexDeltaClient deltaClient;
+    private final BitmexOrderBookStream orderBooks;
     private final String symbol;
     private final int contract;
     private final double leverage;
@@ -86,15 +163,26 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
 
     private final LinkedList<BitmexPrivateOrder> bids;
     private final LinkedList<BitmexPrivateOrder> asks;
+    private final BookFeatureExtractor features = new BookFeatureExtractor();
+    private final PmmlScorer scorer;
 
     private BitmexPrivateOrder bid;
     private BitmexPrivateOrder ask;
+    // the tracked orders as the delta server had them at the start of the tick, read in one batch
+    private final Map<String, BitmexPrivateOrder> tickOrders = new HashMap<>();
     private Position position = null;
     private double profit = 0;
     private final double stopLoss = 0.1;
 
-    MarketMaker(String deltaHost, int deltaPort, AlgoTrading config, BitmexExchange exchange) {
-      this.deltaClient = new BitmexDeltaClient(deltaHost, deltaPort);
+    MarketMaker(String deltaHost, int deltaPort, AlgoTrading config, BitmexExchange exchange,
+                BitmexOrderBookStream orderBooks) {
+      this(config, exchange, new BitmexDeltaClient(deltaHost, deltaPort), orderBooks);
+    }
+
+    MarketMaker(AlgoTrading config, BitmexExchange exchange, BitmexDeltaClient deltaClient,
+                BitmexOrderBookStream orderBooks) {
+      this.deltaClient = deltaClient;
+      this.orderBooks = orderBooks;
       this.symbol = config.getSymbol();
       this.contract = config.getContract();
       this.leverage = config.getLeverage();
@@ -103,19 +191,37 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
       this.exchange = exchange;
       bids = new LinkedList<>();
       asks = new LinkedList<>();
+      this.scorer = config.getPmml() == null ? null : loadScorer(config.getPmml());
+    }
+
+    private PmmlScorer loadScorer(String pmmlPath) {
+      try {
+        return PmmlScorer.load(initPMML(pmmlPath), "pmml-scorer-" + symbol);
+      } catch (IOException | JAXBException | SAXException e) {
+        throw new IllegalArgumentException("Cannot load PMML model " + pmmlPath, e);
+      }
     }
 
-    private Evaluator initPMML(String pmmlPath) throws IOException, JAXBException, SAXException {
+    private PMML initPMML(String pmmlPath) throws IOException, JAXBException, SAXException {
       Path path = Paths.get(pmmlPath);
       try (InputStream is = Files.newInputStream(path)) {
-        PMML pmml = PMMLUtil.unmarshal(is);
-        ModelEvaluatorFactory modelEvaluatorFactory = ModelEvaluatorFactory.newInstance();
-        return modelEvaluatorFactory.newModelEvaluator(pmml);
+        return PMMLUtil.unmarshal(is);
       }
     }
 
     private void setup() {
       exchange.setLeverage(symbol, leverage);
+      if (scorer != null) {
+        scorer.start();
+      }
+    }
+
+    /**
+     * @return the latest prediction of the model, it may lag the book by the scoring latency; null without a
+     * model or before the first prediction. It is only logged, the quotes do not depend on it yet.
+     */
+    private PmmlScorer.Prediction signal() {
+      return scorer == null ? null : scorer.latest();
     }
 
     private void execute() throws IOException {
@@ -127,11 +233,27 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
     }
 
     private void placeOrders() throws IOException, BitmexQueryOrderException {
-      BitmexDeltaClient.OrderBookL2 ob = deltaClient.getOrderBookL2(symbol);
+      BitmexDeltaClient.OrderBookL2 ob = orderBooks.getOrderBookL2(symbol);
+      if (ob == null) {
+        return;
+      }
+      // a thin or partial book has too few levels for the features, it is not scored
+      if (scorer != null && BookFeatureExtractor.hasLevels(ob)) {
+        double[] f = features.add(ob);
+        if (features.isReady()) {
+          scorer.offer(f);
+        }
+        PmmlScorer.Prediction signal = signal();
+        if (signal != null) {
+          log.debug("Signal {} of book {}, scored in {} ns", signal.getResult(), signal.getSequence(),
+            signal.getLatencyNanos());
+        }
+      }
       double bestBid = ob.getBestBid().getPrice();
       double bestAsk = ob.getBestAsk().getPrice();
       double mid = (bestBid + bestAsk) / 2;
       double skew = mid * (spread / 2);
+      loadOrders();
       if (bid == null && ask == null) {
         if (position == null) {
           long bidPrice = Math.round(bestBid * (1 - spread));
@@ -153,7 +275,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
         checkBidOrder(bestAsk);
         checkAskOrder(bestBid);
         if (!bids.isEmpty()) {
-          BitmexPrivateOrder bid = deltaClient.getOrderById(symbol, bids.getLast().getId());
+          BitmexPrivateOrder bid = getOrder(bids.getLast().getId());
           if (bid.getOrderStatus() == BitmexPrivateOrder.OrderStatus.Filled) {
             profit += contract / bid.getPrice().doubleValue() + REBATE * contract / bid.getPrice().doubleValue();
             bids.removeLast();
@@ -187,7 +309,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
         }
 
         if (!asks.isEmpty()) {
-          BitmexPrivateOrder ask = deltaClient.getOrderById(symbol, asks.getFirst().getId());
+          BitmexPrivateOrder ask = getOrder(asks.getFirst().getId());
           if (ask.getOrderStatus() == BitmexPrivateOrder.OrderStatus.Filled) {
             profit += -contract / ask.getPrice().doubleValue() + REBATE * contract / ask.getPrice().doubleValue();
             asks.removeFirst();
@@ -223,6 +345,46 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
       stopLoss(bestBid, bestAsk);
     }
 
+    /**
+     * Read every order the tick looks at with one request to the delta server instead of one per order.
+     */
+    private void loadOrders() throws IOException {
+      tickOrders.clear();
+      List<String> ids = new ArrayList<>(6);
+      if (bid != null) {
+        ids.add(bid.getId());
+      }
+      if (ask != null) {
+        ids.add(ask.getId());
+      }
+      if (!bids.isEmpty()) {
+        ids.add(bids.getFirst().getId());
+        ids.add(bids.getLast().getId());
+      }
+      if (!asks.isEmpty()) {
+        ids.add(asks.getFirst().getId());
+        ids.add(asks.getLast().getId());
+      }
+      if (ids.isEmpty()) {
+        return;
+      }
+      deltaClient.refreshOrders(symbol);
+      List<BitmexPrivateOrder> orders = deltaClient.getOrdersByIds(symbol, ids);
+      for (int i = 0; i < ids.size(); i++) {
+        if (orders.get(i) != null) {
+          tickOrders.put(ids.get(i), orders.get(i));
+        }
+      }
+    }
+
+    /**
+     * @return the order as read at the start of the tick, an order placed during the tick is queried on its own.
+     */
+    private BitmexPrivateOrder getOrder(String id) throws IOException, BitmexQueryOrderException {
+      BitmexPrivateOrder order = tickOrders.get(id);
+      return order != null ? order : deltaClient.getOrderById(symbol, id);
+    }
+
     private void addBid(BitmexPrivateOrder bid) {
       bids.add(bid);
       if (bids.size() > 1) {
@@ -239,8 +401,8 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
 
     private void checkPairFilled(double bestBid, double bestAsk) throws IOException, BitmexQueryOrderException {
       if (this.bid != null && this.ask != null) {
-        bid = deltaClient.getOrderById(symbol, bid.getId());
-        ask = deltaClient.getOrderById(symbol, ask.getId());
+        bid = getOrder(bid.getId());
+        ask = getOrder(ask.getId());
         if (bid.getOrderStatus() == BitmexPrivateOrder.OrderStatus.Filled &&
           ask.getOrderStatus() == BitmexPrivateOrder.OrderStatus.Filled) {
           addBid(bid);
@@ -259,7 +421,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
 
     private void checkBidOrder(double bestAsk) throws BitmexQueryOrderException, IOException {
       if (this.bid != null) {
-        bid = deltaClient.getOrderById(symbol, this.bid.getId());
+        bid = getOrder(this.bid.getId());
         if (bid.getOrderStatus() == BitmexPrivateOrder.OrderStatus.Filled) {
           ask = exchange.amendOrderPrice(ask.getId(), contract, Math.max(bid.getPrice().doubleValue()+TICK, bestAsk));
           log.info("Amend ask order and put into queue. {}", ask);
@@ -273,7 +435,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
 
     private void checkAskOrder(double bestBid) throws BitmexQueryOrderException, IOException {
       if (this.ask != null) {
-        ask = deltaClient.getOrderById(symbol, this.ask.getId());
+        ask = getOrder(this.ask.getId());
         if (ask.getOrderStatus() == BitmexPrivateOrder.OrderStatus.Filled) {
           bid = exchange.amendOrderPrice(bid.getId(), contract, Math.min(ask.getPrice().doubleValue()-TICK, bestBid));
           log.info("Amend bid order and put into queue. {}", bid);
@@ -299,9 +461,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
     private double calculateLeverage(double tradePrice, double newPrice) {
       final int scale = 2;
       RoundingMode mode = Double.compare(tradePrice, newPrice) > 0 ? RoundingMode.UP : RoundingMode.DOWN;
-      return new BigDecimal(tradePrice * leverage)
-        .divide(new BigDecimal(newPrice), scale, mode)
-        .doubleValue();
+      return Decimals.toDouble(Decimals.fromDouble(tradePrice * leverage / newPrice, scale, mode), scale);
     }
 
     private double getRoundPrice(double price, double spreed) {
@@ -316,7 +476,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
     }
 
     private List<BitmexPrivateOrder> marketAndLimit(BitmexSide marketSide, BitmexSide limitSide, double limitPrice) {
-      BigDecimal orderQuantity = new BigDecimal(contract);
+      BigDecimal orderQuantity = BitmexExchange.toQuantity(contract);
       BitmexPlaceOrderParameters market = new BitmexPlaceOrderParameters.Builder(symbol)
         .setSide(marketSide)
         .setOrderType(BitmexOrderType.MARKET)
@@ -324,7 +484,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
         .build();
       BitmexPlaceOrderParameters limit = new BitmexPlaceOrderParameters.Builder(symbol)
         .setSide(limitSide)
-        .setPrice(new BigDecimal(limitPrice))
+        .setPrice(BitmexExchange.toPrice(limitPrice))
         .setOrderType(BitmexOrderType.LIMIT)
         .setOrderQuantity(orderQuantity)
         .setExecutionInstructions(Collections.singletonList(BitmexExecutionInstruction.PARTICIPATE_DO_NOT_INITIATE))
@@ -337,7 +497,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
 
     private void stopLoss(double bestBid, double bestAsk) throws IOException, BitmexQueryOrderException {
       if (!bids.isEmpty()) {
-        BitmexPrivateOrder bid = deltaClient.getOrderById(symbol, bids.getFirst().getId());
+        BitmexPrivateOrder bid = getOrder(bids.getFirst().getId());
         double price = bid.getPrice().doubleValue();
         if ((bestBid - price) / bestBid > stopLoss && position != null && position.getPrice() < 0) {
           log.info("Stop loss from: {}", bid.getPrice());
@@ -352,7 +512,7 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
       }
 
       if (!asks.isEmpty()) {
-        BitmexPrivateOrder ask = deltaClient.getOrderById(symbol, asks.getLast().getId());
+        BitmexPrivateOrder ask = getOrder(asks.getLast().getId());
         double price = ask.getPrice().doubleValue();
         if ((price - bestAsk) / price > stopLoss && position != null && position.getPrice() > 0) {
           log.info("Stop loss from: {}", ask.getPrice());
@@ -377,99 +537,17 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
         exchange.amendOrderPrice(orderId, contract, price);
     }
 
+    /**
+     * Features of the last book with rolling statistics over the books of the queue, see
+     * {@link BookFeatureExtractor}. Strategies should keep an extractor and add books as they arrive.
+     */
     @VisibleForTesting
     public static Map<String, Double> extractFeature(Queue<BitmexDeltaClient.OrderBookL2> queue) {
-      List<Map<String, Double>> rows = new LinkedList<>();
+      BookFeatureExtractor extractor = new BookFeatureExtractor();
       for (BitmexDeltaClient.OrderBookL2 orderBookL2 : queue) {
-        List<BitmexDeltaClient.OrderBookEntry> asks = orderBookL2.getAsks();
-        List<BitmexDeltaClient.OrderBookEntry> bids = orderBookL2.getBids();
-        Map<String, Double> featureMap = new HashMap<>();
-        double askPriceSum = 0;
-        double bidPriceSum = 0;
-        double askVolSum = 0;
-        double bidVolSum = 0;
-        double spreedVolSum = 0;
-        double spreedSum = 0;
-        for (int i = 0; i < 10; i++) {
-          BitmexDeltaClient.OrderBookEntry ask = asks.get(i);
-          BitmexDeltaClient.OrderBookEntry bid = bids.get(i);
-          featureMap.put("ask_p_" + i, ask.getPrice());
-          featureMap.put("ask_vol_" + i, (double) ask.getSize());
-          featureMap.put("bid_p_" + i, bid.getPrice());
-          featureMap.put("bid_vol_" + i, (double) bid.getSize());
-          double spreed = ask.getPrice() - bid.getPrice();
-          spreedSum += spreed;
-          featureMap.put("spreed_" + i, spreed);
-          featureMap.put("mid_p_" + i, (ask.getPrice() + bid.getPrice()) / 2);
-          double spreedVol = ask.getSize() - bid.getSize();
-          featureMap.put("spreed_vol_" + i, spreedVol);
-          spreedVolSum += spreedVol;
-          featureMap.put("vol_rate_" + i, ask.getSize() * 1.0d / bid.getSize());
-          featureMap.put("sask_vol_rate_" + i, spreedVol / ask.getSize());
-          featureMap.put("sbid_vol_rate_" + i, spreedVol / bid.getSize());
-          double volSum = ask.getSize() + bid.getSize();
-          featureMap.put("ask_vol_rate_" + i, ask.getSize() / volSum);
-          featureMap.put("bid_vol_rate_" + i, bid.getSize() / volSum);
-          askPriceSum += ask.getPrice();
-          bidPriceSum += bid.getPrice();
-          askVolSum += ask.getSize();
-          bidVolSum += bid.getSize();
-        }
-        for (int i = 0; i < 9; i++) {
-          int k = i + 1;
-          featureMap.put("ask_p_diff_" + k + "_0", featureMap.get("ask_p_" + k) - featureMap.get("ask_p_0"));
-          featureMap.put("bid_p_diff_" + k + "_0", featureMap.get("bid_p_" + k) - featureMap.get("bid_p_0"));
-          featureMap.put("ask_p_diff_" + k + "_" + i, featureMap.get("ask_p_" + k) - featureMap.get("ask_p_" + i));
-          featureMap.put("bid_p_diff_" + k + "_" + i, featureMap.get("bid_p_" + k) - featureMap.get("bid_p_" + i));
-        }
-        featureMap.put("ask_p_mean", askPriceSum / 10);
-        featureMap.put("bid_p_mean", bidPriceSum / 10);
-        featureMap.put("ask_vol_mean", askVolSum / 10);
-        featureMap.put("bid_vol_mean", bidVolSum / 10);
-        featureMap.put("accum_spreed_vol", spreedVolSum);
-        featureMap.put("accum_spreed", spreedSum);
-        rows.add(featureMap);
-      }
-      Map<String, Double> featureMap = rows.get(9);
-      List<Double> askPrices = new LinkedList<>();
-      List<Double> bidPrices = new LinkedList<>();
-      List<Double> askVols = new LinkedList<>();
-      List<Double> bidVols = new LinkedList<>();
-      for (Map<String, Double> row : rows) {
-        askPrices.add(row.get("ask_p_0"));
-        bidPrices.add(row.get("bid_p_0"));
-        askVols.add(row.get("ask_vol_0"));
-        bidVols.add(row.get("bid_vol_0"));
-      }
-      for (int i = 9; i >= 2; i--) {
-        askPrices.remove(0);
-        extractTSFeature(featureMap, askPrices, "ask_p_roll_" + i);
-        bidPrices.remove(0);
-        extractTSFeature(featureMap, bidPrices, "bid_p_roll_" + i);
-        askVols.remove(0);
-        extractTSFeature(featureMap, askVols, "ask_v_roll_" + i);
-        bidVols.remove(0);
-        extractTSFeature(featureMap, bidVols, "bid_v_roll_" + i);
-      }
-      return featureMap;
-    }
-
-    private static void extractTSFeature(Map<String, Double> featureMap, List<Double> askPrices, String prefix) {
-      Stats askPriceStats = timeSeriesFeature(askPrices);
-      featureMap.put(prefix + "_mean", askPriceStats.getMean());
-      featureMap.put(prefix + "_std", askPriceStats.getStd());
-      featureMap.put(prefix + "_var", askPriceStats.getVar());
-      featureMap.put(prefix + "_skew", askPriceStats.getSkew());
-      featureMap.put(prefix + "_kurt", askPriceStats.getKurt());
-    }
-
-    private static Stats timeSeriesFeature(List<Double> list) {
-      DescriptiveStatistics stats = new DescriptiveStatistics();
-      for (double e : list) {
-        stats.addValue(e);
+        extractor.add(orderBookL2);
       }
-      return new Stats(
-        stats.getMean(), stats.getStandardDeviation(), stats.getVariance(), stats.getSkewness(), stats.getKurtosis());
+      return extractor.toMap();
     }
 
     @Data
@@ -488,23 +566,6 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
       }
     }
 
-    @Data
-    private static class Stats {
-      private double mean;
-      private double std;
-      private double var;
-      private double skew;
-      private double kurt;
-
-      Stats(double mean, double std, double var, double skew, double kurt) {
-        this.mean = mean;
-        this.std = std;
-        this.var = var;
-        this.skew = skew;
-        this.kurt = kurt;
-      }
-    }
-
     @Data
     private static class OrderHistory {
       private String orderId;
@@ -519,20 +580,5 @@ public class BitmexAlgo extends Strategy<BitmexConfig> {
         this.side = side;
       }
     }
-
-    /*private Object predict(Map<String, Double> feature) {
-      Map<FieldName, FieldValue> argsMap = new LinkedHashMap<>();
-      List<InputField> activeFields = evaluator.getActiveFields();
-
-      for (InputField activeField : activeFields) {
-        final FieldName fieldName = activeField.getName();
-        Object rawValue = feature.get(fieldName.getValue());
-        FieldValue fieldValue = activeField.prepare(rawValue);
-        argsMap.put(fieldName, fieldValue);
-      }
-      final Map<FieldName, ?> results = evaluator.evaluate(argsMap);
-      ProbabilityDistribution pd = (ProbabilityDistribution) results.get(new FieldName(this.target));
-      return pd.getResult();
-    }*/
   }
 }
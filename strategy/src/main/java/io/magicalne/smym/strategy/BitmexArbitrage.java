@@ -4,8 +4,11 @@ import com.google.common.base.Preconditions;
 import com.google.common.math.Stats;
 import io.magicalne.smym.dto.bitmex.AlgoTrading;
 import io.magicalne.smym.dto.bitmex.BitmexConfig;
+import io.magicalne.smym.event.BookEventDispatcher;
 import io.magicalne.smym.exchanges.bitmex.BitmexDeltaClient;
 import io.magicalne.smym.exchanges.bitmex.BitmexExchange;
+import io.magicalne.smym.exchanges.bitmex.BitmexOrderBookStream;
+import io.magicalne.smym.exchanges.bitmex.BitmexWebSocketClient;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.knowm.xchange.bitmex.dto.marketdata.BitmexKline;
@@ -13,49 +16,71 @@ import org.knowm.xchange.exceptions.ExchangeException;
 import org.knowm.xchange.exceptions.RateLimitExceededException;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 @Slf4j
 public class BitmexArbitrage extends Strategy<BitmexConfig> {
 
   private final BitmexExchange exchange;
+  private final BitmexWebSocketClient wsClient;
   private final BitmexConfig config;
+  private final List<Arbitrage> list = new LinkedList<>();
 
   public BitmexArbitrage(String path)
     throws IOException {
     String accessKey = System.getenv("BITMEX_ACCESS_KEY");
     String secretKey = System.getenv("BITMEX_ACCESS_SECRET_KEY");
     this.exchange = new BitmexExchange(accessKey, secretKey);
+    this.wsClient = new BitmexWebSocketClient();
     this.config = readYaml(path, BitmexConfig.class);
   }
 
-  public void execute() throws InterruptedException {
+  /**
+   * Block the calling thread and check the basis whenever the swap or the future order book changed.
+   */
+  public void execute() {
     List<AlgoTrading> algoTradings = config.getAlgoTradings();
-    List<Arbitrage> list = new LinkedList<>();
+    Set<String> symbols = new HashSet<>(Arrays.asList(Arbitrage.SWAP, Arbitrage.FUTURE));
+    BitmexOrderBookStream orderBooks = wsClient.onOrderBookL2(symbols, false, recordMarketData());
     for (AlgoTrading a : algoTradings) {
-      Arbitrage afp = new Arbitrage(config.getDeltaHost(), config.getDeltaPort(), a, exchange);
+      Arbitrage afp = new Arbitrage(config.getDeltaHost(), config.getDeltaPort(), a, exchange, orderBooks);
       afp.setup();
       list.add(afp);
     }
 
-    for (; ; ) {
-      for (Arbitrage ofp : list) {
-        try {
-          ofp.execute();
-        } catch (RateLimitExceededException e) {
-          log.warn("Need to retry in second due to: ", e);
-          Thread.sleep(1500);
-        } catch (ExchangeException e) {
-          log.error("Bitmex exehange exception: ", e);
-          Thread.sleep(500);
-        } catch (Exception e) {
-          log.error("Trading with exception: ", e);
-        }
+    BookEventDispatcher dispatcher = new BookEventDispatcher(symbols, orderBooks::symbolId, this::onBookUpdate);
+    orderBooks.setListener(dispatcher);
+    dispatcher.run();
+  }
+
+  private void onBookUpdate(int symbolId) {
+    for (Arbitrage ofp : list) {
+      try {
+        ofp.execute();
+      } catch (RateLimitExceededException e) {
+        log.warn("Need to retry in second due to: ", e);
+        pause(1500);
+      } catch (ExchangeException e) {
+        log.error("Bitmex exehange exception: ", e);
+        pause(500);
+      } catch (Exception e) {
+        log.error("Trading with exception: ", e);
       }
     }
   }
 
+  private static void pause(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Slf4j
   public static class Arbitrage {
 
@@ -64,15 +89,15 @@ public class BitmexArbitrage extends Strategy<BitmexConfig> {
     private static final double TICK = 0.5;
     private static final double IMBALANCE = 0.3;
     private final double spread;
+    static final String SWAP = "XBTUSD";
+    static final String FUTURE = "XBTH19";
     private final BitmexDeltaClient deltaClient;
+    private final BitmexOrderBookStream orderBooks;
     private final String symbol;
     private final int contract;
     private final double leverage;
     private final BitmexExchange exchange;
 
-    private final String swap = "XBTUSD";
-    private final String future = "XBTH19";
-
     private short trading = 0;
 
     private double mean;
@@ -83,8 +108,10 @@ public class BitmexArbitrage extends Strategy<BitmexConfig> {
     private double longFuture;
     private double profit = 0;
 
-    Arbitrage(String deltaHost, int deltaPort, AlgoTrading config, BitmexExchange exchange) {
+    Arbitrage(String deltaHost, int deltaPort, AlgoTrading config, BitmexExchange exchange,
+              BitmexOrderBookStream orderBooks) {
       this.deltaClient = new BitmexDeltaClient(deltaHost, deltaPort);
+      this.orderBooks = orderBooks;
       this.symbol = config.getSymbol();
       this.contract = config.getContract();
       this.leverage = config.getLeverage();
@@ -94,8 +121,8 @@ public class BitmexArbitrage extends Strategy<BitmexConfig> {
 
     private void setup() {
 //      exchange.setLeverage(symbol, leverage);
-      List<BitmexKline> swapKline = exchange.getRecentStats(swap);
-      List<BitmexKline> futureKline = exchange.getRecentStats(future);
+      List<BitmexKline> swapKline = exchange.getRecentStats(SWAP);
+      List<BitmexKline> futureKline = exchange.getRecentStats(FUTURE);
       Preconditions.checkState(swapKline.size() == futureKline.size());
       List<Double> diff = new LinkedList<>();
       for (int i = 0; i < swapKline.size(); i++) {
@@ -114,9 +141,12 @@ public class BitmexArbitrage extends Strategy<BitmexConfig> {
     }
 
     private void test() throws IOException {
-      BitmexDeltaClient.OrderBookL2 swapOB = deltaClient.getOrderBookL2(swap);
+      BitmexDeltaClient.OrderBookL2 swapOB = orderBooks.getOrderBookL2(SWAP);
+      BitmexDeltaClient.OrderBookL2 futureOB = orderBooks.getOrderBookL2(FUTURE);
+      if (swapOB == null || futureOB == null) {
+        return;
+      }
       double swapMid = swapOB.bestMid();
-      BitmexDeltaClient.OrderBookL2 futureOB = deltaClient.getOrderBookL2(future);
       double futureMid = futureOB.bestMid();
       double basis = futureMid - swapMid;
       double longSwap = swapOB.getBestAsk().getPrice();
@@ -0,0 +1,229 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.exchanges.bitmex.BitmexDeltaClient;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order book features of the Bitmex market maker written into a reusable double[] with a fixed layout.
+ *
+ * The name of every feature is resolved to its index once, see {@link #indexOf(String)}. Features of the
+ * levels are computed from the latest book only, the rolling statistics from the best prices and sizes of
+ * the last {@link #WINDOW} books, kept in primitive ring buffers. Each rolling series is walked once from
+ * the newest value back while updating its central moments, so the statistics of a window of k books are
+ * read off after the k-th value. The moments follow the updates of commons-math's storeless moments and the
+ * statistics its bias corrected formulas, like DescriptiveStatistics did for the former map of features.
+ * Not thread safe, feed it from the thread receiving the books.
+ */
+class BookFeatureExtractor {
+
+  static final int LEVELS = 10;
+  static final int WINDOW = 10;
+
+  private static final String[] LEVEL_FEATURES = {
+    "ask_p_", "ask_vol_", "bid_p_", "bid_vol_", "spreed_", "mid_p_", "spreed_vol_", "vol_rate_",
+    "sask_vol_rate_", "sbid_vol_rate_", "ask_vol_rate_", "bid_vol_rate_"
+  };
+  private static final String[] SERIES = {"ask_p_roll_", "bid_p_roll_", "ask_v_roll_", "bid_v_roll_"};
+  private static final String[] STATS = {"_mean", "_std", "_var", "_skew", "_kurt"};
+  private static final int MIN_ROLL = 2;
+
+  private static final int DIFF_TO_BEST = LEVELS * LEVEL_FEATURES.length;
+  // differences of a level to the one above it, the one of level 1 is already a difference to the best
+  private static final int DIFF_TO_PREVIOUS = DIFF_TO_BEST + 2 * (LEVELS - 1);
+  private static final int AGGREGATES = DIFF_TO_PREVIOUS + 2 * (LEVELS - 2);
+  private static final int ROLLING = AGGREGATES + 6;
+  private static final int SIZE = ROLLING + (WINDOW - MIN_ROLL) * SERIES.length * STATS.length;
+
+  private static final String[] NAMES = new String[SIZE];
+  private static final Map<String, Integer> INDEX = new HashMap<>();
+
+  static {
+    for (int i = 0; i < LEVELS; i++) {
+      for (int f = 0; f < LEVEL_FEATURES.length; f++) {
+        NAMES[i * LEVEL_FEATURES.length + f] = LEVEL_FEATURES[f] + i;
+      }
+    }
+    for (int k = 1; k < LEVELS; k++) {
+      NAMES[DIFF_TO_BEST + 2 * (k - 1)] = "ask_p_diff_" + k + "_0";
+      NAMES[DIFF_TO_BEST + 2 * (k - 1) + 1] = "bid_p_diff_" + k + "_0";
+    }
+    for (int k = 2; k < LEVELS; k++) {
+      NAMES[DIFF_TO_PREVIOUS + 2 * (k - 2)] = "ask_p_diff_" + k + "_" + (k - 1);
+      NAMES[DIFF_TO_PREVIOUS + 2 * (k - 2) + 1] = "bid_p_diff_" + k + "_" + (k - 1);
+    }
+    String[] aggregates = {"ask_p_mean", "bid_p_mean", "ask_vol_mean", "bid_vol_mean", "accum_spreed_vol",
+      "accum_spreed"};
+    System.arraycopy(aggregates, 0, NAMES, AGGREGATES, aggregates.length);
+    for (int w = WINDOW - 1; w >= MIN_ROLL; w--) {
+      for (int s = 0; s < SERIES.length; s++) {
+        for (int t = 0; t < STATS.length; t++) {
+          NAMES[rollIndex(w, s, t)] = SERIES[s] + w + STATS[t];
+        }
+      }
+    }
+    for (int i = 0; i < SIZE; i++) {
+      INDEX.put(NAMES[i], i);
+    }
+  }
+
+  private final double[] features = new double[SIZE];
+  // best ask price, best bid price, best ask size and best bid size of the last books
+  private final double[][] series = new double[SERIES.length][WINDOW];
+  private int head;
+  private int count;
+
+  private static int rollIndex(int window, int series, int stat) {
+    return ROLLING + ((WINDOW - 1 - window) * SERIES.length + series) * STATS.length + stat;
+  }
+
+  static int size() {
+    return SIZE;
+  }
+
+  static String name(int index) {
+    return NAMES[index];
+  }
+
+  /**
+   * @return index of the feature or -1 if there is no such feature.
+   */
+  static int indexOf(String name) {
+    Integer index = INDEX.get(name);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @return true once {@link #WINDOW} books were added, the rolling statistics are complete from then on.
+   */
+  boolean isReady() {
+    return count >= WINDOW;
+  }
+
+  /**
+   * @return true if the book has the {@link #LEVELS} levels on each side {@link #add} needs.
+   */
+  static boolean hasLevels(BitmexDeltaClient.OrderBookL2 book) {
+    return book.getAsks().size() >= LEVELS && book.getBids().size() >= LEVELS;
+  }
+
+  /**
+   * Compute the features of the book, it needs at least {@link #LEVELS} levels on each side.
+   * @return the features, the array is reused by the next call.
+   */
+  double[] add(BitmexDeltaClient.OrderBookL2 book) {
+    List<BitmexDeltaClient.OrderBookEntry> asks = book.getAsks();
+    List<BitmexDeltaClient.OrderBookEntry> bids = book.getBids();
+    double[] f = this.features;
+    double askPriceSum = 0;
+    double bidPriceSum = 0;
+    double askVolSum = 0;
+    double bidVolSum = 0;
+    double spreedVolSum = 0;
+    double spreedSum = 0;
+    for (int i = 0; i < LEVELS; i++) {
+      BitmexDeltaClient.OrderBookEntry ask = asks.get(i);
+      BitmexDeltaClient.OrderBookEntry bid = bids.get(i);
+      int base = i * LEVEL_FEATURES.length;
+      f[base] = ask.getPrice();
+      f[base + 1] = (double) ask.getSize();
+      f[base + 2] = bid.getPrice();
+      f[base + 3] = (double) bid.getSize();
+      double spreed = ask.getPrice() - bid.getPrice();
+      spreedSum += spreed;
+      f[base + 4] = spreed;
+      f[base + 5] = (ask.getPrice() + bid.getPrice()) / 2;
+      double spreedVol = ask.getSize() - bid.getSize();
+      f[base + 6] = spreedVol;
+      spreedVolSum += spreedVol;
+      f[base + 7] = ask.getSize() * 1.0d / bid.getSize();
+      f[base + 8] = spreedVol / ask.getSize();
+      f[base + 9] = spreedVol / bid.getSize();
+      double volSum = ask.getSize() + bid.getSize();
+      f[base + 10] = ask.getSize() / volSum;
+      f[base + 11] = bid.getSize() / volSum;
+      askPriceSum += ask.getPrice();
+      bidPriceSum += bid.getPrice();
+      askVolSum += ask.getSize();
+      bidVolSum += bid.getSize();
+    }
+    int stride = LEVEL_FEATURES.length;
+    for (int k = 1; k < LEVELS; k++) {
+      f[DIFF_TO_BEST + 2 * (k - 1)] = f[k * stride] - f[0];
+      f[DIFF_TO_BEST + 2 * (k - 1) + 1] = f[k * stride + 2] - f[2];
+    }
+    for (int k = 2; k < LEVELS; k++) {
+      f[DIFF_TO_PREVIOUS + 2 * (k - 2)] = f[k * stride] - f[(k - 1) * stride];
+      f[DIFF_TO_PREVIOUS + 2 * (k - 2) + 1] = f[k * stride + 2] - f[(k - 1) * stride + 2];
+    }
+    f[AGGREGATES] = askPriceSum / LEVELS;
+    f[AGGREGATES + 1] = bidPriceSum / LEVELS;
+    f[AGGREGATES + 2] = askVolSum / LEVELS;
+    f[AGGREGATES + 3] = bidVolSum / LEVELS;
+    f[AGGREGATES + 4] = spreedVolSum;
+    f[AGGREGATES + 5] = spreedSum;
+
+    series[0][head] = f[0];
+    series[1][head] = f[2];
+    series[2][head] = f[1];
+    series[3][head] = f[3];
+    head = (head + 1) % WINDOW;
+    if (count < WINDOW) {
+      count++;
+    }
+    for (int s = 0; s < SERIES.length; s++) {
+      roll(s);
+    }
+    return f;
+  }
+
+  private void roll(int s) {
+    double[] values = series[s];
+    double[] f = this.features;
+    double mean = 0;
+    double m2 = 0;
+    double m3 = 0;
+    double m4 = 0;
+    for (int n = 1, i = head; n < WINDOW; n++) {
+      i = i == 0 ? WINDOW - 1 : i - 1;
+      if (n <= count) {
+        double delta = values[i] - mean;
+        double deltaN = delta / n;
+        double deltaN2 = deltaN * deltaN;
+        double term1 = delta * deltaN * (n - 1);
+        mean += deltaN;
+        m4 += term1 * deltaN2 * ((double) n * n - 3 * (n - 1)) + 6 * deltaN2 * m2 - 4 * deltaN * m3;
+        m3 += term1 * deltaN * (n - 2) - 3 * deltaN * m2;
+        m2 += term1;
+      }
+      if (n < MIN_ROLL) {
+        continue;
+      }
+      int at = rollIndex(n, s, 0);
+      if (n > count) {
+        f[at] = f[at + 1] = f[at + 2] = f[at + 3] = f[at + 4] = Double.NaN;
+        continue;
+      }
+      double var = m2 / (n - 1);
+      f[at] = mean;
+      f[at + 1] = Math.sqrt(var);
+      f[at + 2] = var;
+      f[at + 3] = n < 3 ? Double.NaN : n / ((n - 1.0) * (n - 2)) * (m3 / (var * Math.sqrt(var)));
+      f[at + 4] = n < 4 ? Double.NaN : n * (n + 1.0) / ((n - 1.0) * (n - 2) * (n - 3)) * (m4 / (var * var))
+        - 3 * (n - 1.0) * (n - 1) / ((n - 2.0) * (n - 3));
+    }
+  }
+
+  /**
+   * @return the features by name, for inspection and tests, not for the hot path.
+   */
+  Map<String, Double> toMap() {
+    Map<String, Double> map = new HashMap<>(SIZE * 2);
+    for (int i = 0; i < SIZE; i++) {
+      map.put(NAMES[i], features[i]);
+    }
+    return map;
+  }
+}
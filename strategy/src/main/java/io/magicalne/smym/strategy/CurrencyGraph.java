@@ -0,0 +1,369 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.symbol.SymbolRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Graph of currencies with an edge per side of every market, weighted -log(price * fee). A cycle with a
+ * negative total weight multiplies the starting amount by more than 1 after fees.
+ *
+ * Markets are addressed by their id in the {@link SymbolRegistry} and their currencies are looked up in
+ * arrays indexed by it, so a book update never hashes a String. Names are only resolved for the cycles found.
+ * Weights are kept in a primitive adjacency matrix and changed in place by {@link #update}. Cycles are
+ * searched with a Bellman-Ford limited to {@code maxLength} legs from every source currency, which finds
+ * the most profitable cycle through each source. After a book update it is enough to search from the two
+ * currencies of the market, every new cycle contains both.
+ *
+ * Not thread safe: update and search from one thread, the parallel search blocks it until done.
+ */
+class CurrencyGraph {
+
+  /**
+   * A profitable cycle, trade {@code symbols[i]} to exchange {@code assets[i]} for {@code assets[i + 1]},
+   * the last symbol leads back to {@code assets[0]}.
+   */
+  static final class Cycle {
+    private final String[] assets;
+    private final String[] symbols;
+    private final double rate;
+
+    private Cycle(String[] assets, String[] symbols, double rate) {
+      this.assets = assets;
+      this.symbols = symbols;
+      this.rate = rate;
+    }
+
+    String[] getAssets() {
+      return assets;
+    }
+
+    String[] getSymbols() {
+      return symbols;
+    }
+
+    /**
+     * @return amount received for one unit of {@code assets[0]} after fees.
+     */
+    double getRate() {
+      return rate;
+    }
+
+    int length() {
+      return assets.length;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (String asset : assets) {
+        sb.append(asset).append(" -> ");
+      }
+      return sb.append(assets[0]).append(' ').append(Arrays.toString(symbols)).append(" rate: ").append(rate)
+        .toString();
+    }
+  }
+
+  private static final int SOURCES_PER_TASK = 8;
+
+  private final double logFee;
+  private final int maxLength;
+  private final double threshold;
+  private final SymbolRegistry registry;
+  private final Map<String, Integer> assetIndex = new HashMap<>();
+  private final List<String> assets = new ArrayList<>();
+  private final Set<String> symbols = new LinkedHashSet<>();
+  // currency indexes of the markets by symbol id, -1 if the symbol is not in the graph
+  private int[] bases = new int[0];
+  private int[] quotes = new int[0];
+
+  private int n;
+  private double[] weights;
+  // symbol id of every edge
+  private int[] edgeSymbols;
+  private int[][] neighbours;
+  private Workspace workspace;
+
+  /**
+   * @param fee       multiplier of one trade, e.g. 0.999 for 0.1% commission.
+   * @param maxLength longest cycle searched.
+   * @param minRate   report cycles whose rate after fees is above it.
+   * @param registry  resolves the ids of the symbols to their names and currencies.
+   */
+  CurrencyGraph(double fee, int maxLength, double minRate, SymbolRegistry registry) {
+    if (maxLength < 2) {
+      throw new IllegalArgumentException("A cycle has at least 2 legs: " + maxLength);
+    }
+    this.logFee = Math.log(fee);
+    this.maxLength = maxLength;
+    this.threshold = -Math.log(minRate);
+    this.registry = registry;
+  }
+
+  /**
+   * Add the market of the symbol, its base currency is bought and sold for its quote currency. Must be called
+   * before the first update.
+   */
+  void addSymbol(int symbolId) {
+    if (weights != null) {
+      throw new IllegalStateException("Cannot add " + registry.name(symbolId) + " after the graph is in use.");
+    }
+    if (symbolId >= bases.length) {
+      int size = bases.length;
+      int capacity = Math.max(symbolId + 1, size * 2);
+      bases = Arrays.copyOf(bases, capacity);
+      quotes = Arrays.copyOf(quotes, capacity);
+      Arrays.fill(bases, size, capacity, -1);
+      Arrays.fill(quotes, size, capacity, -1);
+    }
+    bases[symbolId] = asset(registry.base(symbolId));
+    quotes[symbolId] = asset(registry.quote(symbolId));
+    symbols.add(registry.name(symbolId));
+  }
+
+  Set<String> symbols() {
+    return symbols;
+  }
+
+  /**
+   * Re-weight both edges of a market. A bid or ask which is not positive removes the edge.
+   */
+  void update(int symbolId, double bid, double ask) {
+    if (!contains(symbolId)) {
+      return;
+    }
+    build();
+    int base = bases[symbolId];
+    int quote = quotes[symbolId];
+    // sell base at the bid, buy base with quote at the ask
+    weights[base * n + quote] = bid > 0 ? -(Math.log(bid) + logFee) : Double.POSITIVE_INFINITY;
+    weights[quote * n + base] = ask > 0 ? Math.log(ask) - logFee : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * @return the profitable cycles through the market of the symbol, at most one per currency of it.
+   */
+  List<Cycle> findCycles(int symbolId) {
+    List<Cycle> cycles = new ArrayList<>(2);
+    if (!contains(symbolId)) {
+      return cycles;
+    }
+    build();
+    if (workspace == null) {
+      workspace = new Workspace(n, maxLength);
+    }
+    workspace.search(bases[symbolId], cycles);
+    workspace.search(quotes[symbolId], cycles);
+    return distinct(cycles);
+  }
+
+  /**
+   * Search from every currency, the sources are split across the pool.
+   * @return the profitable cycles, at most one per currency.
+   */
+  List<Cycle> findCycles(ForkJoinPool pool) {
+    build();
+    return distinct(pool.invoke(new SearchTask(0, n)));
+  }
+
+  private boolean contains(int symbolId) {
+    return symbolId >= 0 && symbolId < bases.length && bases[symbolId] >= 0;
+  }
+
+  private int asset(String name) {
+    Integer index = assetIndex.get(name);
+    if (index == null) {
+      index = assets.size();
+      assetIndex.put(name, index);
+      assets.add(name);
+    }
+    return index;
+  }
+
+  private void build() {
+    if (weights != null) {
+      return;
+    }
+    n = assets.size();
+    weights = new double[n * n];
+    Arrays.fill(weights, Double.POSITIVE_INFINITY);
+    edgeSymbols = new int[n * n];
+    List<List<Integer>> adjacent = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      adjacent.add(new ArrayList<>());
+    }
+    for (int id = 0; id < bases.length; id++) {
+      int base = bases[id];
+      int quote = quotes[id];
+      if (base < 0) {
+        continue;
+      }
+      edgeSymbols[base * n + quote] = id;
+      edgeSymbols[quote * n + base] = id;
+      adjacent.get(base).add(quote);
+      adjacent.get(quote).add(base);
+    }
+    neighbours = new int[n][];
+    for (int i = 0; i < n; i++) {
+      List<Integer> list = adjacent.get(i);
+      neighbours[i] = new int[list.size()];
+      for (int j = 0; j < list.size(); j++) {
+        neighbours[i][j] = list.get(j);
+      }
+    }
+  }
+
+  private static List<Cycle> distinct(List<Cycle> cycles) {
+    if (cycles.size() < 2) {
+      return cycles;
+    }
+    Set<String> seen = new HashSet<>();
+    List<Cycle> result = new ArrayList<>(cycles.size());
+    for (Cycle c : cycles) {
+      String[] symbols = c.getSymbols().clone();
+      Arrays.sort(symbols);
+      if (seen.add(Arrays.toString(symbols))) {
+        result.add(c);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Search state of one thread: distance and predecessor per leg count and currency, plus the currencies
+   * reached with each leg count so only those are relaxed and reset.
+   */
+  private final class Workspace {
+    private final double[] dist;
+    private final int[] pred;
+    private final int[][] reached;
+    private final int[] reachedCount;
+    private final int[] path;
+
+    private Workspace(int n, int maxLength) {
+      this.dist = new double[(maxLength + 1) * n];
+      Arrays.fill(this.dist, Double.POSITIVE_INFINITY);
+      this.pred = new int[(maxLength + 1) * n];
+      this.reached = new int[maxLength + 1][n];
+      this.reachedCount = new int[maxLength + 1];
+      this.path = new int[maxLength];
+    }
+
+    private void search(int source, List<Cycle> out) {
+      dist[source] = 0;
+      reached[0][0] = source;
+      reachedCount[0] = 1;
+      double best = threshold;
+      int bestLegs = -1;
+      int bestLast = -1;
+      for (int k = 1; k <= maxLength; k++) {
+        int prev = (k - 1) * n;
+        int cur = k * n;
+        reachedCount[k] = 0;
+        for (int r = 0; r < reachedCount[k - 1]; r++) {
+          int u = reached[k - 1][r];
+          double du = dist[prev + u];
+          int row = u * n;
+          for (int v : neighbours[u]) {
+            double d = du + weights[row + v];
+            if (d == Double.POSITIVE_INFINITY) {
+              continue;
+            }
+            if (v == source) {
+              if (k > 1 && d < best) {
+                best = d;
+                bestLegs = k;
+                bestLast = u;
+              }
+            } else if (k < maxLength && d < dist[cur + v]) {
+              if (dist[cur + v] == Double.POSITIVE_INFINITY) {
+                reached[k][reachedCount[k]++] = v;
+              }
+              dist[cur + v] = d;
+              pred[cur + v] = u;
+            }
+          }
+        }
+      }
+      if (bestLegs > 0) {
+        Cycle cycle = toCycle(source, bestLegs, bestLast, best);
+        if (cycle != null) {
+          out.add(cycle);
+        }
+      }
+      for (int k = 0; k < maxLength; k++) {
+        int offset = k * n;
+        for (int r = 0; r < reachedCount[k]; r++) {
+          dist[offset + reached[k][r]] = Double.POSITIVE_INFINITY;
+        }
+        reachedCount[k] = 0;
+      }
+    }
+
+    /**
+     * @return the cycle ending with last -> source, or null if it visits a currency twice, then its
+     * profitable part is found from a currency on it.
+     */
+    private Cycle toCycle(int source, int legs, int last, double weight) {
+      int v = last;
+      for (int k = legs - 1; k >= 1; k--) {
+        path[k] = v;
+        v = pred[k * n + v];
+      }
+      path[0] = source;
+      for (int i = 1; i < legs; i++) {
+        for (int j = 0; j < i; j++) {
+          if (path[i] == path[j]) {
+            return null;
+          }
+        }
+      }
+      String[] cycleAssets = new String[legs];
+      String[] cycleSymbols = new String[legs];
+      for (int i = 0; i < legs; i++) {
+        int from = path[i];
+        int to = i + 1 < legs ? path[i + 1] : source;
+        cycleAssets[i] = assets.get(from);
+        cycleSymbols[i] = registry.name(edgeSymbols[from * n + to]);
+      }
+      return new Cycle(cycleAssets, cycleSymbols, Math.exp(-weight));
+    }
+  }
+
+  private final class SearchTask extends RecursiveTask<List<Cycle>> {
+    private final int lo;
+    private final int hi;
+
+    private SearchTask(int lo, int hi) {
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected List<Cycle> compute() {
+      if (hi - lo <= SOURCES_PER_TASK) {
+        List<Cycle> cycles = new ArrayList<>();
+        Workspace w = new Workspace(n, maxLength);
+        for (int source = lo; source < hi; source++) {
+          w.search(source, cycles);
+        }
+        return cycles;
+      }
+      int mid = (lo + hi) >>> 1;
+      SearchTask left = new SearchTask(lo, mid);
+      left.fork();
+      List<Cycle> cycles = new SearchTask(mid, hi).compute();
+      cycles.addAll(left.join());
+      return cycles;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+
+/**
+ * Walks the books of a chain of trades level by level to find how much can be put in while every
+ * additional unit still returns more than a minimum rate.
+ *
+ * A leg either buys the base of its book with the quote at the asks or sells the base for the quote at the
+ * bids, and the fee is taken from what it receives. Each step consumes the largest amount the current level
+ * of every leg allows, so the walk takes at most the sum of the book depths steps. The result is kept in the
+ * evaluator, reuse one instance per thread to evaluate without allocation.
+ */
+class DepthEvaluator {
+
+  private static final double EPSILON = 1e-9;
+
+  private final double fee;
+  private final OrderBookSnapshot[] books;
+  private final boolean[] buys;
+  private final int[] levels;
+  private final double[] remaining;
+  private final double[] prices;
+  private final double[] capacities;
+
+  private double input;
+  private double output;
+
+  /**
+   * @param maxLegs longest chain evaluated.
+   * @param fee     multiplier of what a trade receives, e.g. 0.999 for 0.1% commission.
+   */
+  DepthEvaluator(int maxLegs, double fee) {
+    this.fee = fee;
+    this.books = new OrderBookSnapshot[maxLegs];
+    this.buys = new boolean[maxLegs];
+    this.levels = new int[maxLegs];
+    this.remaining = new double[maxLegs];
+    this.prices = new double[maxLegs];
+    this.capacities = new double[maxLegs];
+  }
+
+  /**
+   * Buy source and middle at the asks, sell last at the bids, e.g. USDT -> BTC -> XXX -> USDT.
+   * @return the amount of the quote of source that can be put in, 0 if none.
+   */
+  double evaluateClockwise(OrderBookSnapshot source, OrderBookSnapshot middle, OrderBookSnapshot last,
+                           double minRate, double maxInput) {
+    leg(0, source, true);
+    leg(1, middle, true);
+    leg(2, last, false);
+    return evaluate(3, minRate, maxInput);
+  }
+
+  /**
+   * Buy last at the asks, sell middle and source at the bids, e.g. USDT -> XXX -> BTC -> USDT.
+   * @return the amount of the quote of last that can be put in, 0 if none.
+   */
+  double evaluateReverse(OrderBookSnapshot source, OrderBookSnapshot middle, OrderBookSnapshot last,
+                         double minRate, double maxInput) {
+    leg(0, last, true);
+    leg(1, middle, false);
+    leg(2, source, false);
+    return evaluate(3, minRate, maxInput);
+  }
+
+  /**
+   * Set leg i of the chain evaluated by {@link #evaluate}.
+   */
+  void leg(int i, OrderBookSnapshot book, boolean buy) {
+    books[i] = book;
+    buys[i] = buy;
+  }
+
+  /**
+   * Walk the first {@code legs} legs.
+   * @param minRate  stop at the first level where one more unit returns no more than this rate.
+   * @param maxInput stop when this much is put in.
+   * @return the amount put in the first leg, 0 if none.
+   */
+  double evaluate(int legs, double minRate, double maxInput) {
+    input = 0;
+    output = 0;
+    for (int i = 0; i < legs; i++) {
+      levels[i] = 0;
+      if (!load(i)) {
+        return 0;
+      }
+    }
+    while (input < maxInput) {
+      // rate of the chain at the current levels and the most each level takes, in units of the input
+      double rate = 1;
+      double step = maxInput - input;
+      for (int i = 0; i < legs; i++) {
+        double price = prices[i];
+        // what leg i takes per unit of input is the rate so far
+        double capacity = (buys[i] ? remaining[i] * price : remaining[i]) / rate;
+        capacities[i] = capacity;
+        if (capacity < step) {
+          step = capacity;
+        }
+        rate *= (buys[i] ? 1 / price : price) * fee;
+      }
+      if (rate <= minRate) {
+        break;
+      }
+      input += step;
+      output += step * rate;
+      double in = step;
+      boolean exhausted = false;
+      for (int i = 0; i < legs; i++) {
+        double price = prices[i];
+        // remaining is in the base of the book
+        double base = buys[i] ? in / price : in;
+        remaining[i] -= base;
+        if (capacities[i] - step <= capacities[i] * EPSILON) {
+          levels[i]++;
+          if (!load(i)) {
+            exhausted = true;
+          }
+        }
+        in = (buys[i] ? base : in * price) * fee;
+      }
+      if (exhausted) {
+        break;
+      }
+    }
+    return input;
+  }
+
+  /**
+   * @return the amount put in by the last evaluation.
+   */
+  double getInput() {
+    return input;
+  }
+
+  /**
+   * @return the amount received at the end of the chain by the last evaluation.
+   */
+  double getOutput() {
+    return output;
+  }
+
+  /**
+   * @return output per unit of input of the last evaluation, the volume weighted rate of the whole chain.
+   */
+  double getRate() {
+    return input > 0 ? output / input : 0;
+  }
+
+  private boolean load(int i) {
+    OrderBookSnapshot book = books[i];
+    int level = levels[i];
+    if (buys[i]) {
+      if (level >= book.askCount()) {
+        return false;
+      }
+      prices[i] = book.askPrice(level);
+      remaining[i] = book.askQty(level);
+    } else {
+      if (level >= book.bidCount()) {
+        return false;
+      }
+      prices[i] = book.bidPrice(level);
+      remaining[i] = book.bidQty(level);
+    }
+    return true;
+  }
+}
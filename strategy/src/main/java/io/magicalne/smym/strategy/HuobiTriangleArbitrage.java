@@ -1,16 +1,23 @@
 package io.magicalne.smym.strategy;
 
+import io.magicalne.smym.decimal.Price;
+import io.magicalne.smym.decimal.Qty;
 import io.magicalne.smym.dto.*;
+import io.magicalne.smym.event.BookEventDispatcher;
 import io.magicalne.smym.exception.BuyFailureException;
 import io.magicalne.smym.exception.OrderPlaceException;
 import io.magicalne.smym.exception.SellFailureException;
 import io.magicalne.smym.exchanges.HuobiExchange;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.symbol.SymbolRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -19,24 +26,36 @@ public class HuobiTriangleArbitrage {
     private static final double COMMISSION = 0.998;
     private static final double TRIPLE_COMMISSION = COMMISSION*COMMISSION*COMMISSION;
     private static final String PARTIAL_CANCELED = "partial-canceled";
-    private static final String CANCELED = "canceled";
     private static final String PARTIAL_FILLED = "partial-filled";
+    private static final String CANCELED = "canceled";
     private static final String FILLED = "filled";
     private static final double UPPER_BOUND = 1.005;
     private static final double BUY_SLIPPAGE = 1;
     private static final double SELL_SLIPPAGE = 1;
+    private static final int MAX_CYCLE_LENGTH = 4;
+    private static final long SYMBOL_REFRESH_MINUTES = 30;
 
     private final HuobiExchange exchange;
     private List<Triangular> btcusdtPairList;
     private List<Triangular> ethusdtPairList;
     private List<Triangular> htusdtPairList;
-    private final Map<String, Symbol> symbolMap = new HashMap<>();
+    // source, middle and last symbol id of every triangle of the pair lists
+    private int[] btcusdtPairIds;
+    private int[] ethusdtPairIds;
+    private SymbolRegistry symbolRegistry;
+    private Set<String> symbols;
 
     private final List<String> cannotTradeBaseCurrency = Collections.singletonList("vet");
     private final String accountId;
     private String usdt;
     private String btc;
     private String eth;
+    private final OrderBookSnapshot sourceBook = new OrderBookSnapshot();
+    private final OrderBookSnapshot middleBook = new OrderBookSnapshot();
+    private final OrderBookSnapshot lastBook = new OrderBookSnapshot();
+    private final OrderBookSnapshot book = new OrderBookSnapshot();
+    private final DepthEvaluator evaluator = new DepthEvaluator(3, COMMISSION);
+    private CurrencyGraph graph;
 
 
     public HuobiTriangleArbitrage(String accountId, String accessKey, String secretKey) {
@@ -46,15 +65,14 @@ public class HuobiTriangleArbitrage {
 
     public void init() {
         List<Symbol> symbols = this.exchange.getSymbolInfo();
+        this.symbolRegistry = this.exchange.getSymbolRegistry();
+        this.graph = new CurrencyGraph(COMMISSION, MAX_CYCLE_LENGTH, UPPER_BOUND, this.symbolRegistry);
+        this.exchange.refreshSymbols(SYMBOL_REFRESH_MINUTES, TimeUnit.MINUTES);
         List<Integer> tobeDeletedIndexList = new ArrayList<>(cannotTradeBaseCurrency.size());
         for (int i = 0; i < symbols.size(); i ++) {
             Symbol s = symbols.get(i);
-            String baseCurrency = s.getBaseCurrency();
-            String symbol = s.getSymbol();
-            if (cannotTradeBaseCurrency.contains(baseCurrency)) {
+            if (cannotTradeBaseCurrency.contains(s.getBaseCurrency())) {
                 tobeDeletedIndexList.add(i);
-            } else {
-                symbolMap.put(symbol, s);
             }
         }
         for (int i = tobeDeletedIndexList.size()-1; i >= 0; i --) {
@@ -71,9 +89,9 @@ public class HuobiTriangleArbitrage {
 //        List<Symbol> htGrp = quoteGroup.get("ht");
 
         //usdt with btc
-        List<Triangular> btcusdtPairList = new LinkedList<>();
+        List<Triangular> btcusdtPairList = new ArrayList<>();
         String btcusdt = "btcusdt";
-        List<Triangular> ethusdtPairList = new LinkedList<>();
+        List<Triangular> ethusdtPairList = new ArrayList<>();
         String ethusdt = "ethusdt";
         List<Triangular> htusdtPairList = new LinkedList<>();
         String htusdt = "htusdt";
@@ -113,6 +131,8 @@ public class HuobiTriangleArbitrage {
             symbolSet.add(t.getLast());
         });
         this.ethusdtPairList = ethusdtPairList;
+        this.btcusdtPairIds = symbolIds(btcusdtPairList);
+        this.ethusdtPairIds = symbolIds(ethusdtPairList);
 //        htusdtPairList.forEach(t -> {
 //            symbolSet.add(t.getSource());
 //            symbolSet.add(t.getMiddle());
@@ -120,9 +140,38 @@ public class HuobiTriangleArbitrage {
 //        });
 //        this.htusdtPairList = htusdtPairList;
 
+        Set<String> currencies = new HashSet<>();
+        for (Symbol s : symbols) {
+            if (symbolSet.contains(s.getSymbol())) {
+                currencies.add(s.getBaseCurrency());
+                currencies.add(s.getQuoteCurrency());
+            }
+        }
+        for (Symbol s : symbols) {
+            if (currencies.contains(s.getBaseCurrency()) && currencies.contains(s.getQuoteCurrency())) {
+                this.graph.addSymbol(this.symbolRegistry.require(s.getSymbol()));
+            }
+        }
+        // only the triangles are traded, wait for their orders on pushes
+        this.exchange.subscribeOrderUpdates(new HashSet<>(symbolSet));
+        symbolSet.addAll(this.graph.symbols());
+
+        this.symbols = symbolSet;
+        exchange.setMarketDataBus(Strategy.recordMarketData());
         exchange.createOrderBook(symbolSet, 5);
     }
 
+    private int[] symbolIds(List<Triangular> pairList) {
+        int[] ids = new int[pairList.size() * 3];
+        int i = 0;
+        for (Triangular t : pairList) {
+            ids[i++] = this.symbolRegistry.id(t.getSource());
+            ids[i++] = this.symbolRegistry.id(t.getMiddle());
+            ids[i++] = this.symbolRegistry.id(t.getLast());
+        }
+        return ids;
+    }
+
     private void initCapital() {
         String newUSDT = getCapitalFromBalance("usdt");
         String newBTC = getCapitalFromBalance("btc");
@@ -151,13 +200,32 @@ public class HuobiTriangleArbitrage {
 
     private void run() {
         initCapital();
-        for (;;) {
-            findArbitrage(this.btcusdtPairList, "btc");
-            findArbitrage(this.ethusdtPairList, "eth");
+        BookEventDispatcher dispatcher =
+                new BookEventDispatcher(this.symbols, this.symbolRegistry::require, this::onBookUpdate);
+        this.exchange.setBookUpdateListener(dispatcher);
+        dispatcher.run();
+    }
+
+    private void onBookUpdate(int id) {
+        findArbitrage(this.btcusdtPairList, this.btcusdtPairIds, "btc", id);
+        findArbitrage(this.ethusdtPairList, this.ethusdtPairIds, "eth", id);
+        findCycles(id);
+    }
+
+    private void findCycles(int id) {
+        OrderBookSnapshot depth = this.exchange.readOrderBook(id, this.book);
+        if (depth == null) {
+            this.graph.update(id, 0, 0);
+            return;
+        }
+        this.graph.update(id, depth.bidCount() > 0 ? depth.bidPrice(0) : 0,
+                depth.askCount() > 0 ? depth.askPrice(0) : 0);
+        for (CurrencyGraph.Cycle cycle : this.graph.findCycles(id)) {
+            log.info("{} legs cycle: {}", cycle.length(), cycle);
         }
     }
 
-    private void findArbitrage(List<Triangular> pairList, String assetType) {
+    private void findArbitrage(List<Triangular> pairList, int[] pairIds, String assetType, int updated) {
         String assetQty;
         if ("btc".equals(assetType)) {
             assetQty = this.btc;
@@ -166,27 +234,31 @@ public class HuobiTriangleArbitrage {
         } else {
             throw new IllegalArgumentException("Wrong argument: baseType: " + assetType);
         }
-        for (Triangular triangular : pairList) {
+        for (int i = 0; i < pairIds.length; i += 3) {
+            int sourceId = pairIds[i];
+            int middleId = pairIds[i + 1];
+            int lastId = pairIds[i + 2];
+            if (updated != sourceId && updated != middleId && updated != lastId) {
+                continue;
+            }
+            Triangular triangular = pairList.get(i / 3);
             final int priceLevel = 0;
-            Depth sourceDepth = this.exchange.getOrderBook(triangular.getSource());
-            Depth middleDepth = this.exchange.getOrderBook(triangular.getMiddle());
-            Depth lastDepth = this.exchange.getOrderBook(triangular.getLast());
+            OrderBookSnapshot sourceDepth = this.exchange.readOrderBook(sourceId, this.sourceBook);
+            OrderBookSnapshot middleDepth = this.exchange.readOrderBook(middleId, this.middleBook);
+            OrderBookSnapshot lastDepth = this.exchange.readOrderBook(lastId, this.lastBook);
 
             if (sourceDepth == null || middleDepth == null || lastDepth == null) {
                 continue;
             }
             //clockwise
-            List<List<Double>> sourceDepthAsks = sourceDepth.getAsks();
-            List<List<Double>> middleDepthAsks = middleDepth.getAsks();
-            List<List<Double>> lastDepthBids = lastDepth.getBids();
-            if (sourceDepthAsks.size() < priceLevel+1 ||
-                    middleDepthAsks.size() < priceLevel+1 ||
-                    lastDepthBids.size() < priceLevel+1) {
+            if (sourceDepth.askCount() < priceLevel+1 ||
+                    middleDepth.askCount() < priceLevel+1 ||
+                    lastDepth.bidCount() < priceLevel+1) {
                 continue;
             }
-            double source = sourceDepthAsks.get(priceLevel).get(0) * BUY_SLIPPAGE;
-            double middle = middleDepthAsks.get(priceLevel).get(0) * BUY_SLIPPAGE;
-            double last = lastDepthBids.get(priceLevel).get(0) * SELL_SLIPPAGE;
+            double source = sourceDepth.askPrice(priceLevel) * BUY_SLIPPAGE;
+            double middle = middleDepth.askPrice(priceLevel) * BUY_SLIPPAGE;
+            double last = lastDepth.bidPrice(priceLevel) * SELL_SLIPPAGE;
             double profit = getClockwise(source, middle, last);
             if (profit > UPPER_BOUND) {
                 log.info("Use {}st price in order book. Clockwise, {}: {} -> {}: {} -> {}: {}, profit: {}",
@@ -195,15 +267,21 @@ public class HuobiTriangleArbitrage {
                         triangular.getMiddle(), middle,
                         triangular.getLast(), last,
                         profit);
-                takeIt(triangular, source, middle, last, this.usdt, assetQty, assetType,true);
+                double executable = this.evaluator.evaluateClockwise(sourceDepth, middleDepth, lastDepth,
+                        UPPER_BOUND, Double.MAX_VALUE);
+                if (isExecutable(executable)) {
+                    takeIt(triangular, source, middle, last, this.usdt, assetQty, assetType,true);
+                }
             }
             //reverse clockwise
-            List<List<Double>> sourceDepthBids = sourceDepth.getBids();
-            List<List<Double>> middleDepthBids = middleDepth.getBids();
-            List<List<Double>> lastDepthAsks = lastDepth.getAsks();
-            source = sourceDepthBids.get(priceLevel).get(0) * SELL_SLIPPAGE;
-            middle = middleDepthBids.get(priceLevel).get(0) * SELL_SLIPPAGE;
-            last = lastDepthAsks.get(priceLevel).get(0) * BUY_SLIPPAGE;
+            if (sourceDepth.bidCount() < priceLevel+1 ||
+                    middleDepth.bidCount() < priceLevel+1 ||
+                    lastDepth.askCount() < priceLevel+1) {
+                continue;
+            }
+            source = sourceDepth.bidPrice(priceLevel) * SELL_SLIPPAGE;
+            middle = middleDepth.bidPrice(priceLevel) * SELL_SLIPPAGE;
+            last = lastDepth.askPrice(priceLevel) * BUY_SLIPPAGE;
             profit = getReverse(source, middle, last);
             if (profit > UPPER_BOUND) {
                 log.info("Use {}st price in order book. Reverse Clockwise, {}: {} -> {}: {} -> {}: {}, profit: {}",
@@ -212,11 +290,28 @@ public class HuobiTriangleArbitrage {
                         triangular.getMiddle(), middle,
                         triangular.getSource(), source,
                         profit);
-                takeIt(triangular, source, middle, last, this.usdt, assetQty, assetType,false);
+                double executable = this.evaluator.evaluateReverse(sourceDepth, middleDepth, lastDepth,
+                        UPPER_BOUND, Double.MAX_VALUE);
+                if (isExecutable(executable)) {
+                    takeIt(triangular, source, middle, last, this.usdt, assetQty, assetType,false);
+                }
             }
         }
     }
 
+    /**
+     * @param executable usdt the books take before the cycle stops clearing the bound.
+     */
+    private boolean isExecutable(double executable) {
+        double capital = Double.parseDouble(this.usdt);
+        if (executable < capital) {
+            log.info("Only {} of {} usdt executable, vwap profit: {}, skip.",
+                    executable, capital, this.evaluator.getRate());
+            return false;
+        }
+        return true;
+    }
+
     public void takeIt(Triangular triangular, double sourcePrice, double middlePrice, double lastPrice,
                         String usdt, String assetQty, String assetType, boolean clockwise) {
 
@@ -230,80 +325,90 @@ public class HuobiTriangleArbitrage {
 
     private void reverseArbitrage(Triangular triangular, double sourcePrice, double middlePrice, double lastPrice,
                                   String usdt, String base, String baseType, int tenMin) {
-        CompletableFuture<TradeInfo> buyBase = CompletableFuture
-                .supplyAsync(() -> {
-                    TradeInfo tradeInfo = firstRoundBuy(triangular.getLast(), lastPrice, usdt, false);
-                    return sell(triangular.getMiddle(), middlePrice, tradeInfo.getQty(), tenMin);
-                });
-
-        CompletableFuture<TradeInfo> getSpreed = CompletableFuture
-                .supplyAsync(() -> sell(triangular.getSource(), sourcePrice, new BigDecimal(base), tenMin));
-        for (; ; ) {
-            if (buyBase.isDone() && getSpreed.isDone()) {
-                if (buyBase.isCompletedExceptionally() && getSpreed.isCompletedExceptionally()) {
-                    log.info("Both failed, so give up.");
-                    return;
-                } else if (buyBase.isCompletedExceptionally()) {
-                    log.info("Buy base failed, buy it now.");
-
-                    Triangular pair = findBestPairToBase(baseType);
-                    String source = pair.getSource();
-                    if (source != null) {
-                        Double p = this.exchange.getBestAsk(source).get(0);
-                        firstRoundBuy(source, p, usdt, true);
-                    } else {
-                        String pl = pair.getLast();
-                        Double plPrice = this.exchange.getBestAsk(pl).get(0);
-                        String pm = pair.getMiddle();
-                        Double pmPrice = this.exchange.getBestBid(pm).get(0);
-                        TradeInfo tradeInfo = firstRoundBuy(pl, plPrice, usdt, true);
-                        sell(pm, pmPrice, tradeInfo.getQty(), tenMin);
-                    }
-                } else if (getSpreed.isCompletedExceptionally()) {
-                    sell(triangular.getSource(), sourcePrice, new BigDecimal(base), tenMin);
-                }
-                initCapital();
-                return;
+        CompletableFuture<TradeInfo> buyBase = firstRoundBuyAsync(triangular.getLast(), lastPrice, usdt, false)
+                .thenCompose(tradeInfo -> sellAsync(triangular.getMiddle(), middlePrice, tradeInfo.getQty(), tenMin));
+
+        CompletableFuture<TradeInfo> getSpreed =
+                sellAsync(triangular.getSource(), sourcePrice, toQty(triangular.getSource(), base), tenMin);
+        awaitQuietly(buyBase, getSpreed);
+        if (buyBase.isCompletedExceptionally() && getSpreed.isCompletedExceptionally()) {
+            log.info("Both failed, so give up.");
+            return;
+        } else if (buyBase.isCompletedExceptionally()) {
+            log.info("Buy base failed, buy it now.");
+
+            Triangular pair = findBestPairToBase(baseType);
+            String source = pair.getSource();
+            if (source != null) {
+                double p = this.exchange.getBestAskPrice(source);
+                firstRoundBuy(source, p, usdt, true);
+            } else {
+                String pl = pair.getLast();
+                double plPrice = this.exchange.getBestAskPrice(pl);
+                String pm = pair.getMiddle();
+                double pmPrice = this.exchange.getBestBidPrice(pm);
+                TradeInfo tradeInfo = firstRoundBuy(pl, plPrice, usdt, true);
+                sell(pm, pmPrice, tradeInfo.getQty(), tenMin);
             }
+        } else if (getSpreed.isCompletedExceptionally()) {
+            sell(triangular.getSource(), sourcePrice, toQty(triangular.getSource(), base), tenMin);
         }
+        initCapital();
+        return;
     }
 
     private void clockwiseArbitrage(Triangular triangular, double sourcePrice, double middlePrice, double lastPrice,
                                     String usdt, String base, String baseType, int timeout) {
-        CompletableFuture<TradeInfo> buyBase = CompletableFuture
-                .supplyAsync(() -> firstRoundBuy(triangular.getSource(), sourcePrice, usdt, false));
-
-        CompletableFuture<TradeInfo> getSpreed = CompletableFuture
-                .supplyAsync(() -> {
-                    TradeInfo middleTradeInfo = firstRoundBuy(triangular.getMiddle(), middlePrice, base, false);
-                    return sell(triangular.getLast(), lastPrice, middleTradeInfo.getQty(), timeout);
-                });
-        for (;;) {
-            if (buyBase.isDone() && getSpreed.isDone()) {
-                if (buyBase.isCompletedExceptionally() && getSpreed.isCompletedExceptionally()) {
-                    log.info("Both failed, so give up.");
-                } else if (buyBase.isCompletedExceptionally()) {
-                    log.info("Buy btcusdt failed, buy it now.");
-                    firstRoundBuy(triangular.getSource(), sourcePrice, usdt, true);
-                } else if (getSpreed.isCompletedExceptionally()) {
-                    Triangular pair = findBestPairToUsdt(baseType);
-                    log.info("Buy alt coin failed, try again with new pair: {}.", pair);
-                    String source = pair.getSource();
-                    if (source != null) {
-                        Double p = this.exchange.getBestBid(source).get(0);
-                        sell(source, p, new BigDecimal(base), timeout);
-                    } else {
-                        String pm = pair.getMiddle();
-                        Double pmPrice = this.exchange.getBestAsk(pm).get(0);
-                        String pl = pair.getLast();
-                        Double plPrice = this.exchange.getBestBid(pl).get(0);
-                        TradeInfo middleTradeInfo = firstRoundBuy(pm, pmPrice, base, true);
-                        sell(pl, plPrice, middleTradeInfo.getQty(), timeout);
-                    }
-                }
-                initCapital();
-                return;
+        CompletableFuture<TradeInfo> buyBase = firstRoundBuyAsync(triangular.getSource(), sourcePrice, usdt, false);
+
+        CompletableFuture<TradeInfo> getSpreed = firstRoundBuyAsync(triangular.getMiddle(), middlePrice, base, false)
+                .thenCompose(middleTradeInfo -> sellAsync(triangular.getLast(), lastPrice, middleTradeInfo.getQty(),
+                        timeout));
+        awaitQuietly(buyBase, getSpreed);
+        if (buyBase.isCompletedExceptionally() && getSpreed.isCompletedExceptionally()) {
+            log.info("Both failed, so give up.");
+        } else if (buyBase.isCompletedExceptionally()) {
+            log.info("Buy btcusdt failed, buy it now.");
+            firstRoundBuy(triangular.getSource(), sourcePrice, usdt, true);
+        } else if (getSpreed.isCompletedExceptionally()) {
+            Triangular pair = findBestPairToUsdt(baseType);
+            log.info("Buy alt coin failed, try again with new pair: {}.", pair);
+            String source = pair.getSource();
+            if (source != null) {
+                double p = this.exchange.getBestBidPrice(source);
+                sell(source, p, toQty(source, base), timeout);
+            } else {
+                String pm = pair.getMiddle();
+                double pmPrice = this.exchange.getBestAskPrice(pm);
+                String pl = pair.getLast();
+                double plPrice = this.exchange.getBestBidPrice(pl);
+                TradeInfo middleTradeInfo = firstRoundBuy(pm, pmPrice, base, true);
+                sell(pl, plPrice, middleTradeInfo.getQty(), timeout);
+            }
+        }
+        initCapital();
+        return;
+    }
+
+    private static void awaitQuietly(CompletableFuture<?>... futures) {
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException | CancellationException ignore) {
+            // the caller checks which one failed
+        }
+    }
+
+    /**
+     * Wait for a leg on the calling thread and rethrow its failure unwrapped.
+     */
+    private static <T> T join(CompletableFuture<T> leg) {
+        try {
+            return leg.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
         }
     }
 
@@ -321,22 +426,19 @@ public class HuobiTriangleArbitrage {
         for (Triangular p : tList) {
             String middle = p.getMiddle();
             String last = p.getLast();
-            List<Double> bestAsk = this.exchange.getBestAsk(middle);
-            List<Double> bestBid = this.exchange.getBestBid(last);
-            if (bestAsk == null || bestBid == null) {
+            double middlePrice = this.exchange.getBestAskPrice(middle);
+            double lastPrice = this.exchange.getBestBidPrice(last);
+            if (middlePrice < 0 || lastPrice < 0) {
                 continue;
             }
-            Double middlePrice = bestAsk.get(0);
-            Double lastPrice = bestBid.get(0);
             double btcusdtPrice = lastPrice / middlePrice;
             if (btcusdtPrice > max) {
                 max = btcusdtPrice;
                 bestPair = p;
             }
         }
-        List<Double> btcusdt = this.exchange.getBestBid("btcusdt");
-        if (btcusdt != null) {
-            Double price = btcusdt.get(0);
+        double price = this.exchange.getBestBidPrice("btcusdt");
+        if (price > 0) {
             if (price < max*COMMISSION) {
                 return new Triangular("btcusdt", null, null);
             }
@@ -359,13 +461,11 @@ public class HuobiTriangleArbitrage {
         for (Triangular p : tList) {
             String last = p.getLast();
             String middle = p.getMiddle();
-            List<Double> bestBid = this.exchange.getBestBid(last);
-            List<Double> bestAsk = this.exchange.getBestAsk(middle);
-            if (bestAsk == null || bestBid == null) {
+            double lastPrice = this.exchange.getBestBidPrice(last);
+            double middlePrice = this.exchange.getBestAskPrice(middle);
+            if (middlePrice < 0 || lastPrice < 0) {
                 continue;
             }
-            Double lastPrice = bestBid.get(0);
-            Double middlePrice = bestAsk.get(0);
             double rate = lastPrice / middlePrice;
             if (rate < min) {
                 min = rate;
@@ -373,9 +473,8 @@ public class HuobiTriangleArbitrage {
             }
         }
         String symbol = base + "usdt";
-        List<Double> baseAsk = this.exchange.getBestAsk(symbol);
-        if (baseAsk != null) {
-            Double price = baseAsk.get(0);
+        double price = this.exchange.getBestAskPrice(symbol);
+        if (price > 0) {
             if (price > min*COMMISSION) {
                 return new Triangular(symbol, null, null);
             }
@@ -384,84 +483,67 @@ public class HuobiTriangleArbitrage {
     }
 
     private TradeInfo firstRoundBuy(String symbol, double price, String quoteQty, boolean force) {
-        Symbol symbolInfo = this.symbolMap.get(symbol);
-        int basePrecision = symbolInfo.getAmountPrecision();
-        int quotePrecision = symbolInfo.getPricePrecision();
-        BigDecimal p = new BigDecimal(price).setScale(quotePrecision, RoundingMode.HALF_EVEN);
-        int biggerPrecision = basePrecision > quotePrecision ? basePrecision : quotePrecision;
-        BigDecimal q = new BigDecimal(quoteQty).setScale(biggerPrecision, RoundingMode.DOWN);
-        BigDecimal qty = q.divide(p, RoundingMode.DOWN).setScale(basePrecision, RoundingMode.DOWN);
+        return join(firstRoundBuyAsync(symbol, price, quoteQty, force));
+    }
 
-        String qtyStr = qty.toPlainString();
-        String priceStr = p.toPlainString();
-        OrderPlaceResponse res = this.exchange.limitBuy(symbol, qtyStr, priceStr);
-        if (res.checkStatusOK()) {
-            String orderId = res.getData();
-            long record = System.currentTimeMillis();
-            OrderDetail detail;
-            for (;;) {
-                detail = this.exchange.queryOrder(orderId);
-                String state = detail.getState();
-                if (FILLED.equals(state) || PARTIAL_FILLED.equals(state)) {
-                    break;
-                }
-                if (System.currentTimeMillis() - record > 5000) {
-                    detail = this.exchange.cancel(orderId);
-                    break;
-                }
-                try {
-                    TimeUnit.MILLISECONDS.sleep(150);
-                } catch (InterruptedException e) {
-                    log.error("Interrupted exception.", e);
-                }
+    /**
+     * Buy with a limit order and cancel the rest of it once it is partial-filled, or if nothing is filled after 5s.
+     * Every step is chained on the futures of the exchange so no thread blocks while the order is placed and filled.
+     * @param force market buy for the whole quoteQty if nothing is filled.
+     */
+    private CompletableFuture<TradeInfo> firstRoundBuyAsync(String symbol, double price, String quoteQty,
+                                                            boolean force) {
+        int id = this.symbolRegistry.require(symbol);
+        int basePrecision = this.symbolRegistry.qtyPrecision(id);
+        int quotePrecision = this.symbolRegistry.pricePrecision(id);
+        Price p = Price.fromDouble(price, quotePrecision, RoundingMode.HALF_EVEN);
+        int biggerPrecision = basePrecision > quotePrecision ? basePrecision : quotePrecision;
+        Qty q = Qty.parse(quoteQty, biggerPrecision, RoundingMode.DOWN);
+        Qty qty = q.divide(p, basePrecision, RoundingMode.DOWN);
+
+        String qtyStr = qty.toString();
+        String priceStr = p.toString();
+        return this.exchange.limitBuyAsync(symbol, qtyStr, priceStr).thenCompose(res -> {
+            if (!res.checkStatusOK()) {
+                throw new BuyFailureException(symbol, priceStr, qtyStr, res.toString());
             }
+            String orderId = res.getData();
+            return this.exchange.awaitFillAsync(orderId, 5000).thenCompose(
+                    detail -> detail == null || PARTIAL_FILLED.equals(detail.getState())
+                            ? this.exchange.cancelAsync(orderId) : CompletableFuture.completedFuture(detail));
+        }).thenCompose(detail -> {
             if (FILLED.equals(detail.getState()) || PARTIAL_CANCELED.equals(detail.getState())) {
-                return getTradeInfoFromOrder(detail, basePrecision, quotePrecision, true);
+                return CompletableFuture.completedFuture(detail);
             }
             if (force) {
-                OrderDetail marketBuy = this.exchange.marketBuy(symbol, qtyStr);
-                return getTradeInfoFromOrder(marketBuy, basePrecision, quotePrecision, true);
+                return this.exchange.marketBuyAsync(symbol, quoteQty);
             }
-        }
-        throw new BuyFailureException(symbol, priceStr, qtyStr, res.toString());
+            throw new BuyFailureException(symbol, priceStr, qtyStr, detail.getState());
+        }).thenApply(detail -> getTradeInfoFromOrder(detail, basePrecision, quotePrecision, true));
     }
 
-    private TradeInfo secondRoundBuy(String symbol, double price, BigDecimal quoteQty) throws InterruptedException {
-        Symbol symbolInfo = this.symbolMap.get(symbol);
-        int basePrecision = symbolInfo.getAmountPrecision();
-        int quotePrecision = symbolInfo.getPricePrecision();
+    private TradeInfo secondRoundBuy(String symbol, double price, Qty quoteQty) {
+        int id = this.symbolRegistry.require(symbol);
+        int basePrecision = this.symbolRegistry.qtyPrecision(id);
+        int quotePrecision = this.symbolRegistry.pricePrecision(id);
         int biggerPrecision = basePrecision > quotePrecision ? basePrecision : quotePrecision;
-        BigDecimal p = new BigDecimal(price).setScale(quotePrecision, RoundingMode.HALF_EVEN);
-        BigDecimal qty = quoteQty
+        Price p = Price.fromDouble(price, quotePrecision, RoundingMode.HALF_EVEN);
+        Qty qty = quoteQty
                 .setScale(biggerPrecision, RoundingMode.DOWN)
-                .divide(p, RoundingMode.DOWN)
-                .setScale(basePrecision, RoundingMode.DOWN);
+                .divide(p, basePrecision, RoundingMode.DOWN);
 
-        String qtyStr = qty.toPlainString();
-        String priceStr = p.toPlainString();
+        String qtyStr = qty.toString();
+        String priceStr = p.toString();
         OrderPlaceResponse res = this.exchange.limitBuy(symbol, qtyStr, priceStr);
         if (res.checkStatusOK()) {
             String orderId = res.getData();
-            long record = System.currentTimeMillis();
-            OrderDetail detail;
-            for (;;) {
-                detail = this.exchange.queryOrder(orderId);
-                String state = detail.getState();
-                if (FILLED.equals(state)) {
-                    break;
-                }
-                if (System.currentTimeMillis() - record > 10000) {
-                    double newBid = getTopBidPriceFromOrderBook(symbol);
-                    if (newBid > 0 && newBid*BUY_SLIPPAGE > price){
-                        detail = this.exchange.cancel(orderId);
-                        break;
-                    } else { //price has advantage, so wait more time
-                        if (System.currentTimeMillis() - record > 100) {
-                            detail = this.exchange.cancel(orderId);
-                            break;
-                        }
-                    }
-                    TimeUnit.MILLISECONDS.sleep(200);
+            OrderDetail detail = this.exchange.awaitOrder(orderId, 10000);
+            while (detail == null) {
+                double newBid = this.exchange.getBestBidPrice(symbol);
+                if (newBid > 0 && newBid*BUY_SLIPPAGE > price) {
+                    detail = this.exchange.cancel(orderId);
+                } else { //price has advantage, so wait more time
+                    detail = this.exchange.awaitOrder(orderId, 200);
                 }
             }
             String state = detail.getState();
@@ -469,100 +551,99 @@ public class HuobiTriangleArbitrage {
                 return getTradeInfoFromOrder(detail, basePrecision, quotePrecision, true);
             } else if (CANCELED.equals(state)) {
                 //market buy
-                OrderDetail marketBuy = this.exchange.marketBuy(symbol, quoteQty.toPlainString());
+                OrderDetail marketBuy = this.exchange.marketBuy(symbol, quoteQty.toString());
                 return getTradeInfoFromOrder(marketBuy, basePrecision, quotePrecision, true);
             } else if (PARTIAL_CANCELED.equals(state)) {
                 TradeInfo filledTradeInfo = getTradeInfoFromOrder(detail, basePrecision, quotePrecision, true);
-                BigDecimal filledBaseQty = filledTradeInfo.getQty();
-                BigDecimal partQuoteQty = new BigDecimal(detail.getFieldCashAmount())
-                        .setScale(quotePrecision, RoundingMode.UP);
-                BigDecimal leftQuoteQty = quoteQty.subtract(partQuoteQty);
+                Qty filledBaseQty = filledTradeInfo.getQty();
+                Qty partQuoteQty = Qty.parse(detail.getFieldCashAmount(), quotePrecision, RoundingMode.UP);
+                Qty leftQuoteQty = quoteQty.subtract(partQuoteQty);
                 //market buy
-                OrderDetail marketBuy = this.exchange.marketBuy(symbol, leftQuoteQty.toPlainString());
+                OrderDetail marketBuy = this.exchange.marketBuy(symbol, leftQuoteQty.toString());
                 TradeInfo marketBuyTradeInfo = getTradeInfoFromOrder(marketBuy, basePrecision, quotePrecision, true);
-                BigDecimal marketBuyBaseQty = new BigDecimal(marketBuy.getFieldAmount())
-                        .setScale(basePrecision, RoundingMode.DOWN);
-                BigDecimal totalBaseQty = filledBaseQty.add(marketBuyBaseQty);
+                Qty marketBuyBaseQty = Qty.parse(marketBuy.getFieldAmount(), basePrecision, RoundingMode.DOWN);
+                Qty totalBaseQty = filledBaseQty.add(marketBuyBaseQty);
                 marketBuyTradeInfo.setQty(totalBaseQty);
-                BigDecimal finalPrice = quoteQty
+                Price finalPrice = quoteQty
                         .setScale(biggerPrecision, RoundingMode.DOWN)
-                        .divide(totalBaseQty, RoundingMode.DOWN)
+                        .divide(totalBaseQty, biggerPrecision, RoundingMode.DOWN)
                         .setScale(quotePrecision, RoundingMode.UP);
                 marketBuyTradeInfo.setPrice(finalPrice);
                 return marketBuyTradeInfo;
             }
         } else {
             log.error("Failed to buy. symbol: {}, qty: {} @price: {}, res: {}", symbol, qtyStr, priceStr, res);
-//            return secondRoundBuy(symbol, price, quoteQty);
         }
         throw new OrderPlaceException(res.toString());
     }
 
-    private TradeInfo sell(String symbol, double price, BigDecimal baseQty, long timeout) {
-        Symbol symbolInfo = this.symbolMap.get(symbol);
-        int basePrecision = symbolInfo.getAmountPrecision();
-        int quotePrecision = symbolInfo.getPricePrecision();
-        BigDecimal p = new BigDecimal(price).setScale(quotePrecision, RoundingMode.HALF_EVEN);
-        String baseQtyStr = baseQty.setScale(basePrecision, RoundingMode.DOWN).toPlainString();
-        String priceStr = p.toPlainString();
-        OrderPlaceResponse res = this.exchange.limitSell(symbol, baseQtyStr, priceStr);
-        if (res.checkStatusOK()) {
+    private TradeInfo sell(String symbol, double price, Qty baseQty, long timeout) {
+        return join(sellAsync(symbol, price, baseQty, timeout));
+    }
+
+    /**
+     * Sell with a limit order and market sell if it is not filled within timeout, chained like
+     * {@link #firstRoundBuyAsync(String, double, String, boolean)}.
+     */
+    private CompletableFuture<TradeInfo> sellAsync(String symbol, double price, Qty baseQty, long timeout) {
+        int id = this.symbolRegistry.require(symbol);
+        int basePrecision = this.symbolRegistry.qtyPrecision(id);
+        int quotePrecision = this.symbolRegistry.pricePrecision(id);
+        String baseQtyStr = baseQty.setScale(basePrecision, RoundingMode.DOWN).toString();
+        String priceStr = Price.fromDouble(price, quotePrecision, RoundingMode.HALF_EVEN).toString();
+        return this.exchange.limitSellAsync(symbol, baseQtyStr, priceStr).thenCompose(res -> {
+            if (!res.checkStatusOK()) {
+                throw new SellFailureException(symbol, priceStr, baseQtyStr, res.toString());
+            }
             String orderId = res.getData();
-            long start = System.currentTimeMillis();
-            for (;;) {
-                OrderDetail detail = this.exchange.queryOrder(orderId);
-                String state = detail.getState();
-                if (FILLED.equals(state)) {
-                    return getTradeInfoFromOrder(detail, basePrecision, quotePrecision, false);
+            return this.exchange.awaitOrderAsync(orderId, timeout).thenCompose(detail -> {
+                if (detail != null && FILLED.equals(detail.getState())) {
+                    return CompletableFuture.completedFuture(
+                            getTradeInfoFromOrder(detail, basePrecision, quotePrecision, false));
                 }
-                try {
-                    TimeUnit.SECONDS.sleep(1);
-                } catch (InterruptedException e) {
-                    throw new SellFailureException(e);
-                }
-                if (System.currentTimeMillis() - start > timeout) {
-                    break;
-                }
-            }
-            OrderDetail cancel = this.exchange.cancel(orderId);
-            BigDecimal soldQty = null;
-            if (PARTIAL_CANCELED.equals(cancel.getState())) {
-                BigDecimal partialBase = new BigDecimal(cancel.getFieldAmount())
-                        .setScale(basePrecision, RoundingMode.DOWN);
-                baseQty = baseQty.subtract(partialBase);
-                soldQty = getQuoteQtyFromOrder(cancel, quotePrecision, RoundingMode.DOWN);
-            }
-            OrderDetail marketSell = this.exchange.marketSell(symbol, baseQtyStr);
-            BigDecimal marketSellQuoteQty = getQuoteQtyFromOrder(marketSell, quotePrecision, RoundingMode.DOWN);
-            TradeInfo tradeInfo = new TradeInfo();
-            if (soldQty != null) {
-                BigDecimal totalQuoteQty = marketSellQuoteQty.add(soldQty);
-                BigDecimal finalPrice = totalQuoteQty.divide(baseQty, RoundingMode.DOWN)
-                        .setScale(quotePrecision, RoundingMode.DOWN);
-                tradeInfo.setPrice(finalPrice);
-                tradeInfo.setQty(totalQuoteQty);
-            } else {
-                tradeInfo.setPrice(new BigDecimal(marketSell.getPrice()).setScale(quotePrecision, RoundingMode.DOWN));
-                tradeInfo.setQty(marketSellQuoteQty);
-            }
-            return tradeInfo;
+                CompletableFuture<OrderDetail> cancel = detail == null
+                        ? this.exchange.cancelAsync(orderId) : CompletableFuture.completedFuture(detail);
+                return cancel.thenCompose(canceled -> this.exchange.marketSellAsync(symbol, baseQtyStr)
+                        .thenApply(marketSell -> marketSellTradeInfo(canceled, marketSell, baseQty, basePrecision,
+                                quotePrecision)));
+            });
+        });
+    }
+
+    private TradeInfo marketSellTradeInfo(OrderDetail cancel, OrderDetail marketSell, Qty baseQty,
+                                          int basePrecision, int quotePrecision) {
+        Qty soldQty = null;
+        if (PARTIAL_CANCELED.equals(cancel.getState())) {
+            Qty partialBase = Qty.parse(cancel.getFieldAmount(), basePrecision, RoundingMode.DOWN);
+            baseQty = baseQty.subtract(partialBase);
+            soldQty = getQuoteQtyFromOrder(cancel, quotePrecision, RoundingMode.DOWN);
+        }
+        Qty marketSellQuoteQty = getQuoteQtyFromOrder(marketSell, quotePrecision, RoundingMode.DOWN);
+        TradeInfo tradeInfo = new TradeInfo();
+        if (soldQty != null) {
+            Qty totalQuoteQty = marketSellQuoteQty.add(soldQty);
+            Price finalPrice = totalQuoteQty.divide(baseQty, quotePrecision, RoundingMode.DOWN);
+            tradeInfo.setPrice(finalPrice);
+            tradeInfo.setQty(totalQuoteQty);
+        } else {
+            tradeInfo.setPrice(Price.parse(marketSell.getPrice(), quotePrecision, RoundingMode.DOWN));
+            tradeInfo.setQty(marketSellQuoteQty);
         }
-        throw new SellFailureException(symbol, priceStr, baseQtyStr, res.toString());
+        return tradeInfo;
     }
 
     private TradeInfo getTradeInfoFromOrder(OrderDetail detail, int basePrecision, int quotePrecision, boolean isBuy) {
-        BigDecimal quotePrice = new BigDecimal(detail.getPrice())
-                .setScale(quotePrecision, RoundingMode.UP);
+        Price quotePrice = Price.parse(detail.getPrice(), quotePrecision, RoundingMode.UP);
         TradeInfo tradeInfo = new TradeInfo();
         tradeInfo.setPrice(quotePrice);
-        BigDecimal totalQty;
+        Qty totalQty;
         if (isBuy) {
-            BigDecimal baseQty = new BigDecimal(detail.getFieldAmount()).setScale(basePrecision, RoundingMode.DOWN);
-            BigDecimal fee = new BigDecimal(detail.getFieldFees()).setScale(basePrecision, RoundingMode.UP);
+            Qty baseQty = Qty.parse(detail.getFieldAmount(), basePrecision, RoundingMode.DOWN);
+            Qty fee = Qty.parse(detail.getFieldFees(), basePrecision, RoundingMode.UP);
             totalQty = baseQty.subtract(fee);
         } else {
-            BigDecimal quoteQty = getQuoteQtyFromOrder(detail, quotePrecision, RoundingMode.DOWN);
-            BigDecimal fee = new BigDecimal(detail.getFieldFees()).setScale(quotePrecision, RoundingMode.UP);
+            Qty quoteQty = getQuoteQtyFromOrder(detail, quotePrecision, RoundingMode.DOWN);
+            Qty fee = Qty.parse(detail.getFieldFees(), quotePrecision, RoundingMode.UP);
             totalQty = quoteQty.subtract(fee);
         }
         tradeInfo.setQty(totalQty);
@@ -570,21 +651,22 @@ public class HuobiTriangleArbitrage {
         return tradeInfo;
     }
 
-    private BigDecimal getQuoteQtyFromOrder(OrderDetail detail, int quotePrecision, RoundingMode mode) {
-        BigDecimal quote = new BigDecimal(detail.getFieldCashAmount())
-                .setScale(quotePrecision, mode);
-        BigDecimal fees = new BigDecimal(detail.getFieldFees())
-                .setScale(quotePrecision, mode);
+    private Qty getQuoteQtyFromOrder(OrderDetail detail, int quotePrecision, RoundingMode mode) {
+        Qty quote = Qty.parse(detail.getFieldCashAmount(), quotePrecision, mode);
+        Qty fees = Qty.parse(detail.getFieldFees(), quotePrecision, mode);
         return quote.subtract(fees);
     }
 
+    private Qty toQty(String symbol, String baseQty) {
+        return Qty.parse(baseQty, this.symbolRegistry.qtyPrecision(this.symbolRegistry.require(symbol)), RoundingMode.DOWN);
+    }
+
     private int getAskPriceLevelFromOrderBook(String symbol, double price) {
-        Depth orderBook = this.exchange.getOrderBook(symbol);
-        List<List<Double>> asks = orderBook.getAsks();
-        if (asks != null && !asks.isEmpty()) {
+        OrderBookSnapshot orderBook = this.exchange.readOrderBook(symbol, new OrderBookSnapshot());
+        if (orderBook != null && orderBook.askCount() > 0) {
             int i = 0;
-            for (; i < asks.size(); i ++) {
-                Double p = asks.get(i).get(0);
+            for (; i < orderBook.askCount(); i ++) {
+                double p = orderBook.askPrice(i);
                 if (price > p) {
                     return i;
                 }
@@ -595,12 +677,11 @@ public class HuobiTriangleArbitrage {
     }
 
     private int getBidPriceLevelFromOrderBook(String symbol, double price) {
-        Depth orderBook = this.exchange.getOrderBook(symbol);
-        List<List<Double>> bids = orderBook.getBids();
-        if (bids != null && !bids.isEmpty()) {
+        OrderBookSnapshot orderBook = this.exchange.readOrderBook(symbol, new OrderBookSnapshot());
+        if (orderBook != null && orderBook.bidCount() > 0) {
             int i = 0;
-            for (; i < bids.size(); i ++) {
-                Double p = bids.get(i).get(0);
+            for (; i < orderBook.bidCount(); i ++) {
+                double p = orderBook.bidPrice(i);
                 if (price < p) {
                     return i;
                 }
@@ -610,22 +691,11 @@ public class HuobiTriangleArbitrage {
         return -1;
     }
 
-    private double getTopBidPriceFromOrderBook(String symbol) {
-        Depth orderBook = this.exchange.getOrderBook(symbol);
-        List<List<Double>> bids = orderBook.getBids();
-        if (bids != null && !bids.isEmpty()) {
-            return bids.get(0).get(0);
-        } else {
-            return -1;
-        }
-    }
-
     private double getMeanBidBetweenPriceLevel(String symbol, int lvl1, int lvl2) {
-        Depth orderBook = this.exchange.getOrderBook(symbol);
-        List<List<Double>> bids = orderBook.getBids();
-        if (bids.size() > lvl2) {
-            Double p1 = bids.get(lvl1).get(0);
-            Double p2 = bids.get(lvl2).get(0);
+        OrderBookSnapshot orderBook = this.exchange.readOrderBook(symbol, new OrderBookSnapshot());
+        if (orderBook != null && orderBook.bidCount() > lvl2) {
+            double p1 = orderBook.bidPrice(lvl1);
+            double p2 = orderBook.bidPrice(lvl2);
             return (p1+p2)/2;
         } else {
             return -1;
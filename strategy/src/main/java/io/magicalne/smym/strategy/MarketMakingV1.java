@@ -1,24 +1,32 @@
 package io.magicalne.smym.strategy;
 
+import com.binance.api.client.BinanceApiRestClient;
 import com.binance.api.client.domain.OrderStatus;
 import com.binance.api.client.domain.TimeInForce;
 import com.binance.api.client.domain.account.AssetBalance;
+import com.binance.api.client.domain.account.NewOrder;
 import com.binance.api.client.domain.account.NewOrderResponse;
 import com.binance.api.client.domain.account.Order;
 import com.binance.api.client.domain.market.OrderBookEntry;
 import com.binance.api.client.exception.BinanceApiException;
 import com.google.common.base.Preconditions;
+import io.magicalne.smym.decimal.Decimals;
+import io.magicalne.smym.decimal.Qty;
 import io.magicalne.smym.dto.GridTradeConfig;
 import io.magicalne.smym.dto.MarketMakingConfig;
 import io.magicalne.smym.exchanges.BinanceExchange;
+import io.magicalne.smym.replay.ReplayEngine;
+import io.magicalne.smym.symbol.SymbolRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -26,37 +34,95 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
 
+  // how often the grids look for filled orders
+  private static final long CHECK_PERIOD_MILLIS = 1000;
+
   private final BinanceExchange exchange;
   private final List<GridTrading> gridTradings;
+  // null unless the books are replayed
+  private final ReplayEngine replayEngine;
 
   public MarketMakingV1(String accessId, String secretKey, String path) throws IOException {
     this.exchange = new BinanceExchange(accessId, secretKey);
+    this.exchange.setMarketDataBus(recordMarketData());
+    this.replayEngine = null;
     MarketMakingConfig config = readYaml(path, MarketMakingConfig.class);
     gridTradings = init(config);
   }
 
+  /**
+   * Trade the grids through the rest client against the books of the replay instead, see {@link #replay()}.
+   * @param restClient e.g. a {@link io.magicalne.smym.exchanges.replay.SimulatedBinanceClient} of the replay.
+   */
+  public MarketMakingV1(MarketMakingConfig config, BinanceApiRestClient restClient, ReplayEngine replayEngine) {
+    this.exchange = new BinanceExchange(restClient, replayEngine);
+    this.replayEngine = replayEngine;
+    gridTradings = init(config);
+  }
+
   public void execute() throws InterruptedException {
+    placeGrids();
+    for (;;) {
+      checkFilledOrders();
+      Thread.sleep(CHECK_PERIOD_MILLIS);
+    }
+  }
+
+  /**
+   * Place the grids once every symbol has a mid price and check them every second of virtual time until the
+   * recorded books run out. The calling thread is the replay thread.
+   * @return the number of replayed updates.
+   */
+  public long replay() throws IOException {
+    Preconditions.checkState(replayEngine != null, "Not created for a replay.");
+    while (!hasMidPrices()) {
+      if (!replayEngine.step()) {
+        log.info("The replay ended before every symbol had a book.");
+        return replayEngine.getUpdateCount();
+      }
+    }
+    placeGrids();
+    replayEngine.schedule(TimeUnit.MILLISECONDS.toNanos(CHECK_PERIOD_MILLIS), this::checkFilledOrders);
+    long updates = replayEngine.run();
+    for (GridTrading gridTrading : gridTradings) {
+      log.info("Replayed {} updates, profit of {}: {}", updates, gridTrading.symbol, gridTrading.profit);
+    }
+    return updates;
+  }
+
+  private boolean hasMidPrices() {
+    for (GridTrading gridTrading : gridTradings) {
+      if (exchange.getMidPriceFromOrderBook(gridTrading.symbol) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void placeGrids() {
     log.info("Grid trading config: {}", gridTradings);
+    //The order pipeline paces the orders of all grids against the rate limits of the account.
+    List<CompletableFuture<Void>> placing = new ArrayList<>(gridTradings.size());
     for (GridTrading gridTrading : gridTradings) {
       try {
-        gridTrading.placeOrdersInGrid();
+        placing.add(gridTrading.placeOrdersInGrid());
       } catch (BinanceApiException e) {
         log.error("Binance api exception: ", e);
       }
-      Thread.sleep(1000); //In case of "Too many new orders; current limit is 10 orders per SECOND".
     }
+    CompletableFuture.allOf(placing.toArray(new CompletableFuture[0])).join();
+  }
 
-    for (;;) {
-      for (GridTrading gridTrading : gridTradings) {
-        try {
-          gridTrading.checkFilledOrder();
-        } catch (Exception e) {
-          log.error("Some exception happened during trading.", e);
-        }
+  private void checkFilledOrders() {
+    for (GridTrading gridTrading : gridTradings) {
+      try {
+        gridTrading.checkFilledOrder();
+      } catch (Exception e) {
+        log.error("Some exception happened during trading.", e);
       }
-      Thread.sleep(1000);
     }
   }
+
   private List<GridTrading> init(MarketMakingConfig config) {
     List<GridTradeConfig> grids = config.getGrids();
     String errMsg = "There is no grid trading config!";
@@ -73,9 +139,10 @@ public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
     private final BinanceExchange exchange;
     private final String symbol;
     private final String qtyUnit;
-    private final BigDecimal gridRate;
+    private final double gridRate;
     private final int gridSize;
     private final int pricePrecision;
+    private final int qtyPrecision;
 
     private final LinkedList<NewOrderResponse> bids = new LinkedList<>();
     private final LinkedList<NewOrderResponse> asks = new LinkedList<>();
@@ -88,10 +155,13 @@ public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
       this.exchange = exchange;
       this.symbol = config.getSymbol();
       this.qtyUnit = config.getQtyUnit();
-      this.gridRate = new BigDecimal(config.getGridRate());
+      this.gridRate = Double.parseDouble(config.getGridRate());
       this.gridSize = config.getGridSize();
       this.stopLoss = config.getStopLoss();
-      this.pricePrecision = this.exchange.getPricePrecision(symbol);
+      SymbolRegistry registry = this.exchange.getSymbolRegistry();
+      int id = registry.require(symbol);
+      this.pricePrecision = registry.pricePrecision(id);
+      this.qtyPrecision = registry.qtyPrecision(id);
     }
 
     private void checkBidOrderFilled() {
@@ -117,11 +187,11 @@ public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
               firstAsk = asks.getFirst();
             }
             //add new ask order based on existed lowest ask price(header) to the head
-            BigDecimal newPrice = new BigDecimal(firstAsk.getPrice()).divide(gridRate, RoundingMode.HALF_EVEN)
-              .setScale(pricePrecision, RoundingMode.HALF_EVEN);
+            long firstPrice = Decimals.parseScaled(firstAsk.getPrice(), pricePrecision, RoundingMode.HALF_EVEN);
+            String newPrice = Decimals.format(Decimals.divideRate(firstPrice, gridRate, RoundingMode.HALF_EVEN),
+              pricePrecision);
             try {
-              NewOrderResponse newOrder =
-                this.exchange.limitSell(symbol, TimeInForce.GTC, qtyUnit, newPrice.toPlainString());
+              NewOrderResponse newOrder = this.exchange.limitSell(symbol, TimeInForce.GTC, qtyUnit, newPrice);
               asks.addFirst(newOrder);
             } catch (BinanceApiException e) {
               log.error("Cannot place ask order due to: ", e);
@@ -155,11 +225,11 @@ public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
               //add new bid order based on existed highest bid price(header) to the head
               firstBid = bids.getFirst();
             }
-            BigDecimal newPrice = new BigDecimal(firstBid.getPrice()).multiply(gridRate)
-              .setScale(pricePrecision, RoundingMode.HALF_EVEN);
+            long firstPrice = Decimals.parseScaled(firstBid.getPrice(), pricePrecision, RoundingMode.HALF_EVEN);
+            String newPrice = Decimals.format(Decimals.multiplyRate(firstPrice, gridRate, RoundingMode.HALF_EVEN),
+              pricePrecision);
             try {
-              NewOrderResponse newOrder =
-                this.exchange.limitBuy(symbol, TimeInForce.GTC, qtyUnit, newPrice.toPlainString());
+              NewOrderResponse newOrder = this.exchange.limitBuy(symbol, TimeInForce.GTC, qtyUnit, newPrice);
               bids.addFirst(newOrder);
             } catch (BinanceApiException e) {
               log.error("Cannot place order due to: ", e);
@@ -172,7 +242,7 @@ public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
 
     private void checkFilledOrder() {
       if (bids.isEmpty() && asks.isEmpty()) {
-        placeOrdersInGrid();
+        placeOrdersInGrid().join();
       } else {
         if (!bids.isEmpty()) {
           checkBidOrderFilled();
@@ -184,23 +254,30 @@ public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
       }
     }
 
-    private void placeOrdersInGrid() {
+    /**
+     * Submit the bid and ask orders of the grid in one batch each.
+     * @return completes when all orders got a response, the accepted ones are in bids and asks by then.
+     */
+    private CompletableFuture<Void> placeOrdersInGrid() {
       if (stopTrading) {
         log.info("Stop trading for {}", symbol);
-        return;
+        return CompletableFuture.completedFuture(null);
       }
       log.info("Placing orders for {}", symbol);
       double mp = this.exchange.getMidPriceFromOrderBook(symbol);
       if (mp < 0) {
         throw new RuntimeException("Middle price of " + symbol + " is " + mp);
       }
-      placeBidOrders(mp);
-      placeAskOrders(mp);
-
-      log.info("Place bid orders:");
-      logBidsInfo();
-      log.info("Place ask orders:");
-      logAsksInfo();
+      CompletableFuture<List<NewOrderResponse>> placedBids = this.exchange.placeOrders(bidOrders(mp));
+      CompletableFuture<List<NewOrderResponse>> placedAsks = this.exchange.placeOrders(askOrders(mp));
+      return placedBids.thenAcceptBoth(placedAsks, (placedBidList, placedAskList) -> {
+        bids.addAll(placedBidList);
+        asks.addAll(placedAskList);
+        log.info("Place bid orders:");
+        logBidsInfo();
+        log.info("Place ask orders:");
+        logAsksInfo();
+      });
     }
 
     private void logAsksInfo() {
@@ -213,29 +290,24 @@ public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
         log.info("order id: {}, status: {}, price: {}", bid.getOrderId(), bid.getStatus(), bid.getPrice()));
     }
 
-    private void placeAskOrders(double midPrice) {
-      BigDecimal p = new BigDecimal(midPrice).setScale(pricePrecision, RoundingMode.HALF_EVEN);
-      p = p.multiply(gridRate).setScale(pricePrecision, RoundingMode.HALF_EVEN);
-      NewOrderResponse order = this.exchange.limitSell(symbol, TimeInForce.GTC, qtyUnit, p.toPlainString());
-      asks.add(order);
-      for (int i = 0; i < gridSize - 1; i ++) {
-        p = p.multiply(gridRate).setScale(pricePrecision, RoundingMode.HALF_EVEN);
-        order = this.exchange.limitSell(symbol, TimeInForce.GTC, qtyUnit, p.toPlainString());
-        asks.add(order);
+    private List<NewOrder> askOrders(double midPrice) {
+      List<NewOrder> orders = new ArrayList<>(gridSize);
+      long p = Decimals.fromDouble(midPrice, pricePrecision, RoundingMode.HALF_EVEN);
+      for (int i = 0; i < gridSize; i ++) {
+        p = Decimals.multiplyRate(p, gridRate, RoundingMode.HALF_EVEN);
+        orders.add(NewOrder.limitSell(symbol, TimeInForce.GTC, qtyUnit, Decimals.format(p, pricePrecision)));
       }
+      return orders;
     }
 
-    private void placeBidOrders(double midPrice) {
-      //place buy orders
-      BigDecimal p = new BigDecimal(midPrice).setScale(pricePrecision, RoundingMode.HALF_EVEN);
-      p = p.divide(gridRate, RoundingMode.HALF_EVEN).setScale(pricePrecision, RoundingMode.HALF_EVEN);
-      NewOrderResponse order = this.exchange.limitBuy(symbol, TimeInForce.GTC, qtyUnit, p.toPlainString());
-      bids.add(order);
-      for (int i = 0; i < gridSize - 1; i ++) {
-        p = p.divide(gridRate, RoundingMode.HALF_EVEN).setScale(pricePrecision, RoundingMode.HALF_EVEN);
-        order = this.exchange.limitBuy(symbol, TimeInForce.GTC, qtyUnit, p.toPlainString());
-        bids.add(order);
+    private List<NewOrder> bidOrders(double midPrice) {
+      List<NewOrder> orders = new ArrayList<>(gridSize);
+      long p = Decimals.fromDouble(midPrice, pricePrecision, RoundingMode.HALF_EVEN);
+      for (int i = 0; i < gridSize; i ++) {
+        p = Decimals.divideRate(p, gridRate, RoundingMode.HALF_EVEN);
+        orders.add(NewOrder.limitBuy(symbol, TimeInForce.GTC, qtyUnit, Decimals.format(p, pricePrecision)));
       }
+      return orders;
     }
 
     private void stopLoss() {
@@ -252,9 +324,8 @@ public class MarketMakingV1 extends Strategy<MarketMakingConfig> {
             this.exchange.tryCancelOrder(symbol, orderId);
           }
           AssetBalance balance = this.exchange.getBalance(symbol);
-          int qtyPrecision = this.exchange.getQtyPrecision(symbol);
-          BigDecimal qty = new BigDecimal(balance.getFree()).setScale(qtyPrecision, RoundingMode.HALF_EVEN);
-          NewOrderResponse marketSell = this.exchange.marketSell(symbol, qty.toPlainString());
+          Qty qty = Qty.parse(balance.getFree(), qtyPrecision, RoundingMode.HALF_EVEN);
+          NewOrderResponse marketSell = this.exchange.marketSell(symbol, qty.toString());
           log.info("STOP LOSS: {} with {}", symbol, stopLoss);
           profit -= Double.parseDouble(marketSell.getExecutedQty());
           log.info("Profit left: {}", profit);
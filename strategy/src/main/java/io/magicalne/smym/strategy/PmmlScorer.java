@@ -0,0 +1,172 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.strategy.pmml.EvaluatorModel;
+import io.magicalne.smym.strategy.pmml.FeatureModel;
+import io.magicalne.smym.strategy.pmml.ModelCompiler;
+import lombok.extern.slf4j.Slf4j;
+import org.dmg.pmml.PMML;
+import org.jpmml.evaluator.ModelEvaluatorFactory;
+
+import java.io.Closeable;
+
+/**
+ * Scores the features of {@link BookFeatureExtractor} with a PMML model on its own thread.
+ *
+ * {@link #load(PMML, String)} compiles the model to bytecode when {@link ModelCompiler} supports it and
+ * falls back to the JPMML evaluator otherwise. The trading thread hands features over with
+ * {@link #offer(double[])}, which copies them and returns. The scorer thread always scores the latest
+ * offered features, features offered while it was busy are skipped, and publishes the result for
+ * {@link #latest()}.
+ */
+@Slf4j
+class PmmlScorer implements Closeable {
+
+  /**
+   * Result of the model for one offer.
+   */
+  static final class Prediction {
+    private final Object result;
+    private final long sequence;
+    private final long latencyNanos;
+
+    private Prediction(Object result, long sequence, long latencyNanos) {
+      this.result = result;
+      this.sequence = sequence;
+      this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * @return decoded value of the target field, e.g. the predicted category.
+     */
+    Object getResult() {
+      return result;
+    }
+
+    /**
+     * @return number of the offer the prediction was made for, starting at 1.
+     */
+    long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return nanos from the offer of the features to the publication of the prediction.
+     */
+    long getLatencyNanos() {
+      return latencyNanos;
+    }
+  }
+
+  private final FeatureModel model;
+  private final String threadName;
+
+  // handoff from the trading thread, guarded by this
+  private final double[] offered = new double[BookFeatureExtractor.size()];
+  private long offeredSequence = 0;
+  private long offeredAt;
+  private final double[] scoring = new double[BookFeatureExtractor.size()];
+
+  private volatile Prediction latest;
+  private volatile boolean running = true;
+  private Thread scorer;
+
+  PmmlScorer(FeatureModel model, String threadName) {
+    this.model = model;
+    this.threadName = threadName;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the model uses a field that is not a feature of the book.
+   */
+  static PmmlScorer load(PMML pmml, String threadName) {
+    FeatureModel model;
+    try {
+      model = ModelCompiler.compile(pmml, BookFeatureExtractor::indexOf);
+    } catch (IllegalArgumentException | LinkageError e) {
+      // a LinkageError, e.g. a VerifyError, is bytecode the compiler got wrong
+      log.warn("Cannot compile PMML model, fall back to the evaluator: {}", e.toString());
+      model = new EvaluatorModel(ModelEvaluatorFactory.newInstance().newModelEvaluator(pmml),
+        BookFeatureExtractor::indexOf);
+    }
+    return new PmmlScorer(model, threadName);
+  }
+
+  /**
+   * Start the scorer thread.
+   */
+  synchronized void start() {
+    if (scorer != null) {
+      return;
+    }
+    scorer = new Thread(this::run, threadName);
+    scorer.setDaemon(true);
+    scorer.start();
+  }
+
+  /**
+   * Hand the features over to the scorer thread, it replaces features that were not scored yet.
+   */
+  void offer(double[] features) {
+    long now = System.nanoTime();
+    synchronized (this) {
+      System.arraycopy(features, 0, offered, 0, offered.length);
+      offeredSequence++;
+      offeredAt = now;
+      notifyAll();
+    }
+  }
+
+  /**
+   * @return the prediction for the most recent features scored, null before the first one.
+   */
+  Prediction latest() {
+    return latest;
+  }
+
+  /**
+   * Score the features on the calling thread. Only one thread may call it, the scorer thread once started.
+   * @return decoded value of the target field.
+   */
+  Object score(double[] features) {
+    return model.score(features);
+  }
+
+  private void run() {
+    long scored = 0;
+    while (running) {
+      long sequence;
+      long at;
+      synchronized (this) {
+        while (running && offeredSequence == scored) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+        if (!running) {
+          return;
+        }
+        System.arraycopy(offered, 0, scoring, 0, scoring.length);
+        sequence = offeredSequence;
+        at = offeredAt;
+      }
+      scored = sequence;
+      try {
+        Object result = score(scoring);
+        latest = new Prediction(result, sequence, System.nanoTime() - at);
+      } catch (Exception e) {
+        log.error("Cannot score features of offer {}", sequence, e);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      running = false;
+      notifyAll();
+    }
+  }
+}
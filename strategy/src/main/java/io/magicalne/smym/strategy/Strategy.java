@@ -2,14 +2,52 @@ package io.magicalne.smym.strategy;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.magicalne.smym.marketdata.MarketDataBus;
+import io.magicalne.smym.marketdata.MarketDataRecorder;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 
+@Slf4j
 abstract class Strategy<T> {
 
+  // directory of the market data journal, nothing is recorded without it
+  private static final String JOURNAL_ENV = "MARKET_DATA_JOURNAL";
+  private static final int JOURNAL_BUS_CAPACITY = 1 << 16;
+
   protected T readYaml(String path, Class<T> clazz) throws IOException {
     ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
     return mapper.readValue(new File(path), clazz);
   }
+
+  /**
+   * Record the books of the exchanges into daily journal files of the directory named by the
+   * MARKET_DATA_JOURNAL environment variable, see {@link MarketDataRecorder}.
+   * @return the bus to hand to the exchanges before their books are created, null if nothing is recorded.
+   */
+  static MarketDataBus recordMarketData() {
+    String dir = System.getenv(JOURNAL_ENV);
+    if (dir == null || dir.isEmpty()) {
+      return null;
+    }
+    MarketDataBus bus = new MarketDataBus(JOURNAL_BUS_CAPACITY);
+    MarketDataRecorder recorder;
+    try {
+      recorder = new MarketDataRecorder(bus, Paths.get(dir));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot record market data into " + dir, e);
+    }
+    recorder.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        recorder.close();
+      } catch (IOException e) {
+        log.error("Cannot close the market data journal.", e);
+      }
+    }, "market-data-recorder-close"));
+    return bus;
+  }
 }
@@ -0,0 +1,163 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.dto.Triangular;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.symbol.SymbolRegistry;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Incremental scanner of triangles source -> middle -> last.
+ *
+ * It caches the best ask and the two best bid prices of every symbol as doubles and indexes the triangles by
+ * the symbols they contain, both in arrays indexed by the id of the symbol in the {@link SymbolRegistry}, so an
+ * update of one book only re-prices the triangles containing that symbol without hashing a String. As a cushion
+ * the leg sold at the bid is priced one level deep, so a triangle is reported when it still clears the threshold
+ * after the best bid is gone, and only if every side it trades has two levels. How much of it can be traded is
+ * up to the {@link DepthEvaluator}. Not thread safe, call it from the thread dispatching book updates.
+ */
+class TriangleScanner {
+
+  interface Listener {
+    /**
+     * @param clockwise true for buy source, buy middle, sell last; false for the reverse direction.
+     */
+    void onOpportunity(Triangle triangle, boolean clockwise, double source, double middle, double last,
+                       double profit);
+  }
+
+  /**
+   * A triangle with the ids of its symbols.
+   */
+  static final class Triangle {
+    final Triangular triangular;
+    final String assetType;
+    final int source;
+    final int middle;
+    final int last;
+
+    private Triangle(Triangular triangular, String assetType, int source, int middle, int last) {
+      this.triangular = triangular;
+      this.assetType = assetType;
+      this.source = source;
+      this.middle = middle;
+      this.last = last;
+    }
+  }
+
+  private static final Triangle[] NONE = new Triangle[0];
+
+  private final double commission;
+  private final double threshold;
+  private final SymbolRegistry registry;
+  private final Set<String> symbols = new LinkedHashSet<>();
+  // prices by symbol id, NaN for a side with less than two levels or an unknown book
+  private double[] bids = new double[0];
+  private double[] secondBids = new double[0];
+  private double[] asks = new double[0];
+  private Triangle[][] index = new Triangle[0][];
+
+  /**
+   * @param commission multiplier applied to the rate of a whole triangle, e.g. the fee of three trades.
+   * @param threshold  report triangles whose rate after commission is above it.
+   * @param registry   resolves the symbols of the triangles to ids.
+   */
+  TriangleScanner(double commission, double threshold, SymbolRegistry registry) {
+    this.commission = commission;
+    this.threshold = threshold;
+    this.registry = registry;
+  }
+
+  void add(Triangular triangular, String assetType) {
+    Triangle triangle = new Triangle(triangular, assetType, registry.require(triangular.getSource()),
+      registry.require(triangular.getMiddle()), registry.require(triangular.getLast()));
+    ensureCapacity(Math.max(triangle.source, Math.max(triangle.middle, triangle.last)) + 1);
+    link(triangle.source, triangle);
+    if (triangle.middle != triangle.source) {
+      link(triangle.middle, triangle);
+    }
+    if (triangle.last != triangle.source && triangle.last != triangle.middle) {
+      link(triangle.last, triangle);
+    }
+    symbols.add(triangular.getSource());
+    symbols.add(triangular.getMiddle());
+    symbols.add(triangular.getLast());
+  }
+
+  Set<String> symbols() {
+    return symbols;
+  }
+
+  int triangleCount(int symbolId) {
+    return symbolId < index.length ? index[symbolId].length : 0;
+  }
+
+  /**
+   * Refresh the cached prices of the symbol and re-price the triangles containing it.
+   * @param book the current book of the symbol or null if it is not available.
+   */
+  void onBookUpdate(int symbolId, OrderBookSnapshot book, Listener listener) {
+    if (symbolId < 0 || symbolId >= index.length || index[symbolId].length == 0) {
+      return;
+    }
+    if (book == null) {
+      bids[symbolId] = secondBids[symbolId] = asks[symbolId] = Double.NaN;
+      return;
+    }
+    boolean twoBids = book.bidCount() > 1;
+    bids[symbolId] = twoBids ? book.bidPrice(0) : Double.NaN;
+    secondBids[symbolId] = twoBids ? book.bidPrice(1) : Double.NaN;
+    asks[symbolId] = book.askCount() > 1 ? book.askPrice(0) : Double.NaN;
+    for (Triangle t : index[symbolId]) {
+      scan(t, listener);
+    }
+  }
+
+  private void scan(Triangle t, Listener listener) {
+    // buy source and middle at the ask, sell last at the second bid
+    double source = asks[t.source];
+    double middle = asks[t.middle];
+    double last = secondBids[t.last];
+    if (!Double.isNaN(source) && !Double.isNaN(middle) && !Double.isNaN(last)) {
+      double profit = last / (source * middle) * commission;
+      if (profit > threshold) {
+        listener.onOpportunity(t, true, source, middle, last, profit);
+      }
+    }
+
+    // buy last at the ask, sell middle at the second bid and source at the bid
+    source = bids[t.source];
+    middle = secondBids[t.middle];
+    last = asks[t.last];
+    if (!Double.isNaN(source) && !Double.isNaN(middle) && !Double.isNaN(last)) {
+      double profit = middle * source / last * commission;
+      if (profit > threshold) {
+        listener.onOpportunity(t, false, source, middle, last, profit);
+      }
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    int size = index.length;
+    if (capacity <= size) {
+      return;
+    }
+    bids = Arrays.copyOf(bids, capacity);
+    secondBids = Arrays.copyOf(secondBids, capacity);
+    asks = Arrays.copyOf(asks, capacity);
+    index = Arrays.copyOf(index, capacity);
+    Arrays.fill(bids, size, capacity, Double.NaN);
+    Arrays.fill(secondBids, size, capacity, Double.NaN);
+    Arrays.fill(asks, size, capacity, Double.NaN);
+    Arrays.fill(index, size, capacity, NONE);
+  }
+
+  private void link(int symbolId, Triangle triangle) {
+    Triangle[] current = index[symbolId];
+    Triangle[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = triangle;
+    index[symbolId] = updated;
+  }
+}
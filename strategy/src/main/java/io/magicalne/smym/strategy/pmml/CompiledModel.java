@@ -0,0 +1,100 @@
+package io.magicalne.smym.strategy.pmml;
+
+/**
+ * Base of the classes generated by {@link ModelClassWriter}. The generated score method evaluates the model
+ * with plain comparisons and arithmetic and calls these helpers to turn the numbers into a result. The
+ * generated class lives in its own class loader, so everything it uses here is protected.
+ *
+ * The votes are kept in a field to spare an allocation per score, so an instance must be used by one thread.
+ */
+public abstract class CompiledModel implements FeatureModel {
+
+  static final int ARGMAX = 0;
+  // binary classification where the second probability is 1 - the first
+  static final int BINARY = 1;
+  static final int BINARY_LOGIT = 2;
+
+  private final Object[] categories;
+  private final int decision;
+  private final double[] votes;
+
+  protected CompiledModel(Object[] categories, int decision) {
+    this.categories = categories;
+    this.decision = decision;
+    this.votes = new double[categories.length];
+  }
+
+  protected static Object regression(double value) {
+    return Double.isNaN(value) ? null : value;
+  }
+
+  protected static double logistic(double value) {
+    return 1 / (1 + Math.exp(-value));
+  }
+
+  /**
+   * @param index of the category, NaN for no prediction.
+   */
+  protected final Object category(double index) {
+    return Double.isNaN(index) ? null : categories[(int) index];
+  }
+
+  protected final void clearVotes() {
+    for (int i = 0; i < votes.length; i++) {
+      votes[i] = 0;
+    }
+  }
+
+  /**
+   * Add the weight to the category, a tree without prediction doesn't vote.
+   */
+  protected final void vote(double index, double weight) {
+    if (!Double.isNaN(index)) {
+      votes[(int) index] += weight;
+    }
+  }
+
+  /**
+   * Set the value of the regression table of the category.
+   */
+  protected final void put(int index, double value) {
+    votes[index] = value;
+  }
+
+  /**
+   * @return the category with the most votes, the first one on a tie, null if no tree voted.
+   */
+  protected final Object majority() {
+    int best = -1;
+    for (int i = 0; i < votes.length; i++) {
+      if (votes[i] > 0 && (best < 0 || votes[i] > votes[best])) {
+        best = i;
+      }
+    }
+    return best < 0 ? null : categories[best];
+  }
+
+  /**
+   * @return the category whose regression table has the highest value, the first one on a tie, null if a
+   * value is missing.
+   */
+  protected final Object winner() {
+    if (decision != ARGMAX) {
+      double first = decision == BINARY_LOGIT ? logistic(votes[0]) : votes[0];
+      if (Double.isNaN(first)) {
+        return null;
+      }
+      return categories[first >= 1 - first ? 0 : 1];
+    }
+    int best = -1;
+    for (int i = 0; i < votes.length; i++) {
+      if (Double.isNaN(votes[i])) {
+        return null;
+      }
+      if (best < 0 || votes[i] > votes[best]) {
+        best = i;
+      }
+    }
+    return best < 0 ? null : categories[best];
+  }
+}
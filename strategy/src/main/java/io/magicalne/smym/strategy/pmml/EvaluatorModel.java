@@ -0,0 +1,71 @@
+package io.magicalne.smym.strategy.pmml;
+
+import org.dmg.pmml.FieldName;
+import org.jpmml.evaluator.Evaluator;
+import org.jpmml.evaluator.EvaluatorUtil;
+import org.jpmml.evaluator.FieldValue;
+import org.jpmml.evaluator.InputField;
+import org.jpmml.evaluator.TargetField;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Scores a feature array with the JPMML evaluator, for the models {@link ModelCompiler} doesn't support.
+ *
+ * The active fields of the model are resolved to indices of the feature array once, at construction. The
+ * arguments map is reused across calls, and a field is only prepared again when its raw value changed, so
+ * unchanged levels of the book don't pay for it. An instance must be used by one thread.
+ */
+public final class EvaluatorModel implements FeatureModel {
+
+  private final Evaluator evaluator;
+  private final InputField[] fields;
+  private final FieldName[] names;
+  private final int[] indices;
+  private final double[] raw;
+  private boolean primed = false;
+  private final Map<FieldName, FieldValue> arguments;
+  private final FieldName target;
+
+  /**
+   * @param features index of a field in the feature array, negative if there is no such feature.
+   * @throws IllegalArgumentException if the model uses a field that is not a feature.
+   */
+  public EvaluatorModel(Evaluator evaluator, ToIntFunction<String> features) {
+    this.evaluator = evaluator;
+    List<InputField> activeFields = evaluator.getActiveFields();
+    int n = activeFields.size();
+    this.fields = activeFields.toArray(new InputField[n]);
+    this.names = new FieldName[n];
+    this.indices = new int[n];
+    this.raw = new double[n];
+    this.arguments = new LinkedHashMap<>(n * 2);
+    for (int i = 0; i < n; i++) {
+      names[i] = fields[i].getName();
+      indices[i] = features.applyAsInt(names[i].getValue());
+      if (indices[i] < 0) {
+        throw new IllegalArgumentException("Model field is not a feature: " + names[i].getValue());
+      }
+    }
+    List<TargetField> targetFields = evaluator.getTargetFields();
+    this.target = targetFields.isEmpty() ? null : targetFields.get(0).getName();
+  }
+
+  @Override
+  public Object score(double[] features) {
+    for (int i = 0; i < fields.length; i++) {
+      double value = features[indices[i]];
+      if (!primed || Double.compare(value, raw[i]) != 0) {
+        raw[i] = value;
+        // a NaN statistic, e.g. the skewness of a flat window, goes to the model as a missing value
+        arguments.put(names[i], fields[i].prepare(Double.isNaN(value) ? null : value));
+      }
+    }
+    primed = true;
+    Map<FieldName, ?> results = evaluator.evaluate(arguments);
+    return EvaluatorUtil.decode(results.get(target));
+  }
+}
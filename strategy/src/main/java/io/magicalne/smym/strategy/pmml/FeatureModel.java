@@ -0,0 +1,13 @@
+package io.magicalne.smym.strategy.pmml;
+
+/**
+ * A model scoring an array of features, missing features are NaN.
+ */
+public interface FeatureModel {
+
+  /**
+   * @return value of the target like the decoded result of the JPMML evaluator: a Double for regression, the
+   * category for classification, null for no prediction.
+   */
+  Object score(double[] features);
+}
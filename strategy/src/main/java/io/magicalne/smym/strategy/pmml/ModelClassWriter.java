@@ -0,0 +1,338 @@
+package io.magicalne.smym.strategy.pmml;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a subclass of {@link CompiledModel} for a {@link ModelSpec}.
+ *
+ * Every tree becomes a static method whose nodes are branches on the feature array, so scoring is a walk down
+ * compare and jump instructions the JIT compiles like hand written code. Regression tables become inline
+ * arithmetic. The score method combines the trees or tables with the helpers of {@link CompiledModel}.
+ * Each class is defined by its own class loader, which lets it be collected with its model.
+ */
+final class ModelClassWriter implements Opcodes {
+
+  private static final String BASE = "io/magicalne/smym/strategy/pmml/CompiledModel";
+  private static final String TREE_DESC = "([D)D";
+  private static final AtomicInteger COUNTER = new AtomicInteger();
+
+  private static final class Loader extends ClassLoader {
+    private Loader() {
+      super(CompiledModel.class.getClassLoader());
+    }
+
+    private Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  private final ModelSpec spec;
+  private final String name;
+
+  private ModelClassWriter(ModelSpec spec) {
+    this.spec = spec;
+    this.name = "io/magicalne/smym/strategy/pmml/GeneratedModel" + COUNTER.incrementAndGet();
+  }
+
+  /**
+   * @throws IllegalArgumentException if the spec cannot be generated, e.g. a tree is too large for a method.
+   */
+  static CompiledModel newInstance(ModelSpec spec) {
+    ModelClassWriter writer = new ModelClassWriter(spec);
+    byte[] bytes;
+    try {
+      bytes = writer.write();
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Cannot generate model class: " + e.getMessage(), e);
+    }
+    Class<?> type = new Loader().define(writer.name.replace('/', '.'), bytes);
+    try {
+      return (CompiledModel) type.getConstructor(Object[].class, int.class)
+        .newInstance(spec.categories, decision(spec));
+    } catch (InstantiationException | IllegalAccessException | NoSuchMethodException
+      | InvocationTargetException e) {
+      throw new IllegalStateException("Cannot instantiate generated model class", e);
+    }
+  }
+
+  private static int decision(ModelSpec spec) {
+    if (spec.function == ModelSpec.Function.CLASSIFICATION && !spec.tables.isEmpty()
+      && spec.categories.length == 2) {
+      if (spec.normalization == ModelSpec.Normalization.NONE) {
+        return CompiledModel.BINARY;
+      }
+      if (spec.normalization == ModelSpec.Normalization.LOGIT) {
+        return CompiledModel.BINARY_LOGIT;
+      }
+    }
+    return CompiledModel.ARGMAX;
+  }
+
+  byte[] write() {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, BASE, null);
+
+    MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;I)V", null, null);
+    init.visitCode();
+    init.visitVarInsn(ALOAD, 0);
+    init.visitVarInsn(ALOAD, 1);
+    init.visitVarInsn(ILOAD, 2);
+    init.visitMethodInsn(INVOKESPECIAL, BASE, "<init>", "([Ljava/lang/Object;I)V", false);
+    init.visitInsn(RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+
+    for (int i = 0; i < spec.trees.size(); i++) {
+      writeTree(cw, i, spec.trees.get(i));
+    }
+
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "score", "([D)Ljava/lang/Object;", null, null);
+    mv.visitCode();
+    if (spec.trees.isEmpty()) {
+      writeTables(mv);
+    } else {
+      writeCombine(mv);
+    }
+    mv.visitInsn(ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private void writeCombine(MethodVisitor mv) {
+    List<ModelSpec.Tree> trees = spec.trees;
+    switch (spec.combine) {
+      case SINGLE:
+        if (spec.function == ModelSpec.Function.REGRESSION) {
+          callTree(mv, 0);
+          mv.visitMethodInsn(INVOKESTATIC, BASE, "regression", "(D)Ljava/lang/Object;", false);
+        } else {
+          mv.visitVarInsn(ALOAD, 0);
+          callTree(mv, 0);
+          mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "category", "(D)Ljava/lang/Object;", false);
+        }
+        return;
+      case SUM:
+      case AVERAGE:
+      case WEIGHTED_AVERAGE:
+        double weights = 0;
+        mv.visitInsn(DCONST_0);
+        for (int i = 0; i < trees.size(); i++) {
+          callTree(mv, i);
+          if (spec.combine == ModelSpec.Combine.WEIGHTED_AVERAGE) {
+            mv.visitLdcInsn(trees.get(i).weight);
+            mv.visitInsn(DMUL);
+            weights += trees.get(i).weight;
+          }
+          mv.visitInsn(DADD);
+        }
+        if (spec.combine != ModelSpec.Combine.SUM) {
+          mv.visitLdcInsn(spec.combine == ModelSpec.Combine.AVERAGE ? (double) trees.size() : weights);
+          mv.visitInsn(DDIV);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, BASE, "regression", "(D)Ljava/lang/Object;", false);
+        return;
+      case MAJORITY_VOTE:
+      case WEIGHTED_MAJORITY_VOTE:
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "clearVotes", "()V", false);
+        for (int i = 0; i < trees.size(); i++) {
+          mv.visitVarInsn(ALOAD, 0);
+          callTree(mv, i);
+          mv.visitLdcInsn(spec.combine == ModelSpec.Combine.MAJORITY_VOTE ? 1.0 : trees.get(i).weight);
+          mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "vote", "(DD)V", false);
+        }
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "majority", "()Ljava/lang/Object;", false);
+        return;
+      default:
+        throw new IllegalArgumentException("Unsupported combination " + spec.combine);
+    }
+  }
+
+  private void callTree(MethodVisitor mv, int index) {
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitMethodInsn(INVOKESTATIC, name, "tree" + index, TREE_DESC, false);
+  }
+
+  private void writeTables(MethodVisitor mv) {
+    if (spec.function == ModelSpec.Function.REGRESSION) {
+      writeTable(mv, spec.tables.get(0));
+      switch (spec.normalization) {
+        case NONE:
+          break;
+        case EXP:
+          mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "exp", "(D)D", false);
+          break;
+        case LOGIT:
+          mv.visitMethodInsn(INVOKESTATIC, BASE, "logistic", "(D)D", false);
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported normalization " + spec.normalization);
+      }
+      mv.visitMethodInsn(INVOKESTATIC, BASE, "regression", "(D)Ljava/lang/Object;", false);
+      return;
+    }
+    // the normalizations kept for classification don't change which category is the highest
+    for (int i = 0; i < spec.tables.size(); i++) {
+      mv.visitVarInsn(ALOAD, 0);
+      push(mv, i);
+      writeTable(mv, spec.tables.get(i));
+      mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "put", "(ID)V", false);
+    }
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "winner", "()Ljava/lang/Object;", false);
+  }
+
+  private static void writeTable(MethodVisitor mv, ModelSpec.Table table) {
+    mv.visitLdcInsn(table.intercept);
+    for (int i = 0; i < table.features.length; i++) {
+      mv.visitVarInsn(ALOAD, 1);
+      push(mv, table.features[i]);
+      mv.visitInsn(DALOAD);
+      if (table.exponents[i] != 1) {
+        mv.visitLdcInsn(table.exponents[i]);
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", false);
+      }
+      mv.visitLdcInsn(table.coefficients[i]);
+      mv.visitInsn(DMUL);
+      mv.visitInsn(DADD);
+    }
+  }
+
+  private void writeTree(ClassWriter cw, int index, ModelSpec.Tree tree) {
+    MethodVisitor mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, "tree" + index, TREE_DESC, null, null);
+    mv.visitCode();
+    writeNode(mv, tree, tree.root, new IdentityHashMap<>());
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static Label label(Map<ModelSpec.Node, Label> labels, ModelSpec.Node node) {
+    return labels.computeIfAbsent(node, n -> new Label());
+  }
+
+  /**
+   * The children are tried in order, the first whose predicate is true is walked next. Local 1 holds the
+   * feature of the predicate being tested.
+   */
+  private static void writeNode(MethodVisitor mv, ModelSpec.Tree tree, ModelSpec.Node node,
+                                Map<ModelSpec.Node, Label> labels) {
+    mv.visitLabel(label(labels, node));
+    if (node.children.isEmpty()) {
+      returnScore(mv, node.score);
+      return;
+    }
+    Label unknown = null;
+    // score when a predicate compares a missing value and there is no default child to walk
+    double unknownScore = Double.NaN;
+    switch (tree.missing) {
+      case DEFAULT_CHILD:
+        unknown = node.defaultChild != null ? label(labels, node.defaultChild) : new Label();
+        break;
+      case LAST_PREDICTION:
+        unknown = new Label();
+        unknownScore = node.score;
+        break;
+      case NULL_PREDICTION:
+        unknown = new Label();
+        break;
+      default:
+    }
+    for (ModelSpec.Node child : node.children) {
+      Label next = new Label();
+      writePredicate(mv, child, label(labels, child), unknown == null ? next : unknown);
+      mv.visitLabel(next);
+    }
+    returnScore(mv, tree.lastPredictionOnNoTrueChild ? node.score : Double.NaN);
+    if (unknown != null && (tree.missing != ModelSpec.Missing.DEFAULT_CHILD || node.defaultChild == null)) {
+      mv.visitLabel(unknown);
+      returnScore(mv, unknownScore);
+    }
+    for (ModelSpec.Node child : node.children) {
+      writeNode(mv, tree, child, labels);
+    }
+  }
+
+  private static void writePredicate(MethodVisitor mv, ModelSpec.Node child, Label isTrue, Label isUnknown) {
+    switch (child.operator) {
+      case TRUE:
+        mv.visitJumpInsn(GOTO, isTrue);
+        return;
+      case FALSE:
+        return;
+      case IS_MISSING:
+      case IS_NOT_MISSING:
+        loadFeature(mv, child.feature);
+        mv.visitInsn(DUP2);
+        mv.visitInsn(DCMPL);
+        mv.visitJumpInsn(child.operator == ModelSpec.Operator.IS_MISSING ? IFNE : IFEQ, isTrue);
+        return;
+      default:
+        loadFeature(mv, child.feature);
+        mv.visitVarInsn(DSTORE, 1);
+        // only NaN differs from itself
+        mv.visitVarInsn(DLOAD, 1);
+        mv.visitVarInsn(DLOAD, 1);
+        mv.visitInsn(DCMPL);
+        mv.visitJumpInsn(IFNE, isUnknown);
+        mv.visitVarInsn(DLOAD, 1);
+        mv.visitLdcInsn(child.value);
+        mv.visitInsn(DCMPL);
+        mv.visitJumpInsn(jump(child.operator), isTrue);
+    }
+  }
+
+  private static int jump(ModelSpec.Operator operator) {
+    switch (operator) {
+      case LESS_THAN:
+        return IFLT;
+      case LESS_OR_EQUAL:
+        return IFLE;
+      case GREATER_THAN:
+        return IFGT;
+      case GREATER_OR_EQUAL:
+        return IFGE;
+      case EQUAL:
+        return IFEQ;
+      case NOT_EQUAL:
+        return IFNE;
+      default:
+        throw new IllegalArgumentException("Unsupported operator " + operator);
+    }
+  }
+
+  private static void loadFeature(MethodVisitor mv, int feature) {
+    mv.visitVarInsn(ALOAD, 0);
+    push(mv, feature);
+    mv.visitInsn(DALOAD);
+  }
+
+  private static void returnScore(MethodVisitor mv, double score) {
+    mv.visitLdcInsn(score);
+    mv.visitInsn(DRETURN);
+  }
+
+  private static void push(MethodVisitor mv, int value) {
+    if (value >= -1 && value <= 5) {
+      mv.visitInsn(ICONST_0 + value);
+    } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      mv.visitIntInsn(BIPUSH, value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      mv.visitIntInsn(SIPUSH, value);
+    } else {
+      mv.visitLdcInsn(value);
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package io.magicalne.smym.strategy.pmml;
+
+import org.dmg.pmml.DataField;
+import org.dmg.pmml.False;
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.MiningField;
+import org.dmg.pmml.Model;
+import org.dmg.pmml.PMML;
+import org.dmg.pmml.Predicate;
+import org.dmg.pmml.SimplePredicate;
+import org.dmg.pmml.True;
+import org.dmg.pmml.Value;
+import org.dmg.pmml.mining.MiningModel;
+import org.dmg.pmml.mining.Segment;
+import org.dmg.pmml.regression.NumericPredictor;
+import org.dmg.pmml.regression.RegressionModel;
+import org.dmg.pmml.regression.RegressionTable;
+import org.dmg.pmml.tree.Node;
+import org.dmg.pmml.tree.TreeModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compiles a PMML model to a generated class scoring a feature array, see {@link ModelClassWriter}.
+ *
+ * Supported are tree models, mining models combining tree models by sum, average, weighted average or
+ * (weighted) majority vote, and regression models with numeric predictors. Input fields must be continuous
+ * doubles without transformations, value restrictions or missing value and outlier treatments, so preparing
+ * a value is the identity and the generated code reads the feature array as is. Anything else is rejected,
+ * callers fall back to the JPMML evaluator.
+ */
+public final class ModelCompiler {
+
+  private final Map<String, DataField> dataFields = new HashMap<>();
+  private final ToIntFunction<String> features;
+
+  private ModelCompiler(PMML pmml, ToIntFunction<String> features) {
+    this.features = features;
+    for (DataField field : pmml.getDataDictionary().getDataFields()) {
+      dataFields.put(field.getName().getValue(), field);
+    }
+  }
+
+  /**
+   * @param features index of a field in the feature array, negative if there is no such feature.
+   * @throws IllegalArgumentException if the model is not supported.
+   */
+  public static FeatureModel compile(PMML pmml, ToIntFunction<String> features) {
+    if (pmml.getModels().size() != 1) {
+      throw new IllegalArgumentException("Expect one model, got " + pmml.getModels().size());
+    }
+    if (pmml.getTransformationDictionary() != null
+      && !pmml.getTransformationDictionary().getDerivedFields().isEmpty()) {
+      throw new IllegalArgumentException("Derived fields are not supported");
+    }
+    return ModelClassWriter.newInstance(new ModelCompiler(pmml, features).spec(pmml.getModels().get(0)));
+  }
+
+  private ModelSpec spec(Model model) {
+    DataField target = checkSchema(model);
+    ModelSpec.Function function = function(model);
+    if (model instanceof TreeModel) {
+      Object[] categories = categories(function, target, Collections.singletonList((TreeModel) model));
+      ModelSpec.Tree tree = tree((TreeModel) model, function, categories, 1);
+      return ModelSpec.trees(function, categories, ModelSpec.Combine.SINGLE, Collections.singletonList(tree));
+    }
+    if (model instanceof MiningModel) {
+      return ensemble((MiningModel) model, function, target);
+    }
+    if (model instanceof RegressionModel) {
+      return regression((RegressionModel) model, function, target);
+    }
+    throw new IllegalArgumentException("Unsupported model " + model.getClass().getSimpleName());
+  }
+
+  private static ModelSpec.Function function(Model model) {
+    switch (model.getMiningFunction().name()) {
+      case "REGRESSION":
+        return ModelSpec.Function.REGRESSION;
+      case "CLASSIFICATION":
+        return ModelSpec.Function.CLASSIFICATION;
+      default:
+        throw new IllegalArgumentException("Unsupported function " + model.getMiningFunction());
+    }
+  }
+
+  /**
+   * @return the target field.
+   */
+  private DataField checkSchema(Model model) {
+    if (model.getLocalTransformations() != null
+      && !model.getLocalTransformations().getDerivedFields().isEmpty()) {
+      throw new IllegalArgumentException("Derived fields are not supported");
+    }
+    if (model.getTargets() != null) {
+      throw new IllegalArgumentException("Targets are not supported");
+    }
+    DataField target = null;
+    for (MiningField field : model.getMiningSchema().getMiningFields()) {
+      String usage = field.getUsageType().name();
+      if ("TARGET".equals(usage) || "PREDICTED".equals(usage)) {
+        target = dataField(field.getName());
+      } else if ("ACTIVE".equals(usage)) {
+        if (field.getMissingValueReplacement() != null || !"AS_IS".equals(field.getOutlierTreatment().name())) {
+          throw new IllegalArgumentException("Value treatments are not supported: " + field.getName().getValue());
+        }
+        feature(field.getName());
+      } else {
+        throw new IllegalArgumentException("Unsupported field usage " + usage);
+      }
+    }
+    if (target == null) {
+      throw new IllegalArgumentException("There is no target field");
+    }
+    return target;
+  }
+
+  private DataField dataField(FieldName name) {
+    DataField field = dataFields.get(name.getValue());
+    if (field == null) {
+      throw new IllegalArgumentException("Unknown field " + name.getValue());
+    }
+    return field;
+  }
+
+  /**
+   * @return index of the input field in the feature array.
+   */
+  private int feature(FieldName name) {
+    DataField field = dataField(name);
+    if (!"CONTINUOUS".equals(field.getOpType().name()) || !"DOUBLE".equals(field.getDataType().name())
+      || !field.getValues().isEmpty() || !field.getIntervals().isEmpty()) {
+      throw new IllegalArgumentException("Only unrestricted continuous double inputs are supported: " + name.getValue());
+    }
+    int index = features.applyAsInt(name.getValue());
+    if (index < 0) {
+      throw new IllegalArgumentException("Model field is not a feature: " + name.getValue());
+    }
+    return index;
+  }
+
+  private ModelSpec ensemble(MiningModel model, ModelSpec.Function function, DataField target) {
+    ModelSpec.Combine combine;
+    switch (model.getSegmentation().getMultipleModelMethod().name()) {
+      case "SUM":
+        combine = ModelSpec.Combine.SUM;
+        break;
+      case "AVERAGE":
+        combine = ModelSpec.Combine.AVERAGE;
+        break;
+      case "WEIGHTED_AVERAGE":
+        combine = ModelSpec.Combine.WEIGHTED_AVERAGE;
+        break;
+      case "MAJORITY_VOTE":
+        combine = ModelSpec.Combine.MAJORITY_VOTE;
+        break;
+      case "WEIGHTED_MAJORITY_VOTE":
+        combine = ModelSpec.Combine.WEIGHTED_MAJORITY_VOTE;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported segmentation " + model.getSegmentation().getMultipleModelMethod());
+    }
+    boolean vote = combine == ModelSpec.Combine.MAJORITY_VOTE || combine == ModelSpec.Combine.WEIGHTED_MAJORITY_VOTE;
+    if (vote != (function == ModelSpec.Function.CLASSIFICATION)) {
+      throw new IllegalArgumentException("Unsupported segmentation " + combine + " for " + function);
+    }
+    List<TreeModel> models = new ArrayList<>();
+    for (Segment segment : model.getSegmentation().getSegments()) {
+      if (!(segment.getPredicate() instanceof True) || !(segment.getModel() instanceof TreeModel)) {
+        throw new IllegalArgumentException("Only segments of tree models selected by True are supported");
+      }
+      TreeModel tree = (TreeModel) segment.getModel();
+      checkSchema(tree);
+      if (function(tree) != function) {
+        throw new IllegalArgumentException("Segment function differs from the model");
+      }
+      models.add(tree);
+    }
+    Object[] categories = categories(function, target, models);
+    List<ModelSpec.Tree> trees = new ArrayList<>();
+    List<Segment> segments = model.getSegmentation().getSegments();
+    for (int i = 0; i < models.size(); i++) {
+      trees.add(tree(models.get(i), function, categories, segments.get(i).getWeight()));
+    }
+    return ModelSpec.trees(function, categories, combine, trees);
+  }
+
+  /**
+   * @return typed categories of the target, from its values or else from the scores of the trees.
+   */
+  private static Object[] categories(ModelSpec.Function function, DataField target, List<TreeModel> trees) {
+    String dataType = target.getDataType().name();
+    if (function == ModelSpec.Function.REGRESSION) {
+      if (!"DOUBLE".equals(dataType)) {
+        throw new IllegalArgumentException("Unsupported regression target type " + dataType);
+      }
+      return new Object[0];
+    }
+    List<String> values = new ArrayList<>();
+    for (Value value : target.getValues()) {
+      if ("VALID".equals(value.getProperty().name())) {
+        values.add(String.valueOf(value.getValue()));
+      }
+    }
+    if (values.isEmpty()) {
+      for (TreeModel tree : trees) {
+        collectScores(tree.getNode(), values);
+      }
+    }
+    Object[] categories = new Object[values.size()];
+    for (int i = 0; i < categories.length; i++) {
+      String value = values.get(i);
+      switch (dataType) {
+        case "STRING":
+          categories[i] = value;
+          break;
+        case "INTEGER":
+          categories[i] = Integer.valueOf(value);
+          break;
+        case "DOUBLE":
+          categories[i] = Double.valueOf(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported classification target type " + dataType);
+      }
+    }
+    return categories;
+  }
+
+  private static void collectScores(Node node, List<String> scores) {
+    if (node.getScore() != null && !scores.contains(String.valueOf(node.getScore()))) {
+      scores.add(String.valueOf(node.getScore()));
+    }
+    for (Node child : node.getNodes()) {
+      collectScores(child, scores);
+    }
+  }
+
+  private ModelSpec.Tree tree(TreeModel model, ModelSpec.Function function, Object[] categories, double weight) {
+    ModelSpec.Missing missing;
+    switch (model.getMissingValueStrategy().name()) {
+      case "NONE":
+        missing = ModelSpec.Missing.NONE;
+        break;
+      case "DEFAULT_CHILD":
+        missing = ModelSpec.Missing.DEFAULT_CHILD;
+        break;
+      case "LAST_PREDICTION":
+        missing = ModelSpec.Missing.LAST_PREDICTION;
+        break;
+      case "NULL_PREDICTION":
+        missing = ModelSpec.Missing.NULL_PREDICTION;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported missing value strategy " + model.getMissingValueStrategy());
+    }
+    boolean lastPrediction = "RETURN_LAST_PREDICTION".equals(model.getNoTrueChildStrategy().name());
+    Node root = model.getNode();
+    if (!(root.getPredicate() instanceof True)) {
+      throw new IllegalArgumentException("The predicate of the root node must be True");
+    }
+    List<String> categoryNames = new ArrayList<>();
+    for (Object category : categories) {
+      categoryNames.add(String.valueOf(category));
+    }
+    return new ModelSpec.Tree(node(root, null, function, categoryNames), missing, lastPrediction, weight);
+  }
+
+  private ModelSpec.Node node(Node node, Predicate predicate, ModelSpec.Function function, List<String> categories) {
+    ModelSpec.Node spec;
+    double score = score(node, function, categories);
+    if (predicate == null || predicate instanceof True) {
+      spec = new ModelSpec.Node(ModelSpec.Operator.TRUE, -1, 0, score);
+    } else if (predicate instanceof False) {
+      spec = new ModelSpec.Node(ModelSpec.Operator.FALSE, -1, 0, score);
+    } else if (predicate instanceof SimplePredicate) {
+      SimplePredicate simple = (SimplePredicate) predicate;
+      ModelSpec.Operator operator = ModelSpec.Operator.valueOf(simple.getOperator().name());
+      boolean unary = operator == ModelSpec.Operator.IS_MISSING || operator == ModelSpec.Operator.IS_NOT_MISSING;
+      spec = new ModelSpec.Node(operator, feature(simple.getField()), unary ? 0 : Double.parseDouble(simple.getValue()),
+        score);
+    } else {
+      throw new IllegalArgumentException("Unsupported predicate " + predicate.getClass().getSimpleName());
+    }
+    for (Node child : node.getNodes()) {
+      ModelSpec.Node childSpec = node(child, child.getPredicate(), function, categories);
+      spec.children.add(childSpec);
+      if (child.getId() != null && child.getId().equals(node.getDefaultChild())) {
+        spec.defaultChild = childSpec;
+      }
+    }
+    return spec;
+  }
+
+  private static double score(Node node, ModelSpec.Function function, List<String> categories) {
+    if (node.getScore() == null) {
+      return Double.NaN;
+    }
+    String score = String.valueOf(node.getScore());
+    if (function == ModelSpec.Function.REGRESSION) {
+      return Double.parseDouble(score);
+    }
+    int index = categories.indexOf(score);
+    if (index < 0) {
+      throw new IllegalArgumentException("Score " + score + " is not a category of the target");
+    }
+    return index;
+  }
+
+  private ModelSpec regression(RegressionModel model, ModelSpec.Function function, DataField target) {
+    ModelSpec.Normalization normalization;
+    switch (model.getNormalizationMethod().name()) {
+      case "NONE":
+        normalization = ModelSpec.Normalization.NONE;
+        break;
+      case "SOFTMAX":
+        normalization = ModelSpec.Normalization.SOFTMAX;
+        break;
+      case "LOGIT":
+        normalization = ModelSpec.Normalization.LOGIT;
+        break;
+      case "EXP":
+        normalization = ModelSpec.Normalization.EXP;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported normalization " + model.getNormalizationMethod());
+    }
+    List<RegressionTable> tables = model.getRegressionTables();
+    Object[] categories = categories(function, target, Collections.emptyList());
+    List<ModelSpec.Table> specs = new ArrayList<>();
+    if (function == ModelSpec.Function.REGRESSION) {
+      if (tables.size() != 1 || normalization == ModelSpec.Normalization.SOFTMAX) {
+        throw new IllegalArgumentException("Expect one table without softmax for regression");
+      }
+      specs.add(table(tables.get(0)));
+    } else {
+      if (categories.length < 2 || tables.size() != categories.length) {
+        throw new IllegalArgumentException("Expect one table for each of the categories");
+      }
+      // order the tables like the categories
+      for (Object category : categories) {
+        RegressionTable match = null;
+        for (RegressionTable table : tables) {
+          if (String.valueOf(category).equals(String.valueOf(table.getTargetCategory()))) {
+            match = table;
+          }
+        }
+        if (match == null) {
+          throw new IllegalArgumentException("There is no table for category " + category);
+        }
+        specs.add(table(match));
+      }
+    }
+    return ModelSpec.regression(function, categories, normalization, specs);
+  }
+
+  private ModelSpec.Table table(RegressionTable table) {
+    if (!table.getCategoricalPredictors().isEmpty() || !table.getPredictorTerms().isEmpty()) {
+      throw new IllegalArgumentException("Only numeric predictors are supported");
+    }
+    List<NumericPredictor> predictors = table.getNumericPredictors();
+    int n = predictors.size();
+    int[] indices = new int[n];
+    double[] exponents = new double[n];
+    double[] coefficients = new double[n];
+    for (int i = 0; i < n; i++) {
+      NumericPredictor predictor = predictors.get(i);
+      indices[i] = feature(predictor.getName());
+      exponents[i] = predictor.getExponent();
+      coefficients[i] = predictor.getCoefficient();
+    }
+    return new ModelSpec.Table(table.getIntercept(), indices, exponents, coefficients);
+  }
+}
@@ -0,0 +1,106 @@
+package io.magicalne.smym.strategy.pmml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Model reduced to what {@link ModelClassWriter} generates code for: trees, combined by a segmentation, or
+ * regression tables, reading features by their index in the feature array. Missing values are NaN.
+ */
+final class ModelSpec {
+
+  enum Function {REGRESSION, CLASSIFICATION}
+
+  /**
+   * How the results of several trees make the result of the model.
+   */
+  enum Combine {SINGLE, SUM, AVERAGE, WEIGHTED_AVERAGE, MAJORITY_VOTE, WEIGHTED_MAJORITY_VOTE}
+
+  enum Normalization {NONE, SOFTMAX, LOGIT, EXP}
+
+  enum Operator {TRUE, FALSE, LESS_THAN, LESS_OR_EQUAL, GREATER_THAN, GREATER_OR_EQUAL, EQUAL, NOT_EQUAL,
+    IS_MISSING, IS_NOT_MISSING}
+
+  /**
+   * What a node does when a predicate of a child compares a missing value. A node without default child
+   * gives no prediction where the interpreter fails.
+   */
+  enum Missing {NONE, DEFAULT_CHILD, LAST_PREDICTION, NULL_PREDICTION}
+
+  static final class Node {
+    final Operator operator;
+    final int feature;
+    final double value;
+    // score of the node, for classification the index of the category; NaN for no prediction
+    final double score;
+    final List<Node> children = new ArrayList<>();
+    Node defaultChild;
+
+    Node(Operator operator, int feature, double value, double score) {
+      this.operator = operator;
+      this.feature = feature;
+      this.value = value;
+      this.score = score;
+    }
+  }
+
+  static final class Tree {
+    final Node root;
+    final Missing missing;
+    // true to return the score of the node when no child matches, false to return no prediction
+    final boolean lastPredictionOnNoTrueChild;
+    final double weight;
+
+    Tree(Node root, Missing missing, boolean lastPredictionOnNoTrueChild, double weight) {
+      this.root = root;
+      this.missing = missing;
+      this.lastPredictionOnNoTrueChild = lastPredictionOnNoTrueChild;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * intercept + sum of coefficient * feature ^ exponent.
+   */
+  static final class Table {
+    final double intercept;
+    final int[] features;
+    final double[] exponents;
+    final double[] coefficients;
+
+    Table(double intercept, int[] features, double[] exponents, double[] coefficients) {
+      this.intercept = intercept;
+      this.features = features;
+      this.exponents = exponents;
+      this.coefficients = coefficients;
+    }
+  }
+
+  final Function function;
+  // typed values of the target categories, empty for regression
+  final Object[] categories;
+  final Combine combine;
+  final List<Tree> trees;
+  final Normalization normalization;
+  // one table for regression, one per category for classification
+  final List<Table> tables;
+
+  private ModelSpec(Function function, Object[] categories, Combine combine, List<Tree> trees,
+                    Normalization normalization, List<Table> tables) {
+    this.function = function;
+    this.categories = categories;
+    this.combine = combine;
+    this.trees = trees;
+    this.normalization = normalization;
+    this.tables = tables;
+  }
+
+  static ModelSpec trees(Function function, Object[] categories, Combine combine, List<Tree> trees) {
+    return new ModelSpec(function, categories, combine, trees, Normalization.NONE, new ArrayList<>());
+  }
+
+  static ModelSpec regression(Function function, Object[] categories, Normalization normalization,
+                              List<Table> tables) {
+    return new ModelSpec(function, categories, Combine.SINGLE, new ArrayList<>(), normalization, tables);
+  }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.magicalne.smym.exchanges.bitmex.BitmexDeltaClient;
 import org.apache.commons.collections4.queue.CircularFifoQueue;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -21,9 +22,16 @@ public class BitmexAlgoTest {
 
   @Before
   public void setup() throws IOException {
-    queue = new CircularFifoQueue<>(10);
+    queue = readBooks();
+  }
+
+  /**
+   * @return the last 10 books of the orderbook_l2.json fixture.
+   */
+  static Queue<BitmexDeltaClient.OrderBookL2> readBooks() throws IOException {
+    Queue<BitmexDeltaClient.OrderBookL2> queue = new CircularFifoQueue<>(10);
 
-    ClassLoader classLoader = getClass().getClassLoader();
+    ClassLoader classLoader = BitmexAlgoTest.class.getClassLoader();
     String filepath = Objects.requireNonNull(classLoader.getResource("orderbook_l2.json")).getFile();
     ObjectMapper mapper = new ObjectMapper();
     TypeReference<Map<String, Map<String, Double>>> ref = new TypeReference<Map<String, Map<String, Double>>>() {};
@@ -45,6 +53,7 @@ public class BitmexAlgoTest {
       }
       queue.add(new BitmexDeltaClient.OrderBookL2(asks, bids));
     }
+    return queue;
   }
 
   @Test
@@ -59,4 +68,124 @@ public class BitmexAlgoTest {
     Assert.assertEquals(feature.get("bid_v_roll_2_mean"), 3731272.0, 0.001);
     Assert.assertEquals(feature.get("spreed_vol_0"), -1746225.0, 0.001);
   }
+
+  @Test
+  public void testFeatureLayout() {
+    BookFeatureExtractor extractor = new BookFeatureExtractor();
+    double[] features = null;
+    for (BitmexDeltaClient.OrderBookL2 book : queue) {
+      Assert.assertFalse(extractor.isReady());
+      features = extractor.add(book);
+    }
+    Assert.assertTrue(extractor.isReady());
+    Assert.assertEquals(320, BookFeatureExtractor.size());
+    Assert.assertEquals(-1, BookFeatureExtractor.indexOf("ask_p_diff_1_1"));
+    Assert.assertEquals(-1746225.0, features[BookFeatureExtractor.indexOf("spreed_vol_0")], 0);
+
+    Map<String, Double> feature = referenceFeature(queue);
+    Assert.assertEquals(feature.size(), BookFeatureExtractor.size());
+    for (int i = 0; i < BookFeatureExtractor.size(); i++) {
+      double expected = feature.get(BookFeatureExtractor.name(i));
+      Assert.assertEquals(BookFeatureExtractor.name(i), expected, features[i], 1e-6 * Math.max(1, Math.abs(expected)));
+    }
+  }
+
+  /**
+   * The map based feature extraction the model was trained with, the extractor must give the same features.
+   */
+  private static Map<String, Double> referenceFeature(Queue<BitmexDeltaClient.OrderBookL2> queue) {
+    List<Map<String, Double>> rows = new LinkedList<>();
+    for (BitmexDeltaClient.OrderBookL2 orderBookL2 : queue) {
+      List<BitmexDeltaClient.OrderBookEntry> asks = orderBookL2.getAsks();
+      List<BitmexDeltaClient.OrderBookEntry> bids = orderBookL2.getBids();
+      Map<String, Double> featureMap = new HashMap<>();
+      double askPriceSum = 0;
+      double bidPriceSum = 0;
+      double askVolSum = 0;
+      double bidVolSum = 0;
+      double spreedVolSum = 0;
+      double spreedSum = 0;
+      for (int i = 0; i < 10; i++) {
+        BitmexDeltaClient.OrderBookEntry ask = asks.get(i);
+        BitmexDeltaClient.OrderBookEntry bid = bids.get(i);
+        featureMap.put("ask_p_" + i, ask.getPrice());
+        featureMap.put("ask_vol_" + i, (double) ask.getSize());
+        featureMap.put("bid_p_" + i, bid.getPrice());
+        featureMap.put("bid_vol_" + i, (double) bid.getSize());
+        double spreed = ask.getPrice() - bid.getPrice();
+        spreedSum += spreed;
+        featureMap.put("spreed_" + i, spreed);
+        featureMap.put("mid_p_" + i, (ask.getPrice() + bid.getPrice()) / 2);
+        double spreedVol = ask.getSize() - bid.getSize();
+        featureMap.put("spreed_vol_" + i, spreedVol);
+        spreedVolSum += spreedVol;
+        featureMap.put("vol_rate_" + i, ask.getSize() * 1.0d / bid.getSize());
+        featureMap.put("sask_vol_rate_" + i, spreedVol / ask.getSize());
+        featureMap.put("sbid_vol_rate_" + i, spreedVol / bid.getSize());
+        double volSum = ask.getSize() + bid.getSize();
+        featureMap.put("ask_vol_rate_" + i, ask.getSize() / volSum);
+        featureMap.put("bid_vol_rate_" + i, bid.getSize() / volSum);
+        askPriceSum += ask.getPrice();
+        bidPriceSum += bid.getPrice();
+        askVolSum += ask.getSize();
+        bidVolSum += bid.getSize();
+      }
+      for (int i = 0; i < 9; i++) {
+        int k = i + 1;
+        featureMap.put("ask_p_diff_" + k + "_0", featureMap.get("ask_p_" + k) - featureMap.get("ask_p_0"));
+        featureMap.put("bid_p_diff_" + k + "_0", featureMap.get("bid_p_" + k) - featureMap.get("bid_p_0"));
+        featureMap.put("ask_p_diff_" + k + "_" + i, featureMap.get("ask_p_" + k) - featureMap.get("ask_p_" + i));
+        featureMap.put("bid_p_diff_" + k + "_" + i, featureMap.get("bid_p_" + k) - featureMap.get("bid_p_" + i));
+      }
+      featureMap.put("ask_p_mean", askPriceSum / 10);
+      featureMap.put("bid_p_mean", bidPriceSum / 10);
+      featureMap.put("ask_vol_mean", askVolSum / 10);
+      featureMap.put("bid_vol_mean", bidVolSum / 10);
+      featureMap.put("accum_spreed_vol", spreedVolSum);
+      featureMap.put("accum_spreed", spreedSum);
+      rows.add(featureMap);
+    }
+    Map<String, Double> featureMap = rows.get(9);
+    List<Double> askPrices = new LinkedList<>();
+    List<Double> bidPrices = new LinkedList<>();
+    List<Double> askVols = new LinkedList<>();
+    List<Double> bidVols = new LinkedList<>();
+    for (Map<String, Double> row : rows) {
+      askPrices.add(row.get("ask_p_0"));
+      bidPrices.add(row.get("bid_p_0"));
+      askVols.add(row.get("ask_vol_0"));
+      bidVols.add(row.get("bid_vol_0"));
+    }
+    for (int i = 9; i >= 2; i--) {
+      askPrices.remove(0);
+      referenceStats(featureMap, askPrices, "ask_p_roll_" + i);
+      bidPrices.remove(0);
+      referenceStats(featureMap, bidPrices, "bid_p_roll_" + i);
+      askVols.remove(0);
+      referenceStats(featureMap, askVols, "ask_v_roll_" + i);
+      bidVols.remove(0);
+      referenceStats(featureMap, bidVols, "bid_v_roll_" + i);
+    }
+    return featureMap;
+  }
+
+  private static void referenceStats(Map<String, Double> featureMap, List<Double> values, String prefix) {
+    DescriptiveStatistics stats = new DescriptiveStatistics();
+    for (double e : values) {
+      stats.addValue(e);
+    }
+    featureMap.put(prefix + "_mean", stats.getMean());
+    featureMap.put(prefix + "_std", stats.getStandardDeviation());
+    featureMap.put(prefix + "_var", stats.getVariance());
+    featureMap.put(prefix + "_skew", stats.getSkewness());
+    featureMap.put(prefix + "_kurt", stats.getKurtosis());
+  }
+
+  @Test
+  public void skipShallowBooks() {
+    BitmexDeltaClient.OrderBookL2 book = queue.peek();
+    Assert.assertTrue(BookFeatureExtractor.hasLevels(book));
+    List<BitmexDeltaClient.OrderBookEntry> asks = new ArrayList<>(book.getAsks().subList(0, 3));
+    Assert.assertFalse(BookFeatureExtractor.hasLevels(new BitmexDeltaClient.OrderBookL2(asks, book.getBids())));
+  }
 }
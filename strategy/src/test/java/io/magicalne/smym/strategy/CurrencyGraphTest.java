@@ -0,0 +1,77 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.symbol.SymbolRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class CurrencyGraphTest {
+
+  private static final SymbolRegistry REGISTRY = new SymbolRegistry();
+  private static final int BTCUSDT = REGISTRY.put("BTCUSDT", "BTC", "USDT", "0.01", "0.000001", 0);
+  // not part of the graph
+  private static final int LTCBTC = REGISTRY.put("LTCBTC", "LTC", "BTC", "0.000001", "0.01", 0);
+  private static final int ETHUSDT = REGISTRY.put("ETHUSDT", "ETH", "USDT", "0.01", "0.00001", 0);
+  private static final int ETHBTC = REGISTRY.put("ETHBTC", "ETH", "BTC", "0.000001", "0.001", 0);
+  private static final int XRPBTC = REGISTRY.put("XRPBTC", "XRP", "BTC", "0.00000001", "1", 0);
+  private static final int XRPETH = REGISTRY.put("XRPETH", "XRP", "ETH", "0.00000001", "1", 0);
+
+  private static CurrencyGraph graph(int maxLength) {
+    CurrencyGraph graph = new CurrencyGraph(0.999, maxLength, 1.001, REGISTRY);
+    graph.addSymbol(BTCUSDT);
+    graph.addSymbol(ETHUSDT);
+    graph.addSymbol(ETHBTC);
+    graph.addSymbol(XRPBTC);
+    graph.addSymbol(XRPETH);
+    graph.update(BTCUSDT, 3999, 4000);
+    graph.update(ETHUSDT, 119.9, 120);
+    graph.update(ETHBTC, 0.02999, 0.03);
+    graph.update(XRPBTC, 0.0000799, 0.00008);
+    graph.update(XRPETH, 0.00266, 0.00267);
+    return graph;
+  }
+
+  @Test
+  public void noCycleAtFairPrices() {
+    CurrencyGraph graph = graph(4);
+    Assert.assertTrue(graph.findCycles(XRPETH).isEmpty());
+    Assert.assertTrue(graph.findCycles(ForkJoinPool.commonPool()).isEmpty());
+    Assert.assertTrue(graph.findCycles(LTCBTC).isEmpty());
+  }
+
+  @Test
+  public void findCyclesThroughUpdatedMarket() {
+    CurrencyGraph graph = graph(4);
+    graph.update(XRPETH, 0.0027, 0.00271);
+    List<CurrencyGraph.Cycle> cycles = graph.findCycles(XRPETH);
+    Assert.assertEquals(1, cycles.size());
+    CurrencyGraph.Cycle triangle = cycles.get(0);
+    Assert.assertEquals(3, triangle.length());
+    // 1 BTC buys 12500 XRP, sold for 33.75 ETH, sold for 1.01216 BTC
+    Assert.assertEquals(1.0121625 * 0.999 * 0.999 * 0.999, triangle.getRate(), 1e-9);
+
+    // from USDT the best cycle takes 4 legs
+    List<CurrencyGraph.Cycle> all = graph.findCycles(new ForkJoinPool(2));
+    Assert.assertEquals(2, all.size());
+    CurrencyGraph.Cycle longest = all.get(0).length() == 4 ? all.get(0) : all.get(1);
+    Assert.assertEquals(4, longest.length());
+    Assert.assertEquals("USDT", longest.getAssets()[0]);
+    Assert.assertArrayEquals(new String[]{"BTCUSDT", "XRPBTC", "XRPETH", "ETHUSDT"}, longest.getSymbols());
+
+    CurrencyGraph threeLegs = graph(3);
+    threeLegs.update(XRPETH, 0.0027, 0.00271);
+    List<CurrencyGraph.Cycle> triangles = threeLegs.findCycles(ForkJoinPool.commonPool());
+    Assert.assertEquals(1, triangles.size());
+    Assert.assertEquals(3, triangles.get(0).length());
+  }
+
+  @Test
+  public void removeEdgeWithoutPrice() {
+    CurrencyGraph graph = graph(4);
+    graph.update(XRPETH, 0.0027, 0.00271);
+    graph.update(XRPBTC, 0.0000799, 0);
+    Assert.assertTrue(graph.findCycles(XRPETH).isEmpty());
+  }
+}
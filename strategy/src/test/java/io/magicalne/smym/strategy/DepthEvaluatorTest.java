@@ -0,0 +1,49 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DepthEvaluatorTest {
+
+  private final OrderBookSnapshot btcusdt = OrderBooks.snapshot(new String[]{"3990", "1"}, new String[]{"4000", "0.01", "4010", "1"});
+  private final OrderBookSnapshot ethbtc = OrderBooks.snapshot(new String[]{"0.0299", "1"}, new String[]{"0.03", "0.2", "0.0301", "10"});
+  private final OrderBookSnapshot ethusdt =
+    OrderBooks.snapshot(new String[]{"121", "0.1", "120.5", "0.5", "119", "10"}, new String[]{"122", "1"});
+
+  @Test
+  public void clockwiseUntilRateDropsBelowBound() {
+    DepthEvaluator evaluator = new DepthEvaluator(3, 1);
+    // 12 USDT at 121, then 12 USDT at 120.5 until ETHBTC moves to 0.0301
+    double input = evaluator.evaluateClockwise(btcusdt, ethbtc, ethusdt, 1.001, Double.MAX_VALUE);
+    Assert.assertEquals(24, input, 1e-9);
+    Assert.assertEquals(24.15, evaluator.getOutput(), 1e-9);
+    Assert.assertEquals(24.15 / 24, evaluator.getRate(), 1e-12);
+
+    input = evaluator.evaluateClockwise(btcusdt, ethbtc, ethusdt, 1.001, 20);
+    Assert.assertEquals(20, input, 1e-9);
+    Assert.assertEquals(12.1 + 8 * 120.5 / 120, evaluator.getOutput(), 1e-9);
+
+    Assert.assertEquals(0, evaluator.evaluateClockwise(btcusdt, ethbtc, ethusdt, 1.01, Double.MAX_VALUE), 0);
+    Assert.assertEquals(0, evaluator.getRate(), 0);
+  }
+
+  @Test
+  public void feeOnEveryLeg() {
+    DepthEvaluator evaluator = new DepthEvaluator(3, 0.999);
+    double input = evaluator.evaluateClockwise(btcusdt, ethbtc, ethusdt, 1.002, Double.MAX_VALUE);
+    // only the first level of ETHUSDT clears the bound after fees, it takes 0.1 ETH bought with fees
+    Assert.assertEquals(0.1 / 0.999 * 0.03 / 0.999 * 4000, input, 1e-9);
+    Assert.assertEquals(121 * 0.1 * 0.999, evaluator.getOutput(), 1e-9);
+  }
+
+  @Test
+  public void reverse() {
+    OrderBookSnapshot cheapEth = OrderBooks.snapshot(new String[]{"119", "1"}, new String[]{"118", "0.05", "119.5", "1"});
+    DepthEvaluator evaluator = new DepthEvaluator(3, 1);
+    // buy 0.05 ETH for 5.9 USDT, sell it for 0.001495 BTC, sold for 5.965 USDT
+    double input = evaluator.evaluateReverse(btcusdt, ethbtc, cheapEth, 1.001, Double.MAX_VALUE);
+    Assert.assertEquals(5.9, input, 1e-9);
+    Assert.assertEquals(0.05 * 0.0299 * 3990, evaluator.getOutput(), 1e-9);
+  }
+}
@@ -0,0 +1,34 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.orderbook.OrderBookView;
+import io.magicalne.smym.orderbook.TickOrderBook;
+
+/**
+ * Order book fixtures of the strategy tests.
+ */
+final class OrderBooks {
+
+  private OrderBooks() {
+  }
+
+  /**
+   * @param bids price and quantity pairs, best first.
+   * @param asks price and quantity pairs, best first.
+   * @return a snapshot of a book with 5 levels, scale 8 for prices and quantities.
+   */
+  static OrderBookSnapshot snapshot(String[] bids, String[] asks) {
+    TickOrderBook book = new TickOrderBook(5, 8, 8);
+    for (int i = 0; i < bids.length; i += 2) {
+      book.updateBid(bids[i], bids[i + 1]);
+    }
+    for (int i = 0; i < asks.length; i += 2) {
+      book.updateAsk(asks[i], asks[i + 1]);
+    }
+    OrderBookView view = new OrderBookView(5, 8, 8);
+    view.publish(book);
+    OrderBookSnapshot snapshot = new OrderBookSnapshot();
+    view.read(snapshot);
+    return snapshot;
+  }
+}
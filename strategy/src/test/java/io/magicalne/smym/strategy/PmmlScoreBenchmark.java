@@ -0,0 +1,92 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.strategy.pmml.EvaluatorModel;
+import org.jpmml.evaluator.Evaluator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Score latency of the book model on the orderbook_l2.json fixture: the former map per call with every field
+ * prepared, the evaluator and the compiled model inline, and offer to publication of the compiled model
+ * through the scorer thread.
+ * Run the main method, it is not part of the unit tests.
+ */
+public class PmmlScoreBenchmark {
+
+  private static final int WARMUP = 20000;
+  private static final int ROUNDS = 100000;
+
+  private static int sink;
+
+  public static void main(String[] args) throws Exception {
+    Evaluator evaluator = PmmlScorerTest.loadModel();
+    List<double[]> inputs = PmmlScorerTest.recordedFeatures();
+    PmmlScorer scorer = new PmmlScorer(new EvaluatorModel(evaluator, BookFeatureExtractor::indexOf),
+      "pmml-scorer-benchmark");
+    PmmlScorer compiled = PmmlScorer.load(PmmlScorerTest.loadPmml(), "pmml-scorer-benchmark");
+
+    for (int i = 0; i < WARMUP; i++) {
+      double[] features = inputs.get(i % inputs.size());
+      sink += PmmlScorerTest.naiveScore(evaluator, features).hashCode();
+      sink += scorer.score(features).hashCode();
+      sink += compiled.score(features).hashCode();
+    }
+    long[] naive = new long[ROUNDS];
+    for (int i = 0; i < ROUNDS; i++) {
+      double[] features = inputs.get(i % inputs.size());
+      long start = System.nanoTime();
+      sink += PmmlScorerTest.naiveScore(evaluator, features).hashCode();
+      naive[i] = System.nanoTime() - start;
+    }
+    long[] inline = new long[ROUNDS];
+    for (int i = 0; i < ROUNDS; i++) {
+      double[] features = inputs.get(i % inputs.size());
+      long start = System.nanoTime();
+      sink += scorer.score(features).hashCode();
+      inline[i] = System.nanoTime() - start;
+    }
+    long[] bytecode = new long[ROUNDS];
+    for (int i = 0; i < ROUNDS; i++) {
+      double[] features = inputs.get(i % inputs.size());
+      long start = System.nanoTime();
+      sink += compiled.score(features).hashCode();
+      bytecode[i] = System.nanoTime() - start;
+    }
+
+    PmmlScorer threaded = PmmlScorer.load(PmmlScorerTest.loadPmml(), "pmml-scorer-benchmark");
+    threaded.start();
+    long[] offer = new long[ROUNDS];
+    long[] published = new long[ROUNDS];
+    for (int i = 0; i < WARMUP + ROUNDS; i++) {
+      long start = System.nanoTime();
+      threaded.offer(inputs.get(i % inputs.size()));
+      long offered = System.nanoTime() - start;
+      PmmlScorer.Prediction p;
+      while ((p = threaded.latest()) == null || p.getSequence() != i + 1) {
+        Thread.yield();
+      }
+      if (i >= WARMUP) {
+        offer[i - WARMUP] = offered;
+        published[i - WARMUP] = p.getLatencyNanos();
+      }
+    }
+    threaded.close();
+
+    System.out.printf("%d features, %d model fields, %d scores%n", BookFeatureExtractor.size(),
+      evaluator.getActiveFields().size(), ROUNDS);
+    print("map + prepare per call", naive);
+    print("resolved fields inline", inline);
+    print("compiled inline", bytecode);
+    print("offer on trading thread", offer);
+    print("offer to publication", published);
+    System.out.println(sink);
+  }
+
+  private static void print(String name, long[] nanos) {
+    long[] sorted = nanos.clone();
+    Arrays.sort(sorted);
+    System.out.printf("%-24s p50 %6.2f us, p99 %6.2f us%n", name, sorted[sorted.length / 2] / 1000.0,
+      sorted[(int) (sorted.length * 0.99)] / 1000.0);
+  }
+}
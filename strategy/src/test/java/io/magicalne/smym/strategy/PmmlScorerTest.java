@@ -0,0 +1,113 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.exchanges.bitmex.BitmexDeltaClient;
+import io.magicalne.smym.strategy.pmml.EvaluatorModel;
+import io.magicalne.smym.strategy.pmml.FeatureModel;
+import io.magicalne.smym.strategy.pmml.ModelCompiler;
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.PMML;
+import org.jpmml.evaluator.Evaluator;
+import org.jpmml.evaluator.EvaluatorUtil;
+import org.jpmml.evaluator.FieldValue;
+import org.jpmml.evaluator.InputField;
+import org.jpmml.evaluator.ModelEvaluatorFactory;
+import org.jpmml.model.PMMLUtil;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PmmlScorerTest {
+
+  private Evaluator evaluator;
+  private double[] features;
+
+  @Before
+  public void setup() throws Exception {
+    evaluator = loadModel();
+    BookFeatureExtractor extractor = new BookFeatureExtractor();
+    for (BitmexDeltaClient.OrderBookL2 book : BitmexAlgoTest.readBooks()) {
+      features = extractor.add(book);
+    }
+  }
+
+  @Test
+  public void scoreLikeEvaluator() {
+    PmmlScorer scorer = new PmmlScorer(new EvaluatorModel(evaluator, BookFeatureExtractor::indexOf),
+      "pmml-scorer-test");
+    Object expected = naiveScore(evaluator, features);
+    Assert.assertNotNull(expected);
+    Assert.assertEquals(expected, scorer.score(features));
+    // cached arguments give the same result
+    Assert.assertEquals(expected, scorer.score(features));
+  }
+
+  @Test
+  public void compiledModelScoresRecordedFeaturesLikeEvaluator() throws Exception {
+    FeatureModel compiled = ModelCompiler.compile(loadPmml(), BookFeatureExtractor::indexOf);
+    for (double[] recorded : recordedFeatures()) {
+      Assert.assertEquals(naiveScore(evaluator, recorded), compiled.score(recorded));
+    }
+  }
+
+  @Test
+  public void publishLatestPrediction() throws Exception {
+    PmmlScorer scorer = PmmlScorer.load(loadPmml(), "pmml-scorer-test");
+    scorer.start();
+    Assert.assertNull(scorer.latest());
+    scorer.offer(features);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (scorer.latest() == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    scorer.close();
+    PmmlScorer.Prediction prediction = scorer.latest();
+    Assert.assertNotNull(prediction);
+    Assert.assertEquals(1, prediction.getSequence());
+    Assert.assertEquals(naiveScore(evaluator, features), prediction.getResult());
+  }
+
+  static PMML loadPmml() throws Exception {
+    try (InputStream is = PmmlScorerTest.class.getClassLoader().getResourceAsStream("book_direction.pmml")) {
+      return PMMLUtil.unmarshal(is);
+    }
+  }
+
+  static Evaluator loadModel() throws Exception {
+    return ModelEvaluatorFactory.newInstance().newModelEvaluator(loadPmml());
+  }
+
+  /**
+   * Features of the orderbook_l2.json books over and over, so the rolling statistics keep changing.
+   */
+  static List<double[]> recordedFeatures() throws Exception {
+    BookFeatureExtractor extractor = new BookFeatureExtractor();
+    List<BitmexDeltaClient.OrderBookL2> books = new ArrayList<>(BitmexAlgoTest.readBooks());
+    List<double[]> features = new ArrayList<>();
+    for (int i = 0; i < books.size() * 10; i++) {
+      double[] extracted = extractor.add(books.get(i % books.size()));
+      if (extractor.isReady()) {
+        features.add(extracted.clone());
+      }
+    }
+    return features;
+  }
+
+  /**
+   * Score like the former predict method: a new map of prepared fields for every call.
+   */
+  static Object naiveScore(Evaluator evaluator, double[] features) {
+    Map<FieldName, FieldValue> arguments = new LinkedHashMap<>();
+    for (InputField field : evaluator.getActiveFields()) {
+      double value = features[BookFeatureExtractor.indexOf(field.getName().getValue())];
+      arguments.put(field.getName(), field.prepare(Double.isNaN(value) ? null : value));
+    }
+    Map<FieldName, ?> results = evaluator.evaluate(arguments);
+    return EvaluatorUtil.decode(results.get(evaluator.getTargetFields().get(0).getName()));
+  }
+}
@@ -0,0 +1,75 @@
+package io.magicalne.smym.strategy;
+
+import io.magicalne.smym.dto.Triangular;
+import io.magicalne.smym.orderbook.OrderBookSnapshot;
+import io.magicalne.smym.symbol.SymbolRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TriangleScannerTest {
+
+  private static OrderBookSnapshot book(String bid0, String bid1, String ask0, String ask1) {
+    return OrderBooks.snapshot(new String[]{bid0, "1", bid1, "1"}, new String[]{ask0, "1", ask1, "1"});
+  }
+
+  @Test
+  public void scanOnlyTrianglesOfUpdatedSymbol() {
+    SymbolRegistry registry = new SymbolRegistry();
+    for (String symbol : new String[]{"BTCUSDT", "ETHBTC", "ETHUSDT", "LTCBTC", "LTCUSDT"}) {
+      registry.put(symbol, symbol.substring(0, 3), symbol.substring(3), 5, 8, 1, 1, 0);
+    }
+    int btcusdt = registry.id("BTCUSDT");
+    int ethbtc = registry.id("ETHBTC");
+    int ethusdt = registry.id("ETHUSDT");
+    int ltcbtc = registry.id("LTCBTC");
+    int ltcusdt = registry.id("LTCUSDT");
+    TriangleScanner scanner = new TriangleScanner(1, 1.001, registry);
+    Triangular eth = new Triangular("BTCUSDT", "ETHBTC", "ETHUSDT");
+    Triangular ltc = new Triangular("BTCUSDT", "LTCBTC", "LTCUSDT");
+    scanner.add(eth, "BTC");
+    scanner.add(ltc, "BTC");
+    Assert.assertEquals(2, scanner.triangleCount(btcusdt));
+    Assert.assertEquals(1, scanner.triangleCount(ethbtc));
+    Assert.assertEquals(5, scanner.symbols().size());
+
+    List<Triangular> found = new ArrayList<>();
+    List<Boolean> directions = new ArrayList<>();
+    TriangleScanner.Listener listener = (t, clockwise, source, middle, last, profit) -> {
+      found.add(t.triangular);
+      directions.add(clockwise);
+    };
+    scanner.onBookUpdate(btcusdt, book("3999", "3998", "4000", "4001"), listener);
+    scanner.onBookUpdate(ethbtc, book("0.0299", "0.0298", "0.03", "0.0301"), listener);
+    scanner.onBookUpdate(ltcbtc, book("0.0079", "0.0078", "0.008", "0.0081"), listener);
+    scanner.onBookUpdate(ltcusdt, book("32", "31.9", "32.1", "32.2"), listener);
+    Assert.assertTrue(found.isEmpty());
+
+    // 4000 * 0.03 = 120, the best bid of 121.5 pays but the second bid does not
+    scanner.onBookUpdate(ethusdt, book("121.5", "120", "122", "123"), listener);
+    Assert.assertTrue(found.isEmpty());
+
+    // selling ETH at the second bid of 121 pays
+    scanner.onBookUpdate(ethusdt, book("121.5", "121", "122", "123"), listener);
+    Assert.assertEquals(1, found.size());
+    Assert.assertSame(eth, found.get(0));
+    Assert.assertTrue(directions.get(0));
+
+    // 3999 * 0.0079 = 31.59, buying LTC at 31 pays the reverse way
+    found.clear();
+    directions.clear();
+    scanner.onBookUpdate(ltcusdt, book("30.9", "30.8", "31", "31.1"), listener);
+    Assert.assertEquals(1, found.size());
+    Assert.assertSame(ltc, found.get(0));
+    Assert.assertFalse(directions.get(0));
+
+    // an unavailable book stops its triangles from being reported
+    found.clear();
+    scanner.onBookUpdate(ethusdt, null, listener);
+    scanner.onBookUpdate(btcusdt, book("3999", "3998", "4000", "4001"), listener);
+    Assert.assertEquals(1, found.size());
+    Assert.assertSame(ltc, found.get(0));
+  }
+}
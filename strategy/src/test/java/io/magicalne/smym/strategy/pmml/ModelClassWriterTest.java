@@ -0,0 +1,112 @@
+package io.magicalne.smym.strategy.pmml;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ModelClassWriterTest {
+
+  private static final Object[] DIRECTIONS = {"down", "flat", "up"};
+  private static final double NaN = Double.NaN;
+
+  @Test
+  public void walkTreeAndHandleMissingValues() {
+    Assert.assertEquals("up", tree(ModelSpec.Missing.NONE).score(new double[]{0.2, 3}));
+    Assert.assertEquals("down", tree(ModelSpec.Missing.NONE).score(new double[]{0.2, 1}));
+    Assert.assertEquals("down", tree(ModelSpec.Missing.NONE).score(new double[]{0.5, NaN}));
+    Assert.assertEquals("up", tree(ModelSpec.Missing.NONE).score(new double[]{0.7, 1}));
+
+    // a missing f0 makes both predicates unknown
+    double[] missing = {NaN, 3};
+    Assert.assertEquals("flat", tree(ModelSpec.Missing.NONE).score(missing));
+    Assert.assertEquals("flat", tree(ModelSpec.Missing.LAST_PREDICTION).score(missing));
+    Assert.assertNull(tree(ModelSpec.Missing.NULL_PREDICTION).score(missing));
+    Assert.assertEquals("up", tree(ModelSpec.Missing.DEFAULT_CHILD).score(missing));
+    // a node without default child gives no prediction
+    Assert.assertNull(tree(ModelSpec.Missing.DEFAULT_CHILD, false).score(missing));
+    Assert.assertEquals("down", tree(ModelSpec.Missing.DEFAULT_CHILD, false).score(new double[]{0.5, NaN}));
+  }
+
+  @Test
+  public void combineTrees() {
+    ModelSpec.Tree first = stump(0, 1.5, 2.0, 3, 0.25);
+    ModelSpec.Tree second = stump(1, -1, 4, 5, 0.75);
+    double[] features = {1, 0};
+    Assert.assertEquals(2.0 + 5, score(ModelSpec.Combine.SUM, features, first, second));
+    Assert.assertEquals((2.0 + 5) / 2, score(ModelSpec.Combine.AVERAGE, features, first, second));
+    Assert.assertEquals(2.0 * 0.25 + 5 * 0.75, score(ModelSpec.Combine.WEIGHTED_AVERAGE, features, first, second));
+
+    // trees voting for the index of a category
+    ModelSpec.Tree down = stump(0, 1.5, 0, 2, 1);
+    ModelSpec.Tree up = stump(1, -1, 0, 2, 3);
+    CompiledModel votes = ModelClassWriter.newInstance(ModelSpec.trees(ModelSpec.Function.CLASSIFICATION,
+      DIRECTIONS, ModelSpec.Combine.WEIGHTED_MAJORITY_VOTE, Arrays.asList(down, up, down)));
+    Assert.assertEquals("up", votes.score(features));
+    Assert.assertEquals("down", votes.score(new double[]{1, -2}));
+  }
+
+  @Test
+  public void evaluateRegressionTables() {
+    ModelSpec.Table table = new ModelSpec.Table(0.5, new int[]{0, 1}, new double[]{1, 2}, new double[]{2, -1});
+    double[] features = {1.5, 2};
+    double y = 0.5 + 2 * 1.5 - 4;
+    Assert.assertEquals(y, regression(ModelSpec.Normalization.NONE, table).score(features));
+    Assert.assertEquals(Math.exp(y), regression(ModelSpec.Normalization.EXP, table).score(features));
+    Assert.assertNull(regression(ModelSpec.Normalization.NONE, table).score(new double[]{NaN, 2}));
+
+    ModelSpec.Table zero = new ModelSpec.Table(0, new int[0], new double[0], new double[0]);
+    Object[] sides = {"buy", "sell"};
+    CompiledModel logit = ModelClassWriter.newInstance(ModelSpec.regression(ModelSpec.Function.CLASSIFICATION,
+      sides, ModelSpec.Normalization.LOGIT, Arrays.asList(table, zero)));
+    Assert.assertEquals("sell", logit.score(features));
+    Assert.assertEquals("buy", logit.score(new double[]{3, 2}));
+
+    CompiledModel softmax = ModelClassWriter.newInstance(ModelSpec.regression(ModelSpec.Function.CLASSIFICATION,
+      DIRECTIONS, ModelSpec.Normalization.SOFTMAX, Arrays.asList(table, zero, zero)));
+    Assert.assertEquals("flat", softmax.score(features));
+  }
+
+  /**
+   * f0 <= 0.5: (f1 > 2: up, else down), f0 > 0.5: up, with flat at the root.
+   */
+  private static CompiledModel tree(ModelSpec.Missing missing) {
+    return tree(missing, true);
+  }
+
+  private static CompiledModel tree(ModelSpec.Missing missing, boolean rootDefaultChild) {
+    ModelSpec.Node root = new ModelSpec.Node(ModelSpec.Operator.TRUE, -1, 0, 1);
+    ModelSpec.Node low = new ModelSpec.Node(ModelSpec.Operator.LESS_OR_EQUAL, 0, 0.5, 1);
+    ModelSpec.Node high = new ModelSpec.Node(ModelSpec.Operator.GREATER_THAN, 0, 0.5, 2);
+    low.children.add(new ModelSpec.Node(ModelSpec.Operator.GREATER_THAN, 1, 2, 2));
+    low.children.add(new ModelSpec.Node(ModelSpec.Operator.TRUE, -1, 0, 0));
+    low.defaultChild = low.children.get(1);
+    root.children.add(low);
+    root.children.add(high);
+    root.defaultChild = rootDefaultChild ? high : null;
+    ModelSpec.Tree tree = new ModelSpec.Tree(root, missing, true, 1);
+    return ModelClassWriter.newInstance(ModelSpec.trees(ModelSpec.Function.CLASSIFICATION, DIRECTIONS,
+      ModelSpec.Combine.SINGLE, Collections.singletonList(tree)));
+  }
+
+  /**
+   * feature < threshold: left, else right.
+   */
+  private static ModelSpec.Tree stump(int feature, double threshold, double left, double right, double weight) {
+    ModelSpec.Node root = new ModelSpec.Node(ModelSpec.Operator.TRUE, -1, 0, NaN);
+    root.children.add(new ModelSpec.Node(ModelSpec.Operator.LESS_THAN, feature, threshold, left));
+    root.children.add(new ModelSpec.Node(ModelSpec.Operator.GREATER_OR_EQUAL, feature, threshold, right));
+    return new ModelSpec.Tree(root, ModelSpec.Missing.NONE, false, weight);
+  }
+
+  private static Object score(ModelSpec.Combine combine, double[] features, ModelSpec.Tree... trees) {
+    return ModelClassWriter.newInstance(ModelSpec.trees(ModelSpec.Function.REGRESSION, new Object[0], combine,
+      Arrays.asList(trees))).score(features);
+  }
+
+  private static CompiledModel regression(ModelSpec.Normalization normalization, ModelSpec.Table table) {
+    return ModelClassWriter.newInstance(ModelSpec.regression(ModelSpec.Function.REGRESSION, new Object[0],
+      normalization, Collections.singletonList(table)));
+  }
+}
@@ -0,0 +1,70 @@
+package io.magicalne.smym.strategy.pmml;
+
+import org.dmg.pmml.PMML;
+import org.jpmml.evaluator.ModelEvaluatorFactory;
+import org.jpmml.model.PMMLUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ModelCompilerTest {
+
+  private static final List<String> FEATURES = Arrays.asList("x0", "x1", "x2", "x3");
+
+  @Test
+  public void sumRegressionTrees() throws Exception {
+    assertLikeEvaluator("regression_trees.pmml", true);
+  }
+
+  @Test
+  public void voteClassificationTrees() throws Exception {
+    assertLikeEvaluator("vote_trees.pmml", true);
+  }
+
+  @Test
+  public void softmaxRegression() throws Exception {
+    assertLikeEvaluator("softmax_regression.pmml", false);
+  }
+
+  @Test
+  public void rejectUnknownFeature() throws Exception {
+    PMML pmml = load("regression_trees.pmml");
+    try {
+      ModelCompiler.compile(pmml, name -> "x3".equals(name) ? -1 : FEATURES.indexOf(name));
+      Assert.fail("x3 is not a feature");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage().contains("x3"));
+    }
+  }
+
+  static PMML load(String resource) throws Exception {
+    try (InputStream is = ModelCompilerTest.class.getClassLoader().getResourceAsStream(resource)) {
+      return PMMLUtil.unmarshal(is);
+    }
+  }
+
+  /**
+   * Score random features, some of them missing, with the compiled model and the JPMML evaluator.
+   */
+  private static void assertLikeEvaluator(String resource, boolean missing) throws Exception {
+    PMML pmml = load(resource);
+    FeatureModel compiled = ModelCompiler.compile(pmml, FEATURES::indexOf);
+    Assert.assertTrue(compiled instanceof CompiledModel);
+    FeatureModel evaluator = new EvaluatorModel(ModelEvaluatorFactory.newInstance().newModelEvaluator(pmml),
+      FEATURES::indexOf);
+    Random random = new Random(7);
+    double[] features = new double[FEATURES.size()];
+    for (int i = 0; i < 2000; i++) {
+      for (int j = 0; j < features.length; j++) {
+        features[j] = missing && random.nextInt(10) == 0 ? Double.NaN : random.nextGaussian();
+      }
+      Object expected = evaluator.score(features);
+      Assert.assertNotNull(expected);
+      Assert.assertEquals(Arrays.toString(features), expected, compiled.score(features));
+    }
+  }
+}